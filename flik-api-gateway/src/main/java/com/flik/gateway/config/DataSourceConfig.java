@@ -0,0 +1,35 @@
+package com.flik.gateway.config;
+
+import com.flik.gateway.service.LaneQuotaDataSource;
+import com.flik.gateway.service.RequestLane;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.util.EnumMap;
+import java.util.Map;
+
+@Configuration
+public class DataSourceConfig {
+
+    // Static so the post-processor is registered before the pool it wraps is created; real-time has no quota
+    @Bean
+    public static BeanPostProcessor laneQuotaDataSourcePostProcessor(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource dataSource) || bean instanceof LaneQuotaDataSource) {
+                    return bean;
+                }
+                Map<RequestLane, Integer> quotas = new EnumMap<>(RequestLane.class);
+                quotas.put(RequestLane.INTERACTIVE, environment.getProperty("flik.lanes.interactive-db-connections", Integer.class, 8));
+                quotas.put(RequestLane.BACKGROUND, environment.getProperty("flik.lanes.background-db-connections", Integer.class, 4));
+                quotas.put(RequestLane.READ, environment.getProperty("flik.lanes.read-db-connections", Integer.class, 4));
+                return new LaneQuotaDataSource(dataSource, quotas,
+                        environment.getProperty("flik.lanes.db-wait-ms", Long.class, 2000L));
+            }
+        };
+    }
+}
@@ -0,0 +1,20 @@
+package com.flik.gateway.config;
+
+import com.flik.common.metrics.TaskMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public TaskMetrics taskMetrics(MeterRegistry meterRegistry,
+                                   @Value("${flik.metrics.max-tenant-tags:100}") int maxTenantTags,
+                                   @Value("${flik.metrics.tenant-rerank-seconds:300}") long tenantRerankSeconds) {
+        return new TaskMetrics(meterRegistry, maxTenantTags, Duration.ofSeconds(tenantRerankSeconds));
+    }
+}
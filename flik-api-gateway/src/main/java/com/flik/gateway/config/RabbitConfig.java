@@ -1,19 +1,46 @@
 package com.flik.gateway.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flik.common.compression.PayloadCompressor;
 import com.flik.common.constants.QueueConstants;
+import com.flik.common.messaging.ConfirmingPublisher;
+import com.flik.common.messaging.TaskMessageCodec;
+import com.flik.common.messaging.TaskMessageConverter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.amqp.core.*;
-import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
-import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 
 @Configuration
 public class RabbitConfig {
 
     @Bean
-    public MessageConverter jsonMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+    public PayloadCompressor payloadCompressor(MeterRegistry meterRegistry,
+                                               @Value("${flik.compression.threshold-bytes:1024}") int thresholdBytes,
+                                               @Value("${flik.compression.level:1}") int level) {
+        return new PayloadCompressor(meterRegistry, thresholdBytes, level);
+    }
+
+    @Bean
+    public TaskMessageConverter taskMessageConverter(ObjectMapper objectMapper, PayloadCompressor payloadCompressor,
+                                                     @Value("${flik.messaging.format:binary}") String format) {
+        return new TaskMessageConverter(new TaskMessageCodec(payloadCompressor), objectMapper,
+                "binary".equalsIgnoreCase(format));
+    }
+
+    @Bean
+    public ConfirmingPublisher confirmingPublisher(RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry,
+                                                   @Value("${flik.publish.max-in-flight:1024}") int maxInFlight,
+                                                   @Value("${flik.publish.confirm-timeout-ms:5000}") long confirmTimeoutMs,
+                                                   @Value("${flik.publish.max-attempts:3}") int maxAttempts) {
+        return new ConfirmingPublisher(rabbitTemplate, meterRegistry, maxInFlight,
+                Duration.ofMillis(confirmTimeoutMs), Duration.ofMillis(confirmTimeoutMs), maxAttempts,
+                Duration.ofMillis(100));
     }
 
     // --- Task Exchange and Queues ---
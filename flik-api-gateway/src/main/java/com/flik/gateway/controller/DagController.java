@@ -1,18 +1,25 @@
 package com.flik.gateway.controller;
 
+import com.flik.common.constants.CostConstants;
+import com.flik.common.constants.QueueConstants;
 import com.flik.common.dto.DagRequest;
 import com.flik.common.dto.DagResponse;
+import com.flik.gateway.service.ConcurrencyLimiter;
 import com.flik.gateway.service.DagService;
+import com.flik.gateway.service.IdempotencyService;
 import com.flik.gateway.service.RateLimitService;
+import com.flik.gateway.service.RequestLane;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 
 @RestController
@@ -21,44 +28,124 @@ import java.util.UUID;
 public class DagController {
 
     private final DagService dagService;
+    private final ConcurrencyLimiter concurrencyLimiter;
     private final RateLimitService rateLimitService;
+    private final IdempotencyService idempotencyService;
 
-    public DagController(DagService dagService, RateLimitService rateLimitService) {
+    public DagController(DagService dagService, ConcurrencyLimiter concurrencyLimiter,
+                         RateLimitService rateLimitService, IdempotencyService idempotencyService) {
         this.dagService = dagService;
+        this.concurrencyLimiter = concurrencyLimiter;
         this.rateLimitService = rateLimitService;
+        this.idempotencyService = idempotencyService;
     }
 
-    @Operation(summary = "Submit a DAG", description = "Submit a chain of dependent tasks. Only the first step is enqueued; subsequent steps trigger automatically on completion.",
+    @Operation(summary = "Submit a DAG", description = "Submit a chain of dependent tasks. Only the first step is enqueued; subsequent steps trigger automatically on completion. "
+            + "Repeating a request with the same Idempotency-Key returns the original response without creating a new DAG.",
             responses = {
                     @ApiResponse(responseCode = "202", description = "DAG accepted"),
-                    @ApiResponse(responseCode = "400", description = "Missing required fields"),
-                    @ApiResponse(responseCode = "429", description = "Rate limit exceeded")
+                    @ApiResponse(responseCode = "400", description = "Missing required fields, or a priority outside 0-10"),
+                    @ApiResponse(responseCode = "409", description = "A request with this Idempotency-Key is still in progress"),
+                    @ApiResponse(responseCode = "422", description = "The Idempotency-Key was already used for a different request, or the DAG's steps cost more than the tenant's cost rate limit allows at once"),
+                    @ApiResponse(responseCode = "429", description = "Request or cost rate limit exceeded; Retry-After gives the seconds to wait"),
+                    @ApiResponse(responseCode = "503", description = "The gateway is overloaded")
             })
     @PostMapping
-    public ResponseEntity<?> submitDag(@RequestBody DagRequest request) {
+    public ResponseEntity<?> submitDag(@RequestBody DagRequest request,
+                                       @Parameter(description = "Client-chosen key that makes retries of this submission safe")
+                                       @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         if (request.getTenantId() == null || request.getSteps() == null || request.getSteps().isEmpty()) {
             return ResponseEntity.badRequest()
                     .body(Map.of("error", "tenantId and at least one step are required"));
         }
+        if (request.getPriority() < 0) {
+            return ResponseEntity.badRequest().body(Map.of("error", "priority must not be negative"));
+        }
+        if (request.getPriority() > QueueConstants.MAX_PRIORITY) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "priority must not exceed " + QueueConstants.MAX_PRIORITY));
+        }
+
+        ConcurrencyLimiter.Permit permit = concurrencyLimiter.tryAcquire(RequestLane.forPriority(request.getPriority()));
+        if (permit == null) {
+            return overloaded();
+        }
+        try {
+            return submitAdmitted(request, idempotencyKey);
+        } finally {
+            permit.release();
+        }
+    }
 
-        if (!rateLimitService.isAllowed(request.getTenantId())) {
+    private ResponseEntity<?> submitAdmitted(DagRequest request, String idempotencyKey) {
+        // Checked before the rate limiter, so replaying a submission that already went through costs nothing
+        IdempotencyService.Claim<DagResponse> claim = null;
+        if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+            try {
+                claim = idempotencyService.claim("dag", request.getTenantId(), idempotencyKey, request,
+                        DagResponse.class);
+            } catch (IdempotencyService.IdempotencyConflictException e) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+            } catch (IdempotencyService.IdempotencyMismatchException e) {
+                return ResponseEntity.unprocessableEntity().body(Map.of("error", e.getMessage()));
+            }
+            if (claim.replay() != null) {
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(claim.replay());
+            }
+        }
+
+        // A DAG is charged as one request carrying the cost of every step
+        double cost = request.getSteps().stream()
+                .mapToDouble(step -> CostConstants.costForTaskType(Objects.toString(step.getTaskType(), "")))
+                .sum();
+        RateLimitService.Decision decision = rateLimitService.tryAcquire(request.getTenantId(), cost);
+        if (decision.exceedsLimit()) {
+            if (claim != null) claim.release();
+            return ResponseEntity.unprocessableEntity()
+                    .body(Map.of("error", "DAG cost exceeds the cost rate limit of tenant: " + request.getTenantId()));
+        }
+        if (!decision.allowed()) {
+            if (claim != null) claim.release();
             return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .headers(decision.toHeaders())
                     .body(Map.of("error", "Rate limit exceeded"));
         }
 
-        DagResponse response = dagService.submitDag(request);
-        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        DagResponse response;
+        try {
+            response = dagService.submitDag(request);
+        } catch (RuntimeException e) {
+            if (claim != null) claim.release();
+            throw e;
+        }
+        if (claim != null) claim.complete(response);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).headers(decision.toHeaders()).body(response);
     }
 
     @Operation(summary = "Get DAG status", description = "Retrieve the status of all tasks in a DAG chain.",
             responses = {
                     @ApiResponse(responseCode = "200", description = "DAG found"),
-                    @ApiResponse(responseCode = "404", description = "DAG not found")
+                    @ApiResponse(responseCode = "404", description = "DAG not found"),
+                    @ApiResponse(responseCode = "503", description = "The gateway is overloaded")
             })
     @GetMapping("/{dagId}")
     public ResponseEntity<?> getDag(@Parameter(description = "DAG UUID") @PathVariable UUID dagId) {
-        return dagService.getDag(dagId)
-                .map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+        ConcurrencyLimiter.Permit permit = concurrencyLimiter.tryAcquire(RequestLane.READ);
+        if (permit == null) {
+            return overloaded();
+        }
+        try {
+            return dagService.getDag(dagId)
+                    .map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        } finally {
+            permit.release();
+        }
+    }
+
+    private ResponseEntity<?> overloaded() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(concurrencyLimiter.getRetryAfterSeconds()))
+                .body(Map.of("error", "Gateway overloaded, retry later"));
     }
 }
@@ -1,21 +1,35 @@
 package com.flik.gateway.controller;
 
+import com.flik.common.constants.CostConstants;
+import com.flik.common.constants.QueueConstants;
+import com.flik.common.dto.BatchTaskResponse;
 import com.flik.common.dto.TaskRequest;
 import com.flik.common.dto.TaskResponse;
+import com.flik.common.metrics.TaskMetrics;
+import com.flik.common.model.TaskType;
+import com.flik.gateway.service.ConcurrencyLimiter;
+import com.flik.gateway.service.IdempotencyService;
 import com.flik.gateway.service.RateLimitService;
+import com.flik.gateway.service.RegionForwarder;
+import com.flik.gateway.service.RequestLane;
 import com.flik.gateway.service.TaskService;
-import io.micrometer.core.instrument.Counter;
-import io.micrometer.core.instrument.MeterRegistry;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/v1/tasks")
@@ -23,50 +37,302 @@ import java.util.UUID;
 public class TaskController {
 
     private final TaskService taskService;
+    private final ConcurrencyLimiter concurrencyLimiter;
     private final RateLimitService rateLimitService;
-    private final MeterRegistry meterRegistry;
+    private final IdempotencyService idempotencyService;
+    private final RegionForwarder regionForwarder;
+    private final TaskMetrics taskMetrics;
+    private final int maxBatchSize;
 
-    public TaskController(TaskService taskService, RateLimitService rateLimitService,
-                          MeterRegistry meterRegistry) {
+    public TaskController(TaskService taskService, ConcurrencyLimiter concurrencyLimiter,
+                          RateLimitService rateLimitService, IdempotencyService idempotencyService,
+                          RegionForwarder regionForwarder, TaskMetrics taskMetrics,
+                          @Value("${flik.batch.max-size:500}") int maxBatchSize) {
         this.taskService = taskService;
+        this.concurrencyLimiter = concurrencyLimiter;
         this.rateLimitService = rateLimitService;
-        this.meterRegistry = meterRegistry;
+        this.idempotencyService = idempotencyService;
+        this.regionForwarder = regionForwarder;
+        this.taskMetrics = taskMetrics;
+        this.maxBatchSize = maxBatchSize;
     }
 
-    @Operation(summary = "Submit a task", description = "Submit an AI generation task (TEXT, IMAGE, or VIDEO). Returns 202 with task ID.",
+    @Operation(summary = "Submit a task", description = "Submit an AI generation task (TEXT, IMAGE, or VIDEO). Returns 202 with task ID. "
+            + "Repeating a request with the same Idempotency-Key returns the original response without creating a new task. "
+            + "Tasks for a region served by another gateway are forwarded there and its response is returned.",
             responses = {
                     @ApiResponse(responseCode = "202", description = "Task accepted and queued"),
-                    @ApiResponse(responseCode = "400", description = "Missing required fields"),
-                    @ApiResponse(responseCode = "429", description = "Rate limit exceeded")
+                    @ApiResponse(responseCode = "400", description = "Missing required fields, an unknown taskType, a priority outside 0-10, a malformed dagId or parentTaskId, or a deadline that has already passed"),
+                    @ApiResponse(responseCode = "409", description = "A request with this Idempotency-Key is still in progress"),
+                    @ApiResponse(responseCode = "422", description = "The Idempotency-Key was already used for a different request, or the task costs more than the tenant's cost rate limit allows at once"),
+                    @ApiResponse(responseCode = "429", description = "Request or cost rate limit exceeded; Retry-After gives the seconds to wait"),
+                    @ApiResponse(responseCode = "503", description = "The gateway is overloaded, or the gateway for the requested region is unavailable")
             })
     @PostMapping
-    public ResponseEntity<?> submitTask(@RequestBody TaskRequest request) {
-        if (request.getTenantId() == null || request.getTaskType() == null) {
-            return ResponseEntity.badRequest()
-                    .body(Map.of("error", "tenantId and taskType are required"));
+    public CompletableFuture<ResponseEntity<?>> submitTask(@RequestBody TaskRequest request,
+                                                           @Parameter(description = "Client-chosen key that makes retries of this submission safe")
+                                                           @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                                           @Parameter(hidden = true)
+                                                           @RequestHeader(value = RegionForwarder.FORWARDED_FROM_HEADER, required = false) String forwardedFrom,
+                                                           @Parameter(hidden = true)
+                                                           @RequestHeader(value = RegionForwarder.FORWARD_SIGNATURE_HEADER, required = false) String forwardSignature,
+                                                           @Parameter(hidden = true)
+                                                           @RequestHeader(value = "Authorization", required = false) String authorization) {
+        String error = validate(request);
+        if (error != null) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(Map.of("error", error)));
+        }
+
+        // The owning region's gateway applies rate limits and idempotency, so they are not charged twice
+        if (regionForwarder.shouldForward(request.getRegion(), forwardedFrom, forwardSignature)) {
+            return regionForwarder.forward(request, authorization, idempotencyKey);
+        }
+
+        ConcurrencyLimiter.Permit permit = concurrencyLimiter.tryAcquire(RequestLane.forPriority(request.getPriority()));
+        if (permit == null) {
+            return CompletableFuture.completedFuture(overloaded());
+        }
+        try {
+            return CompletableFuture.completedFuture(submitLocally(request, idempotencyKey));
+        } finally {
+            permit.release();
+        }
+    }
+
+    private ResponseEntity<?> submitLocally(TaskRequest request, String idempotencyKey) {
+        // Checked before the rate limiter, so replaying a submission that already went through costs nothing
+        IdempotencyService.Claim<TaskResponse> claim = null;
+        if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+            try {
+                claim = idempotencyService.claim("task", request.getTenantId(), idempotencyKey, request,
+                        TaskResponse.class);
+            } catch (IdempotencyService.IdempotencyConflictException e) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+            } catch (IdempotencyService.IdempotencyMismatchException e) {
+                return ResponseEntity.unprocessableEntity().body(Map.of("error", e.getMessage()));
+            }
+            if (claim.replay() != null) {
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(claim.replay());
+            }
         }
 
-        if (!rateLimitService.isAllowed(request.getTenantId())) {
-            Counter.builder("flik_rate_limit_rejected_total")
-                    .tag("tenant", request.getTenantId())
-                    .register(meterRegistry).increment();
+        RateLimitService.Decision decision = rateLimitService.tryAcquire(request.getTenantId(),
+                CostConstants.costForTaskType(request.getTaskType()));
+        if (decision.exceedsLimit()) {
+            if (claim != null) claim.release();
+            return ResponseEntity.unprocessableEntity().body(Map.of("error", exceedsLimit(request.getTenantId())));
+        }
+        if (!decision.allowed()) {
+            if (claim != null) claim.release();
+            taskMetrics.rateLimited(request.getTenantId());
             return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .headers(decision.toHeaders())
                     .body(Map.of("error", "Rate limit exceeded for tenant: " + request.getTenantId()));
         }
 
-        TaskResponse response = taskService.submitTask(request);
-        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        TaskResponse response;
+        try {
+            response = taskService.submitTask(request);
+        } catch (RuntimeException e) {
+            if (claim != null) claim.release();
+            rateLimitService.refund(request.getTenantId(), CostConstants.costForTaskType(request.getTaskType()));
+            throw e;
+        }
+        if (claim != null) claim.complete(response);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).headers(decision.toHeaders()).body(response);
+    }
+
+    @Operation(summary = "Submit a batch of tasks", description = "Submit up to flik.batch.max-size tasks in one request. "
+            + "Tasks are persisted with a single multi-row insert and published on one channel with batched publisher confirms. "
+            + "Returns one entry per submitted item, in order; rejected items carry an errorMessage.",
+            responses = {
+                    @ApiResponse(responseCode = "202", description = "At least one task accepted and queued"),
+                    @ApiResponse(responseCode = "400", description = "Empty or oversized batch, or no valid items, including items costing more than the tenant's cost rate limit allows at once"),
+                    @ApiResponse(responseCode = "429", description = "Every item was rate limited"),
+                    @ApiResponse(responseCode = "503", description = "The gateway is overloaded")
+            })
+    @PostMapping("/batch")
+    public ResponseEntity<?> submitBatch(@RequestBody List<TaskRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "at least one task is required"));
+        }
+        if (requests.size() > maxBatchSize) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "batch size " + requests.size() + " exceeds limit of " + maxBatchSize));
+        }
+
+        // A batch runs in the lane of its most urgent item; an invalid negative priority cannot lift it
+        int priority = requests.stream().filter(Objects::nonNull).mapToInt(TaskRequest::getPriority)
+                .filter(p -> p >= 0).min().orElse(2);
+        ConcurrencyLimiter.Permit permit = concurrencyLimiter.tryAcquire(RequestLane.forPriority(priority));
+        if (permit == null) {
+            return overloaded();
+        }
+        try {
+            return submitAdmittedBatch(requests);
+        } finally {
+            permit.release();
+        }
+    }
+
+    private ResponseEntity<?> submitAdmittedBatch(List<TaskRequest> requests) {
+        TaskResponse[] results = new TaskResponse[requests.size()];
+        List<TaskRequest> admitted = new ArrayList<>();
+        List<Integer> admittedIndexes = new ArrayList<>();
+        RateLimitService.Decision lastDenied = null;
+
+        for (int i = 0; i < requests.size(); i++) {
+            TaskRequest request = requests.get(i);
+            String error = validate(request);
+            if (error != null) {
+                error = "tasks[" + i + "]: " + error;
+            } else {
+                RateLimitService.Decision decision = rateLimitService.tryAcquire(request.getTenantId(),
+                        CostConstants.costForTaskType(request.getTaskType()));
+                if (decision.exceedsLimit()) {
+                    error = "tasks[" + i + "]: " + exceedsLimit(request.getTenantId());
+                } else if (!decision.allowed()) {
+                    lastDenied = decision;
+                    taskMetrics.rateLimited(request.getTenantId());
+                    error = "Rate limit exceeded for tenant: " + request.getTenantId();
+                }
+            }
+            if (error != null) {
+                results[i] = rejected(error);
+            } else {
+                admitted.add(request);
+                admittedIndexes.add(i);
+            }
+        }
+
+        if (!admitted.isEmpty()) {
+            List<TaskResponse> submitted;
+            try {
+                submitted = taskService.submitBatch(admitted);
+            } catch (RuntimeException e) {
+                // Nothing was written, so nothing is charged
+                admitted.forEach(request -> rateLimitService.refund(request.getTenantId(),
+                        CostConstants.costForTaskType(request.getTaskType())));
+                throw e;
+            }
+            for (int i = 0; i < submitted.size(); i++) {
+                results[admittedIndexes.get(i)] = submitted.get(i);
+            }
+        }
+
+        BatchTaskResponse response = new BatchTaskResponse(List.of(results));
+        if (response.getAccepted() > 0) {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        }
+        // Only worth retrying if something was turned away for rate, not for a permanent reason
+        if (lastDenied != null) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).headers(lastDenied.toHeaders()).body(response);
+        }
+        return ResponseEntity.badRequest().body(response);
     }
 
     @Operation(summary = "Get task status", description = "Retrieve task status and result by ID. Uses tiered storage (Redis cache → PostgreSQL).",
             responses = {
                     @ApiResponse(responseCode = "200", description = "Task found"),
-                    @ApiResponse(responseCode = "404", description = "Task not found")
+                    @ApiResponse(responseCode = "404", description = "Task not found"),
+                    @ApiResponse(responseCode = "503", description = "The gateway is overloaded")
             })
     @GetMapping("/{taskId}")
     public ResponseEntity<?> getTask(@Parameter(description = "Task UUID") @PathVariable UUID taskId) {
-        return taskService.getTask(taskId)
-                .map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+        ConcurrencyLimiter.Permit permit = concurrencyLimiter.tryAcquire(RequestLane.READ);
+        if (permit == null) {
+            return overloaded();
+        }
+        try {
+            return taskService.getTask(taskId)
+                    .map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        } finally {
+            permit.release();
+        }
+    }
+
+    @Operation(summary = "Get task timeline", description = "Status events recorded for the task in the task_events journal, oldest first. Empty unless the journal is enabled.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Task found"),
+                    @ApiResponse(responseCode = "404", description = "Task not found"),
+                    @ApiResponse(responseCode = "503", description = "The gateway is overloaded")
+            })
+    @GetMapping("/{taskId}/events")
+    public ResponseEntity<?> getTaskEvents(@Parameter(description = "Task UUID") @PathVariable UUID taskId) {
+        ConcurrencyLimiter.Permit permit = concurrencyLimiter.tryAcquire(RequestLane.READ);
+        if (permit == null) {
+            return overloaded();
+        }
+        try {
+            return taskService.getEvents(taskId)
+                    .map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        } finally {
+            permit.release();
+        }
+    }
+
+    private ResponseEntity<?> overloaded() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(concurrencyLimiter.getRetryAfterSeconds()))
+                .body(Map.of("error", "Gateway overloaded, retry later"));
+    }
+
+    private String validate(TaskRequest request) {
+        if (request == null || request.getTenantId() == null || request.getTaskType() == null) {
+            return "tenantId and taskType are required";
+        }
+        try {
+            TaskType.valueOf(request.getTaskType().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return "Unknown taskType: " + request.getTaskType();
+        }
+        if (request.getPriority() < 0) {
+            return "priority must not be negative";
+        }
+        if (request.getPriority() > QueueConstants.MAX_PRIORITY) {
+            return "priority must not exceed " + QueueConstants.MAX_PRIORITY;
+        }
+        if (!isUuidOrNull(request.getDagId())) {
+            return "dagId is not a valid UUID: " + request.getDagId();
+        }
+        if (!isUuidOrNull(request.getParentTaskId())) {
+            return "parentTaskId is not a valid UUID: " + request.getParentTaskId();
+        }
+        return validateDeadline(request);
+    }
+
+    private static boolean isUuidOrNull(String value) {
+        if (value == null) return true;
+        try {
+            UUID.fromString(value);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String validateDeadline(TaskRequest request) {
+        if (request.getMaxQueueAgeMs() != null && request.getMaxQueueAgeMs() <= 0) {
+            return "maxQueueAgeMs must be positive";
+        }
+        if (request.getDeadline() != null && !request.getDeadline().isAfter(Instant.now())) {
+            return "deadline has already passed";
+        }
+        return null;
+    }
+
+    // Waiting does not help: the cost is more than the tenant's whole burst
+    private static String exceedsLimit(String tenantId) {
+        return "Task cost exceeds the cost rate limit of tenant: " + tenantId;
+    }
+
+    private TaskResponse rejected(String error) {
+        TaskResponse response = new TaskResponse();
+        response.setStatus("REJECTED");
+        response.setErrorMessage(error);
+        return response;
     }
 }
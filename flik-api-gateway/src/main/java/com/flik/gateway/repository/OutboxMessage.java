@@ -0,0 +1,22 @@
+package com.flik.gateway.repository;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+
+public record OutboxMessage(
+        Long id,
+        UUID taskId,
+        String exchange,
+        String routingKey,
+        int messagePriority,
+        String contentType,
+        Map<String, Object> headers,
+        byte[] body,
+        Instant createdAt) {
+
+    public OutboxMessage(UUID taskId, String exchange, String routingKey, int messagePriority,
+                         String contentType, Map<String, Object> headers, byte[] body) {
+        this(null, taskId, exchange, routingKey, messagePriority, contentType, headers, body, null);
+    }
+}
@@ -0,0 +1,113 @@
+package com.flik.gateway.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@Repository
+public class OutboxRepository {
+
+    private static final int MAX_ROWS_PER_STATEMENT = 1000;
+
+    private static final String INSERT_PREFIX = "INSERT INTO task_outbox (task_id, exchange, routing_key, "
+            + "message_priority, content_type, headers, body) VALUES ";
+    private static final String INSERT_ROW = "(?, ?, ?, ?, ?, ?::jsonb, ?)";
+
+    private static final TypeReference<Map<String, Object>> HEADERS_TYPE = new TypeReference<>() {};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final RowMapper<OutboxMessage> rowMapper = this::mapRow;
+
+    public OutboxRepository(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    public int insertAll(List<OutboxMessage> messages) {
+        int inserted = 0;
+        for (int from = 0; from < messages.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<OutboxMessage> chunk = messages.subList(from, Math.min(messages.size(), from + MAX_ROWS_PER_STATEMENT));
+            String sql = INSERT_PREFIX + String.join(", ", Collections.nCopies(chunk.size(), INSERT_ROW));
+            inserted += jdbcTemplate.update(sql, ps -> {
+                int i = 1;
+                for (OutboxMessage message : chunk) {
+                    ps.setObject(i++, message.taskId());
+                    ps.setString(i++, message.exchange());
+                    ps.setString(i++, message.routingKey());
+                    ps.setInt(i++, message.messagePriority());
+                    ps.setString(i++, message.contentType());
+                    ps.setString(i++, writeHeaders(message.headers()));
+                    ps.setBytes(i++, message.body());
+                }
+            });
+        }
+        return inserted;
+    }
+
+    // One statement, so no lock or transaction outlives it; other relays skip the rows until the claim expires
+    public List<OutboxMessage> claimOldest(int limit, Duration claimTimeout) {
+        List<OutboxMessage> claimed = jdbcTemplate.query(
+                "UPDATE task_outbox SET claimed_until = now() + ? * interval '1 millisecond' WHERE id IN ("
+                        + "SELECT id FROM task_outbox WHERE claimed_until IS NULL OR claimed_until < now() "
+                        + "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED) "
+                        + "RETURNING id, task_id, exchange, routing_key, message_priority, content_type, headers, body, created_at",
+                rowMapper, claimTimeout.toMillis(), limit);
+        // RETURNING does not keep the subquery's order
+        return claimed.stream().sorted(Comparator.comparing(OutboxMessage::id)).toList();
+    }
+
+    public int deleteAll(List<Long> ids) {
+        if (ids.isEmpty()) return 0;
+        return jdbcTemplate.update("DELETE FROM task_outbox WHERE id = ANY (?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray())));
+    }
+
+    // Makes the rows claimable again on the next cycle
+    public int releaseAll(List<Long> ids) {
+        if (ids.isEmpty()) return 0;
+        return jdbcTemplate.update("UPDATE task_outbox SET claimed_until = NULL WHERE id = ANY (?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray())));
+    }
+
+    private OutboxMessage mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new OutboxMessage(
+                rs.getLong("id"),
+                rs.getObject("task_id", UUID.class),
+                rs.getString("exchange"),
+                rs.getString("routing_key"),
+                rs.getInt("message_priority"),
+                rs.getString("content_type"),
+                readHeaders(rs.getString("headers")),
+                rs.getBytes("body"),
+                rs.getTimestamp("created_at").toInstant());
+    }
+
+    private String writeHeaders(Map<String, Object> headers) {
+        try {
+            return objectMapper.writeValueAsString(headers);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Unserializable outbox headers", e);
+        }
+    }
+
+    private Map<String, Object> readHeaders(String json) {
+        try {
+            return objectMapper.readValue(json, HEADERS_TYPE);
+        } catch (JsonProcessingException e) {
+            return Map.of();
+        }
+    }
+}
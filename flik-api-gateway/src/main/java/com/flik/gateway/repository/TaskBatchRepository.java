@@ -0,0 +1,65 @@
+package com.flik.gateway.repository;
+
+import com.flik.common.model.Task;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.List;
+
+@Repository
+public class TaskBatchRepository {
+
+    // Keeps each statement well under the PostgreSQL bind-parameter limit
+    private static final int MAX_ROWS_PER_STATEMENT = 1000;
+
+    private static final String INSERT_PREFIX = "INSERT INTO tasks (id, tenant_id, task_type, priority, status, payload, "
+            + "retry_count, region, dag_id, parent_task_id, cost, storage_tier, deadline, created_at, updated_at) VALUES ";
+    private static final String INSERT_ROW = "(?, ?, ?, ?, ?, ?::jsonb, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TaskBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public int insertAll(List<Task> tasks) {
+        int inserted = 0;
+        for (int from = 0; from < tasks.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<Task> chunk = tasks.subList(from, Math.min(tasks.size(), from + MAX_ROWS_PER_STATEMENT));
+            String sql = INSERT_PREFIX + String.join(", ", Collections.nCopies(chunk.size(), INSERT_ROW));
+            inserted += jdbcTemplate.update(sql, ps -> {
+                int i = 1;
+                for (Task task : chunk) {
+                    i = bindTask(ps, i, task);
+                }
+            });
+        }
+        return inserted;
+    }
+
+    private int bindTask(PreparedStatement ps, int i, Task task) throws SQLException {
+        ps.setObject(i++, task.getId());
+        ps.setString(i++, task.getTenantId());
+        ps.setString(i++, task.getTaskType().name());
+        ps.setInt(i++, task.getPriority());
+        ps.setString(i++, task.getStatus().name());
+        ps.setString(i++, task.getPayload());
+        ps.setInt(i++, task.getRetryCount());
+        ps.setString(i++, task.getRegion());
+        ps.setObject(i++, task.getDagId(), Types.OTHER);
+        ps.setObject(i++, task.getParentTaskId(), Types.OTHER);
+        ps.setDouble(i++, task.getCost());
+        ps.setString(i++, task.getStorageTier());
+        ps.setObject(i++, task.getDeadline() != null ? task.getDeadline().atOffset(ZoneOffset.UTC) : null, Types.TIMESTAMP_WITH_TIMEZONE);
+        // Plain TIMESTAMP columns hold UTC wall-clock time; an offset value would be shifted to the session zone
+        ps.setObject(i++, LocalDateTime.ofInstant(task.getCreatedAt(), ZoneOffset.UTC));
+        ps.setObject(i++, LocalDateTime.ofInstant(task.getUpdatedAt(), ZoneOffset.UTC));
+        return i;
+    }
+}
@@ -0,0 +1,22 @@
+package com.flik.gateway.repository;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.flik.common.dto.RawJson;
+import com.flik.common.model.TaskStatus;
+
+import java.time.Instant;
+import java.util.UUID;
+
+// One row of the task_events journal; null fields left the task's column as it was
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TaskEvent(
+        long seq,
+        UUID taskId,
+        TaskStatus status,
+        RawJson result,
+        String errorMessage,
+        Integer retryCount,
+        String workerVersion,
+        Instant completedAt,
+        Instant recordedAt) {
+}
@@ -0,0 +1,157 @@
+package com.flik.gateway.repository;
+
+import com.flik.common.dto.RawJson;
+import com.flik.common.model.Task;
+import com.flik.common.model.TaskStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public class TaskEventRepository {
+
+    private static final String COLUMNS = "seq, task_id, status, result, error_message, retry_count, worker_version, "
+            + "completed_at, recorded_at";
+
+    private static final String APPEND_CREATED = "INSERT INTO task_events (task_id, status, recorded_at) VALUES (?, ?, ?)";
+
+    // Latest status per task, and for every other column the latest value an event set; tasks whose row the
+    // events would leave unchanged, such as a lone QUEUED event, are not rewritten
+    private static final String COMPACT = "UPDATE tasks t SET status = e.status, "
+            + "result = COALESCE(e.result, t.result), error_message = COALESCE(e.error_message, t.error_message), "
+            + "retry_count = COALESCE(e.retry_count, t.retry_count), completed_at = COALESCE(e.completed_at, t.completed_at), "
+            + "worker_version = COALESCE(e.worker_version, t.worker_version), updated_at = GREATEST(t.updated_at, e.recorded_at) "
+            + "FROM (SELECT task_id, (array_agg(status ORDER BY seq DESC))[1] AS status, "
+            + "(array_agg(result ORDER BY seq DESC) FILTER (WHERE result IS NOT NULL))[1] AS result, "
+            + "(array_agg(error_message ORDER BY seq DESC) FILTER (WHERE error_message IS NOT NULL))[1] AS error_message, "
+            + "(array_agg(retry_count ORDER BY seq DESC) FILTER (WHERE retry_count IS NOT NULL))[1] AS retry_count, "
+            + "(array_agg(completed_at ORDER BY seq DESC) FILTER (WHERE completed_at IS NOT NULL))[1] AS completed_at, "
+            + "(array_agg(worker_version ORDER BY seq DESC) FILTER (WHERE worker_version IS NOT NULL))[1] AS worker_version, "
+            + "max(recorded_at) AS recorded_at "
+            + "FROM task_events WHERE xid >= ? AND xid < ? GROUP BY task_id) e "
+            + "WHERE t.id = e.task_id AND (t.status <> e.status OR e.result IS NOT NULL OR e.error_message IS NOT NULL "
+            + "OR e.retry_count IS NOT NULL OR e.completed_at IS NOT NULL OR e.worker_version IS NOT NULL)";
+
+    // Every transaction below the oldest one still running has committed or aborted, so its events are all visible
+    private static final String HORIZON = "SELECT pg_snapshot_xmin(pg_current_snapshot())::text::bigint";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RowMapper<TaskEvent> rowMapper = this::mapRow;
+
+    public TaskEventRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // The caller owns the transaction, so the events commit with the task rows
+    public void appendCreated(List<Task> tasks) {
+        jdbcTemplate.batchUpdate(APPEND_CREATED, tasks, tasks.size(), (ps, task) -> {
+            ps.setObject(1, task.getId());
+            ps.setString(2, task.getStatus().name());
+            ps.setObject(3, task.getCreatedAt().atOffset(ZoneOffset.UTC));
+        });
+    }
+
+    // Events of transactions below this id are compacted
+    public long watermark() {
+        Long nextXid = jdbcTemplate.queryForObject("SELECT next_xid FROM task_event_watermark WHERE id = 1", Long.class);
+        return nextXid != null ? nextXid : 0L;
+    }
+
+    public List<TaskEvent> findUncompacted(Collection<UUID> taskIds, long watermark) {
+        if (taskIds.isEmpty()) return List.of();
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM task_events WHERE task_id = ANY (?) AND xid >= ? ORDER BY seq",
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("uuid", taskIds.toArray()));
+                    ps.setLong(2, watermark);
+                }, rowMapper);
+    }
+
+    public List<TaskEvent> findByTaskId(UUID taskId) {
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM task_events WHERE task_id = ? ORDER BY seq",
+                rowMapper, taskId);
+    }
+
+    /**
+     * Folds the events of finished transactions past the watermark into the tasks rows, whole transactions at a
+     * time and about {@code maxEvents} per call, and advances the watermark past them. Events of a transaction
+     * still running are left for a later call together with everything after it, however their seq or
+     * recorded_at compare, so an event is never skipped. Must run inside a transaction; returns the number of
+     * events compacted, or -1 if another compactor holds the watermark.
+     */
+    public int compact(int maxEvents) {
+        List<Long> locked = jdbcTemplate.queryForList(
+                "SELECT next_xid FROM task_event_watermark WHERE id = 1 FOR UPDATE SKIP LOCKED", Long.class);
+        if (locked.isEmpty()) return -1;
+        long from = locked.get(0);
+        Long horizon = jdbcTemplate.queryForObject(HORIZON, Long.class);
+        if (horizon == null || horizon <= from) return 0;
+
+        List<Long> xids = jdbcTemplate.queryForList(
+                "SELECT xid FROM task_events WHERE xid >= ? AND xid < ? ORDER BY xid LIMIT ?",
+                Long.class, from, horizon, maxEvents);
+        long upper = upperXid(xids, horizon, maxEvents);
+        int events = xids.size();
+        if (events >= maxEvents) {
+            // The last transaction may have more events past the limit; they are compacted with it
+            Integer all = jdbcTemplate.queryForObject("SELECT count(*) FROM task_events WHERE xid >= ? AND xid < ?",
+                    Integer.class, from, upper);
+            events = all != null ? all : events;
+        }
+        if (events > 0) {
+            jdbcTemplate.update(COMPACT, from, upper);
+        }
+        jdbcTemplate.update("UPDATE task_event_watermark SET next_xid = ? WHERE id = 1", upper);
+        return events;
+    }
+
+    /**
+     * Exclusive transaction id bound of one compaction pass, given the ids of the first {@code maxEvents}
+     * uncompacted events in id order: the horizon if they are all there is, otherwise just past the
+     * transaction of the last one, so a transaction's events are never split across passes.
+     */
+    static long upperXid(List<Long> xids, long horizon, int maxEvents) {
+        if (xids.size() < maxEvents) return horizon;
+        return Math.min(horizon, xids.get(xids.size() - 1) + 1);
+    }
+
+    // Null when every event is compacted
+    public Instant oldestUncompacted() {
+        Timestamp oldest = jdbcTemplate.queryForObject("SELECT min(recorded_at) FROM task_events "
+                + "WHERE xid >= (SELECT next_xid FROM task_event_watermark WHERE id = 1)", Timestamp.class);
+        return oldest != null ? oldest.toInstant() : null;
+    }
+
+    // Only compacted events are removed; the rest are still the newest state of their task
+    public int pruneCompacted(Instant before, int limit) {
+        return jdbcTemplate.update("DELETE FROM task_events WHERE seq IN (SELECT seq FROM task_events "
+                        + "WHERE xid < (SELECT next_xid FROM task_event_watermark WHERE id = 1) AND recorded_at < ? "
+                        + "ORDER BY seq LIMIT ?)",
+                before.atOffset(ZoneOffset.UTC), limit);
+    }
+
+    private TaskEvent mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new TaskEvent(
+                rs.getLong("seq"),
+                rs.getObject("task_id", UUID.class),
+                TaskStatus.valueOf(rs.getString("status")),
+                RawJson.of(rs.getString("result")),
+                rs.getString("error_message"),
+                (Integer) rs.getObject("retry_count"),
+                rs.getString("worker_version"),
+                toInstant(rs.getTimestamp("completed_at")),
+                toInstant(rs.getTimestamp("recorded_at")));
+    }
+
+    private static Instant toInstant(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toInstant() : null;
+    }
+}
@@ -0,0 +1,194 @@
+package com.flik.gateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounds how many API requests the gateway works on at once. The limit adapts by AIMD on handler latency:
+ * it grows by one per limit's worth of fast, busy requests and shrinks by 10% at most once per target
+ * latency while requests run slow. Each lane is judged against its own baseline, a slow moving average of
+ * its latency, so a read that normally takes 5ms counts as slow well before a submission would; a lane's
+ * target is twice its baseline, between 5ms and {@code target-latency-ms}. Slow completions feed the
+ * baseline only up to the target, so sustained overload raises it slowly instead of hiding behind it.
+ * Each {@link RequestLane} may fill only its own share of the limit, and
+ * once the gateway is near its limit, background work is turned away first, then interactive work and
+ * reads; real-time work may use the whole limit. Turned-away requests should be answered with 503 immediately.
+ */
+@Service
+public class ConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double BASELINE_WEIGHT = 0.02;
+    private static final long MIN_TARGET_NANOS = 5_000_000;
+    private static final long RETRY_AFTER_SECONDS = 1;
+    private static final RequestLane[] LANES = RequestLane.values();
+    // Lane of the permit held by the current request thread, read by LaneQuotaDataSource
+    private static final ThreadLocal<RequestLane> CURRENT_LANE = new ThreadLocal<>();
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long maxTargetNanos;
+    // Per lane, double bits of the moving average latency in nanoseconds
+    private final AtomicLong[] baselineBits = new AtomicLong[LANES.length];
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger[] laneInFlight = new AtomicInteger[LANES.length];
+    private final AtomicLong limitBits;
+    private final AtomicLong lastDecrease;
+    private final LongSupplier nanoClock;
+    private final Counter[] shed = new Counter[LANES.length];
+
+    @Autowired
+    public ConcurrencyLimiter(MeterRegistry meterRegistry,
+                              @Value("${flik.concurrency.initial-limit:200}") int initialLimit,
+                              @Value("${flik.concurrency.min-limit:20}") int minLimit,
+                              @Value("${flik.concurrency.max-limit:2000}") int maxLimit,
+                              @Value("${flik.concurrency.target-latency-ms:250}") long targetLatencyMs) {
+        this(meterRegistry, initialLimit, minLimit, maxLimit, targetLatencyMs, System::nanoTime);
+    }
+
+    ConcurrencyLimiter(MeterRegistry meterRegistry, int initialLimit, int minLimit, int maxLimit,
+                       long targetLatencyMs, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.lastDecrease = new AtomicLong(nanoClock.getAsLong());
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxTargetNanos = Math.max(MIN_TARGET_NANOS, targetLatencyMs * 1_000_000);
+        this.limitBits = new AtomicLong(Double.doubleToLongBits(Math.max(minLimit, Math.min(maxLimit, initialLimit))));
+
+        Gauge.builder("flik_concurrency_limit", this, ConcurrencyLimiter::getLimit)
+                .description("Adaptive limit on API requests in progress at this gateway")
+                .register(meterRegistry);
+        Gauge.builder("flik_concurrency_inflight", inFlight, AtomicInteger::get)
+                .description("API requests in progress at this gateway")
+                .register(meterRegistry);
+        for (RequestLane lane : LANES) {
+            AtomicInteger count = new AtomicInteger();
+            laneInFlight[lane.ordinal()] = count;
+            // Start at the ceiling and learn downward
+            baselineBits[lane.ordinal()] = new AtomicLong(Double.doubleToLongBits(maxTargetNanos / LATENCY_TOLERANCE));
+            Gauge.builder("flik_lane_latency_target_seconds", this, limiter -> limiter.targetNanos(lane) / 1e9)
+                    .description("Handler latency above which a request in this lane counts as slow")
+                    .tag("lane", lane.tag())
+                    .register(meterRegistry);
+            Gauge.builder("flik_lane_inflight", count, AtomicInteger::get)
+                    .description("API requests in progress at this gateway by lane")
+                    .tag("lane", lane.tag())
+                    .register(meterRegistry);
+            shed[lane.ordinal()] = Counter.builder("flik_requests_shed_total")
+                    .description("API requests rejected with 503 because the gateway or their lane was at its concurrency limit")
+                    .tag("lane", lane.tag())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Admits a request into {@code lane}, or returns null if it should be shed. The returned permit must be
+     * released on the same thread when the request completes.
+     */
+    public Permit tryAcquire(RequestLane lane) {
+        double limit = getLimit();
+        AtomicInteger laneCount = laneInFlight[lane.ordinal()];
+        if (laneCount.incrementAndGet() > Math.max(1, (int) (limit * lane.budgetShare()))) {
+            laneCount.decrementAndGet();
+            shed[lane.ordinal()].increment();
+            return null;
+        }
+        int allowed = (int) Math.max(1, limit * lane.headroomShare());
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= allowed) {
+                laneCount.decrementAndGet();
+                shed[lane.ordinal()].increment();
+                return null;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return new Permit(lane, current + 1);
+    }
+
+    /** Lane of the permit held by the calling thread, or null outside an admitted request. */
+    public static RequestLane currentLane() {
+        return CURRENT_LANE.get();
+    }
+
+    public double getLimit() {
+        return Double.longBitsToDouble(limitBits.get());
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getInFlight(RequestLane lane) {
+        return laneInFlight[lane.ordinal()].get();
+    }
+
+    public long getRetryAfterSeconds() {
+        return RETRY_AFTER_SECONDS;
+    }
+
+    /** Latency above which a completion in {@code lane} counts as slow. */
+    long targetNanos(RequestLane lane) {
+        double baseline = Double.longBitsToDouble(baselineBits[lane.ordinal()].get());
+        return (long) Math.max(MIN_TARGET_NANOS, Math.min(maxTargetNanos, baseline * LATENCY_TOLERANCE));
+    }
+
+    private void onComplete(RequestLane lane, long latencyNanos, int inFlightAtStart) {
+        laneInFlight[lane.ordinal()].decrementAndGet();
+        inFlight.decrementAndGet();
+        long target = targetNanos(lane);
+        double sample = Math.min(latencyNanos, target);
+        baselineBits[lane.ordinal()].updateAndGet(bits -> {
+            double baseline = Double.longBitsToDouble(bits);
+            return Double.doubleToLongBits(baseline + (sample - baseline) * BASELINE_WEIGHT);
+        });
+        if (latencyNanos > target) {
+            // One decrease per target latency, so a burst of slow completions does not collapse the limit
+            long now = nanoClock.getAsLong();
+            long last = lastDecrease.get();
+            if (now - last > target && lastDecrease.compareAndSet(last, now)) {
+                updateLimit(limit -> Math.max(minLimit, limit * BACKOFF_RATIO));
+            }
+        } else if (inFlightAtStart * 2 >= getLimit()) {
+            // Only grow while the limit is actually being used
+            updateLimit(limit -> Math.min(maxLimit, limit + 1 / limit));
+        }
+    }
+
+    private void updateLimit(DoubleUnaryOperator update) {
+        limitBits.updateAndGet(bits -> Double.doubleToLongBits(update.applyAsDouble(Double.longBitsToDouble(bits))));
+    }
+
+    /** An admitted request. Releasing it records its latency against its lane's target. */
+    public final class Permit {
+
+        private final RequestLane lane;
+        private final long startNanos;
+        private final int inFlightAtStart;
+        private boolean released;
+
+        private Permit(RequestLane lane, int inFlightAtStart) {
+            this.lane = lane;
+            this.startNanos = nanoClock.getAsLong();
+            this.inFlightAtStart = inFlightAtStart;
+            CURRENT_LANE.set(lane);
+        }
+
+        public void release() {
+            if (released) return;
+            released = true;
+            CURRENT_LANE.remove();
+            onComplete(lane, nanoClock.getAsLong() - startNanos, inFlightAtStart);
+        }
+    }
+}
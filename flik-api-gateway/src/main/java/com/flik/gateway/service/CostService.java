@@ -1,8 +1,8 @@
 package com.flik.gateway.service;
 
 import com.flik.common.constants.CostConstants;
-import io.micrometer.core.instrument.Counter;
-import io.micrometer.core.instrument.MeterRegistry;
+import com.flik.common.metrics.TaskMetrics;
+import com.flik.common.model.TaskType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -16,12 +16,13 @@ public class CostService {
 
     private static final Logger log = LoggerFactory.getLogger(CostService.class);
 
-    private final MeterRegistry meterRegistry;
+    private final TaskMetrics taskMetrics;
     private final Map<String, DoubleAdder> tenantCosts = new ConcurrentHashMap<>();
     private final DoubleAdder totalCost = new DoubleAdder();
+    private final DoubleAdder savedCost = new DoubleAdder();
 
-    public CostService(MeterRegistry meterRegistry) {
-        this.meterRegistry = meterRegistry;
+    public CostService(TaskMetrics taskMetrics) {
+        this.taskMetrics = taskMetrics;
     }
 
     public double recordTaskCost(String tenantId, String taskType) {
@@ -30,10 +31,23 @@ public class CostService {
         totalCost.add(cost);
         tenantCosts.computeIfAbsent(tenantId, k -> new DoubleAdder()).add(cost);
 
-        Counter.builder("flik_task_cost_total")
-                .tag("type", taskType)
-                .tag("tenant", tenantId)
-                .register(meterRegistry).increment(cost);
+        taskMetrics.taskCost(TaskType.valueOf(taskType), tenantId, cost);
+
+        return cost;
+    }
+
+    // result is "hit", "coalesced" or "miss"
+    public void recordCacheLookup(String taskType, String result) {
+        taskMetrics.cacheLookup(TaskType.valueOf(taskType), result);
+    }
+
+    // A task completed from the result cache instead of running on a worker
+    public double recordCacheSaving(String tenantId, String taskType) {
+        double cost = CostConstants.costForTaskType(taskType);
+
+        savedCost.add(cost);
+
+        taskMetrics.costSaved(TaskType.valueOf(taskType), tenantId, cost);
 
         return cost;
     }
@@ -47,6 +61,10 @@ public class CostService {
         return totalCost.sum();
     }
 
+    public double getSavedCost() {
+        return savedCost.sum();
+    }
+
     public double estimateHourlyCost(int textWorkers, int imageWorkers, int videoWorkers) {
         return textWorkers * CostConstants.TEXT_COST_PER_WORKER_HOUR
                 + imageWorkers * CostConstants.IMAGE_COST_PER_WORKER_HOUR
@@ -56,6 +74,7 @@ public class CostService {
     public Map<String, Object> getCostSummary() {
         Map<String, Object> summary = new java.util.LinkedHashMap<>();
         summary.put("totalCost", totalCost.sum());
+        summary.put("savedCost", savedCost.sum());
         summary.put("costPerType", Map.of(
                 "TEXT", CostConstants.TEXT_COST_PER_TASK,
                 "IMAGE", CostConstants.IMAGE_COST_PER_TASK,
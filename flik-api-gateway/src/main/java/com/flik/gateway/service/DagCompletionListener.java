@@ -1,65 +1,62 @@
 package com.flik.gateway.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.flik.common.dto.StatusUpdate;
+import com.flik.common.model.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.redis.connection.Message;
-import org.springframework.data.redis.connection.MessageListener;
-import org.springframework.data.redis.listener.PatternTopic;
-import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
-import jakarta.annotation.PostConstruct;
 import java.util.UUID;
 
+/**
+ * Acts on terminal task statuses: records cost, caches the result, triggers the next DAG step and settles
+ * result-cache followers. Events arrive from the terminal stream through {@link TerminalStatusConsumer}, which
+ * hands each to one gateway.
+ */
 @Component
-public class DagCompletionListener implements MessageListener {
+public class DagCompletionListener {
 
     private static final Logger log = LoggerFactory.getLogger(DagCompletionListener.class);
 
-    private final RedisMessageListenerContainer listenerContainer;
     private final DagService dagService;
     private final CostService costService;
     private final TieredStorageService tieredStorage;
-    private final ObjectMapper objectMapper;
+    private final ResultCacheService resultCache;
     private final com.flik.gateway.repository.TaskRepository taskRepository;
+    private final TaskJournal taskJournal;
     private final TransactionTemplate transactionTemplate;
 
-    public DagCompletionListener(RedisMessageListenerContainer listenerContainer,
-                                 DagService dagService, CostService costService,
+    public DagCompletionListener(DagService dagService, CostService costService,
                                  TieredStorageService tieredStorage,
-                                 ObjectMapper objectMapper,
+                                 ResultCacheService resultCache,
                                  com.flik.gateway.repository.TaskRepository taskRepository,
+                                 TaskJournal taskJournal,
                                  PlatformTransactionManager transactionManager) {
-        this.listenerContainer = listenerContainer;
         this.dagService = dagService;
         this.costService = costService;
         this.tieredStorage = tieredStorage;
-        this.objectMapper = objectMapper;
+        this.resultCache = resultCache;
         this.taskRepository = taskRepository;
+        this.taskJournal = taskJournal;
         this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
-    @PostConstruct
-    public void subscribe() {
-        listenerContainer.addMessageListener(this, new PatternTopic("task:*"));
-    }
-
-    @Override
-    public void onMessage(Message message, byte[] pattern) {
+    public void onStatusUpdate(StatusUpdate update) {
         try {
-            String body = new String(message.getBody());
-            StatusUpdate update = objectMapper.readValue(body, StatusUpdate.class);
             UUID taskId = update.getTaskId();
 
+            // Tasks completed from another task's result cost nothing and have no followers of their own
+            boolean generated = update.getSourceTaskId() == null;
+
             if ("COMPLETED".equals(update.getStatus())) {
-                transactionTemplate.executeWithoutResult(status ->
-                    taskRepository.findById(taskId).ifPresent(task -> {
-                        double cost = costService.recordTaskCost(task.getTenantId(), task.getTaskType().name());
-                        taskRepository.updateCost(taskId, cost);
+                Task completed = transactionTemplate.execute(status ->
+                    taskJournal.findCurrent(taskId).map(task -> {
+                        if (generated) {
+                            double cost = costService.recordTaskCost(task.getTenantId(), task.getTaskType().name());
+                            taskRepository.updateCost(taskId, cost);
+                        }
 
                         if (task.getResult() != null) {
                             tieredStorage.cacheResult(taskId, task.getResult());
@@ -68,8 +65,14 @@ public class DagCompletionListener implements MessageListener {
                         if (task.getDagId() != null) {
                             dagService.triggerNextStep(taskId);
                         }
-                    })
+                        return task;
+                    }).orElse(null)
                 );
+                if (completed != null && generated) {
+                    resultCache.leaderCompleted(completed);
+                }
+            } else if ("DEAD_LETTERED".equals(update.getStatus()) || "EXPIRED".equals(update.getStatus())) {
+                taskJournal.findCurrent(taskId).ifPresent(resultCache::leaderFailed);
             }
         } catch (Exception e) {
             log.debug("Non-critical: failed to process completion event: {}", e.getMessage());
@@ -1,8 +1,5 @@
 package com.flik.gateway.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.flik.common.constants.QueueConstants;
 import com.flik.common.dto.DagRequest;
 import com.flik.common.dto.DagResponse;
 import com.flik.common.dto.TaskMessage;
@@ -13,10 +10,10 @@ import com.flik.common.model.TaskType;
 import com.flik.gateway.repository.TaskRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.*;
 
 @Service
@@ -25,14 +22,13 @@ public class DagService {
     private static final Logger log = LoggerFactory.getLogger(DagService.class);
 
     private final TaskRepository taskRepository;
-    private final RabbitTemplate rabbitTemplate;
-    private final ObjectMapper objectMapper;
+    private final TaskOutbox taskOutbox;
+    private final TaskJournal taskJournal;
 
-    public DagService(TaskRepository taskRepository, RabbitTemplate rabbitTemplate,
-                      ObjectMapper objectMapper) {
+    public DagService(TaskRepository taskRepository, TaskOutbox taskOutbox, TaskJournal taskJournal) {
         this.taskRepository = taskRepository;
-        this.rabbitTemplate = rabbitTemplate;
-        this.objectMapper = objectMapper;
+        this.taskOutbox = taskOutbox;
+        this.taskJournal = taskJournal;
     }
 
     @Transactional
@@ -48,12 +44,7 @@ public class DagService {
             UUID taskId = UUID.randomUUID();
             TaskType taskType = TaskType.valueOf(step.getTaskType().toUpperCase());
 
-            String payloadJson;
-            try {
-                payloadJson = objectMapper.writeValueAsString(step.getPayload());
-            } catch (JsonProcessingException e) {
-                payloadJson = "{}";
-            }
+            String payloadJson = step.getPayload() != null ? step.getPayload().getJson() : "null";
 
             Task task = new Task(taskId, request.getTenantId(), taskType, request.getPriority(), payloadJson);
             task.setDagId(dagId);
@@ -69,7 +60,7 @@ public class DagService {
             taskRepository.save(task);
 
             if (i == 0) {
-                enqueueTask(task, payloadJson, dagId);
+                enqueueTask(task, payloadJson, dagId, task.getCreatedAt());
             }
 
             TaskResponse resp = new TaskResponse();
@@ -101,7 +92,8 @@ public class DagService {
             if (dependent.getStatus() == TaskStatus.PENDING) {
                 dependent.setStatus(TaskStatus.QUEUED);
                 taskRepository.save(dependent);
-                enqueueTask(dependent, dependent.getPayload(), dependent.getDagId());
+                // A step's queue wait starts when its parent completes, not when the DAG was submitted
+                enqueueTask(dependent, dependent.getPayload(), dependent.getDagId(), Instant.now());
                 log.info("DAG next step triggered: dagId={}, taskId={}, type={}",
                         dependent.getDagId(), dependent.getId(), dependent.getTaskType());
             }
@@ -109,7 +101,7 @@ public class DagService {
     }
 
     public Optional<DagResponse> getDag(UUID dagId) {
-        List<Task> tasks = taskRepository.findDagTasks(dagId);
+        List<Task> tasks = taskJournal.findAllCurrent(() -> taskRepository.findDagTasks(dagId));
         if (tasks.isEmpty()) return Optional.empty();
 
         DagResponse response = new DagResponse();
@@ -117,7 +109,8 @@ public class DagService {
 
         boolean allCompleted = tasks.stream().allMatch(t -> t.getStatus() == TaskStatus.COMPLETED);
         boolean anyFailed = tasks.stream().anyMatch(t ->
-                t.getStatus() == TaskStatus.FAILED || t.getStatus() == TaskStatus.DEAD_LETTERED);
+                t.getStatus() == TaskStatus.FAILED || t.getStatus() == TaskStatus.DEAD_LETTERED
+                        || t.getStatus() == TaskStatus.EXPIRED);
         boolean anyProcessing = tasks.stream().anyMatch(t ->
                 t.getStatus() == TaskStatus.PROCESSING || t.getStatus() == TaskStatus.QUEUED);
 
@@ -140,19 +133,16 @@ public class DagService {
         return Optional.of(response);
     }
 
-    private void enqueueTask(Task task, String payloadJson, UUID dagId) {
+    private void enqueueTask(Task task, String payloadJson, UUID dagId, Instant queuedAt) {
         TaskMessage message = new TaskMessage(
                 task.getId(), task.getTenantId(), task.getTaskType().name(),
                 task.getPriority(), payloadJson);
         message.setDagId(dagId);
         message.setRegion(task.getRegion());
+        message.setCreatedAt(queuedAt);
+        message.setDeadline(task.getDeadline());
 
-        String routingKey = QueueConstants.routingKeyForPriority(task.getPriority());
-
-        rabbitTemplate.convertAndSend(QueueConstants.TASK_EXCHANGE, routingKey, message, msg -> {
-            msg.getMessageProperties().setPriority(task.getPriority() == 0 ? 10 : task.getPriority() == 1 ? 5 : 1);
-            msg.getMessageProperties().setHeader("x-retry-count", 0);
-            return msg;
-        });
+        message.setParentTaskId(task.getParentTaskId());
+        taskOutbox.enqueue(message);
     }
 }
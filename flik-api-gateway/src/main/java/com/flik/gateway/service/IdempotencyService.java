@@ -0,0 +1,251 @@
+package com.flik.gateway.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Replays the stored response for a repeated Idempotency-Key instead of submitting again. The first request
+ * claims the key in Redis with SET NX and later overwrites the claim with its response. A local Bloom filter
+ * of keys this gateway has seen decides which Redis call to make first: unseen keys go straight to the
+ * claim, and likely repeats read the stored response. Either way the common case is one round trip.
+ * Claims and responses carry a hash of the request body, so a key reused for a different request is rejected
+ * rather than answered with another request's response. If Redis is unavailable, requests are submitted
+ * without deduplication.
+ */
+@Service
+public class IdempotencyService {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+
+    private static final String PENDING = "PENDING";
+    private static final Duration PENDING_TTL = Duration.ofSeconds(30);
+    private static final List<String> SCOPES = List.of("task", "dag");
+    private static final List<String> RESULTS = List.of("hit", "miss", "conflict", "mismatch", "expired");
+
+    // Stores the response only while the claim is still ours; an expired claim may have been taken over
+    private static final String COMPLETE_SCRIPT = """
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                redis.call('SET', KEYS[1], ARGV[2], 'EX', ARGV[3])
+                return 1
+            end
+            return 0
+            """;
+
+    private static final String RELEASE_SCRIPT = """
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """;
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper canonicalMapper;
+    private final MeterRegistry meterRegistry;
+    // Per scope, then per result
+    private final Map<String, Map<String, Counter>> requests = new ConcurrentHashMap<>();
+    private final DefaultRedisScript<Long> completeScript;
+    private final DefaultRedisScript<Long> releaseScript;
+    private final Duration ttl;
+    private final RotatingBloomFilter seenKeys;
+
+    public IdempotencyService(StringRedisTemplate redisTemplate, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                              @Value("${flik.idempotency.ttl-seconds:86400}") long ttlSeconds,
+                              @Value("${flik.idempotency.expected-keys:1000000}") int expectedKeys) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.canonicalMapper = objectMapper.copy().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+        this.meterRegistry = meterRegistry;
+        SCOPES.forEach(this::requestCounters);
+        this.completeScript = new DefaultRedisScript<>(COMPLETE_SCRIPT, Long.class);
+        this.releaseScript = new DefaultRedisScript<>(RELEASE_SCRIPT, Long.class);
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.seenKeys = new RotatingBloomFilter(expectedKeys, 0.01, ttl.toNanos());
+    }
+
+    /**
+     * Claims {@code idempotencyKey} for {@code request}, or returns the response stored for an earlier identical
+     * request as {@link Claim#replay()}. Callers admit and submit only when there is nothing to replay, then
+     * {@link Claim#complete} the claim with the response, or {@link Claim#release} it if they did not submit.
+     */
+    public <T> Claim<T> claim(String scope, String tenantId, String idempotencyKey, Object request,
+                              Class<T> responseType) {
+        String key = "idempotency:" + scope + ":" + tenantId + ":" + idempotencyKey;
+
+        String pending;
+        try {
+            String requestHash = hash(request);
+            if (seenKeys.mightContain(key)) {
+                T stored = readStored(key, requestHash, responseType, scope);
+                if (stored != null) {
+                    return new Claim<>(this, scope, null, null, null, stored);
+                }
+            }
+            pending = PENDING + ":" + requestHash + ":" + UUID.randomUUID();
+            // A claim can expire between SET NX and GET; the second SET NX lets exactly one request take it over
+            boolean claimed = false;
+            for (int attempt = 0; attempt < 2 && !claimed; attempt++) {
+                claimed = Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(key, pending, PENDING_TTL));
+                if (!claimed) {
+                    T stored = readStored(key, requestHash, responseType, scope);
+                    if (stored != null) {
+                        return new Claim<>(this, scope, null, null, null, stored);
+                    }
+                }
+            }
+            if (!claimed) {
+                record(scope, "conflict");
+                throw new IdempotencyConflictException("A request with this Idempotency-Key is still in progress");
+            }
+            seenKeys.put(key);
+            record(scope, "miss");
+            return new Claim<>(this, scope, key, pending, requestHash, null);
+        } catch (IdempotencyConflictException | IdempotencyMismatchException e) {
+            throw e;
+        } catch (Exception e) {
+            log.warn("Idempotency check failed, submitting without deduplication: {}", e.getMessage());
+            return new Claim<>(this, scope, null, null, null, null);
+        }
+    }
+
+    private <T> T readStored(String key, String requestHash, Class<T> responseType, String scope) throws Exception {
+        String stored = redisTemplate.opsForValue().get(key);
+        if (stored == null) {
+            return null;
+        }
+        // Values are PENDING:{hash}:{token} or {hash}:{response}; bare PENDING and bare JSON predate the hash
+        boolean inProgress = stored.startsWith(PENDING);
+        String body = inProgress ? stored.substring(PENDING.length()) : stored;
+        if (body.startsWith(":")) {
+            body = body.substring(1);
+        }
+        int separator = body.indexOf(':');
+        if (separator > 0 && !body.startsWith("{")) {
+            if (!requestHash.equals(body.substring(0, separator))) {
+                record(scope, "mismatch");
+                throw new IdempotencyMismatchException("This Idempotency-Key was already used for a different request");
+            }
+            body = body.substring(separator + 1);
+        }
+        if (inProgress) {
+            record(scope, "conflict");
+            throw new IdempotencyConflictException("A request with this Idempotency-Key is still in progress");
+        }
+        record(scope, "hit");
+        return objectMapper.readValue(body, responseType);
+    }
+
+    private void complete(String scope, String key, String pending, String requestHash, Object response) {
+        try {
+            String stored = requestHash + ":" + objectMapper.writeValueAsString(response);
+            Long written = redisTemplate.execute(completeScript, List.of(key), pending, stored,
+                    String.valueOf(ttl.toSeconds()));
+            if (written == null || written == 0) {
+                record(scope, "expired");
+                log.warn("Idempotency claim {} expired before its response was stored", key);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to store idempotent response for {}: {}", key, e.getMessage());
+            release(key, pending);
+        }
+    }
+
+    private void release(String key, String pending) {
+        try {
+            redisTemplate.execute(releaseScript, List.of(key), pending);
+        } catch (Exception e) {
+            log.warn("Failed to release idempotency claim {}: {}", key, e.getMessage());
+        }
+    }
+
+    // Canonical JSON, so the same request with its fields in another order hashes the same. The payload is
+    // written raw, so the request is read back as plain maps to put the payload's keys in order too.
+    private String hash(Object request) throws Exception {
+        Object tree = canonicalMapper.readValue(objectMapper.writeValueAsBytes(request), Object.class);
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(canonicalMapper.writeValueAsBytes(tree)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void record(String scope, String result) {
+        requestCounters(scope).get(result).increment();
+    }
+
+    private Map<String, Counter> requestCounters(String scope) {
+        return requests.computeIfAbsent(scope, s -> RESULTS.stream().collect(Collectors.toUnmodifiableMap(
+                Function.identity(), result -> Counter.builder("flik_idempotency_requests_total")
+                        .tag("scope", s)
+                        .tag("result", result)
+                        .register(meterRegistry))));
+    }
+
+    /**
+     * An Idempotency-Key claimed for one request. Holds the stored response instead when the request is a repeat,
+     * and does nothing when Redis was unavailable.
+     */
+    public static class Claim<T> {
+
+        private final IdempotencyService service;
+        private final String scope;
+        private final String key;
+        private final String pending;
+        private final String requestHash;
+        private final T replay;
+
+        Claim(IdempotencyService service, String scope, String key, String pending, String requestHash, T replay) {
+            this.service = service;
+            this.scope = scope;
+            this.key = key;
+            this.pending = pending;
+            this.requestHash = requestHash;
+            this.replay = replay;
+        }
+
+        // The response to an earlier identical request, or null if this request should be submitted
+        public T replay() {
+            return replay;
+        }
+
+        public void complete(T response) {
+            if (key != null) service.complete(scope, key, pending, requestHash, response);
+        }
+
+        public void release() {
+            if (key != null) service.release(key, pending);
+        }
+    }
+
+    public static class IdempotencyConflictException extends RuntimeException {
+        public IdempotencyConflictException(String message) {
+            super(message);
+        }
+    }
+
+    public static class IdempotencyMismatchException extends RuntimeException {
+        public IdempotencyMismatchException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.flik.gateway.service;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caps how many pooled connections each request lane may hold at once, so a poll storm or a flood of
+ * background batches waits on its own quota instead of taking the connections real-time submissions need.
+ * The lane comes from the {@link ConcurrencyLimiter} permit held by the calling thread; lanes without a
+ * quota, and threads outside a request such as the group commit flusher, draw from the pool directly.
+ */
+public class LaneQuotaDataSource extends DelegatingDataSource {
+
+    private final Map<RequestLane, Semaphore> quotas = new EnumMap<>(RequestLane.class);
+    private final long waitMs;
+
+    public LaneQuotaDataSource(DataSource target, Map<RequestLane, Integer> connections, long waitMs) {
+        super(target);
+        connections.forEach((lane, count) -> quotas.put(lane, new Semaphore(count)));
+        this.waitMs = waitMs;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return withQuota(() -> obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return withQuota(() -> obtainTargetDataSource().getConnection(username, password));
+    }
+
+    int available(RequestLane lane) {
+        return quotas.get(lane).availablePermits();
+    }
+
+    private Connection withQuota(ConnectionSource source) throws SQLException {
+        RequestLane lane = ConcurrencyLimiter.currentLane();
+        Semaphore quota = lane != null ? quotas.get(lane) : null;
+        if (quota == null) {
+            return source.open();
+        }
+
+        try {
+            // Same failure as an exhausted pool, only sooner and confined to this lane
+            if (!quota.tryAcquire(waitMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException("Lane " + lane.tag() + " is at its database connection quota");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted waiting for a database connection", e);
+        }
+
+        try {
+            return releasingOnClose(source.open(), quota);
+        } catch (SQLException | RuntimeException e) {
+            quota.release();
+            throw e;
+        }
+    }
+
+    private static Connection releasingOnClose(Connection connection, Semaphore quota) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("equals")) {
+                        return proxy == args[0];
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    } finally {
+                        if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+                            quota.release();
+                        }
+                    }
+                });
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSource {
+        Connection open() throws SQLException;
+    }
+}
@@ -0,0 +1,184 @@
+package com.flik.gateway.service;
+
+import com.flik.common.messaging.ConfirmingPublisher;
+import com.flik.gateway.repository.OutboxMessage;
+import com.flik.gateway.repository.OutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class OutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxRepository outboxRepository;
+    private final ConfirmingPublisher publisher;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long pollIntervalMs;
+    private final Duration claimTimeout;
+
+    private final Semaphore wakeUps = new Semaphore(0);
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final Counter relayed;
+    private final Counter unconfirmed;
+    private final DistributionSummary batchSizes;
+    private final Timer batchTimer;
+    private volatile Thread relayThread;
+    private volatile boolean running;
+
+    public OutboxRelay(OutboxRepository outboxRepository, ConfirmingPublisher publisher,
+                       PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                       @Value("${flik.outbox.batch-size:200}") int batchSize,
+                       @Value("${flik.outbox.poll-interval-ms:200}") long pollIntervalMs,
+                       @Value("${flik.outbox.claim-timeout-ms:60000}") long claimTimeoutMs) {
+        this.outboxRepository = outboxRepository;
+        this.publisher = publisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.pollIntervalMs = pollIntervalMs;
+        this.claimTimeout = Duration.ofMillis(claimTimeoutMs);
+
+        this.relayed = Counter.builder("flik_outbox_relayed_total")
+                .description("Outbox messages confirmed by the broker and removed")
+                .register(meterRegistry);
+        this.unconfirmed = Counter.builder("flik_outbox_unconfirmed_total")
+                .description("Outbox messages nacked or not confirmed in time; retried on the next cycle")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("flik_outbox_batch_size")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("flik_outbox_relay_seconds")
+                .description("Time to publish and confirm one outbox batch")
+                .register(meterRegistry);
+        Gauge.builder("flik_outbox_lag_seconds", lagMillis, lag -> lag.get() / 1000.0)
+                .description("Age of the oldest unrelayed outbox message")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        relayThread = Thread.ofPlatform().name("outbox-relay").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        wakeUp();
+        if (relayThread != null) relayThread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    public void wakeUp() {
+        if (wakeUps.availablePermits() == 0) {
+            wakeUps.release();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                wakeUps.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                wakeUps.drainPermits();
+                while (running && relayBatch()) {
+                    // keep draining while full batches are fully confirmed
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.warn("Outbox relay cycle failed, will retry: {}", e.getMessage());
+                sleepQuietly(pollIntervalMs);
+            }
+        }
+    }
+
+    // Confirms are awaited between the claim and the delete, with no transaction or connection held
+    boolean relayBatch() {
+        List<OutboxMessage> batch = outboxRepository.claimOldest(batchSize, claimTimeout);
+        if (batch.isEmpty()) {
+            lagMillis.set(0);
+            return false;
+        }
+        lagMillis.set(Duration.between(batch.get(0).createdAt(), Instant.now()).toMillis());
+
+        long start = System.nanoTime();
+        List<Long> confirmed = publish(batch);
+        Set<Long> acked = new HashSet<>(confirmed);
+        List<Long> failed = batch.stream().map(OutboxMessage::id).filter(id -> !acked.contains(id)).toList();
+        transactionTemplate.executeWithoutResult(status -> {
+            outboxRepository.deleteAll(confirmed);
+            outboxRepository.releaseAll(failed);
+        });
+        batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        batchSizes.record(batch.size());
+        relayed.increment(confirmed.size());
+        unconfirmed.increment(failed.size());
+        return batch.size() == batchSize && failed.isEmpty();
+    }
+
+    // Publishes in id order and returns the ids the broker acked
+    private List<Long> publish(List<OutboxMessage> batch) {
+        List<CompletableFuture<Void>> confirms = new ArrayList<>(batch.size());
+        for (OutboxMessage outbox : batch) {
+            confirms.add(publisher.publish(outbox.exchange(), outbox.routingKey(), toAmqpMessage(outbox)));
+        }
+        try {
+            CompletableFuture.allOf(confirms.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            log.warn("Outbox batch not fully confirmed: {}", e.getCause().getMessage());
+        }
+
+        List<Long> acked = new ArrayList<>(confirms.size());
+        for (int i = 0; i < confirms.size(); i++) {
+            if (!confirms.get(i).isCompletedExceptionally()) {
+                acked.add(batch.get(i).id());
+            }
+        }
+        return acked;
+    }
+
+    private Message toAmqpMessage(OutboxMessage outbox) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(outbox.contentType());
+        properties.setPriority(outbox.messagePriority());
+        properties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        properties.setMessageId(outbox.taskId().toString());
+        outbox.headers().forEach(properties::setHeader);
+        return new Message(outbox.body(), properties);
+    }
+
+    private void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
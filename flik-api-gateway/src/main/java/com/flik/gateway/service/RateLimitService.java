@@ -1,57 +1,427 @@
 package com.flik.gateway.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
 
+/**
+ * Per-tenant limits on requests per second and on task cost per second, shared by all gateways. Both are
+ * enforced with GCRA in Redis, so a tenant gets a smooth rate with a bounded burst instead of a fresh
+ * budget at every second boundary. Each gateway leases blocks of requests and cost from Redis and spends
+ * them from a local bucket, so Redis is consulted once per lease rather than once per request. Lease size
+ * follows the tenant's recent rate at this gateway, capped at half of this gateway's share so one gateway
+ * cannot hoard the budget. While Redis is unreachable each gateway enforces its own share from local state.
+ */
 @Service
 public class RateLimitService {
 
     private static final Logger log = LoggerFactory.getLogger(RateLimitService.class);
 
-    private final StringRedisTemplate redisTemplate;
-    private final int requestsPerSecond;
-
-    private static final String LUA_SCRIPT = """
-            local key = KEYS[1]
-            local limit = tonumber(ARGV[1])
-            local window = tonumber(ARGV[2])
-            local current = redis.call('GET', key)
-            if current and tonumber(current) >= limit then
-                return 0
-            end
-            current = redis.call('INCR', key)
-            if tonumber(current) == 1 then
-                redis.call('EXPIRE', key, window)
+    public static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+
+    // GCRA over two dimensions, times in ms. Grants nothing unless both can cover the request that needs
+    // the lease, then up to the wanted amount of each. A refusal returns the wait until that one request fits.
+    // Returns {requests, cost, requestsAheadMicros, costAheadMicros, waitMs}, where the "ahead" values are how
+    // far each theoretical arrival time is past now, so the caller can work out the tenant's remaining budget.
+    private static final String LEASE_SCRIPT = """
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000 + tonumber(t[2]) / 1000
+            local reqInterval, reqCap = tonumber(ARGV[1]), tonumber(ARGV[2])
+            local costInterval, costCap = tonumber(ARGV[4]), tonumber(ARGV[5])
+            local costNeeded = tonumber(ARGV[7])
+            local reqTat = math.max(tonumber(redis.call('HGET', KEYS[1], 'req') or '0'), now)
+            local costTat = math.max(tonumber(redis.call('HGET', KEYS[1], 'cost') or '0'), now)
+            local reqAvailable = math.floor(reqCap - (reqTat - now) / reqInterval + 1e-6)
+            local costAvailable = math.floor(costCap - (costTat - now) / costInterval + 1e-6)
+            if reqAvailable < 1 or costAvailable < costNeeded then
+                local wait = math.max(reqTat + (1 - reqCap) * reqInterval,
+                        costTat + (costNeeded - costCap) * costInterval) - now
+                return {0, 0, 0, 0, math.ceil(wait)}
             end
-            return 1
+            local reqGranted = math.min(tonumber(ARGV[3]), reqAvailable)
+            local costGranted = math.min(tonumber(ARGV[6]), costAvailable)
+            reqTat = reqTat + reqGranted * reqInterval
+            costTat = costTat + costGranted * costInterval
+            redis.call('HSET', KEYS[1], 'req', string.format('%.3f', reqTat), 'cost', string.format('%.3f', costTat))
+            redis.call('PEXPIRE', KEYS[1], math.ceil(math.max(reqTat, costTat) - now) + 1000)
+            return {reqGranted, costGranted, math.ceil((reqTat - now) * 1000), math.ceil((costTat - now) * 1000), 0}
             """;
 
-    private final DefaultRedisScript<Long> rateLimitScript;
+    // Aim for this many leases per tenant per second at the observed rate
+    private static final int LEASES_PER_WINDOW = 8;
+    private static final long REDIS_RETRY_MILLIS = 1000;
+    private static final long IDLE_BUCKET_MILLIS = 60_000;
+    private static final long MAX_LOCAL_REQUESTS = 0xFFFF;
+    private static final long MAX_LOCAL_COST = 0xFFFFFFFFL;
+
+    private final StringRedisTemplate redisTemplate;
+    @SuppressWarnings("rawtypes")
+    private final DefaultRedisScript<List> leaseScript;
+    private final Policy defaultPolicy;
+    private final Map<String, Policy> tenantPolicies = new HashMap<>();
+    private final double burstSeconds;
+    private final int gatewayCount;
+    private final LongSupplier clock;
+    private final Map<String, TenantBucket> buckets = new ConcurrentHashMap<>();
+    private volatile long redisRetryAt;
+
+    private final Counter leasesGranted;
+    private final Counter leasesExhausted;
+    private final Counter leasesFallback;
+
+    /** Sustained requests and dollars of task cost per second that a tenant may submit across all gateways. */
+    public record Policy(double requestsPerSec, double costPerSec) {}
+
+    /**
+     * Outcome of a rate limit check. {@code remaining} is how many more requests of the same cost the tenant
+     * could make right now across all gateways: the tokens this gateway holds plus the shared budget, as Redis
+     * reported it at this gateway's latest lease and refilled since. {@code exceedsLimit} marks a request that
+     * costs more than the tenant's whole burst, which no amount of waiting would admit.
+     */
+    public record Decision(boolean allowed, long remaining, long retryAfterSeconds, boolean exceedsLimit) {
+
+        public static Decision allow(long remaining) {
+            return new Decision(true, remaining, 0, false);
+        }
+
+        public static Decision deny(long waitMillis) {
+            return new Decision(false, 0, Math.max(1, (waitMillis + 999) / 1000), false);
+        }
+
+        public static Decision overLimit() {
+            return new Decision(false, 0, 0, true);
+        }
+
+        /** {@code Retry-After} when rejected, {@code X-RateLimit-Remaining} when allowed. */
+        public HttpHeaders toHeaders() {
+            HttpHeaders headers = new HttpHeaders();
+            if (allowed) {
+                headers.set(REMAINING_HEADER, String.valueOf(remaining));
+            } else if (!exceedsLimit) {
+                headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            }
+            return headers;
+        }
+    }
+
+    @Autowired
+    public RateLimitService(StringRedisTemplate redisTemplate, MeterRegistry meterRegistry,
+                            @Value("${rate-limit.requests-per-sec:300}") double requestsPerSecond,
+                            @Value("${rate-limit.cost-per-sec:5.0}") double costPerSecond,
+                            @Value("${rate-limit.burst-seconds:1.0}") double burstSeconds,
+                            @Value("${rate-limit.tenant-policies:}") String tenantPolicies,
+                            @Value("${rate-limit.gateway-count:2}") int gatewayCount) {
+        this(redisTemplate, meterRegistry, new Policy(requestsPerSecond, costPerSecond), burstSeconds,
+                tenantPolicies, gatewayCount, System::currentTimeMillis);
+    }
 
-    public RateLimitService(StringRedisTemplate redisTemplate,
-                            @Value("${rate-limit.requests-per-sec:300}") int requestsPerSecond) {
+    RateLimitService(StringRedisTemplate redisTemplate, MeterRegistry meterRegistry, Policy defaultPolicy,
+                     double burstSeconds, String tenantPolicies, int gatewayCount, LongSupplier clock) {
         this.redisTemplate = redisTemplate;
-        this.requestsPerSecond = requestsPerSecond;
-        this.rateLimitScript = new DefaultRedisScript<>(LUA_SCRIPT, Long.class);
+        this.leaseScript = new DefaultRedisScript<>(LEASE_SCRIPT, List.class);
+        this.defaultPolicy = defaultPolicy;
+        this.burstSeconds = burstSeconds;
+        this.gatewayCount = Math.max(1, gatewayCount);
+        this.clock = clock;
+
+        // Format: tenant=requestsPerSec:costPerSec, comma-separated
+        for (String entry : tenantPolicies.split(",")) {
+            int eq = entry.indexOf('=');
+            int colon = entry.indexOf(':', eq);
+            if (eq <= 0 || colon < 0) continue;
+            String tenantId = entry.substring(0, eq).trim();
+            Policy policy = new Policy(Double.parseDouble(entry.substring(eq + 1, colon).trim()),
+                    Double.parseDouble(entry.substring(colon + 1).trim()));
+            this.tenantPolicies.put(tenantId, policy);
+            log.info("Rate limit policy for tenant {}: {} req/s, ${}/s", tenantId,
+                    policy.requestsPerSec(), policy.costPerSec());
+        }
+
+        this.leasesGranted = leaseCounter(meterRegistry, "granted");
+        this.leasesExhausted = leaseCounter(meterRegistry, "exhausted");
+        this.leasesFallback = leaseCounter(meterRegistry, "fallback");
+    }
+
+    /** Charges one request costing {@code cost} dollars to the tenant if both of its limits allow it. */
+    public Decision tryAcquire(String tenantId, double cost) {
+        long now = clock.getAsLong();
+        long costUnits = costUnits(cost);
+        TenantBucket bucket = buckets.computeIfAbsent(tenantId, TenantBucket::new);
+        if (costUnits > bucket.global.costCapacity) {
+            return Decision.overLimit();
+        }
+        bucket.demand.increment();
+        bucket.demandCost.add(costUnits);
+        long window = (now / 1000) & 0xFFFF;
+        long remaining = bucket.tryTake(now, window, costUnits);
+        return remaining >= 0 ? Decision.allow(remaining) : bucket.refillAndTake(costUnits);
+    }
+
+    /**
+     * Gives back one request of {@code cost} dollars taken by {@link #tryAcquire} for work that then failed. The
+     * tokens return to this gateway's bucket, where the tenant's next request spends them; Redis already charged
+     * them to this gateway's lease.
+     */
+    public void refund(String tenantId, double cost) {
+        TenantBucket bucket = buckets.get(tenantId);
+        if (bucket != null) {
+            bucket.refund(clock.getAsLong(), costUnits(cost));
+        }
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdleBuckets() {
+        long cutoff = clock.getAsLong() - IDLE_BUCKET_MILLIS;
+        buckets.values().removeIf(bucket -> bucket.lastRefill < cutoff);
+    }
+
+    // Costs are tracked in micro-dollars, so a TEXT task is 1,000 units and a VIDEO task 100,000
+    private static long costUnits(double cost) {
+        return Math.max(1, Math.round(cost * 1_000_000));
     }
 
-    public boolean isAllowed(String tenantId) {
+    private Lease leaseFromRedis(String tenantId, Limits limits, long wantRequests, long wantCost, long costNeeded) {
+        if (clock.getAsLong() < redisRetryAt) {
+            return null;
+        }
         try {
-            String key = "rate_limit:" + tenantId + ":" + (System.currentTimeMillis() / 1000);
-            Long result = redisTemplate.execute(rateLimitScript,
-                    List.of(key),
-                    String.valueOf(requestsPerSecond),
-                    "2");
-            return result != null && result == 1;
+            List<?> reply = redisTemplate.execute(leaseScript, List.of("rate_limit:" + tenantId),
+                    String.valueOf(limits.requestInterval), String.valueOf(limits.requestCapacity),
+                    String.valueOf(wantRequests), String.valueOf(limits.costInterval),
+                    String.valueOf(limits.costCapacity), String.valueOf(wantCost), String.valueOf(costNeeded));
+            if (reply == null || reply.size() < 5) {
+                throw new IllegalStateException("unexpected lease reply " + reply);
+            }
+            // Redis reports how far ahead of its own clock each arrival time is; pin them to ours
+            long now = clock.getAsLong();
+            return new Lease(number(reply.get(0)), number(reply.get(1)), now + number(reply.get(2)) / 1000.0,
+                    now + number(reply.get(3)) / 1000.0, number(reply.get(4)));
         } catch (Exception e) {
-            log.warn("Rate limit check failed, allowing request: {}", e.getMessage());
-            return true;
+            redisRetryAt = clock.getAsLong() + REDIS_RETRY_MILLIS;
+            log.warn("Rate limit lease failed, limiting tenants to this gateway's share for {}ms: {}",
+                    REDIS_RETRY_MILLIS, e.getMessage());
+            return null;
+        }
+    }
+
+    private static long number(Object value) {
+        return ((Number) value).longValue();
+    }
+
+    private static Counter leaseCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("flik_rate_limit_leases_total")
+                .description("Token leases requested from Redis by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    // Arrival times are in this gateway's clock, in ms
+    private record Lease(long requests, long cost, double requestTat, double costTat, long waitMillis) {}
+
+    /** GCRA parameters for one policy: milliseconds per unit, and units of burst. */
+    private static final class Limits {
+
+        final double requestInterval;
+        final double requestCapacity;
+        final double costInterval;
+        final double costCapacity;
+
+        Limits(double requestsPerSec, double costPerSec, double burstSeconds) {
+            double costUnitsPerSec = Math.max(1, costPerSec * 1_000_000);
+            this.requestInterval = 1000 / Math.max(requestsPerSec, 0.001);
+            this.requestCapacity = Math.max(1, Math.floor(requestsPerSec * burstSeconds));
+            this.costInterval = 1000 / costUnitsPerSec;
+            this.costCapacity = Math.max(1, Math.floor(costUnitsPerSec * burstSeconds));
+        }
+
+        // Same computation as LEASE_SCRIPT, used while Redis is unavailable. The 1e-6 absorbs floating-point drift.
+        // A request costing more than this whole burst, which only a gateway's share can be short of, waits for a
+        // full bucket and overdraws it; later leases wait until the overdraft is paid back at the sustained rate.
+        Lease lease(double[] tats, long now, long wantRequests, long wantCost, long costNeeded) {
+            double requestTat = Math.max(tats[0], now);
+            double costTat = Math.max(tats[1], now);
+            long requestsAvailable = (long) Math.floor(requestCapacity - (requestTat - now) / requestInterval + 1e-6);
+            long costAvailable = (long) Math.floor(costCapacity - (costTat - now) / costInterval + 1e-6);
+            long costToFit = Math.min(costNeeded, (long) costCapacity);
+            if (requestsAvailable < 1 || costAvailable < costToFit) {
+                double wait = Math.max(requestTat + (1 - requestCapacity) * requestInterval,
+                        costTat + (costToFit - costCapacity) * costInterval) - now;
+                return new Lease(0, 0, 0, 0, (long) Math.ceil(wait));
+            }
+            long requests = Math.min(wantRequests, requestsAvailable);
+            long cost = Math.max(costNeeded, Math.min(wantCost, costAvailable));
+            tats[0] = requestTat + requests * requestInterval;
+            tats[1] = costTat + cost * costInterval;
+            return new Lease(requests, cost, tats[0], tats[1], 0);
+        }
+
+        // Whole requests of {@code cost} units the budget covers at {@code now}, given its arrival times
+        long available(double requestTat, double costTat, long now, long cost) {
+            long requests = (long) Math.floor(requestCapacity - Math.max(0, requestTat - now) / requestInterval + 1e-6);
+            long costUnits = (long) Math.floor(costCapacity - Math.max(0, costTat - now) / costInterval + 1e-6);
+            return Math.max(0, Math.min(requests, costUnits / cost));
+        }
+    }
+
+    /**
+     * Requests and cost this gateway holds for one tenant. The fast path is a CAS on a single long packing the
+     * current second (high 16 bits), requests (next 16) and cost units (low 32). The first request of a new
+     * second takes the slow path, which restarts the demand window and carries unspent tokens over: they were
+     * already charged in Redis, and a lease is at most half this gateway's burst. Refills are serialized so a
+     * burst triggers one Redis call, not one per waiting request.
+     */
+    private final class TenantBucket {
+
+        private final String tenantId;
+        final Limits global;
+        private final Limits localShare;
+        private final long maxLeaseRequests;
+        private final long maxLeaseCost;
+        private final AtomicLong state = new AtomicLong();
+        private final LongAdder demand = new LongAdder();
+        private final LongAdder demandCost = new LongAdder();
+        private final ReentrantLock refillLock = new ReentrantLock();
+        private volatile long lastRefill;
+        // The budget the latest lease came from and its arrival times then, for reporting what remains
+        private volatile Limits budget;
+        private volatile double requestTat;
+        private volatile double costTat;
+
+        // Guarded by refillLock
+        private long refillWindow = -1;
+        private long leasedThisWindow;
+        private double observedRate;
+        private double observedCost;
+        private long blockedUntil;
+        private long blockedCost;
+        private final double[] fallbackTats = new double[2];
+
+        TenantBucket(String tenantId) {
+            Policy policy = tenantPolicies.getOrDefault(tenantId, defaultPolicy);
+            this.tenantId = tenantId;
+            this.global = new Limits(policy.requestsPerSec(), policy.costPerSec(), burstSeconds);
+            this.localShare = new Limits(policy.requestsPerSec() / gatewayCount, policy.costPerSec() / gatewayCount,
+                    burstSeconds);
+            this.maxLeaseRequests = (long) Math.min(MAX_LOCAL_REQUESTS, Math.max(1, localShare.requestCapacity / 2));
+            this.maxLeaseCost = (long) Math.min(MAX_LOCAL_COST, Math.max(1, localShare.costCapacity / 2));
+            this.lastRefill = clock.getAsLong();
+            this.budget = global;
+        }
+
+        /** Takes one request of {@code cost} units from local tokens; returns how many such requests remain, or -1. */
+        long tryTake(long now, long window, long cost) {
+            long current;
+            while (window(current = state.get()) == window && requests(current) > 0 && cost(current) >= cost) {
+                long next = pack(window, requests(current) - 1, cost(current) - cost);
+                if (state.compareAndSet(current, next)) {
+                    return Math.min(requests(next), cost(next) / cost) + budget.available(requestTat, costTat, now, cost);
+                }
+            }
+            return -1;
+        }
+
+        // Stamped with the current second, so the tokens are spendable at once; the window's demand is unchanged
+        void refund(long now, long cost) {
+            long window = (now / 1000) & 0xFFFF;
+            state.updateAndGet(s -> pack(window, Math.min(MAX_LOCAL_REQUESTS, requests(s) + 1),
+                    Math.min(MAX_LOCAL_COST, cost(s) + cost)));
+        }
+
+        Decision refillAndTake(long cost) {
+            refillLock.lock();
+            try {
+                // Read under the lock, so the window only moves forward
+                long now = clock.getAsLong();
+                long window = (now / 1000) & 0xFFFF;
+                if (refillWindow != window) {
+                    startWindow(window);
+                }
+                lastRefill = now;
+                long remaining;
+                while ((remaining = tryTake(now, window, cost)) < 0) {
+                    if (now < blockedUntil && cost >= blockedCost) {
+                        return Decision.deny(blockedUntil - now);
+                    }
+                    long wantRequests = leaseSize();
+                    long wantCost = Math.max(cost, Math.min(maxLeaseCost, (long) Math.ceil(wantRequests * observedCost)));
+                    Lease lease = leaseFromRedis(tenantId, global, wantRequests, wantCost, cost);
+                    budget = lease == null ? localShare : global;
+                    if (lease == null) {
+                        lease = localShare.lease(fallbackTats, now, wantRequests, wantCost, cost);
+                        leasesFallback.increment();
+                    } else if (lease.requests() > 0) {
+                        leasesGranted.increment();
+                    }
+                    if (lease.requests() == 0) {
+                        // Requests costing this much or more are rejected locally until GCRA says they fit
+                        blockedUntil = now + lease.waitMillis();
+                        blockedCost = cost;
+                        leasesExhausted.increment();
+                        return Decision.deny(lease.waitMillis());
+                    }
+                    leasedThisWindow += lease.requests();
+                    requestTat = lease.requestTat();
+                    costTat = lease.costTat();
+                    Lease granted = lease;
+                    state.updateAndGet(s -> window(s) == window
+                            ? pack(window, Math.min(MAX_LOCAL_REQUESTS, requests(s) + granted.requests()),
+                                    Math.min(MAX_LOCAL_COST, cost(s) + granted.cost()))
+                            : pack(window, granted.requests(), granted.cost()));
+                }
+                return Decision.allow(remaining);
+            } finally {
+                refillLock.unlock();
+            }
+        }
+
+        private void startWindow(long window) {
+            double lastRate = demand.sumThenReset();
+            double lastCost = demandCost.sumThenReset() / Math.max(1, lastRate);
+            boolean first = refillWindow < 0;
+            observedRate = first ? lastRate : (observedRate + lastRate) / 2;
+            observedCost = first ? lastCost : (observedCost + lastCost) / 2;
+            refillWindow = window;
+            leasedThisWindow = 0;
+            state.updateAndGet(s -> pack(window, requests(s), cost(s)));
+        }
+
+        // Sized from the last seconds' rate, and at least doubling within a second so a new burst ramps up quickly
+        private long leaseSize() {
+            double wanted = Math.max(Math.ceil(observedRate / LEASES_PER_WINDOW), leasedThisWindow);
+            return (long) Math.max(1, Math.min(maxLeaseRequests, wanted));
+        }
+
+        static long window(long state) {
+            return state >>> 48;
+        }
+
+        static long requests(long state) {
+            return (state >>> 32) & 0xFFFF;
+        }
+
+        static long cost(long state) {
+            return state & 0xFFFFFFFFL;
+        }
+
+        static long pack(long window, long requests, long cost) {
+            return (window << 48) | (requests << 32) | cost;
         }
     }
 }
@@ -0,0 +1,220 @@
+package com.flik.gateway.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flik.common.dto.TaskRequest;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands task submissions for another region to that region's gateway. Requests share one HTTP/2 client, so
+ * concurrent forwards to a peer are multiplexed over pooled connections. The modeled inter-region latency
+ * is applied as a scheduled delay before the send, and the caller gets a future instead of a blocked thread.
+ * Regions without a configured peer are handled locally. Gateways sign the requests they forward with a shared
+ * secret, so a client cannot mark its own request as already forwarded.
+ */
+@Service
+public class RegionForwarder {
+
+    private static final Logger log = LoggerFactory.getLogger(RegionForwarder.class);
+
+    // Marks a request that was already routed once; the receiving gateway always handles it locally
+    public static final String FORWARDED_FROM_HEADER = "X-Flik-Forwarded-From";
+    // {epochSeconds}.{HMAC-SHA256 of "region:epochSeconds"}; without a valid one the header above is ignored
+    public static final String FORWARD_SIGNATURE_HEADER = "X-Flik-Forward-Signature";
+
+    private static final long SIGNATURE_MAX_AGE_SECONDS = 60;
+
+    private final RegionRoutingService regionRouting;
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient;
+    private final Duration timeout;
+    private final byte[] forwardSecret;
+    private final Map<String, Route> routes = new HashMap<>();
+
+    public RegionForwarder(RegionRoutingService regionRouting, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                           @Value("${flik.regions.peers:}") String peers,
+                           @Value("${flik.regions.forward-timeout-ms:5000}") long timeoutMs,
+                           @Value("${flik.regions.forward-secret:}") String forwardSecret) {
+        this.regionRouting = regionRouting;
+        this.objectMapper = objectMapper;
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.forwardSecret = forwardSecret.getBytes(StandardCharsets.UTF_8);
+        if (!peers.isBlank() && forwardSecret.isEmpty()) {
+            log.warn("flik.regions.forward-secret is not set; forwarded requests will not be recognised by peers");
+        }
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(timeout)
+                .build();
+
+        for (String entry : peers.split(",")) {
+            int eq = entry.indexOf('=');
+            if (eq <= 0) continue;
+            String region = entry.substring(0, eq).trim();
+            String baseUrl = entry.substring(eq + 1).trim();
+            if (regionRouting.isLocalRegion(region) || baseUrl.isEmpty()) continue;
+            routes.put(region, new Route(region, URI.create(baseUrl.replaceAll("/+$", "") + "/api/v1/tasks"),
+                    regionRouting.getLocalRegion(), meterRegistry));
+            log.info("Region peer configured: {} -> {}", region, baseUrl);
+        }
+    }
+
+    public boolean shouldForward(String requestedRegion, String forwardedFrom, String signature) {
+        if (isForwarded(forwardedFrom, signature)) return false;
+        String target = regionRouting.resolveRegion(requestedRegion);
+        return !regionRouting.isLocalRegion(target) && routes.containsKey(target);
+    }
+
+    // Only a peer holding the shared secret can mark a request as forwarded; a client-set header is ignored
+    boolean isForwarded(String forwardedFrom, String signature) {
+        if (forwardedFrom == null || signature == null || forwardSecret.length == 0) return false;
+        int dot = signature.indexOf('.');
+        if (dot <= 0) return false;
+        long signedAt;
+        try {
+            signedAt = Long.parseLong(signature.substring(0, dot));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (Math.abs(Instant.now().getEpochSecond() - signedAt) > SIGNATURE_MAX_AGE_SECONDS) return false;
+        byte[] expected = sign(forwardedFrom, signedAt).getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(expected, signature.getBytes(StandardCharsets.UTF_8));
+    }
+
+    String sign(String fromRegion, long epochSeconds) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(forwardSecret, "HmacSHA256"));
+            byte[] digest = mac.doFinal((fromRegion + ":" + epochSeconds).getBytes(StandardCharsets.UTF_8));
+            return epochSeconds + "." + HexFormat.of().formatHex(digest);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Sends {@code request} to the gateway that owns its region and completes with that gateway's status
+     * and body. Rate limiting and idempotency are left to the owning gateway. Transport failures and
+     * timeouts complete with 503 rather than exceptionally.
+     */
+    public CompletableFuture<ResponseEntity<?>> forward(TaskRequest request, String authorization,
+                                                        String idempotencyKey) {
+        String target = regionRouting.resolveRegion(request.getRegion());
+        Route route = routes.get(target);
+        if (route == null) {
+            throw new IllegalStateException("No peer gateway configured for region " + target);
+        }
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(route.uri)
+                .timeout(timeout)
+                .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                .header(FORWARDED_FROM_HEADER, regionRouting.getLocalRegion());
+        if (forwardSecret.length > 0) {
+            builder.header(FORWARD_SIGNATURE_HEADER, sign(regionRouting.getLocalRegion(), Instant.now().getEpochSecond()));
+        }
+        if (authorization != null) builder.header("Authorization", authorization);
+        if (idempotencyKey != null) builder.header("Idempotency-Key", idempotencyKey);
+        try {
+            builder.POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(request)));
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.completedFuture(error(HttpStatus.BAD_REQUEST, "Unable to encode task request"));
+        }
+        HttpRequest httpRequest = builder.build();
+
+        Duration latency = regionRouting.recordCrossRegion(target);
+        route.inFlight.incrementAndGet();
+        long start = System.nanoTime();
+
+        return CompletableFuture
+                .supplyAsync(() -> httpRequest, CompletableFuture.delayedExecutor(latency.toMillis(), TimeUnit.MILLISECONDS))
+                .thenCompose(r -> httpClient.sendAsync(r, HttpResponse.BodyHandlers.ofString()))
+                .<ResponseEntity<?>>handle((response, failure) -> {
+                    route.inFlight.decrementAndGet();
+                    long elapsed = System.nanoTime() - start;
+                    if (failure != null) {
+                        route.failed.record(elapsed, TimeUnit.NANOSECONDS);
+                        log.warn("Forward to region {} failed: {}", target, failure.getMessage());
+                        return error(HttpStatus.SERVICE_UNAVAILABLE, "Region " + target + " is unavailable");
+                    }
+                    route.succeeded.record(elapsed, TimeUnit.NANOSECONDS);
+                    return ResponseEntity.status(response.statusCode())
+                            .headers(relayedHeaders(response))
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(response.body());
+                });
+    }
+
+    // The peer's rate limit verdict is the one that applies, so the client sees its Retry-After and budget
+    private static HttpHeaders relayedHeaders(HttpResponse<?> response) {
+        HttpHeaders headers = new HttpHeaders();
+        response.headers().map().forEach((name, values) -> {
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (lower.equals("retry-after") || lower.startsWith("x-ratelimit-")) {
+                headers.addAll(name, values);
+            }
+        });
+        return headers;
+    }
+
+    private static ResponseEntity<?> error(HttpStatus status, String message) {
+        return ResponseEntity.status(status).body(Map.of("error", message));
+    }
+
+    private static final class Route {
+
+        private final URI uri;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Timer succeeded;
+        private final Timer failed;
+
+        Route(String region, URI uri, String localRegion, MeterRegistry meterRegistry) {
+            this.uri = uri;
+            this.succeeded = forwardTimer(meterRegistry, localRegion, region, "success");
+            this.failed = forwardTimer(meterRegistry, localRegion, region, "failure");
+            Gauge.builder("flik_region_forward_inflight", inFlight, AtomicInteger::get)
+                    .description("Forwarded submissions awaiting the peer gateway's response")
+                    .tag("from", localRegion)
+                    .tag("to", region)
+                    .register(meterRegistry);
+        }
+
+        private static Timer forwardTimer(MeterRegistry meterRegistry, String from, String to, String outcome) {
+            return Timer.builder("flik_region_forward_seconds")
+                    .description("Time from accepting a forwarded submission to the peer gateway's response, including modeled latency")
+                    .tag("from", from)
+                    .tag("to", to)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+    }
+}
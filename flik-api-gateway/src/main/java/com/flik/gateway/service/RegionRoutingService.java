@@ -10,7 +10,7 @@ import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 public class RegionRoutingService {
@@ -19,7 +19,6 @@ public class RegionRoutingService {
 
     private final String localRegion;
     private final MeterRegistry meterRegistry;
-    private final Random random = new Random();
 
     private static final Map<String, Map<String, Long>> INTER_REGION_LATENCY_MS = Map.of(
             "us-east", Map.of("us-east", 1L, "us-west", 70L, "eu-west", 90L, "ap-south", 200L),
@@ -51,15 +50,19 @@ public class RegionRoutingService {
         return localRegion.equals(targetRegion);
     }
 
-    public void simulateInterRegionLatency(String targetRegion) {
-        if (isLocalRegion(targetRegion)) return;
+    /**
+     * Records a cross-region request and returns the modeled one-way latency to {@code targetRegion}.
+     * Callers apply it as a scheduled delay; nothing here blocks.
+     */
+    public Duration recordCrossRegion(String targetRegion) {
+        if (isLocalRegion(targetRegion)) return Duration.ZERO;
 
         long baseLatency = INTER_REGION_LATENCY_MS
                 .getOrDefault(localRegion, Map.of())
                 .getOrDefault(targetRegion, 100L);
 
-        long jitter = (long) (baseLatency * 0.2 * (random.nextDouble() - 0.5));
-        long totalLatency = baseLatency + jitter;
+        long jitter = (long) (baseLatency * 0.2 * (ThreadLocalRandom.current().nextDouble() - 0.5));
+        Duration latency = Duration.ofMillis(baseLatency + jitter);
 
         Counter.builder("flik_cross_region_requests_total")
                 .tag("from", localRegion)
@@ -70,14 +73,9 @@ public class RegionRoutingService {
                 .tag("from", localRegion)
                 .tag("to", targetRegion)
                 .register(meterRegistry)
-                .record(Duration.ofMillis(totalLatency));
+                .record(latency);
 
-        try {
-            Thread.sleep(totalLatency);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-
-        log.debug("Inter-region latency simulated: {}→{} = {}ms", localRegion, targetRegion, totalLatency);
+        log.debug("Inter-region latency modeled: {}→{} = {}ms", localRegion, targetRegion, latency.toMillis());
+        return latency;
     }
 }
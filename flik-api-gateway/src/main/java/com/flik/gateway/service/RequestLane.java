@@ -0,0 +1,45 @@
+package com.flik.gateway.service;
+
+import java.util.Locale;
+
+/**
+ * Execution lane an API request is admitted into. Submissions are laned by priority and status reads by path,
+ * so a flood in one lane cannot use up the concurrency or database connections another lane needs.
+ */
+public enum RequestLane {
+
+    // budgetShare: share of the concurrency limit the lane may occupy on its own
+    // headroomShare: how full the whole gateway may be before the lane is shed
+    REALTIME(1.0, 1.0),
+    INTERACTIVE(0.6, 0.9),
+    BACKGROUND(0.4, 0.75),
+    READ(0.5, 0.9);
+
+    private final double budgetShare;
+    private final double headroomShare;
+    private final String tag;
+
+    RequestLane(double budgetShare, double headroomShare) {
+        this.budgetShare = budgetShare;
+        this.headroomShare = headroomShare;
+        this.tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    /** Lane for a submission of {@code priority}: P0 real-time, P1 interactive, anything else background. */
+    public static RequestLane forPriority(int priority) {
+        if (priority <= 0) return REALTIME;
+        return priority == 1 ? INTERACTIVE : BACKGROUND;
+    }
+
+    double budgetShare() {
+        return budgetShare;
+    }
+
+    double headroomShare() {
+        return headroomShare;
+    }
+
+    public String tag() {
+        return tag;
+    }
+}
@@ -0,0 +1,290 @@
+package com.flik.gateway.service;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.flik.common.constants.StatusChannels;
+import com.flik.common.dto.RawJson;
+import com.flik.common.dto.StatusUpdate;
+import com.flik.common.dto.TaskMessage;
+import com.flik.common.model.Task;
+import com.flik.common.model.TaskStatus;
+import com.flik.gateway.repository.TaskRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Opt-in, per-tenant cache of generation results keyed by task type and canonical payload. The first
+ * submission of a key becomes its leader and runs normally. Later submissions are either served the leader's
+ * result straight away or, while the leader is still running, parked as followers and completed from its result
+ * when it finishes. Followers of a leader that dead-letters are enqueued to run on their own.
+ */
+@Service
+public class ResultCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultCacheService.class);
+
+    // Replaces a dead-lettered leader, unless another request already did
+    private static final String TAKEOVER_SCRIPT = """
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                redis.call('SET', KEYS[1], ARGV[2], 'EX', ARGV[3])
+                return 1
+            end
+            return 0
+            """;
+
+    private static final String RELEASE_SCRIPT = """
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """;
+
+    private final StringRedisTemplate redisTemplate;
+    private final TaskRepository taskRepository;
+    private final TaskJournal taskJournal;
+    private final TaskOutbox taskOutbox;
+    private final CostService costService;
+    private final ObjectMapper canonicalMapper;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final DefaultRedisScript<Long> takeoverScript;
+    private final DefaultRedisScript<Long> releaseScript;
+    private final DefaultRedisScript<Long> routeScript;
+    private final Set<String> tenants;
+    private final Duration ttl;
+
+    public ResultCacheService(StringRedisTemplate redisTemplate, TaskRepository taskRepository, TaskJournal taskJournal,
+                              TaskOutbox taskOutbox, CostService costService, ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${flik.result-cache.tenants:}") String tenants,
+                              @Value("${flik.result-cache.ttl-seconds:3600}") long ttlSeconds) {
+        this.redisTemplate = redisTemplate;
+        this.taskRepository = taskRepository;
+        this.taskJournal = taskJournal;
+        this.taskOutbox = taskOutbox;
+        this.costService = costService;
+        this.objectMapper = objectMapper;
+        this.canonicalMapper = objectMapper.copy()
+                .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+                .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.takeoverScript = new DefaultRedisScript<>(TAKEOVER_SCRIPT, Long.class);
+        this.releaseScript = new DefaultRedisScript<>(RELEASE_SCRIPT, Long.class);
+        this.routeScript = new DefaultRedisScript<>(StatusChannels.ROUTE_SCRIPT, Long.class);
+        this.tenants = Arrays.stream(tenants.split(","))
+                .map(String::trim)
+                .filter(t -> !t.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+    }
+
+    public boolean isEnabled(String tenantId) {
+        return tenants.contains("*") || tenants.contains(tenantId);
+    }
+
+    /**
+     * Serves {@code task} from the cache if it can. Returns false when the task should be persisted and
+     * enqueued as usual, either as the new leader for its key or because caching does not apply. Returns
+     * true when the task has been stored as completed from a cached result, or as a follower of a
+     * running leader.
+     */
+    public boolean tryServe(Task task) {
+        if (!isEnabled(task.getTenantId()) || task.getDagId() != null || task.getParentTaskId() != null) {
+            return false;
+        }
+
+        UUID leaderId;
+        Optional<Task> leader;
+        try {
+            String key = cacheKey(task);
+            String newId = task.getId().toString();
+            if (Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(key, newId, ttl))) {
+                record(task, "miss");
+                return false;
+            }
+            String current = redisTemplate.opsForValue().get(key);
+            if (current == null) {
+                record(task, "miss");
+                return false;
+            }
+            leaderId = UUID.fromString(current);
+            leader = taskJournal.findCurrent(leaderId);
+            if (leader.isPresent() && isFailed(leader.get())) {
+                redisTemplate.execute(takeoverScript, List.of(key), current, newId, String.valueOf(ttl.toSeconds()));
+                record(task, "miss");
+                return false;
+            }
+        } catch (Exception e) {
+            log.warn("Result cache lookup failed, running task normally: {}", e.getMessage());
+            return false;
+        }
+
+        if (leader.isPresent() && leader.get().getStatus() == TaskStatus.COMPLETED && leader.get().getResult() != null) {
+            completeFromLeader(task, leader.get());
+            taskRepository.save(task);
+            record(task, "hit");
+            costService.recordCacheSaving(task.getTenantId(), task.getTaskType().name());
+            log.info("Task served from result cache: taskId={}, leader={}", task.getId(), leader.get().getId());
+            return true;
+        }
+
+        // Leader is queued, running, retrying, or its row is not committed yet
+        taskRepository.save(task);
+        try {
+            follow(leaderId, task.getId());
+        } catch (Exception e) {
+            log.warn("Failed to attach task {} to leader {}, running it on its own: {}", task.getId(), leaderId, e.getMessage());
+            runIndependently(task.getId());
+            return true;
+        }
+        record(task, "coalesced");
+        log.info("Task coalesced onto running leader: taskId={}, leader={}", task.getId(), leaderId);
+        return true;
+    }
+
+    // The leader never made it to the database, so nothing will ever complete its followers
+    public void release(Task task) {
+        if (!isEnabled(task.getTenantId())) return;
+        try {
+            redisTemplate.execute(releaseScript, List.of(cacheKey(task)), task.getId().toString());
+            UUID followerId;
+            while ((followerId = popFollower(task.getId())) != null) {
+                runIndependently(followerId);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to release result cache key for task {}: {}", task.getId(), e.getMessage());
+        }
+    }
+
+    public void leaderCompleted(Task leader) {
+        if (!isEnabled(leader.getTenantId())) return;
+        UUID followerId;
+        while ((followerId = popFollower(leader.getId())) != null) {
+            completeFollower(followerId, leader);
+        }
+    }
+
+    public void leaderFailed(Task leader) {
+        if (!isEnabled(leader.getTenantId())) return;
+        UUID followerId;
+        while ((followerId = popFollower(leader.getId())) != null) {
+            runIndependently(followerId);
+        }
+    }
+
+    private void follow(UUID leaderId, UUID followerId) {
+        String followers = followersKey(leaderId);
+        redisTemplate.opsForSet().add(followers, followerId.toString());
+        redisTemplate.expire(followers, ttl);
+
+        // The leader may have finished before we registered; whoever removes the follower completes it
+        taskJournal.findCurrent(leaderId).ifPresent(leader -> {
+            boolean finished = leader.getStatus() == TaskStatus.COMPLETED || isFailed(leader);
+            if (!finished) return;
+            Long removed = redisTemplate.opsForSet().remove(followers, followerId.toString());
+            if (removed == null || removed == 0) return;
+            if (leader.getStatus() == TaskStatus.COMPLETED) {
+                completeFollower(followerId, leader);
+            } else {
+                runIndependently(followerId);
+            }
+        });
+    }
+
+    private void completeFollower(UUID followerId, Task leader) {
+        Task follower = transactionTemplate.execute(status -> taskRepository.findById(followerId).map(task -> {
+            completeFromLeader(task, leader);
+            return taskRepository.save(task);
+        }).orElse(null));
+        if (follower == null) return;
+
+        costService.recordCacheSaving(follower.getTenantId(), follower.getTaskType().name());
+        try {
+            StatusUpdate update = new StatusUpdate(followerId, TaskStatus.COMPLETED.name());
+            update.setResult(RawJson.of(leader.getResult()));
+            update.setSourceTaskId(leader.getId());
+            // Routed like a worker's terminal status: to the follower's WebSocket clients and the terminal stream
+            redisTemplate.execute(routeScript,
+                    List.of(StatusChannels.subscribers(followerId), StatusChannels.TERMINAL_STREAM),
+                    objectMapper.writeValueAsString(update), "1", StatusChannels.GATEWAY_PREFIX,
+                    String.valueOf(StatusChannels.TERMINAL_STREAM_MAX_LENGTH));
+        } catch (Exception e) {
+            log.warn("Failed to publish status update for coalesced task {}: {}", followerId, e.getMessage());
+        }
+    }
+
+    private void runIndependently(UUID followerId) {
+        transactionTemplate.executeWithoutResult(status -> taskRepository.findById(followerId).ifPresent(task -> {
+            TaskMessage message = new TaskMessage(task.getId(), task.getTenantId(), task.getTaskType().name(),
+                    task.getPriority(), task.getPayload());
+            message.setRegion(task.getRegion());
+            message.setCreatedAt(task.getCreatedAt());
+            message.setDeadline(task.getDeadline());
+            taskOutbox.enqueue(message);
+        }));
+        log.info("Enqueued follower to run on its own: taskId={}", followerId);
+    }
+
+    private UUID popFollower(UUID leaderId) {
+        String followerId = redisTemplate.opsForSet().pop(followersKey(leaderId));
+        return followerId != null ? UUID.fromString(followerId) : null;
+    }
+
+    // An expired leader produced no result, so its followers run on their own as after a dead letter
+    private static boolean isFailed(Task leader) {
+        return leader.getStatus() == TaskStatus.DEAD_LETTERED || leader.getStatus() == TaskStatus.EXPIRED;
+    }
+
+    private static void completeFromLeader(Task task, Task leader) {
+        task.setStatus(TaskStatus.COMPLETED);
+        task.setResult(leader.getResult());
+        task.setWorkerVersion(leader.getWorkerVersion());
+        task.setCompletedAt(Instant.now());
+    }
+
+    private String cacheKey(Task task) throws Exception {
+        Object payload = canonicalMapper.readValue(task.getPayload(), Object.class);
+        byte[] canonical = canonicalMapper.writeValueAsBytes(payload);
+        MessageDigest digest = sha256();
+        digest.update(task.getTaskType().name().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(canonical);
+        return "result_cache:" + task.getTenantId() + ":" + HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String followersKey(UUID leaderId) {
+        return "result_cache:followers:" + leaderId;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void record(Task task, String result) {
+        costService.recordCacheLookup(task.getTaskType().name(), result);
+    }
+}
@@ -0,0 +1,100 @@
+package com.flik.gateway.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Bloom filter over two generations. A key is remembered for at least one rotation period and at
+ * most two, which matches keys that expire from Redis after the same period. False positives are possible;
+ * false negatives within the retention window are not.
+ */
+class RotatingBloomFilter {
+
+    private final int bits;
+    private final int hashes;
+    private final long rotationNanos;
+
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    RotatingBloomFilter(int expectedKeys, double falsePositiveRate, long rotationNanos) {
+        double ln2 = Math.log(2);
+        this.bits = (int) Math.max(64, Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (ln2 * ln2)));
+        this.hashes = Math.max(1, (int) Math.round((double) bits / expectedKeys * ln2));
+        this.rotationNanos = rotationNanos;
+        this.current = new Generation(bits, System.nanoTime());
+        this.previous = new Generation(bits, System.nanoTime());
+    }
+
+    boolean mightContain(String key) {
+        rotateIfDue();
+        long hash = hash(key);
+        return current.contains(hash) || previous.contains(hash);
+    }
+
+    void put(String key) {
+        rotateIfDue();
+        current.add(hash(key));
+    }
+
+    private void rotateIfDue() {
+        Generation generation = current;
+        if (System.nanoTime() - generation.startedAt < rotationNanos) {
+            return;
+        }
+        synchronized (this) {
+            if (current == generation) {
+                previous = generation;
+                current = new Generation(bits, System.nanoTime());
+            }
+        }
+    }
+
+    // 64-bit FNV-1a, split into two 32-bit halves for Kirsch-Mitzenmacher double hashing
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private final class Generation {
+
+        private final AtomicLongArray words;
+        private final long startedAt;
+
+        Generation(int bits, long startedAt) {
+            this.words = new AtomicLongArray((bits + 63) / 64);
+            this.startedAt = startedAt;
+        }
+
+        void add(long hash) {
+            for (int i = 0; i < hashes; i++) {
+                int bit = index(hash, i);
+                long mask = 1L << bit;
+                int word = bit >>> 6;
+                long value;
+                do {
+                    value = words.get(word);
+                } while ((value & mask) == 0 && !words.compareAndSet(word, value, value | mask));
+            }
+        }
+
+        boolean contains(long hash) {
+            for (int i = 0; i < hashes; i++) {
+                int bit = index(hash, i);
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int index(long hash, int i) {
+            int combined = (int) hash + i * (int) (hash >>> 32);
+            return (combined & Integer.MAX_VALUE) % bits;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.flik.gateway.service;
+
+import com.flik.common.model.Task;
+import com.flik.gateway.repository.OutboxMessage;
+import com.flik.gateway.repository.OutboxRepository;
+import com.flik.gateway.repository.TaskBatchRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces single task writes into multi-row commits on one flusher thread. Rows are buffered per lane, and
+ * each flush takes rows from the most urgent lane that has any, so a P0 row waits at most for the flush
+ * already in progress, never behind a backlog of P2 rows. A batch being gathered is cut short as soon as a
+ * more urgent row arrives. Each lane has its own bounded buffer, so a P2 flood cannot fill the space P0 needs.
+ */
+@Service
+public class TaskGroupCommitWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskGroupCommitWriter.class);
+    // Writes only use the submission lanes, which are declared most urgent first
+    private static final RequestLane[] LANES = RequestLane.values();
+    private static final long IDLE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final TaskBatchRepository taskBatchRepository;
+    private final OutboxRepository outboxRepository;
+    private final TaskJournal taskJournal;
+    private final TransactionTemplate transactionTemplate;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final List<ArrayDeque<PendingWrite>> buffers = new ArrayList<>(LANES.length);
+    private final List<Condition> notFull = new ArrayList<>(LANES.length);
+    private final int capacity;
+    // Rows across all lanes; written under lock
+    private volatile int buffered;
+    private final int maxBatch;
+    private final long maxLatencyNanos;
+    private final long enqueueTimeoutMs;
+    private final DistributionSummary batchSizes;
+    private final Timer flushTimer;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    public TaskGroupCommitWriter(TaskBatchRepository taskBatchRepository, OutboxRepository outboxRepository,
+                                 TaskJournal taskJournal, PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${flik.group-commit.capacity:4096}") int capacity,
+                                 @Value("${flik.group-commit.max-batch:256}") int maxBatch,
+                                 @Value("${flik.group-commit.max-latency-ms:5}") long maxLatencyMs,
+                                 @Value("${flik.group-commit.enqueue-timeout-ms:1000}") long enqueueTimeoutMs) {
+        this.taskBatchRepository = taskBatchRepository;
+        this.outboxRepository = outboxRepository;
+        this.taskJournal = taskJournal;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.capacity = capacity;
+        for (RequestLane lane : LANES) {
+            buffers.add(new ArrayDeque<>());
+            notFull.add(lock.newCondition());
+        }
+        this.maxBatch = maxBatch;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMs);
+        this.enqueueTimeoutMs = enqueueTimeoutMs;
+
+        this.batchSizes = DistributionSummary.builder("flik_task_write_batch_size")
+                .description("Rows written per group commit")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("flik_task_write_flush_seconds")
+                .description("Time to write and commit one group of task rows")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("flik_task_write_buffer_depth", this, writer -> writer.buffered)
+                .register(meterRegistry);
+
+        this.flusher = Thread.ofPlatform().name("task-group-commit").daemon().start(this::runFlusher);
+        log.info("Task group commit initialized: capacity={} per lane, maxBatch={}, maxLatencyMs={}",
+                capacity, maxBatch, maxLatencyMs);
+    }
+
+    // The task row and its outbox message commit in the same transaction, flushed in the lane of the task's priority
+    public CompletableFuture<Void> write(Task task, OutboxMessage outbox) {
+        PendingWrite pending = new PendingWrite(task, outbox, RequestLane.forPriority(task.getPriority()),
+                System.nanoTime(), new CompletableFuture<>());
+        try {
+            if (!running || !enqueue(pending)) {
+                pending.future().completeExceptionally(new RejectedExecutionException("Task write buffer is full"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.future().completeExceptionally(e);
+        }
+        return pending.future();
+    }
+
+    private boolean enqueue(PendingWrite pending) throws InterruptedException {
+        int lane = pending.lane().ordinal();
+        ArrayDeque<PendingWrite> queue = buffers.get(lane);
+        long wait = TimeUnit.MILLISECONDS.toNanos(enqueueTimeoutMs);
+        lock.lockInterruptibly();
+        try {
+            while (queue.size() >= capacity) {
+                if (wait <= 0) return false;
+                wait = notFull.get(lane).awaitNanos(wait);
+            }
+            queue.add(pending);
+            buffered++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void writeAndWait(Task task, OutboxMessage outbox) {
+        try {
+            write(task, outbox).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+
+    // Already-batched callers skip the buffer and commit their rows directly
+    public void writeBatch(List<Task> tasks, List<OutboxMessage> outbox) {
+        batchSizes.record(tasks.size());
+        long start = System.nanoTime();
+        try {
+            persist(tasks, outbox);
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private void runFlusher() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatch);
+        while (running || buffered > 0) {
+            try {
+                collect(batch);
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+                batch.forEach(p -> p.future().completeExceptionally(new RejectedExecutionException("Task writer is shutting down")));
+            } catch (Exception e) {
+                log.error("Group commit flusher error", e);
+            } finally {
+                batch.clear();
+            }
+        }
+        lock.lock();
+        try {
+            for (ArrayDeque<PendingWrite> queue : buffers) {
+                PendingWrite leftover;
+                while ((leftover = queue.poll()) != null) {
+                    leftover.future().completeExceptionally(new RejectedExecutionException("Task writer is shutting down"));
+                }
+            }
+            buffered = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to {@link #IDLE_POLL_NANOS} for a row, then gathers rows from the most urgent non-empty lane until
+     * the batch is full, its oldest row has waited maxLatency, or a more urgent lane has rows.
+     */
+    private void collect(List<PendingWrite> batch) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long idle = IDLE_POLL_NANOS;
+            int lane;
+            while ((lane = mostUrgentLane()) < 0) {
+                if (idle <= 0) return;
+                idle = notEmpty.awaitNanos(idle);
+            }
+            ArrayDeque<PendingWrite> queue = buffers.get(lane);
+            long deadline = queue.peek().enqueuedAt() + maxLatencyNanos;
+            while (true) {
+                PendingWrite next;
+                while (batch.size() < maxBatch && (next = queue.poll()) != null) {
+                    batch.add(next);
+                    buffered--;
+                }
+                notFull.get(lane).signalAll();
+                long remaining = deadline - System.nanoTime();
+                if (batch.size() >= maxBatch || remaining <= 0 || moreUrgentThan(lane)) break;
+                notEmpty.awaitNanos(remaining);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Guarded by lock
+    private int mostUrgentLane() {
+        for (int lane = 0; lane < LANES.length; lane++) {
+            if (!buffers.get(lane).isEmpty()) return lane;
+        }
+        return -1;
+    }
+
+    // Guarded by lock
+    private boolean moreUrgentThan(int lane) {
+        for (int i = 0; i < lane; i++) {
+            if (!buffers.get(i).isEmpty()) return true;
+        }
+        return false;
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        batchSizes.record(batch.size());
+        long start = System.nanoTime();
+        try {
+            persist(batch.stream().map(PendingWrite::task).toList(),
+                    batch.stream().map(PendingWrite::outbox).toList());
+            batch.forEach(p -> p.future().complete(null));
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                batch.get(0).future().completeExceptionally(e);
+            } else {
+                // One bad row fails the whole statement; retry individually so the rest still commit
+                log.warn("Group commit of {} rows failed, retrying row by row: {}", batch.size(), e.getMessage());
+                for (PendingWrite pending : batch) {
+                    try {
+                        persist(List.of(pending.task()), List.of(pending.outbox()));
+                        pending.future().complete(null);
+                    } catch (Exception rowError) {
+                        pending.future().completeExceptionally(rowError);
+                    }
+                }
+            }
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void persist(List<Task> tasks, List<OutboxMessage> outbox) {
+        transactionTemplate.executeWithoutResult(status -> {
+            taskBatchRepository.insertAll(tasks);
+            outboxRepository.insertAll(outbox);
+            taskJournal.recordCreated(tasks);
+        });
+    }
+
+    private record PendingWrite(Task task, OutboxMessage outbox, RequestLane lane, long enqueuedAt,
+                                CompletableFuture<Void> future) {}
+}
@@ -0,0 +1,161 @@
+package com.flik.gateway.service;
+
+import com.flik.common.model.Task;
+import com.flik.gateway.repository.TaskEvent;
+import com.flik.gateway.repository.TaskEventRepository;
+import com.flik.gateway.repository.TaskRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * The task_events journal. With {@code flik.journal.enabled} workers append status transitions instead of
+ * updating the tasks row, new tasks get a QUEUED event, and a scheduled compactor folds the journal into the
+ * tasks rows in bulk, up to a transaction id watermark. Reads through {@link #findCurrent} and
+ * {@link #findAllCurrent} overlay the events not yet compacted, so they see a status as soon as its event commits.
+ *
+ * <p>The compactor runs whether or not the journal is enabled, so events left over from switching it off are
+ * still applied. Aggregate queries on tasks, such as the tier migration, see compacted state only.
+ */
+@Service
+public class TaskJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskJournal.class);
+
+    private final TaskEventRepository taskEventRepository;
+    private final TaskRepository taskRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int maxEvents;
+    private final Duration retention;
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final Counter compacted;
+    private final Timer compaction;
+
+    public TaskJournal(TaskEventRepository taskEventRepository, TaskRepository taskRepository,
+                       EntityManager entityManager, PlatformTransactionManager transactionManager,
+                       MeterRegistry meterRegistry,
+                       @Value("${flik.journal.enabled:false}") boolean enabled,
+                       @Value("${flik.journal.compaction-max-events:10000}") int maxEvents,
+                       @Value("${flik.journal.retention-hours:24}") long retentionHours) {
+        this.taskEventRepository = taskEventRepository;
+        this.taskRepository = taskRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.maxEvents = maxEvents;
+        this.retention = Duration.ofHours(retentionHours);
+
+        this.compacted = Counter.builder("flik_journal_compacted_events_total")
+                .description("Journal events folded into the tasks rows")
+                .register(meterRegistry);
+        this.compaction = Timer.builder("flik_journal_compaction_seconds")
+                .description("Time to compact one batch of journal events")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("flik_journal_compaction_lag_seconds", lagMillis, lag -> lag.get() / 1000.0)
+                .description("Age of the oldest journal event not yet compacted")
+                .register(meterRegistry);
+        log.info("Task journal initialized: enabled={}, maxEvents={}", enabled, maxEvents);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Same transaction as the task rows, see TaskGroupCommitWriter
+    public void recordCreated(List<Task> tasks) {
+        if (enabled) {
+            taskEventRepository.appendCreated(tasks);
+        }
+    }
+
+    public Optional<Task> findCurrent(UUID taskId) {
+        if (!enabled) return taskRepository.findById(taskId);
+        // Read before the row: a compaction in between only makes the overlay re-apply what the row already has
+        long watermark = taskEventRepository.watermark();
+        return taskRepository.findById(taskId).map(task -> overlay(List.of(task), watermark).get(0));
+    }
+
+    public List<Task> findAllCurrent(Supplier<List<Task>> query) {
+        if (!enabled) return query.get();
+        long watermark = taskEventRepository.watermark();
+        List<Task> tasks = query.get();
+        return tasks.isEmpty() ? tasks : overlay(tasks, watermark);
+    }
+
+    public List<TaskEvent> timeline(UUID taskId) {
+        return taskEventRepository.findByTaskId(taskId);
+    }
+
+    @Scheduled(fixedDelayString = "${flik.journal.compaction-interval-ms:1000}")
+    public void compact() {
+        try {
+            int events;
+            do {
+                long start = System.nanoTime();
+                Integer done = transactionTemplate.execute(status -> taskEventRepository.compact(maxEvents));
+                events = done != null ? done : 0;
+                if (events > 0) {
+                    compaction.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    compacted.increment(events);
+                }
+            } while (events >= maxEvents);
+
+            Instant oldest = taskEventRepository.oldestUncompacted();
+            lagMillis.set(oldest != null ? Math.max(0, Duration.between(oldest, Instant.now()).toMillis()) : 0);
+
+            int pruned = taskEventRepository.pruneCompacted(Instant.now().minus(retention), maxEvents);
+            if (pruned > 0) {
+                log.debug("Pruned {} compacted journal events", pruned);
+            }
+        } catch (Exception e) {
+            log.warn("Journal compaction failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    private List<Task> overlay(List<Task> tasks, long watermark) {
+        List<TaskEvent> events = taskEventRepository.findUncompacted(tasks.stream().map(Task::getId).toList(), watermark);
+        if (events.isEmpty()) return tasks;
+
+        Map<UUID, Task> byId = tasks.stream().collect(Collectors.toMap(Task::getId, Function.identity()));
+        for (TaskEvent event : events) {
+            Task task = byId.get(event.taskId());
+            // Detached first, so the overlay is never flushed back over the row by an enclosing transaction
+            if (entityManager.contains(task)) {
+                entityManager.detach(task);
+            }
+            Instant updatedAt = task.getUpdatedAt();
+            task.setStatus(event.status());
+            if (event.result() != null) task.setResult(event.result().getJson());
+            if (event.errorMessage() != null) task.setErrorMessage(event.errorMessage());
+            if (event.retryCount() != null) task.setRetryCount(event.retryCount());
+            if (event.completedAt() != null) task.setCompletedAt(event.completedAt());
+            if (event.workerVersion() != null) task.setWorkerVersion(event.workerVersion());
+            task.setUpdatedAt(event.recordedAt().isAfter(updatedAt) ? event.recordedAt() : updatedAt);
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,62 @@
+package com.flik.gateway.service;
+
+import com.flik.common.constants.QueueConstants;
+import com.flik.common.dto.TaskMessage;
+import com.flik.gateway.repository.OutboxMessage;
+import com.flik.gateway.repository.OutboxRepository;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+@Service
+public class TaskOutbox {
+
+    private final OutboxRepository outboxRepository;
+    private final MessageConverter messageConverter;
+    private final OutboxRelay outboxRelay;
+
+    public TaskOutbox(OutboxRepository outboxRepository, MessageConverter messageConverter,
+                      OutboxRelay outboxRelay) {
+        this.outboxRepository = outboxRepository;
+        this.messageConverter = messageConverter;
+        this.outboxRelay = outboxRelay;
+    }
+
+    public OutboxMessage prepare(TaskMessage message) {
+        String routingKey = QueueConstants.routingKeyForPriority(message.getPriority());
+
+        MessageProperties properties = new MessageProperties();
+        properties.setPriority(QueueConstants.messagePriorityFor(message.getPriority()));
+        properties.setHeader("x-retry-count", 0);
+        properties.setHeader("x-original-routing-key", routingKey);
+        Message amqpMessage = messageConverter.toMessage(message, properties);
+
+        return new OutboxMessage(message.getTaskId(), QueueConstants.TASK_EXCHANGE, routingKey,
+                properties.getPriority(), properties.getContentType(), properties.getHeaders(),
+                amqpMessage.getBody());
+    }
+
+    // Writes the message in the caller's transaction; the relay publishes it once that commits
+    public void enqueue(TaskMessage message) {
+        outboxRepository.insertAll(List.of(prepare(message)));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    outboxRelay.wakeUp();
+                }
+            });
+        } else {
+            outboxRelay.wakeUp();
+        }
+    }
+
+    public void committed() {
+        outboxRelay.wakeUp();
+    }
+}
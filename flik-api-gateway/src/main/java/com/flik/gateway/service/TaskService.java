@@ -1,25 +1,29 @@
 package com.flik.gateway.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.flik.common.constants.QueueConstants;
+import com.flik.common.dto.RawJson;
 import com.flik.common.dto.TaskMessage;
 import com.flik.common.dto.TaskRequest;
 import com.flik.common.dto.TaskResponse;
+import com.flik.common.metrics.TaskMetrics;
 import com.flik.common.model.Task;
 import com.flik.common.model.TaskStatus;
 import com.flik.common.model.TaskType;
+import com.flik.gateway.repository.OutboxMessage;
+import com.flik.gateway.repository.TaskEvent;
 import com.flik.gateway.repository.TaskRepository;
-import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
-import org.springframework.amqp.core.MessagePostProcessor;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
@@ -28,24 +32,31 @@ public class TaskService {
     private static final Logger log = LoggerFactory.getLogger(TaskService.class);
 
     private final TaskRepository taskRepository;
-    private final RabbitTemplate rabbitTemplate;
-    private final ObjectMapper objectMapper;
-    private final MeterRegistry meterRegistry;
+    private final TaskGroupCommitWriter taskWriter;
+    private final TaskOutbox taskOutbox;
+    private final TaskMetrics taskMetrics;
+    private final DistributionSummary batchSize;
     private final RegionRoutingService regionRouting;
     private final CostService costService;
     private final TieredStorageService tieredStorage;
+    private final ResultCacheService resultCache;
+    private final TaskJournal taskJournal;
 
-    public TaskService(TaskRepository taskRepository, RabbitTemplate rabbitTemplate,
-                       ObjectMapper objectMapper, MeterRegistry meterRegistry,
+    public TaskService(TaskRepository taskRepository, TaskGroupCommitWriter taskWriter,
+                       TaskOutbox taskOutbox, TaskMetrics taskMetrics, MeterRegistry meterRegistry,
                        RegionRoutingService regionRouting, CostService costService,
-                       TieredStorageService tieredStorage) {
+                       TieredStorageService tieredStorage, ResultCacheService resultCache,
+                       TaskJournal taskJournal) {
         this.taskRepository = taskRepository;
-        this.rabbitTemplate = rabbitTemplate;
-        this.objectMapper = objectMapper;
-        this.meterRegistry = meterRegistry;
+        this.taskWriter = taskWriter;
+        this.taskOutbox = taskOutbox;
+        this.taskMetrics = taskMetrics;
+        this.batchSize = DistributionSummary.builder("flik_task_batch_size").register(meterRegistry);
         this.regionRouting = regionRouting;
         this.costService = costService;
         this.tieredStorage = tieredStorage;
+        this.resultCache = resultCache;
+        this.taskJournal = taskJournal;
     }
 
     public TaskResponse submitTask(TaskRequest request) {
@@ -55,69 +66,81 @@ public class TaskService {
         MDC.put("taskId", taskId.toString());
         MDC.put("tenantId", request.getTenantId());
 
+        // Regions with a peer gateway are forwarded before reaching here; the rest run on shared infrastructure
         String targetRegion = regionRouting.resolveRegion(request.getRegion());
-        regionRouting.simulateInterRegionLatency(targetRegion);
+        regionRouting.recordCrossRegion(targetRegion);
+
+        String payloadJson = toPayloadJson(request.getPayload());
+        Task task = buildTask(taskId, taskType, request, targetRegion, payloadJson);
+        if (resultCache.tryServe(task)) {
+            recordSubmitted(taskType, request);
+            MDC.clear();
+            return toAcceptedResponse(task);
+        }
 
-        String payloadJson;
         try {
-            payloadJson = objectMapper.writeValueAsString(request.getPayload());
-        } catch (JsonProcessingException e) {
-            payloadJson = "{}";
+            taskWriter.writeAndWait(task, taskOutbox.prepare(buildMessage(task, payloadJson)));
+        } catch (RuntimeException e) {
+            resultCache.release(task);
+            throw e;
         }
+        taskOutbox.committed();
 
-        Task task = new Task(taskId, request.getTenantId(), taskType, request.getPriority(), payloadJson);
-        task.setStatus(TaskStatus.QUEUED);
-        task.setRegion(targetRegion);
-        if (request.getDagId() != null) task.setDagId(UUID.fromString(request.getDagId()));
-        if (request.getParentTaskId() != null) task.setParentTaskId(UUID.fromString(request.getParentTaskId()));
-        taskRepository.save(task);
+        recordSubmitted(taskType, request);
 
-        TaskMessage message = new TaskMessage(
-                taskId, request.getTenantId(), request.getTaskType().toUpperCase(),
-                request.getPriority(), payloadJson);
-        message.setRegion(targetRegion);
+        log.info("Task submitted: taskId={}, type={}, priority={}", taskId, taskType, request.getPriority());
+        MDC.clear();
 
-        String routingKey = QueueConstants.routingKeyForPriority(request.getPriority());
+        return toAcceptedResponse(task);
+    }
 
-        MessagePostProcessor prioritySetter = msg -> {
-            msg.getMessageProperties().setPriority(mapPriorityToRabbitMQ(request.getPriority()));
-            msg.getMessageProperties().setHeader("x-retry-count", 0);
-            msg.getMessageProperties().setHeader("x-original-routing-key", routingKey);
-            return msg;
-        };
+    public List<TaskResponse> submitBatch(List<TaskRequest> requests) {
+        List<Task> tasks = new ArrayList<>(requests.size());
+        List<OutboxMessage> outbox = new ArrayList<>(requests.size());
+        Set<String> remoteRegions = new HashSet<>();
 
-        rabbitTemplate.convertAndSend(QueueConstants.TASK_EXCHANGE, routingKey, message, prioritySetter);
+        for (TaskRequest request : requests) {
+            TaskType taskType = TaskType.valueOf(request.getTaskType().toUpperCase());
+            String targetRegion = regionRouting.resolveRegion(request.getRegion());
+            if (!regionRouting.isLocalRegion(targetRegion) && remoteRegions.add(targetRegion)) {
+                regionRouting.recordCrossRegion(targetRegion);
+            }
 
-        Counter.builder("flik_tasks_submitted_total")
-                .tag("type", taskType.name())
-                .tag("priority", String.valueOf(request.getPriority()))
-                .tag("tenant", request.getTenantId())
-                .register(meterRegistry).increment();
+            String payloadJson = toPayloadJson(request.getPayload());
+            Task task = buildTask(UUID.randomUUID(), taskType, request, targetRegion, payloadJson);
+            tasks.add(task);
+            outbox.add(taskOutbox.prepare(buildMessage(task, payloadJson)));
+        }
 
-        log.info("Task submitted: taskId={}, type={}, priority={}", taskId, taskType, request.getPriority());
-        MDC.clear();
+        taskWriter.writeBatch(tasks, outbox);
+        taskOutbox.committed();
 
-        TaskResponse response = new TaskResponse();
-        response.setTaskId(taskId);
-        response.setStatus(TaskStatus.QUEUED.name());
-        response.setTaskType(taskType.name());
-        response.setRegion(targetRegion);
-        response.setCreatedAt(task.getCreatedAt());
-        return response;
+        List<TaskResponse> responses = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            recordSubmitted(tasks.get(i).getTaskType(), requests.get(i));
+            responses.add(toAcceptedResponse(tasks.get(i)));
+        }
+
+        batchSize.record(tasks.size());
+
+        log.info("Task batch submitted: size={}", tasks.size());
+        return responses;
     }
 
     public Optional<TaskResponse> getTask(UUID taskId) {
-        return taskRepository.findById(taskId).map(task -> {
+        return taskJournal.findCurrent(taskId).map(task -> {
             TaskResponse resp = toResponse(task);
-            tieredStorage.getResult(taskId).ifPresent(cached -> {
-                try {
-                    resp.setResult(objectMapper.readValue(cached, Object.class));
-                } catch (JsonProcessingException ignored) {}
-            });
+            tieredStorage.getResult(taskId).ifPresent(cached -> resp.setResult(RawJson.of(cached)));
             return resp;
         });
     }
 
+    // Empty for an unknown task; events are only recorded while the journal is enabled, and kept for its retention
+    public Optional<List<TaskEvent>> getEvents(UUID taskId) {
+        if (!taskRepository.existsById(taskId)) return Optional.empty();
+        return Optional.of(taskJournal.timeline(taskId));
+    }
+
     private TaskResponse toResponse(Task task) {
         TaskResponse response = new TaskResponse();
         response.setTaskId(task.getId());
@@ -136,23 +159,63 @@ public class TaskService {
         response.setCreatedAt(task.getCreatedAt());
         response.setUpdatedAt(task.getUpdatedAt());
         response.setCompletedAt(task.getCompletedAt());
-        try {
-            if (task.getPayload() != null) {
-                response.setPayload(objectMapper.readValue(task.getPayload(), Object.class));
-            }
-            if (task.getResult() != null) {
-                response.setResult(objectMapper.readValue(task.getResult(), Object.class));
-            }
-        } catch (JsonProcessingException ignored) {}
+        response.setDeadline(task.getDeadline());
+        // Stored as JSON text already, so the response writes it through without re-parsing
+        response.setPayload(RawJson.of(task.getPayload()));
+        response.setResult(RawJson.of(task.getResult()));
         return response;
     }
 
-    private int mapPriorityToRabbitMQ(int priority) {
-        return switch (priority) {
-            case 0 -> 10;
-            case 1 -> 5;
-            case 2 -> 1;
-            default -> 1;
-        };
+    private static String toPayloadJson(RawJson payload) {
+        return payload != null ? payload.getJson() : "null";
     }
+
+    private Task buildTask(UUID taskId, TaskType taskType, TaskRequest request, String targetRegion, String payloadJson) {
+        Task task = new Task(taskId, request.getTenantId(), taskType, request.getPriority(), payloadJson);
+        task.setStatus(TaskStatus.QUEUED);
+        task.setRegion(targetRegion);
+        if (request.getDagId() != null) task.setDagId(UUID.fromString(request.getDagId()));
+        if (request.getParentTaskId() != null) task.setParentTaskId(UUID.fromString(request.getParentTaskId()));
+        task.setDeadline(resolveDeadline(request, task.getCreatedAt()));
+        return task;
+    }
+
+    // The earlier of the absolute deadline and the max queue age, or null if the request set neither
+    private static Instant resolveDeadline(TaskRequest request, Instant createdAt) {
+        Instant deadline = request.getDeadline();
+        if (request.getMaxQueueAgeMs() != null) {
+            Instant byAge = createdAt.plusMillis(request.getMaxQueueAgeMs());
+            if (deadline == null || byAge.isBefore(deadline)) deadline = byAge;
+        }
+        return deadline;
+    }
+
+    private TaskMessage buildMessage(Task task, String payloadJson) {
+        TaskMessage message = new TaskMessage(
+                task.getId(), task.getTenantId(), task.getTaskType().name(),
+                task.getPriority(), payloadJson);
+        message.setRegion(task.getRegion());
+        message.setDagId(task.getDagId());
+        message.setParentTaskId(task.getParentTaskId());
+        message.setCreatedAt(task.getCreatedAt());
+        message.setDeadline(task.getDeadline());
+        return message;
+    }
+
+    private void recordSubmitted(TaskType taskType, TaskRequest request) {
+        taskMetrics.taskSubmitted(taskType, request.getPriority(), request.getTenantId());
+    }
+
+    private TaskResponse toAcceptedResponse(Task task) {
+        TaskResponse response = new TaskResponse();
+        response.setTaskId(task.getId());
+        response.setStatus(task.getStatus().name());
+        response.setTaskType(task.getTaskType().name());
+        response.setRegion(task.getRegion());
+        response.setCreatedAt(task.getCreatedAt());
+        response.setDeadline(task.getDeadline());
+        response.setResult(RawJson.of(task.getResult()));
+        return response;
+    }
+
 }
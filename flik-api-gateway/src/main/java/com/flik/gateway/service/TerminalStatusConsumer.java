@@ -0,0 +1,181 @@
+package com.flik.gateway.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flik.common.constants.StatusChannels;
+import com.flik.common.dto.StatusUpdate;
+import com.flik.gateway.websocket.TaskSubscriptionRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.Record;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands terminal task statuses to {@link DagCompletionListener}. They are read from the terminal stream as one
+ * consumer of a group every gateway joins, so each event is acted on by one gateway however many run. A batch
+ * is acknowledged once handled; events left pending by a gateway that stopped first are claimed by another
+ * after {@code flik.status-routing.claim-idle-ms}, so an event may be handled twice but is not lost.
+ */
+@Service
+public class TerminalStatusConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(TerminalStatusConsumer.class);
+
+    private static final Duration BLOCK = Duration.ofSeconds(2);
+    private static final long RETRY_BACKOFF_MS = 1000;
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final DagCompletionListener dagCompletionListener;
+    private final Consumer consumer;
+    private final int batchSize;
+    private final Duration claimIdle;
+    private final Counter received;
+    private final Counter claimed;
+    private volatile Thread readerThread;
+    private volatile boolean running;
+
+    public TerminalStatusConsumer(StringRedisTemplate redisTemplate, ObjectMapper objectMapper,
+                                  DagCompletionListener dagCompletionListener,
+                                  TaskSubscriptionRegistry subscriptions, MeterRegistry meterRegistry,
+                                  @Value("${flik.status-routing.read-batch:100}") int batchSize,
+                                  @Value("${flik.status-routing.claim-idle-ms:60000}") long claimIdleMs) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.dagCompletionListener = dagCompletionListener;
+        this.consumer = Consumer.from(StatusChannels.TERMINAL_GROUP, subscriptions.gatewayId());
+        this.batchSize = batchSize;
+        this.claimIdle = Duration.ofMillis(claimIdleMs);
+
+        this.received = Counter.builder("flik_status_events_received_total")
+                .description("Task status events received from Redis")
+                .tag("channel", "terminal")
+                .register(meterRegistry);
+        this.claimed = Counter.builder("flik_status_terminal_claimed_total")
+                .description("Terminal status events claimed from another gateway that did not acknowledge them")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        createGroup();
+        running = true;
+        readerThread = Thread.ofPlatform().name("terminal-status-consumer").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (readerThread != null) readerThread.join(BLOCK.toMillis() + TimeUnit.SECONDS.toMillis(3));
+    }
+
+    private void run() {
+        StreamOffset<String> offset = StreamOffset.create(StatusChannels.TERMINAL_STREAM, ReadOffset.lastConsumed());
+        StreamReadOptions options = StreamReadOptions.empty().count(batchSize).block(BLOCK);
+        while (running) {
+            try {
+                List<MapRecord<String, String, String>> records = stream().read(consumer, options, offset);
+                if (records != null && !records.isEmpty()) handle(records);
+            } catch (Exception e) {
+                log.warn("Failed to read terminal statuses, will retry: {}", e.getMessage());
+                // The group is gone if Redis lost the stream
+                createGroup();
+                sleepQuietly(RETRY_BACKOFF_MS);
+            }
+        }
+    }
+
+    // An event that fails is logged and acknowledged with the rest, as DagCompletionListener does not retry either
+    void handle(List<MapRecord<String, String, String>> records) {
+        for (MapRecord<String, String, String> record : records) {
+            received.increment();
+            try {
+                String event = record.getValue().get(StatusChannels.EVENT_FIELD);
+                dagCompletionListener.onStatusUpdate(objectMapper.readValue(event, StatusUpdate.class));
+            } catch (Exception e) {
+                log.error("Failed to process terminal status {} from Redis", record.getId(), e);
+            }
+        }
+        stream().acknowledge(StatusChannels.TERMINAL_STREAM, StatusChannels.TERMINAL_GROUP,
+                records.stream().map(Record::getId).toArray(RecordId[]::new));
+    }
+
+    // Includes this gateway's own pending events, which it never reads again once a batch failed to acknowledge
+    @Scheduled(fixedDelayString = "${flik.status-routing.claim-interval-ms:30000}")
+    public void claimAbandoned() {
+        try {
+            StreamOperations<String, String, String> stream = stream();
+            List<RecordId> idle = new ArrayList<>();
+            for (PendingMessage message : stream.pending(StatusChannels.TERMINAL_STREAM, StatusChannels.TERMINAL_GROUP,
+                    Range.unbounded(), batchSize)) {
+                if (message.getElapsedTimeSinceLastDelivery().compareTo(claimIdle) >= 0) idle.add(message.getId());
+            }
+            if (!idle.isEmpty()) {
+                List<MapRecord<String, String, String>> records = stream.claim(StatusChannels.TERMINAL_STREAM,
+                        StatusChannels.TERMINAL_GROUP, consumer.getName(), claimIdle, idle.toArray(RecordId[]::new));
+                if (!records.isEmpty()) {
+                    claimed.increment(records.size());
+                    handle(records);
+                }
+            }
+            removeIdleConsumers(stream);
+        } catch (Exception e) {
+            log.warn("Failed to claim abandoned terminal statuses: {}", e.getMessage());
+        }
+    }
+
+    // A gateway with a random id joins as a new consumer each start; one holding nothing and not reading is gone
+    private void removeIdleConsumers(StreamOperations<String, String, String> stream) {
+        stream.consumers(StatusChannels.TERMINAL_STREAM, StatusChannels.TERMINAL_GROUP).stream()
+                .filter(info -> !info.consumerName().equals(consumer.getName()))
+                .filter(info -> info.pendingCount() == 0 && info.idleTimeMs() >= claimIdle.toMillis())
+                .forEach(info -> stream.deleteConsumer(StatusChannels.TERMINAL_STREAM,
+                        Consumer.from(StatusChannels.TERMINAL_GROUP, info.consumerName())));
+    }
+
+    // From the start of the stream, so events added while the group was missing are still handled
+    void createGroup() {
+        byte[] key = StatusChannels.TERMINAL_STREAM.getBytes(StandardCharsets.UTF_8);
+        try {
+            redisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(key, StatusChannels.TERMINAL_GROUP, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            // BUSYGROUP when another gateway created it first
+            log.debug("Terminal status group not created: {}", e.getMessage());
+        }
+    }
+
+    private StreamOperations<String, String, String> stream() {
+        return redisTemplate.opsForStream();
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,18 +1,22 @@
 package com.flik.gateway.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flik.common.compression.PayloadCompressor;
 import com.flik.common.dto.TaskResponse;
+import com.flik.common.metrics.TaskMetrics;
 import com.flik.common.model.Task;
 import com.flik.gateway.repository.TaskRepository;
-import io.micrometer.core.instrument.Counter;
-import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Optional;
@@ -29,19 +33,28 @@ public class TieredStorageService {
     private final StringRedisTemplate redisTemplate;
     private final TaskRepository taskRepository;
     private final ObjectMapper objectMapper;
-    private final MeterRegistry meterRegistry;
+    private final TaskMetrics taskMetrics;
+    private final PayloadCompressor compressor;
+    private final TaskJournal taskJournal;
 
     public TieredStorageService(StringRedisTemplate redisTemplate, TaskRepository taskRepository,
-                                ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+                                ObjectMapper objectMapper, TaskMetrics taskMetrics,
+                                PayloadCompressor compressor, TaskJournal taskJournal) {
         this.redisTemplate = redisTemplate;
         this.taskRepository = taskRepository;
         this.objectMapper = objectMapper;
-        this.meterRegistry = meterRegistry;
+        this.taskMetrics = taskMetrics;
+        this.compressor = compressor;
+        this.taskJournal = taskJournal;
     }
 
+    // Written as raw bytes so large results can be stored compressed; plain values read back unchanged
     public void cacheResult(UUID taskId, String resultJson) {
         try {
-            redisTemplate.opsForValue().set("result:" + taskId, resultJson, HOT_TTL);
+            byte[] key = resultKey(taskId);
+            byte[] value = compressor.encode(resultJson);
+            redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                    .set(key, value, Expiration.from(HOT_TTL), RedisStringCommands.SetOption.upsert()));
         } catch (Exception e) {
             log.warn("Failed to cache result in Redis for task {}: {}", taskId, e.getMessage());
         }
@@ -49,19 +62,21 @@ public class TieredStorageService {
 
     public Optional<String> getResult(UUID taskId) {
         try {
-            String cached = redisTemplate.opsForValue().get("result:" + taskId);
+            byte[] key = resultKey(taskId);
+            byte[] cached = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                    connection.stringCommands().get(key));
             if (cached != null) {
-                Counter.builder("flik_storage_hits_total").tag("tier", "HOT").register(meterRegistry).increment();
-                return Optional.of(cached);
+                taskMetrics.storageHit("HOT");
+                return Optional.of(compressor.decode(cached));
             }
         } catch (Exception e) {
             log.warn("Redis cache lookup failed for task {}", taskId);
         }
 
-        Optional<Task> task = taskRepository.findById(taskId);
+        Optional<Task> task = taskJournal.findCurrent(taskId);
         if (task.isPresent() && task.get().getResult() != null) {
             String tier = task.get().getStorageTier();
-            Counter.builder("flik_storage_hits_total").tag("tier", tier != null ? tier : "WARM").register(meterRegistry).increment();
+            taskMetrics.storageHit(tier);
 
             if ("COLD".equals(tier)) {
                 log.info("Cold storage retrieval for task {}, promoting to warm", taskId);
@@ -74,7 +89,7 @@ public class TieredStorageService {
             return Optional.of(task.get().getResult());
         }
 
-        Counter.builder("flik_storage_hits_total").tag("tier", "MISS").register(meterRegistry).increment();
+        taskMetrics.storageHit("MISS");
         return Optional.empty();
     }
 
@@ -93,4 +108,8 @@ public class TieredStorageService {
             log.info("Migrated {} tasks from WARM to COLD", archived);
         }
     }
+
+    private static byte[] resultKey(UUID taskId) {
+        return ("result:" + taskId).getBytes(StandardCharsets.UTF_8);
+    }
 }
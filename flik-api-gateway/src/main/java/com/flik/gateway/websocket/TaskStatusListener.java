@@ -2,17 +2,24 @@ package com.flik.gateway.websocket;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.flik.common.dto.StatusUpdate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.connection.MessageListener;
-import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Component;
 
 import jakarta.annotation.PostConstruct;
 
+/**
+ * The gateway's one Redis subscriber for task status. It reads this gateway's own channel, which carries
+ * statuses only for tasks its WebSocket clients watch (see {@link TaskSubscriptionRegistry}), and forwards
+ * each to them. Terminal statuses are acted on separately, by {@link com.flik.gateway.service.TerminalStatusConsumer}.
+ */
 @Component
 public class TaskStatusListener implements MessageListener {
 
@@ -21,27 +28,35 @@ public class TaskStatusListener implements MessageListener {
     private final RedisMessageListenerContainer listenerContainer;
     private final SimpMessagingTemplate messagingTemplate;
     private final ObjectMapper objectMapper;
+    private final TaskSubscriptionRegistry subscriptions;
+    private final Counter routedEvents;
 
     public TaskStatusListener(RedisMessageListenerContainer listenerContainer,
                               SimpMessagingTemplate messagingTemplate,
-                              ObjectMapper objectMapper) {
+                              ObjectMapper objectMapper,
+                              TaskSubscriptionRegistry subscriptions,
+                              MeterRegistry meterRegistry) {
         this.listenerContainer = listenerContainer;
         this.messagingTemplate = messagingTemplate;
         this.objectMapper = objectMapper;
+        this.subscriptions = subscriptions;
+        this.routedEvents = Counter.builder("flik_status_events_received_total")
+                .description("Task status events received from Redis")
+                .tag("channel", "gateway")
+                .register(meterRegistry);
     }
 
     @PostConstruct
     public void subscribe() {
-        listenerContainer.addMessageListener(this, new PatternTopic("task:*"));
+        listenerContainer.addMessageListener(this, new ChannelTopic(subscriptions.channel()));
     }
 
     @Override
     public void onMessage(Message message, byte[] pattern) {
         try {
-            String body = new String(message.getBody());
-            StatusUpdate update = objectMapper.readValue(body, StatusUpdate.class);
-            String destination = "/topic/tasks/" + update.getTaskId();
-            messagingTemplate.convertAndSend(destination, update);
+            StatusUpdate update = objectMapper.readValue(message.getBody(), StatusUpdate.class);
+            routedEvents.increment();
+            messagingTemplate.convertAndSend(TaskSubscriptionRegistry.TOPIC_PREFIX + update.getTaskId(), update);
         } catch (Exception e) {
             log.error("Failed to process status update from Redis", e);
         }
@@ -0,0 +1,202 @@
+package com.flik.gateway.websocket;
+
+import com.flik.common.constants.StatusChannels;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tracks which tasks this gateway's WebSocket clients watch and registers the gateway in each task's
+ * subscriber set in Redis, so workers publish the task's statuses to this gateway's channel.
+ * Entries expire unless refreshed, so a gateway that dies without unsubscribing stops receiving events.
+ */
+@Component
+public class TaskSubscriptionRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskSubscriptionRegistry.class);
+
+    static final String TOPIC_PREFIX = "/topic/tasks/";
+
+    private final StringRedisTemplate redisTemplate;
+    private final String gatewayId;
+    private final Duration ttl;
+    // sessionId -> subscriptionId -> taskId, and how many local subscriptions each task has
+    private final Map<String, Map<String, UUID>> sessions = new HashMap<>();
+    private final Map<UUID, Integer> subscribers = new HashMap<>();
+    // Orders the Redis writes; held across a call, unlike the monitor guarding the maps
+    private final ReentrantLock redisLock = new ReentrantLock();
+
+    public TaskSubscriptionRegistry(StringRedisTemplate redisTemplate, MeterRegistry meterRegistry,
+                                    @Value("${flik.status-routing.gateway-id:}") String gatewayId,
+                                    @Value("${flik.status-routing.subscription-ttl-seconds:300}") long ttlSeconds) {
+        this.redisTemplate = redisTemplate;
+        this.gatewayId = gatewayId.isBlank() ? UUID.randomUUID().toString() : gatewayId;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+
+        Gauge.builder("flik_ws_subscribed_tasks", this, TaskSubscriptionRegistry::subscribedTasks)
+                .description("Tasks with at least one WebSocket subscriber on this gateway")
+                .register(meterRegistry);
+        log.info("Task subscription registry initialized: gatewayId={}, ttlSeconds={}", this.gatewayId, ttlSeconds);
+    }
+
+    public String gatewayId() {
+        return gatewayId;
+    }
+
+    public String channel() {
+        return StatusChannels.gateway(gatewayId);
+    }
+
+    public synchronized boolean isSubscribed(UUID taskId) {
+        return subscribers.containsKey(taskId);
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        subscribed(headers.getSessionId(), headers.getSubscriptionId(), headers.getDestination());
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        unsubscribed(headers.getSessionId(), headers.getSubscriptionId());
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        disconnected(event.getSessionId());
+    }
+
+    void subscribed(String sessionId, String subscriptionId, String destination) {
+        UUID taskId = parseTaskId(destination);
+        if (sessionId == null || subscriptionId == null || taskId == null) return;
+        List<UUID> changed = new ArrayList<>(2);
+        synchronized (this) {
+            // A reused subscription id replaces its earlier destination
+            UUID previous = sessions.computeIfAbsent(sessionId, id -> new HashMap<>()).put(subscriptionId, taskId);
+            if (subscribers.merge(taskId, 1, Integer::sum) == 1) changed.add(taskId);
+            if (previous != null && release(previous)) changed.add(previous);
+        }
+        if (!changed.isEmpty()) sync(changed);
+    }
+
+    void unsubscribed(String sessionId, String subscriptionId) {
+        UUID released = null;
+        synchronized (this) {
+            Map<String, UUID> subscriptions = sessions.get(sessionId);
+            if (subscriptions == null) return;
+            UUID taskId = subscriptions.remove(subscriptionId);
+            if (subscriptions.isEmpty()) sessions.remove(sessionId);
+            if (taskId != null && release(taskId)) released = taskId;
+        }
+        if (released != null) sync(List.of(released));
+    }
+
+    void disconnected(String sessionId) {
+        List<UUID> released;
+        synchronized (this) {
+            Map<String, UUID> subscriptions = sessions.remove(sessionId);
+            if (subscriptions == null) return;
+            released = subscriptions.values().stream().filter(this::release).toList();
+        }
+        if (!released.isEmpty()) sync(released);
+    }
+
+    // Re-adds every entry too, so one lost to a failed call or a Redis restart comes back within an interval
+    @Scheduled(fixedDelayString = "${flik.status-routing.refresh-interval-ms:60000}")
+    public void refresh() {
+        redisLock.lock();
+        try {
+            Set<UUID> taskIds;
+            synchronized (this) {
+                taskIds = Set.copyOf(subscribers.keySet());
+            }
+            if (taskIds.isEmpty()) return;
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                taskIds.forEach(taskId -> add(connection, taskId));
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("Failed to refresh task subscriptions: {}", e.getMessage());
+        } finally {
+            redisLock.unlock();
+        }
+    }
+
+    synchronized int subscribedTasks() {
+        return subscribers.size();
+    }
+
+    // Caller holds the lock; true if that was the task's last local subscription
+    private boolean release(UUID taskId) {
+        Integer remaining = subscribers.computeIfPresent(taskId, (id, count) -> count > 1 ? count - 1 : null);
+        return remaining == null;
+    }
+
+    // Writes whether each task is subscribed as of now, not as of the change that called it. Calls run one at a
+    // time, so when a subscribe and an unsubscribe race, the one writing last also reads last and its write
+    // is the current state, rather than a stale SADD landing after the SREM.
+    private void sync(List<UUID> taskIds) {
+        redisLock.lock();
+        try {
+            Map<UUID, Boolean> subscribed = new HashMap<>();
+            synchronized (this) {
+                taskIds.forEach(taskId -> subscribed.put(taskId, subscribers.containsKey(taskId)));
+            }
+            byte[] member = gatewayId.getBytes(StandardCharsets.UTF_8);
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                subscribed.forEach((taskId, add) -> {
+                    if (add) add(connection, taskId);
+                    else connection.setCommands().sRem(key(taskId), member);
+                });
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("Failed to update {} task subscriptions: {}", taskIds.size(), e.getMessage());
+        } finally {
+            redisLock.unlock();
+        }
+    }
+
+    private void add(RedisConnection connection, UUID taskId) {
+        byte[] key = key(taskId);
+        connection.setCommands().sAdd(key, gatewayId.getBytes(StandardCharsets.UTF_8));
+        connection.keyCommands().expire(key, ttl.toSeconds());
+    }
+
+    private static byte[] key(UUID taskId) {
+        return StatusChannels.subscribers(taskId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static UUID parseTaskId(String destination) {
+        if (destination == null || !destination.startsWith(TOPIC_PREFIX)) return null;
+        try {
+            return UUID.fromString(destination.substring(TOPIC_PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
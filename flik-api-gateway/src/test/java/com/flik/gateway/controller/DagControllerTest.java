@@ -2,13 +2,19 @@ package com.flik.gateway.controller;
 
 import com.flik.common.dto.DagResponse;
 import com.flik.common.dto.TaskResponse;
+import com.flik.gateway.service.ConcurrencyLimiter;
 import com.flik.gateway.service.CostService;
 import com.flik.gateway.service.DagService;
+import com.flik.gateway.service.IdempotencyService;
 import com.flik.gateway.service.RateLimitService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalMatchers;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
@@ -19,15 +25,28 @@ import java.util.Optional;
 import java.util.UUID;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(DagController.class)
-@Import(SecurityConfig.class)
+@Import({SecurityConfig.class, DagControllerTest.LimiterConfig.class})
 class DagControllerTest {
 
+    @TestConfiguration
+    static class LimiterConfig {
+        @Bean
+        ConcurrencyLimiter concurrencyLimiter() {
+            return new ConcurrencyLimiter(new SimpleMeterRegistry(), 100, 10, 1000, 250);
+        }
+    }
+
     @Autowired
     private MockMvc mockMvc;
 
@@ -40,11 +59,14 @@ class DagControllerTest {
     @MockBean
     private CostService costService;
 
+    @MockBean
+    private IdempotencyService idempotencyService;
+
     private static final String AUTH_HEADER = "Bearer test-token";
 
     @Test
     void submitDag_returns202_whenValid() throws Exception {
-        when(rateLimitService.isAllowed(any())).thenReturn(true);
+        when(rateLimitService.tryAcquire(any(), anyDouble())).thenReturn(RateLimitService.Decision.allow(10));
 
         UUID dagId = UUID.randomUUID();
         DagResponse resp = new DagResponse();
@@ -71,6 +93,94 @@ class DagControllerTest {
                 .andExpect(status().isAccepted())
                 .andExpect(jsonPath("$.dagId").value(dagId.toString()))
                 .andExpect(jsonPath("$.status").value("RUNNING"));
+
+        // Charged once, for the cost of every step
+        verify(rateLimitService).tryAcquire(eq("tenant-1"), AdditionalMatchers.eq(0.011, 1e-9));
+    }
+
+    @Test
+    void submitDag_returns429WithRetryAfter_whenRateLimited() throws Exception {
+        when(rateLimitService.tryAcquire(any(), anyDouble())).thenReturn(RateLimitService.Decision.deny(3200));
+
+        String body = """
+                {"tenantId": "tenant-1", "priority": 0, "steps": [{"taskType": "VIDEO"}]}
+                """;
+
+        mockMvc.perform(post("/api/v1/dags")
+                        .header("Authorization", AUTH_HEADER)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "4"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void submitDag_replaysOriginalResponse_forRepeatedIdempotencyKey() throws Exception {
+        DagResponse original = new DagResponse();
+        original.setDagId(UUID.randomUUID());
+        original.setStatus("RUNNING");
+        original.setTasks(List.of());
+        IdempotencyService.Claim<DagResponse> claim = mock(IdempotencyService.Claim.class);
+        when(claim.replay()).thenReturn(original);
+        when(idempotencyService.claim(eq("dag"), eq("tenant-1"), eq("dag-retry-1"), any(), eq(DagResponse.class)))
+                .thenReturn(claim);
+
+        String body = """
+                {"tenantId": "tenant-1", "priority": 0, "steps": [{"taskType": "TEXT"}]}
+                """;
+
+        mockMvc.perform(post("/api/v1/dags")
+                        .header("Authorization", AUTH_HEADER)
+                        .header("Idempotency-Key", "dag-retry-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.dagId").value(original.getDagId().toString()));
+
+        verify(rateLimitService, never()).tryAcquire(any(), anyDouble());
+        verify(dagService, never()).submitDag(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void submitDag_storesResponseUnderIdempotencyKey_whenFirstSubmitted() throws Exception {
+        when(rateLimitService.tryAcquire(any(), anyDouble())).thenReturn(RateLimitService.Decision.allow(10));
+        DagResponse response = new DagResponse();
+        response.setDagId(UUID.randomUUID());
+        response.setStatus("RUNNING");
+        response.setTasks(List.of());
+        when(dagService.submitDag(any())).thenReturn(response);
+        IdempotencyService.Claim<DagResponse> claim = mock(IdempotencyService.Claim.class);
+        when(idempotencyService.claim(any(), any(), any(), any(), eq(DagResponse.class))).thenReturn(claim);
+
+        String body = """
+                {"tenantId": "tenant-1", "priority": 0, "steps": [{"taskType": "TEXT"}]}
+                """;
+
+        mockMvc.perform(post("/api/v1/dags")
+                        .header("Authorization", AUTH_HEADER)
+                        .header("Idempotency-Key", "dag-retry-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isAccepted());
+
+        verify(claim).complete(response);
+        verify(claim, never()).release();
+    }
+
+    @Test
+    void submitDag_returns400_whenPriorityNegative() throws Exception {
+        String body = """
+                {"tenantId": "tenant-1", "priority": -1, "steps": [{"taskType": "TEXT"}]}
+                """;
+
+        mockMvc.perform(post("/api/v1/dags")
+                        .header("Authorization", AUTH_HEADER)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isBadRequest());
+        verify(dagService, never()).submitDag(any());
     }
 
     @Test
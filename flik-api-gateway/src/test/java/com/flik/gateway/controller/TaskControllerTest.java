@@ -1,10 +1,19 @@
 package com.flik.gateway.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flik.common.constants.CostConstants;
+import com.flik.common.dto.RawJson;
 import com.flik.common.dto.TaskRequest;
 import com.flik.common.dto.TaskResponse;
+import com.flik.common.metrics.TaskMetrics;
+import com.flik.common.model.TaskStatus;
+import com.flik.gateway.repository.TaskEvent;
+import com.flik.gateway.service.ConcurrencyLimiter;
 import com.flik.gateway.service.CostService;
+import com.flik.gateway.service.IdempotencyService;
 import com.flik.gateway.service.RateLimitService;
+import com.flik.gateway.service.RegionForwarder;
+import com.flik.gateway.service.RequestLane;
 import com.flik.gateway.service.TaskService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,16 +24,32 @@ import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import com.flik.gateway.config.SecurityConfig;
+import jakarta.servlet.ServletException;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -39,6 +64,16 @@ class TaskControllerTest {
         MeterRegistry meterRegistry() {
             return new SimpleMeterRegistry();
         }
+
+        @Bean
+        TaskMetrics taskMetrics(MeterRegistry meterRegistry) {
+            return new TaskMetrics(meterRegistry, 100);
+        }
+
+        @Bean
+        ConcurrencyLimiter concurrencyLimiter(MeterRegistry meterRegistry) {
+            return new ConcurrencyLimiter(meterRegistry, 100, 10, 1000, 250);
+        }
     }
 
     @Autowired
@@ -47,6 +82,9 @@ class TaskControllerTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private ConcurrencyLimiter concurrencyLimiter;
+
     @MockBean
     private TaskService taskService;
 
@@ -56,11 +94,23 @@ class TaskControllerTest {
     @MockBean
     private CostService costService;
 
+    @MockBean
+    private IdempotencyService idempotencyService;
+
+    @MockBean
+    private RegionForwarder regionForwarder;
+
     private static final String AUTH_HEADER = "Bearer test-token";
 
+    // Single submissions are handled asynchronously so remote-region forwards do not hold the request thread
+    private ResultActions submit(MockHttpServletRequestBuilder builder) throws Exception {
+        MvcResult result = mockMvc.perform(builder).andExpect(request().asyncStarted()).andReturn();
+        return mockMvc.perform(asyncDispatch(result));
+    }
+
     @Test
     void submitTask_returns202_whenValid() throws Exception {
-        when(rateLimitService.isAllowed(any())).thenReturn(true);
+        when(rateLimitService.tryAcquire(any(), anyDouble())).thenReturn(RateLimitService.Decision.allow(10));
 
         TaskResponse resp = new TaskResponse();
         resp.setTaskId(UUID.randomUUID());
@@ -73,22 +123,133 @@ class TaskControllerTest {
                 {"tenantId":"tenant-1","taskType":"TEXT","priority":0,"payload":{"prompt":"hello"}}
                 """;
 
-        mockMvc.perform(post("/api/v1/tasks")
+        submit(post("/api/v1/tasks")
                         .header("Authorization", AUTH_HEADER)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(body))
                 .andExpect(status().isAccepted())
+                .andExpect(header().string("X-RateLimit-Remaining", "10"))
                 .andExpect(jsonPath("$.status").value("QUEUED"))
                 .andExpect(jsonPath("$.taskType").value("TEXT"));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void submitTask_replaysOriginalResponse_forRepeatedIdempotencyKey() throws Exception {
+        TaskResponse original = new TaskResponse();
+        original.setTaskId(UUID.randomUUID());
+        original.setStatus("QUEUED");
+        original.setTaskType("TEXT");
+        IdempotencyService.Claim<TaskResponse> claim = mock(IdempotencyService.Claim.class);
+        when(claim.replay()).thenReturn(original);
+        when(idempotencyService.claim(eq("task"), eq("tenant-1"), eq("retry-1"), any(), eq(TaskResponse.class)))
+                .thenReturn(claim);
+
+        String body = """
+                {"tenantId":"tenant-1","taskType":"TEXT","priority":0}
+                """;
+
+        submit(post("/api/v1/tasks")
+                        .header("Authorization", AUTH_HEADER)
+                        .header("Idempotency-Key", "retry-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.taskId").value(original.getTaskId().toString()));
+
+        // A replay is not charged against the tenant's rate limit
+        verify(rateLimitService, never()).tryAcquire(any(), anyDouble());
+        verify(taskService, never()).submitTask(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void submitTask_releasesIdempotencyClaim_whenRateLimited() throws Exception {
+        when(rateLimitService.tryAcquire(any(), anyDouble())).thenReturn(RateLimitService.Decision.deny(1000));
+        IdempotencyService.Claim<TaskResponse> claim = mock(IdempotencyService.Claim.class);
+        when(idempotencyService.claim(any(), any(), any(), any(), eq(TaskResponse.class))).thenReturn(claim);
+
+        String body = """
+                {"tenantId":"tenant-1","taskType":"TEXT","priority":0}
+                """;
+
+        submit(post("/api/v1/tasks")
+                        .header("Authorization", AUTH_HEADER)
+                        .header("Idempotency-Key", "retry-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isTooManyRequests());
+
+        verify(claim).release();
+        verify(claim, never()).complete(any());
+    }
+
+    @Test
+    void submitTask_returns409_whenIdempotencyKeyInProgress() throws Exception {
+        when(idempotencyService.claim(any(), any(), any(), any(), any()))
+                .thenThrow(new IdempotencyService.IdempotencyConflictException("in progress"));
+
+        String body = """
+                {"tenantId":"tenant-1","taskType":"TEXT","priority":0}
+                """;
+
+        submit(post("/api/v1/tasks")
+                        .header("Authorization", AUTH_HEADER)
+                        .header("Idempotency-Key", "retry-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.error").exists());
+    }
+
+    @Test
+    void submitTask_returns422_whenIdempotencyKeyWasUsedForAnotherRequest() throws Exception {
+        when(idempotencyService.claim(any(), any(), any(), any(), any()))
+                .thenThrow(new IdempotencyService.IdempotencyMismatchException("different request"));
+
+        String body = """
+                {"tenantId":"tenant-1","taskType":"TEXT","priority":0}
+                """;
+
+        submit(post("/api/v1/tasks")
+                        .header("Authorization", AUTH_HEADER)
+                        .header("Idempotency-Key", "retry-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isUnprocessableEntity());
+
+        verify(taskService, never()).submitTask(any());
+    }
+
+    @Test
+    void submitTask_forwardsRemoteRegionToPeerGateway() throws Exception {
+        when(regionForwarder.shouldForward(eq("us-west"), any(), any())).thenReturn(true);
+        when(regionForwarder.forward(any(), eq(AUTH_HEADER), any())).thenReturn(CompletableFuture.completedFuture(
+                ResponseEntity.status(HttpStatus.ACCEPTED).contentType(MediaType.APPLICATION_JSON)
+                        .body("{\"status\":\"QUEUED\",\"region\":\"us-west\"}")));
+
+        String body = """
+                {"tenantId":"tenant-1","taskType":"TEXT","priority":0,"region":"us-west"}
+                """;
+
+        submit(post("/api/v1/tasks")
+                        .header("Authorization", AUTH_HEADER)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.region").value("us-west"));
+
+        verify(rateLimitService, never()).tryAcquire(any(), anyDouble());
+        verify(taskService, never()).submitTask(any());
+    }
+
     @Test
     void submitTask_returns400_whenMissingFields() throws Exception {
         String body = """
                 {"priority":0}
                 """;
 
-        mockMvc.perform(post("/api/v1/tasks")
+        submit(post("/api/v1/tasks")
                         .header("Authorization", AUTH_HEADER)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(body))
@@ -96,19 +257,131 @@ class TaskControllerTest {
                 .andExpect(jsonPath("$.error").exists());
     }
 
+    @Test
+    void submitTask_returns400_whenPriorityNegative() throws Exception {
+        String body = """
+                {"tenantId":"tenant-1","taskType":"TEXT","priority":-1}
+                """;
+
+        submit(post("/api/v1/tasks")
+                        .header("Authorization", AUTH_HEADER)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("priority must not be negative"));
+        verify(taskService, never()).submitTask(any());
+    }
+
+    @Test
+    void submitTask_returns400_whenPriorityAboveTheSupportedRange() throws Exception {
+        String body = """
+                {"tenantId":"tenant-1","taskType":"TEXT","priority":256}
+                """;
+
+        submit(post("/api/v1/tasks")
+                        .header("Authorization", AUTH_HEADER)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("priority must not exceed 10"));
+        verify(taskService, never()).submitTask(any());
+    }
+
+    @Test
+    void submitTask_returns400_whenDeadlineAlreadyPassed() throws Exception {
+        String body = """
+                {"tenantId":"tenant-1","taskType":"TEXT","priority":0,"deadline":"2020-01-01T00:00:00Z"}
+                """;
+
+        submit(post("/api/v1/tasks")
+                        .header("Authorization", AUTH_HEADER)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("deadline has already passed"));
+        verify(taskService, never()).submitTask(any());
+    }
+
     @Test
     void submitTask_returns429_whenRateLimited() throws Exception {
-        when(rateLimitService.isAllowed(any())).thenReturn(false);
+        when(rateLimitService.tryAcquire(any(), anyDouble())).thenReturn(RateLimitService.Decision.deny(1500));
 
         String body = """
                 {"tenantId":"tenant-1","taskType":"TEXT","priority":0}
                 """;
 
-        mockMvc.perform(post("/api/v1/tasks")
+        submit(post("/api/v1/tasks")
                         .header("Authorization", AUTH_HEADER)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(body))
-                .andExpect(status().isTooManyRequests());
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "2"));
+    }
+
+    @Test
+    void submitTask_returns422_whenCostExceedsTheTenantsLimit() throws Exception {
+        when(rateLimitService.tryAcquire(any(), anyDouble())).thenReturn(RateLimitService.Decision.overLimit());
+
+        String body = """
+                {"tenantId":"tenant-1","taskType":"VIDEO","priority":0}
+                """;
+
+        submit(post("/api/v1/tasks")
+                        .header("Authorization", AUTH_HEADER)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(header().doesNotExist("Retry-After"));
+        verify(taskService, never()).submitTask(any());
+    }
+
+    @Test
+    void submitTask_chargesTaskTypeCost() throws Exception {
+        when(rateLimitService.tryAcquire(any(), anyDouble())).thenReturn(RateLimitService.Decision.allow(2));
+        when(taskService.submitTask(any())).thenReturn(new TaskResponse());
+
+        String body = """
+                {"tenantId":"tenant-1","taskType":"VIDEO","priority":0}
+                """;
+
+        submit(post("/api/v1/tasks")
+                        .header("Authorization", AUTH_HEADER)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isAccepted());
+
+        verify(rateLimitService).tryAcquire("tenant-1", CostConstants.VIDEO_COST_PER_TASK);
+    }
+
+    @Test
+    void submitTask_shedsLowPriorityFirst_whenAtConcurrencyLimit() throws Exception {
+        when(rateLimitService.tryAcquire(any(), anyDouble())).thenReturn(RateLimitService.Decision.allow(10));
+        when(taskService.submitTask(any())).thenReturn(new TaskResponse());
+        // Background submissions are shed once 75 of the 100 slots are in use
+        List<ConcurrencyLimiter.Permit> held = new ArrayList<>();
+        for (int i = 0; i < 75; i++) {
+            held.add(concurrencyLimiter.tryAcquire(RequestLane.REALTIME));
+        }
+        try {
+            submit(post("/api/v1/tasks")
+                            .header("Authorization", AUTH_HEADER)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("""
+                                    {"tenantId":"tenant-1","taskType":"TEXT","priority":2}
+                                    """))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string("Retry-After", "1"));
+
+            submit(post("/api/v1/tasks")
+                            .header("Authorization", AUTH_HEADER)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("""
+                                    {"tenantId":"tenant-1","taskType":"TEXT","priority":0}
+                                    """))
+                    .andExpect(status().isAccepted());
+        } finally {
+            held.forEach(ConcurrencyLimiter.Permit::release);
+        }
     }
 
     @Test
@@ -148,4 +421,169 @@ class TaskControllerTest {
                         .header("Authorization", AUTH_HEADER))
                 .andExpect(status().isNotFound());
     }
+
+    @Test
+    void getTaskEvents_returnsTimelineInOrder() throws Exception {
+        UUID taskId = UUID.randomUUID();
+        Instant queuedAt = Instant.parse("2026-01-01T00:00:00Z");
+        when(taskService.getEvents(taskId)).thenReturn(Optional.of(List.of(
+                new TaskEvent(1, taskId, TaskStatus.QUEUED, null, null, null, null, null, queuedAt),
+                new TaskEvent(7, taskId, TaskStatus.COMPLETED, RawJson.of("{\"text\":\"ok\"}"), null, null,
+                        "v1.0.0", queuedAt.plusSeconds(2), queuedAt.plusSeconds(2)))));
+
+        mockMvc.perform(get("/api/v1/tasks/" + taskId + "/events")
+                        .header("Authorization", AUTH_HEADER))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("QUEUED"))
+                .andExpect(jsonPath("$[1].status").value("COMPLETED"))
+                .andExpect(jsonPath("$[1].result.text").value("ok"))
+                .andExpect(jsonPath("$[1].workerVersion").value("v1.0.0"));
+    }
+
+    @Test
+    void getTaskEvents_returns404_whenTaskUnknown() throws Exception {
+        UUID taskId = UUID.randomUUID();
+        when(taskService.getEvents(taskId)).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/v1/tasks/" + taskId + "/events")
+                        .header("Authorization", AUTH_HEADER))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void getTask_shedsReadsAtLaneBudget_whileP0StillAdmitted() throws Exception {
+        when(rateLimitService.tryAcquire(any(), anyDouble())).thenReturn(RateLimitService.Decision.allow(10));
+        when(taskService.submitTask(any())).thenReturn(new TaskResponse());
+        // Reads may fill 50 of the 100 slots
+        List<ConcurrencyLimiter.Permit> held = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            held.add(concurrencyLimiter.tryAcquire(RequestLane.READ));
+        }
+        try {
+            mockMvc.perform(get("/api/v1/tasks/" + UUID.randomUUID())
+                            .header("Authorization", AUTH_HEADER))
+                    .andExpect(status().isServiceUnavailable());
+
+            submit(post("/api/v1/tasks")
+                            .header("Authorization", AUTH_HEADER)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("""
+                                    {"tenantId":"tenant-1","taskType":"TEXT","priority":0}
+                                    """))
+                    .andExpect(status().isAccepted());
+        } finally {
+            held.forEach(ConcurrencyLimiter.Permit::release);
+        }
+    }
+
+    @Test
+    void submitBatch_returns202_withPerItemResults() throws Exception {
+        when(rateLimitService.tryAcquire(any(), anyDouble())).thenReturn(RateLimitService.Decision.allow(10));
+
+        TaskResponse resp = new TaskResponse();
+        resp.setTaskId(UUID.randomUUID());
+        resp.setStatus("QUEUED");
+        resp.setTaskType("TEXT");
+        when(taskService.submitBatch(any())).thenReturn(List.of(resp));
+
+        String body = """
+                [
+                  {"tenantId":"tenant-1","taskType":"TEXT","priority":0,"payload":{"prompt":"hello"}},
+                  {"tenantId":"tenant-1","priority":0}
+                ]
+                """;
+
+        mockMvc.perform(post("/api/v1/tasks/batch")
+                        .header("Authorization", AUTH_HEADER)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.accepted").value(1))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.tasks[0].status").value("QUEUED"))
+                .andExpect(jsonPath("$.tasks[1].status").value("REJECTED"))
+                .andExpect(jsonPath("$.tasks[1].errorMessage").exists());
+    }
+
+    @Test
+    void submitBatch_refundsEveryAdmittedItem_whenTheWriteFails() {
+        when(rateLimitService.tryAcquire(any(), anyDouble())).thenReturn(RateLimitService.Decision.allow(10));
+        when(taskService.submitBatch(any())).thenThrow(new IllegalStateException("database down"));
+
+        String body = """
+                [
+                  {"tenantId":"tenant-1","taskType":"TEXT","priority":0},
+                  {"tenantId":"tenant-1","taskType":"VIDEO","priority":0}
+                ]
+                """;
+
+        assertThrows(ServletException.class, () -> mockMvc.perform(post("/api/v1/tasks/batch")
+                .header("Authorization", AUTH_HEADER)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body)));
+        verify(rateLimitService).refund("tenant-1", CostConstants.TEXT_COST_PER_TASK);
+        verify(rateLimitService).refund("tenant-1", CostConstants.VIDEO_COST_PER_TASK);
+    }
+
+    @Test
+    void submitBatch_rejectsMalformedIds_withTheirIndex() throws Exception {
+        String body = """
+                [
+                  {"tenantId":"tenant-1","taskType":"TEXT","priority":0,"dagId":"not-a-uuid"},
+                  {"tenantId":"tenant-1","taskType":"TEXT","priority":0,"parentTaskId":"42"}
+                ]
+                """;
+
+        mockMvc.perform(post("/api/v1/tasks/batch")
+                        .header("Authorization", AUTH_HEADER)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.rejected").value(2))
+                .andExpect(jsonPath("$.tasks[0].errorMessage").value("tasks[0]: dagId is not a valid UUID: not-a-uuid"))
+                .andExpect(jsonPath("$.tasks[1].errorMessage").value("tasks[1]: parentTaskId is not a valid UUID: 42"));
+
+        verify(taskService, never()).submitBatch(any());
+    }
+
+    @Test
+    void submitTask_returns400_whenDagIdMalformed() throws Exception {
+        String body = """
+                {"tenantId":"tenant-1","taskType":"TEXT","priority":0,"dagId":"not-a-uuid"}
+                """;
+
+        submit(post("/api/v1/tasks")
+                        .header("Authorization", AUTH_HEADER)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("dagId is not a valid UUID: not-a-uuid"));
+        verify(taskService, never()).submitTask(any());
+    }
+
+    @Test
+    void submitBatch_returns400_whenEmpty() throws Exception {
+        mockMvc.perform(post("/api/v1/tasks/batch")
+                        .header("Authorization", AUTH_HEADER)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").exists());
+    }
+
+    @Test
+    void submitBatch_returns429_whenEveryItemRateLimited() throws Exception {
+        when(rateLimitService.tryAcquire(any(), anyDouble())).thenReturn(RateLimitService.Decision.deny(1500));
+
+        String body = """
+                [{"tenantId":"tenant-1","taskType":"TEXT","priority":0}]
+                """;
+
+        mockMvc.perform(post("/api/v1/tasks/batch")
+                        .header("Authorization", AUTH_HEADER)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(jsonPath("$.rejected").value(1));
+    }
 }
@@ -0,0 +1,50 @@
+package com.flik.gateway.repository;
+
+import com.flik.common.model.Task;
+import com.flik.common.model.TaskType;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class TaskBatchRepositoryTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final TaskBatchRepository repository = new TaskBatchRepository(jdbcTemplate);
+
+    @Test
+    void insertAll_bindsCreatedAndUpdatedAtAsUtcWallClock_andDeadlineWithItsOffset() throws Exception {
+        Instant createdAt = Instant.parse("2024-03-01T10:15:30Z");
+        Instant deadline = Instant.parse("2024-03-01T11:00:00Z");
+        Task task = new Task(UUID.randomUUID(), "tenant-1", TaskType.TEXT, 0, "{}");
+        task.setCreatedAt(createdAt);
+        task.setUpdatedAt(createdAt);
+        task.setDeadline(deadline);
+        when(jdbcTemplate.update(anyString(), any(PreparedStatementSetter.class))).thenReturn(1);
+
+        repository.insertAll(List.of(task));
+
+        ArgumentCaptor<PreparedStatementSetter> setter = ArgumentCaptor.forClass(PreparedStatementSetter.class);
+        verify(jdbcTemplate).update(anyString(), setter.capture());
+        PreparedStatement ps = mock(PreparedStatement.class);
+        setter.getValue().setValues(ps);
+
+        verify(ps).setObject(13, deadline.atOffset(ZoneOffset.UTC), Types.TIMESTAMP_WITH_TIMEZONE);
+        verify(ps).setObject(14, LocalDateTime.of(2024, 3, 1, 10, 15, 30));
+        verify(ps).setObject(15, LocalDateTime.of(2024, 3, 1, 10, 15, 30));
+        verify(ps, never()).setObject(eq(14), any(OffsetDateTime.class));
+    }
+}
@@ -0,0 +1,98 @@
+package com.flik.gateway.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+class TaskEventRepositoryTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final TaskEventRepository repository = new TaskEventRepository(jdbcTemplate);
+
+    @BeforeEach
+    void setUp() {
+        when(jdbcTemplate.queryForList(contains("FOR UPDATE SKIP LOCKED"), eq(Long.class))).thenReturn(List.of(100L));
+    }
+
+    @Test
+    void upperXid_isTheHorizon_whenFewerThanMaxEventsAreWaiting() {
+        assertEquals(105, TaskEventRepository.upperXid(List.of(100L, 100L, 103L), 105, 5));
+        assertEquals(105, TaskEventRepository.upperXid(List.of(), 105, 5));
+    }
+
+    @Test
+    void upperXid_endsJustPastTheLastTransaction_whenThePassIsFull() {
+        assertEquals(102, TaskEventRepository.upperXid(List.of(100L, 101L, 101L), 105, 3));
+    }
+
+    @Test
+    void compact_stopsAtTheOldestRunningTransaction_whateverItsSeqOrRecordedAt() {
+        // Transaction 104 holds a lower seq and an older recorded_at than the committed 101 and 103, but has not
+        // committed yet: the pass ends below it and 104's events stay past the watermark
+        horizon(104L);
+        when(jdbcTemplate.queryForList(startsWith("SELECT xid"), eq(Long.class), any(), any(), any()))
+                .thenReturn(List.of(101L, 103L));
+
+        assertEquals(2, repository.compact(10));
+
+        verify(jdbcTemplate).update(startsWith("UPDATE tasks"), eq(100L), eq(104L));
+        verify(jdbcTemplate).update(startsWith("UPDATE task_event_watermark"), eq(104L));
+    }
+
+    @Test
+    void compact_takesTheWholeLastTransaction_andCountsItsEventsPastTheLimit() {
+        horizon(110L);
+        when(jdbcTemplate.queryForList(startsWith("SELECT xid"), eq(Long.class), any(), any(), any()))
+                .thenReturn(List.of(101L, 102L));
+        when(jdbcTemplate.queryForObject(startsWith("SELECT count(*)"), eq(Integer.class), eq(100L), eq(103L)))
+                .thenReturn(5);
+
+        assertEquals(5, repository.compact(2));
+
+        verify(jdbcTemplate).update(startsWith("UPDATE tasks"), eq(100L), eq(103L));
+        verify(jdbcTemplate).update(startsWith("UPDATE task_event_watermark"), eq(103L));
+    }
+
+    @Test
+    void compact_advancesAnIdleWatermarkToTheHorizon_withoutTouchingTasks() {
+        horizon(120L);
+        when(jdbcTemplate.queryForList(startsWith("SELECT xid"), eq(Long.class), any(), any(), any()))
+                .thenReturn(List.of());
+
+        assertEquals(0, repository.compact(10));
+
+        verify(jdbcTemplate, never()).update(startsWith("UPDATE tasks"), any(), any());
+        verify(jdbcTemplate).update(startsWith("UPDATE task_event_watermark"), eq(120L));
+    }
+
+    @Test
+    void compact_leavesTheWatermark_whileTheTransactionAtItIsStillRunning() {
+        horizon(100L);
+
+        assertEquals(0, repository.compact(10));
+
+        verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void compact_skipsThePass_whenAnotherCompactorHoldsTheWatermark() {
+        when(jdbcTemplate.queryForList(contains("FOR UPDATE SKIP LOCKED"), eq(Long.class))).thenReturn(List.of());
+
+        assertEquals(-1, repository.compact(10));
+
+        verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+    }
+
+    private void horizon(long xid) {
+        when(jdbcTemplate.queryForObject(contains("pg_snapshot_xmin"), eq(Long.class))).thenReturn(xid);
+    }
+}
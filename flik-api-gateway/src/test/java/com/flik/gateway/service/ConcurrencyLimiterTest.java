@@ -0,0 +1,145 @@
+package com.flik.gateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong nanos = new AtomicLong();
+    private final ConcurrencyLimiter limiter = new ConcurrencyLimiter(meterRegistry, 20, 5, 100, 250, nanos::get);
+
+    @Test
+    void tryAcquire_capsEachLaneAtItsBudget() {
+        List<ConcurrencyLimiter.Permit> held = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            held.add(limiter.tryAcquire(RequestLane.BACKGROUND));
+        }
+        assertNull(limiter.tryAcquire(RequestLane.BACKGROUND));
+        for (int i = 0; i < 10; i++) {
+            held.add(limiter.tryAcquire(RequestLane.READ));
+        }
+        assertNull(limiter.tryAcquire(RequestLane.READ));
+
+        // 18 of 20 in use: interactive work is shed, real-time work takes the rest
+        assertNull(limiter.tryAcquire(RequestLane.INTERACTIVE));
+        held.add(limiter.tryAcquire(RequestLane.REALTIME));
+        held.add(limiter.tryAcquire(RequestLane.REALTIME));
+        assertNull(limiter.tryAcquire(RequestLane.REALTIME));
+
+        assertFalse(held.contains(null));
+        assertEquals(20, limiter.getInFlight());
+        assertEquals(10, limiter.getInFlight(RequestLane.READ));
+        assertEquals(0, limiter.getInFlight(RequestLane.INTERACTIVE));
+        assertEquals(1.0, meterRegistry.get("flik_requests_shed_total").tag("lane", "background").counter().count());
+        assertEquals(1.0, meterRegistry.get("flik_requests_shed_total").tag("lane", "realtime").counter().count());
+        assertEquals(10.0, meterRegistry.get("flik_lane_inflight").tag("lane", "read").gauge().value());
+        assertEquals(20.0, meterRegistry.get("flik_concurrency_inflight").gauge().value());
+    }
+
+    @Test
+    void tryAcquire_shedsBackgroundFirst_whenGatewayIsBusy() {
+        List<ConcurrencyLimiter.Permit> held = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            held.add(limiter.tryAcquire(RequestLane.REALTIME));
+        }
+
+        assertNull(limiter.tryAcquire(RequestLane.BACKGROUND));
+        for (int i = 0; i < 3; i++) {
+            held.add(limiter.tryAcquire(RequestLane.INTERACTIVE));
+        }
+        assertNull(limiter.tryAcquire(RequestLane.INTERACTIVE));
+
+        assertFalse(held.contains(null));
+        assertEquals(0, limiter.getInFlight(RequestLane.BACKGROUND));
+        assertEquals(18, limiter.getInFlight());
+    }
+
+    @Test
+    void permit_exposesLaneToItsThreadUntilReleased() {
+        ConcurrencyLimiter.Permit permit = limiter.tryAcquire(RequestLane.READ);
+
+        assertEquals(RequestLane.READ, ConcurrencyLimiter.currentLane());
+        permit.release();
+        assertNull(ConcurrencyLimiter.currentLane());
+    }
+
+    @Test
+    void release_shrinksLimitOncePerTargetLatency_whenSlow() {
+        List<ConcurrencyLimiter.Permit> slow = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            slow.add(limiter.tryAcquire(RequestLane.REALTIME));
+        }
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(400));
+
+        slow.forEach(ConcurrencyLimiter.Permit::release);
+
+        assertEquals(18.0, limiter.getLimit(), 1e-9);
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(18.0, meterRegistry.get("flik_concurrency_limit").gauge().value(), 1e-9);
+    }
+
+    @Test
+    void release_judgesEachLaneAgainstItsOwnBaseline() {
+        // Reads settle at 10ms, so their target falls well below the 250ms ceiling
+        for (int i = 0; i < 200; i++) {
+            ConcurrencyLimiter.Permit read = limiter.tryAcquire(RequestLane.READ);
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+            read.release();
+        }
+        assertTrue(limiter.targetNanos(RequestLane.READ) < TimeUnit.MILLISECONDS.toNanos(30));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(250), limiter.targetNanos(RequestLane.REALTIME));
+
+        ConcurrencyLimiter.Permit submit = limiter.tryAcquire(RequestLane.REALTIME);
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        submit.release();
+        assertEquals(20.0, limiter.getLimit(), 1e-9);
+
+        ConcurrencyLimiter.Permit read = limiter.tryAcquire(RequestLane.READ);
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        read.release();
+        assertEquals(18.0, limiter.getLimit(), 1e-9);
+    }
+
+    @Test
+    void targetNanos_neverFallsBelowTheFloor() {
+        for (int i = 0; i < 500; i++) {
+            ConcurrencyLimiter.Permit read = limiter.tryAcquire(RequestLane.READ);
+            nanos.addAndGet(TimeUnit.MICROSECONDS.toNanos(100));
+            read.release();
+        }
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(5), limiter.targetNanos(RequestLane.READ));
+    }
+
+    @Test
+    void release_growsLimit_whenBusyAndFast() {
+        List<ConcurrencyLimiter.Permit> busy = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            busy.add(limiter.tryAcquire(RequestLane.REALTIME));
+        }
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+
+        busy.forEach(ConcurrencyLimiter.Permit::release);
+
+        // Additive increase of 1/limit per completion that started with the limit at least half used
+        assertTrue(limiter.getLimit() > 20.5 && limiter.getLimit() < 21, "limit " + limiter.getLimit());
+    }
+
+    @Test
+    void release_keepsLimit_whenMostlyIdle() {
+        ConcurrencyLimiter.Permit permit = limiter.tryAcquire(RequestLane.REALTIME);
+        permit.release();
+        permit.release();
+
+        assertEquals(20.0, limiter.getLimit(), 1e-9);
+        assertEquals(0, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,75 @@
+package com.flik.gateway.service;
+
+import com.flik.common.dto.DagRequest;
+import com.flik.common.dto.TaskMessage;
+import com.flik.common.model.Task;
+import com.flik.common.model.TaskStatus;
+import com.flik.common.model.TaskType;
+import com.flik.gateway.repository.TaskRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DagServiceTest {
+
+    private final TaskRepository taskRepository = mock(TaskRepository.class);
+    private final TaskOutbox taskOutbox = mock(TaskOutbox.class);
+    private final DagService dagService = new DagService(taskRepository, taskOutbox, mock(TaskJournal.class));
+
+    @Test
+    void submitDag_stampsFirstStepMessageWithTheTasksCreationTime() {
+        ArgumentCaptor<Task> saved = ArgumentCaptor.forClass(Task.class);
+        when(taskRepository.save(saved.capture())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        dagService.submitDag(request("TEXT", "IMAGE"));
+
+        TaskMessage message = enqueued();
+        Task first = saved.getAllValues().get(0);
+        assertEquals(first.getId(), message.getTaskId());
+        assertEquals(first.getCreatedAt(), message.getCreatedAt());
+    }
+
+    @Test
+    void triggerNextStep_startsTheStepsQueueWaitWhenItIsQueued() {
+        UUID parentId = UUID.randomUUID();
+        Task step = new Task(UUID.randomUUID(), "tenant-1", TaskType.IMAGE, 1, "{}");
+        step.setStatus(TaskStatus.PENDING);
+        step.setDagId(UUID.randomUUID());
+        step.setParentTaskId(parentId);
+        step.setCreatedAt(Instant.now().minusSeconds(600));
+        when(taskRepository.findByParentTaskId(parentId)).thenReturn(List.of(step));
+
+        Instant before = Instant.now();
+        dagService.triggerNextStep(parentId);
+
+        // Ten minutes waiting on its parent is not time spent in the queue
+        TaskMessage message = enqueued();
+        assertEquals(TaskStatus.QUEUED, step.getStatus());
+        assertFalse(message.getCreatedAt().isBefore(before));
+    }
+
+    private TaskMessage enqueued() {
+        ArgumentCaptor<TaskMessage> message = ArgumentCaptor.forClass(TaskMessage.class);
+        verify(taskOutbox).enqueue(message.capture());
+        return message.getValue();
+    }
+
+    private static DagRequest request(String... taskTypes) {
+        DagRequest request = new DagRequest();
+        request.setTenantId("tenant-1");
+        request.setPriority(1);
+        request.setSteps(Arrays.stream(taskTypes).map(type -> {
+            DagRequest.DagStep step = new DagRequest.DagStep();
+            step.setTaskType(type);
+            return step;
+        }).toList());
+        return request;
+    }
+}
@@ -0,0 +1,167 @@
+package com.flik.gateway.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flik.common.dto.RawJson;
+import com.flik.common.dto.TaskRequest;
+import com.flik.common.dto.TaskResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings("unchecked")
+class IdempotencyServiceTest {
+
+    private static final String KEY = "idempotency:task:tenant-1:retry-1";
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final ValueOperations<String, String> values = mock(ValueOperations.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Map<String, String> redis = new HashMap<>();
+    private IdempotencyService idempotency;
+
+    @BeforeEach
+    void setUp() {
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class)))
+                .thenAnswer(inv -> redis.putIfAbsent(inv.getArgument(0), inv.getArgument(1)) == null);
+        when(values.get(anyString())).thenAnswer(inv -> redis.get(inv.<String>getArgument(0)));
+        // The complete script: store the response only if the claim is still ours
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any())).thenAnswer(inv -> {
+            String key = inv.<List<String>>getArgument(1).get(0);
+            if (!inv.getArgument(2).equals(redis.get(key))) return 0L;
+            redis.put(key, inv.getArgument(3));
+            return 1L;
+        });
+        // The release script: delete the key only if the claim is still ours
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any())).thenAnswer(inv -> {
+            String key = inv.<List<String>>getArgument(1).get(0);
+            return redis.remove(key, inv.getArgument(2)) ? 1L : 0L;
+        });
+        idempotency = new IdempotencyService(redisTemplate, new ObjectMapper().findAndRegisterModules(), meterRegistry,
+                86400, 1000);
+    }
+
+    @Test
+    void claim_replaysStoredResponse_forTheSameRequestInAnyFieldOrder() {
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("prompt", "cat");
+        first.put("style", "photo");
+        Map<String, Object> reordered = new LinkedHashMap<>();
+        reordered.put("style", "photo");
+        reordered.put("prompt", "cat");
+
+        IdempotencyService.Claim<TaskResponse> claim = claim(first);
+        assertNull(claim.replay());
+        TaskResponse response = response();
+        claim.complete(response);
+
+        assertEquals(response.getTaskId(), claim(reordered).replay().getTaskId());
+        assertEquals(1.0, meterRegistry.get("flik_idempotency_requests_total").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void claim_replaysStoredResponse_whenOnlyThePayloadKeyOrderDiffers() {
+        IdempotencyService.Claim<TaskResponse> claim =
+                claim(taskRequest("{\"prompt\":\"cat\",\"options\":{\"width\":512,\"height\":512}}"));
+        TaskResponse response = response();
+        claim.complete(response);
+
+        TaskRequest reordered = taskRequest("{ \"options\": {\"height\": 512, \"width\": 512}, \"prompt\": \"cat\" }");
+        assertEquals(response.getTaskId(), claim(reordered).replay().getTaskId());
+        assertThrows(IdempotencyService.IdempotencyMismatchException.class,
+                () -> claim(taskRequest("{\"prompt\":\"cat\",\"options\":{\"width\":512,\"height\":256}}")));
+    }
+
+    @Test
+    void claim_rejectsKeyReusedForADifferentRequest() {
+        IdempotencyService.Claim<TaskResponse> claim = claim(Map.of("prompt", "cat"));
+
+        assertThrows(IdempotencyService.IdempotencyMismatchException.class, () -> claim(Map.of("prompt", "dog")));
+
+        claim.complete(response());
+        assertThrows(IdempotencyService.IdempotencyMismatchException.class, () -> claim(Map.of("prompt", "dog")));
+    }
+
+    @Test
+    void claim_conflicts_whileTheSameRequestIsInProgress() {
+        claim(Map.of("prompt", "cat"));
+
+        assertThrows(IdempotencyService.IdempotencyConflictException.class, () -> claim(Map.of("prompt", "cat")));
+    }
+
+    @Test
+    void complete_leavesAClaimTakenOverAfterExpiryToItsNewOwner() {
+        IdempotencyService.Claim<TaskResponse> stale = claim(Map.of("prompt", "cat"));
+        redis.remove(KEY);
+        IdempotencyService.Claim<TaskResponse> current = claim(Map.of("prompt", "cat"));
+        assertNull(current.replay());
+
+        stale.complete(response());
+        stale.release();
+        assertTrue(redis.get(KEY).startsWith("PENDING:"), "the stale owner must not touch the new claim");
+
+        TaskResponse response = response();
+        current.complete(response);
+        assertEquals(response.getTaskId(), claim(Map.of("prompt", "cat")).replay().getTaskId());
+        assertEquals(1.0, meterRegistry.get("flik_idempotency_requests_total").tag("result", "expired").counter().count());
+    }
+
+    @Test
+    void claim_takesOverAClaimThatExpiresBetweenSetNxAndGet() {
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false, true);
+        when(values.get(anyString())).thenReturn(null);
+
+        IdempotencyService.Claim<TaskResponse> claim = claim(Map.of("prompt", "cat"));
+
+        assertNull(claim.replay());
+        verify(values, times(2)).setIfAbsent(eq(KEY), anyString(), any(Duration.class));
+        verify(values, never()).set(anyString(), anyString(), any(Duration.class));
+    }
+
+    @Test
+    void claim_submitsWithoutDeduplication_whenRedisIsDown() {
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class)))
+                .thenThrow(new IllegalStateException("connection refused"));
+
+        IdempotencyService.Claim<TaskResponse> claim = claim(Map.of("prompt", "cat"));
+
+        assertNull(claim.replay());
+        claim.complete(response());
+        verify(redisTemplate, never()).execute(any(RedisScript.class), anyList(), any(), any(), any());
+    }
+
+    private IdempotencyService.Claim<TaskResponse> claim(Object request) {
+        return idempotency.claim("task", "tenant-1", "retry-1", request, TaskResponse.class);
+    }
+
+    private static TaskRequest taskRequest(String payload) {
+        TaskRequest request = new TaskRequest();
+        request.setTenantId("tenant-1");
+        request.setTaskType("TEXT");
+        request.setPayload(RawJson.of(payload));
+        return request;
+    }
+
+    private static TaskResponse response() {
+        TaskResponse response = new TaskResponse();
+        response.setTaskId(UUID.randomUUID());
+        response.setStatus("QUEUED");
+        return response;
+    }
+}
@@ -0,0 +1,68 @@
+package com.flik.gateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class LaneQuotaDataSourceTest {
+
+    private final DataSource pool = mock(DataSource.class);
+    private final ConcurrencyLimiter limiter = new ConcurrencyLimiter(new SimpleMeterRegistry(), 100, 10, 1000, 250, System::nanoTime);
+    private final LaneQuotaDataSource dataSource = new LaneQuotaDataSource(pool, Map.of(RequestLane.READ, 2), 10);
+    private ConcurrencyLimiter.Permit permit;
+
+    @AfterEach
+    void tearDown() {
+        if (permit != null) permit.release();
+    }
+
+    @Test
+    void getConnection_waitsOnLaneQuota_thenFails() throws SQLException {
+        when(pool.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+        permit = limiter.tryAcquire(RequestLane.READ);
+
+        Connection first = dataSource.getConnection();
+        dataSource.getConnection();
+
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        first.close();
+        first.close();
+        assertEquals(1, dataSource.available(RequestLane.READ));
+        assertNotNull(dataSource.getConnection());
+        verify(pool, times(3)).getConnection();
+    }
+
+    @Test
+    void getConnection_skipsQuota_forUnlimitedLanesAndBackgroundThreads() throws SQLException {
+        when(pool.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+
+        for (int i = 0; i < 3; i++) {
+            dataSource.getConnection();
+        }
+        permit = limiter.tryAcquire(RequestLane.REALTIME);
+        for (int i = 0; i < 3; i++) {
+            dataSource.getConnection();
+        }
+
+        assertEquals(2, dataSource.available(RequestLane.READ));
+        verify(pool, times(6)).getConnection();
+    }
+
+    @Test
+    void getConnection_returnsQuota_whenPoolFails() throws SQLException {
+        when(pool.getConnection()).thenThrow(new SQLTransientConnectionException("pool exhausted"));
+        permit = limiter.tryAcquire(RequestLane.READ);
+
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        assertEquals(2, dataSource.available(RequestLane.READ));
+    }
+}
@@ -0,0 +1,99 @@
+package com.flik.gateway.service;
+
+import com.flik.common.messaging.ConfirmingPublisher;
+import com.flik.gateway.repository.OutboxMessage;
+import com.flik.gateway.repository.OutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.core.Message;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboxRelayTest {
+
+    private final OutboxRepository outboxRepository = mock(OutboxRepository.class);
+    private final ConfirmingPublisher publisher = mock(ConfirmingPublisher.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OutboxRelay relay = new OutboxRelay(outboxRepository, publisher, transactionManager, meterRegistry,
+            2, 200, 60000);
+
+    @Test
+    void relayBatch_awaitsConfirmsOutsideAnyTransaction() {
+        OutboxMessage first = message(1);
+        OutboxMessage second = message(2);
+        when(outboxRepository.claimOldest(2, Duration.ofMillis(60000))).thenReturn(List.of(first, second));
+        when(publisher.publish(any(), any(), any(Message.class))).thenReturn(CompletableFuture.completedFuture(null));
+
+        assertTrue(relay.relayBatch(), "a full, fully confirmed batch should keep draining");
+
+        InOrder order = inOrder(outboxRepository, publisher, transactionManager);
+        order.verify(outboxRepository).claimOldest(anyInt(), any());
+        order.verify(publisher, times(2)).publish(any(), any(), any(Message.class));
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(outboxRepository).deleteAll(List.of(1L, 2L));
+        order.verify(outboxRepository).releaseAll(List.of());
+        order.verify(transactionManager).commit(any());
+        assertEquals(2.0, meterRegistry.get("flik_outbox_relayed_total").counter().count());
+    }
+
+    @Test
+    void relayBatch_deletesAckedAndReleasesUnconfirmed() {
+        OutboxMessage acked = message(1);
+        OutboxMessage nacked = message(2);
+        when(outboxRepository.claimOldest(anyInt(), any())).thenReturn(List.of(acked, nacked));
+        when(publisher.publish(any(), any(), any(Message.class)))
+                .thenReturn(CompletableFuture.completedFuture(null))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("nacked")));
+
+        assertFalse(relay.relayBatch(), "an unconfirmed row should stop draining until the next cycle");
+
+        verify(outboxRepository).deleteAll(List.of(1L));
+        verify(outboxRepository).releaseAll(List.of(2L));
+        assertEquals(1.0, meterRegistry.get("flik_outbox_unconfirmed_total").counter().count());
+    }
+
+    @Test
+    void relayBatch_returnsFalseAndClearsLag_whenNothingPending() {
+        when(outboxRepository.claimOldest(anyInt(), any())).thenReturn(List.of());
+
+        assertFalse(relay.relayBatch());
+
+        verify(publisher, never()).publish(any(), any(), any(Message.class));
+        verify(transactionManager, never()).getTransaction(any());
+        assertEquals(0.0, meterRegistry.get("flik_outbox_lag_seconds").gauge().value());
+    }
+
+    @Test
+    void relayBatch_stopsDraining_onPartialBatch() {
+        when(outboxRepository.claimOldest(anyInt(), any())).thenReturn(List.of(message(7)));
+        when(publisher.publish(eq("flik.tasks"), any(), any(Message.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        assertFalse(relay.relayBatch());
+        verify(outboxRepository).deleteAll(List.of(7L));
+    }
+
+    private static OutboxMessage message(long id) {
+        return new OutboxMessage(id, UUID.randomUUID(), "flik.tasks", "task.text.p1", 5,
+                "application/x-flik-task", Map.of(), new byte[] {1}, Instant.now());
+    }
+}
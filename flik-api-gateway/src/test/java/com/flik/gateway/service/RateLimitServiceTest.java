@@ -0,0 +1,208 @@
+package com.flik.gateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.OngoingStubbing;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings("unchecked")
+class RateLimitServiceTest {
+
+    private static final double TEXT = 0.001;
+    private static final double VIDEO = 0.10;
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+    // 100 req/s and $5/s across 2 gateways: local share 50 req/s and $2.50/s
+    private final RateLimitService rateLimit = new RateLimitService(redisTemplate, meterRegistry,
+            new RateLimitService.Policy(100, 5.0), 1.0, "tenant-vip=1000:50", 2, now::get);
+
+    @Test
+    void tryAcquire_spendsLeasedTokensLocally() {
+        whenLease().thenAnswer(invocation -> grant(invocation.getArgument(4), invocation.getArgument(7), 40));
+
+        for (int i = 0; i < 6; i++) {
+            assertTrue(rateLimit.tryAcquire("tenant-1", TEXT).allowed());
+        }
+
+        // Leases of 1, 1, 2 and 4 requests cover 6 submissions
+        verify(redisTemplate, times(4)).execute(any(RedisScript.class), eq(List.of("rate_limit:tenant-1")),
+                any(), any(), any(), any(), any(), any(), any());
+        assertEquals(4.0, meterRegistry.get("flik_rate_limit_leases_total").tag("result", "granted").counter().count());
+    }
+
+    @Test
+    void tryAcquire_reportsRemainingFromLatestLease() {
+        whenLease().thenAnswer(invocation -> grant(invocation.getArgument(4), invocation.getArgument(7), 40));
+
+        RateLimitService.Decision decision = rateLimit.tryAcquire("tenant-1", TEXT);
+
+        assertTrue(decision.allowed());
+        assertEquals(40, decision.remaining());
+        assertEquals("40", decision.toHeaders().getFirst(RateLimitService.REMAINING_HEADER));
+    }
+
+    @Test
+    void tryAcquire_reportsRemainingRefilledSinceTheLease() {
+        whenLease().thenAnswer(invocation -> grant(invocation.getArgument(4), invocation.getArgument(7), 0));
+
+        rateLimit.tryAcquire("tenant-1", TEXT);
+        rateLimit.tryAcquire("tenant-1", TEXT);
+        // A lease of 2 leaves one token here and nothing in Redis
+        assertEquals(1, rateLimit.tryAcquire("tenant-1", TEXT).remaining());
+
+        // Half a second later Redis has refilled 50 requests
+        now.addAndGet(500);
+        assertEquals(50, rateLimit.tryAcquire("tenant-1", TEXT).remaining());
+    }
+
+    @Test
+    void tryAcquire_carriesLeasedTokensIntoTheNextSecond() {
+        whenLease().thenAnswer(invocation -> grant(invocation.getArgument(4), invocation.getArgument(7), 40));
+        for (int i = 0; i < 6; i++) {
+            rateLimit.tryAcquire("tenant-1", TEXT);
+        }
+
+        // Leases of 1, 1, 2 and 4 left two tokens, already charged in Redis
+        now.addAndGet(1000);
+        assertTrue(rateLimit.tryAcquire("tenant-1", TEXT).allowed());
+        assertTrue(rateLimit.tryAcquire("tenant-1", TEXT).allowed());
+
+        verify(redisTemplate, times(4)).execute(any(RedisScript.class), anyList(), any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void tryAcquire_rejectsLocallyUntilRetryAfter() {
+        whenLease().thenReturn(List.of(0L, 0L, 0L, 0L, 1500L));
+
+        RateLimitService.Decision first = rateLimit.tryAcquire("tenant-1", TEXT);
+        RateLimitService.Decision second = rateLimit.tryAcquire("tenant-1", TEXT);
+
+        assertFalse(first.allowed());
+        assertEquals(2, first.retryAfterSeconds());
+        assertEquals("2", first.toHeaders().getFirst("Retry-After"));
+        assertFalse(second.allowed());
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), anyList(), any(), any(), any(), any(), any(), any(), any());
+
+        now.addAndGet(1500);
+        rateLimit.tryAcquire("tenant-1", TEXT);
+        verify(redisTemplate, times(2)).execute(any(RedisScript.class), anyList(), any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void tryAcquire_leasesEnoughCostForExpensiveTasks() {
+        whenLease().thenAnswer(invocation -> grant(invocation.getArgument(4), invocation.getArgument(7), 0));
+
+        assertTrue(rateLimit.tryAcquire("tenant-1", VIDEO).allowed());
+
+        // A VIDEO task is 100,000 micro-dollars
+        verify(redisTemplate).execute(any(RedisScript.class), anyList(), any(), any(), eq("1"), any(), any(),
+                eq("100000"), eq("100000"));
+    }
+
+    @Test
+    void tryAcquire_appliesTenantPolicy() {
+        whenLease().thenAnswer(invocation -> grant(invocation.getArgument(4), invocation.getArgument(7), 0));
+
+        rateLimit.tryAcquire("tenant-vip", TEXT);
+
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("rate_limit:tenant-vip")), eq("1.0"),
+                eq("1000.0"), any(), any(), eq("5.0E7"), any(), any());
+    }
+
+    @Test
+    void tryAcquire_fallsBackToLocalShare_whenRedisUnavailable() {
+        whenLease().thenThrow(new RedisConnectionFailureException("down"));
+
+        int text = 0;
+        for (int i = 0; i < 80; i++) {
+            if (rateLimit.tryAcquire("tenant-1", TEXT).allowed()) text++;
+        }
+        int video = 0;
+        for (int i = 0; i < 40; i++) {
+            if (rateLimit.tryAcquire("tenant-2", VIDEO).allowed()) video++;
+        }
+
+        assertEquals(50, text);
+        // $2.50 of this gateway's share buys 25 VIDEO tasks
+        assertEquals(25, video);
+        // Later refills within the back-off skip Redis entirely
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), anyList(), any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void tryAcquire_admitsAgain_AsSoonAsOneRequestFits() {
+        whenLease().thenThrow(new RedisConnectionFailureException("down"));
+        for (int i = 0; i < 50; i++) {
+            assertTrue(rateLimit.tryAcquire("tenant-1", TEXT).allowed());
+        }
+
+        assertFalse(rateLimit.tryAcquire("tenant-1", TEXT).allowed());
+
+        // One request's interval at 50 req/s, not the time to refill a whole lease
+        now.addAndGet(20);
+        assertTrue(rateLimit.tryAcquire("tenant-1", TEXT).allowed());
+    }
+
+    @Test
+    void tryAcquire_admitsARequestAboveTheLocalShare_onceTheShareIsFull_whenRedisUnavailable() {
+        whenLease().thenThrow(new RedisConnectionFailureException("down"));
+
+        // $3.00 is within the tenant's $5.00 burst but above this gateway's $2.50 share
+        assertTrue(rateLimit.tryAcquire("tenant-1", 3.0).allowed());
+
+        RateLimitService.Decision denied = rateLimit.tryAcquire("tenant-1", 3.0);
+        assertFalse(denied.allowed());
+        assertFalse(denied.exceedsLimit());
+        // The overdraft is paid back at $2.50/s, so 1.2s until the share is full again
+        assertEquals(2, denied.retryAfterSeconds());
+        now.addAndGet(1199);
+        assertFalse(rateLimit.tryAcquire("tenant-1", 3.0).allowed());
+        now.addAndGet(1);
+        assertTrue(rateLimit.tryAcquire("tenant-1", 3.0).allowed());
+    }
+
+    @Test
+    void refund_returnsTheTokensToTheLocalBucket() {
+        whenLease().thenThrow(new RedisConnectionFailureException("down"));
+        for (int i = 0; i < 50; i++) {
+            assertTrue(rateLimit.tryAcquire("tenant-1", TEXT).allowed());
+        }
+
+        rateLimit.refund("tenant-1", TEXT);
+
+        assertTrue(rateLimit.tryAcquire("tenant-1", TEXT).allowed());
+        assertFalse(rateLimit.tryAcquire("tenant-1", TEXT).allowed());
+    }
+
+    @Test
+    void tryAcquire_rejectsPermanently_whenCostExceedsTheTenantsBurst() {
+        RateLimitService.Decision decision = rateLimit.tryAcquire("tenant-1", 6.0);
+
+        assertFalse(decision.allowed());
+        assertTrue(decision.exceedsLimit());
+        assertNull(decision.toHeaders().getFirst("Retry-After"));
+        verifyNoInteractions(redisTemplate);
+    }
+
+    private OngoingStubbing<Object> whenLease() {
+        return when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any(), any(), any(), any(), any()));
+    }
+
+    // At 100 req/s, each request Redis has handed out puts its arrival time 10ms (10,000us) further ahead
+    private static List<Long> grant(String requests, String cost, long requestsLeft) {
+        return List.of(Long.parseLong(requests), Long.parseLong(cost), (100 - requestsLeft) * 10_000, 0L, 0L);
+    }
+}
@@ -0,0 +1,150 @@
+package com.flik.gateway.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flik.common.dto.TaskRequest;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegionForwarderTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RegionRoutingService regionRouting = new RegionRoutingService("us-east", meterRegistry);
+    private final Map<String, String> received = new ConcurrentHashMap<>();
+    private HttpServer peer;
+    private volatile int peerStatus = 202;
+
+    // Stand-in for the us-west gateway
+    @BeforeEach
+    void startPeer() throws IOException {
+        peer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        peer.createContext("/api/v1/tasks", exchange -> {
+            received.put("forwardedFrom", exchange.getRequestHeaders().getFirst(RegionForwarder.FORWARDED_FROM_HEADER));
+            received.put("signature", String.valueOf(
+                    exchange.getRequestHeaders().getFirst(RegionForwarder.FORWARD_SIGNATURE_HEADER)));
+            received.put("authorization", exchange.getRequestHeaders().getFirst("Authorization"));
+            received.put("body", new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            if (peerStatus == 429) {
+                exchange.getResponseHeaders().add("Retry-After", "3");
+                exchange.getResponseHeaders().add("X-Internal-Debug", "dropped");
+            } else {
+                exchange.getResponseHeaders().add("X-RateLimit-Remaining", "41");
+            }
+            byte[] response = "{\"status\":\"QUEUED\",\"region\":\"us-west\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(peerStatus, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        peer.start();
+    }
+
+    @AfterEach
+    void stopPeer() {
+        peer.stop(0);
+    }
+
+    @Test
+    void shouldForward_onlyRemoteRegionsWithPeer() {
+        RegionForwarder forwarder = forwarder("us-west=http://localhost:" + peer.getAddress().getPort());
+
+        assertTrue(forwarder.shouldForward("us-west", null, null));
+        assertFalse(forwarder.shouldForward("us-east", null, null));
+        assertFalse(forwarder.shouldForward(null, null, null));
+        assertFalse(forwarder.shouldForward("eu-west", null, null));
+        String signature = forwarder.sign("eu-west", Instant.now().getEpochSecond());
+        assertFalse(forwarder.shouldForward("us-west", "eu-west", signature));
+    }
+
+    @Test
+    void shouldForward_ignoresForwardedFromHeader_withoutAValidSignature() {
+        RegionForwarder forwarder = forwarder("us-west=http://localhost:" + peer.getAddress().getPort());
+        RegionForwarder otherSecret = new RegionForwarder(regionRouting, new ObjectMapper(), meterRegistry,
+                "", 2000, "another-secret");
+        long now = Instant.now().getEpochSecond();
+
+        // A client setting the header itself must not keep a remote-region task here
+        assertTrue(forwarder.shouldForward("us-west", "eu-west", null));
+        assertTrue(forwarder.shouldForward("us-west", "eu-west", "garbage"));
+        assertTrue(forwarder.shouldForward("us-west", "eu-west", otherSecret.sign("eu-west", now)));
+        assertTrue(forwarder.shouldForward("us-west", "eu-west", forwarder.sign("us-east", now)));
+        assertTrue(forwarder.shouldForward("us-west", "eu-west", forwarder.sign("eu-west", now - 600)));
+    }
+
+    @Test
+    void forward_relaysThePeersRateLimitHeaders() throws Exception {
+        RegionForwarder forwarder = forwarder("us-west=http://localhost:" + peer.getAddress().getPort());
+
+        ResponseEntity<?> accepted = forwarder.forward(request("us-west"), "Bearer test-token", null)
+                .get(5, TimeUnit.SECONDS);
+        assertEquals("41", accepted.getHeaders().getFirst("X-RateLimit-Remaining"));
+
+        peerStatus = 429;
+        ResponseEntity<?> limited = forwarder.forward(request("us-west"), "Bearer test-token", null)
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(429, limited.getStatusCode().value());
+        assertEquals("3", limited.getHeaders().getFirst("Retry-After"));
+        assertNull(limited.getHeaders().getFirst("X-Internal-Debug"));
+    }
+
+    @Test
+    void forward_sendsToPeerAfterModeledLatency() throws Exception {
+        RegionForwarder forwarder = forwarder("us-west=http://localhost:" + peer.getAddress().getPort() + "/");
+
+        long start = System.nanoTime();
+        ResponseEntity<?> response = forwarder.forward(request("us-west"), "Bearer test-token", null)
+                .get(5, TimeUnit.SECONDS);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        assertEquals(202, response.getStatusCode().value());
+        assertEquals("{\"status\":\"QUEUED\",\"region\":\"us-west\"}", response.getBody());
+        assertEquals("us-east", received.get("forwardedFrom"));
+        assertTrue(forwarder.isForwarded("us-east", received.get("signature")));
+        assertEquals("Bearer test-token", received.get("authorization"));
+        assertTrue(received.get("body").contains("\"tenantId\":\"tenant-1\""));
+        // us-east -> us-west is modeled at 70ms with up to 7ms of jitter either way
+        assertTrue(elapsed.toMillis() >= 60, "elapsed " + elapsed);
+
+        assertEquals(1, meterRegistry.get("flik_region_forward_seconds").tag("outcome", "success").timer().count());
+        assertEquals(0.0, meterRegistry.get("flik_region_forward_inflight").tag("to", "us-west").gauge().value());
+    }
+
+    @Test
+    void forward_returns503_whenPeerUnavailable() throws Exception {
+        int port = peer.getAddress().getPort();
+        peer.stop(0);
+        RegionForwarder forwarder = forwarder("us-west=http://localhost:" + port);
+
+        ResponseEntity<?> response = forwarder.forward(request("us-west"), "Bearer test-token", null)
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(503, response.getStatusCode().value());
+        assertEquals(1, meterRegistry.get("flik_region_forward_seconds").tag("outcome", "failure").timer().count());
+    }
+
+    private RegionForwarder forwarder(String peers) {
+        return new RegionForwarder(regionRouting, new ObjectMapper(), meterRegistry, peers, 2000, "test-secret");
+    }
+
+    private static TaskRequest request(String region) {
+        TaskRequest request = new TaskRequest();
+        request.setTenantId("tenant-1");
+        request.setTaskType("TEXT");
+        request.setRegion(region);
+        return request;
+    }
+}
@@ -0,0 +1,117 @@
+package com.flik.gateway.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flik.common.metrics.TaskMetrics;
+import com.flik.common.model.Task;
+import com.flik.common.model.TaskStatus;
+import com.flik.common.model.TaskType;
+import com.flik.gateway.repository.TaskRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings("unchecked")
+class ResultCacheServiceTest {
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final ValueOperations<String, String> values = mock(ValueOperations.class);
+    private final SetOperations<String, String> sets = mock(SetOperations.class);
+    private final TaskRepository taskRepository = mock(TaskRepository.class);
+    private final TaskJournal taskJournal = mock(TaskJournal.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CostService costService = new CostService(new TaskMetrics(meterRegistry, 100));
+    private ResultCacheService resultCache;
+
+    @BeforeEach
+    void setUp() {
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        when(redisTemplate.opsForSet()).thenReturn(sets);
+        when(taskJournal.findCurrent(any())).thenAnswer(inv -> taskRepository.findById(inv.getArgument(0)));
+        resultCache = new ResultCacheService(redisTemplate, taskRepository, taskJournal, mock(TaskOutbox.class), costService,
+                new ObjectMapper(), mock(PlatformTransactionManager.class), "tenant-1", 3600);
+    }
+
+    @Test
+    void tryServe_skipsTenantsThatHaveNotOptedIn() {
+        Task task = task("tenant-2");
+
+        assertFalse(resultCache.tryServe(task));
+        verifyNoInteractions(values);
+    }
+
+    @Test
+    void tryServe_keysOnCanonicalPayload() {
+        List<String> keys = new ArrayList<>();
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenAnswer(inv -> {
+            keys.add(inv.getArgument(0));
+            return true;
+        });
+        Task first = task("tenant-1");
+        first.setPayload("{\"prompt\":\"cat\",\"style\":\"photo\"}");
+        Task second = task("tenant-1");
+        second.setPayload("{\"style\": \"photo\", \"prompt\": \"cat\"}");
+
+        assertFalse(resultCache.tryServe(first));
+        assertFalse(resultCache.tryServe(second));
+
+        assertEquals(keys.get(0), keys.get(1));
+        assertEquals(2.0, meterRegistry.get("flik_result_cache_requests_total").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void tryServe_completesFromFinishedLeader() {
+        Task leader = task("tenant-1");
+        leader.setStatus(TaskStatus.COMPLETED);
+        leader.setResult("{\"url\":\"https://storage.flik.io/x\"}");
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false);
+        when(values.get(anyString())).thenReturn(leader.getId().toString());
+        when(taskRepository.findById(leader.getId())).thenReturn(Optional.of(leader));
+
+        Task task = task("tenant-1");
+        assertTrue(resultCache.tryServe(task));
+
+        assertEquals(TaskStatus.COMPLETED, task.getStatus());
+        assertEquals(leader.getResult(), task.getResult());
+        verify(taskRepository).save(task);
+        assertEquals(0.01, costService.getSavedCost(), 1e-9);
+        assertEquals(1.0, meterRegistry.get("flik_result_cache_requests_total").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void tryServe_attachesFollowerToRunningLeader() {
+        Task leader = task("tenant-1");
+        leader.setStatus(TaskStatus.PROCESSING);
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false);
+        when(values.get(anyString())).thenReturn(leader.getId().toString());
+        when(taskRepository.findById(leader.getId())).thenReturn(Optional.of(leader));
+
+        Task task = task("tenant-1");
+        assertTrue(resultCache.tryServe(task));
+
+        assertEquals(TaskStatus.QUEUED, task.getStatus());
+        verify(sets).add(eq("result_cache:followers:" + leader.getId()), eq(task.getId().toString()));
+        assertEquals(1.0, meterRegistry.get("flik_result_cache_requests_total").tag("result", "coalesced").counter().count());
+    }
+
+    private static Task task(String tenantId) {
+        Task task = new Task(UUID.randomUUID(), tenantId, TaskType.IMAGE, 1, "{\"prompt\":\"cat\"}");
+        task.setStatus(TaskStatus.QUEUED);
+        return task;
+    }
+}
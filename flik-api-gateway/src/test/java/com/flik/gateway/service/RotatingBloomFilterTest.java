@@ -0,0 +1,48 @@
+package com.flik.gateway.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RotatingBloomFilterTest {
+
+    @Test
+    void mightContain_isTrueForEveryKeyPut() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(10_000, 0.01, TimeUnit.HOURS.toNanos(1));
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("key-" + i);
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("key-" + i));
+        }
+    }
+
+    @Test
+    void mightContain_keepsFalsePositivesNearTarget() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(10_000, 0.01, TimeUnit.HOURS.toNanos(1));
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("key-" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("other-" + i)) falsePositives++;
+        }
+        assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void mightContain_forgetsKeysAfterTwoRotations() throws InterruptedException {
+        RotatingBloomFilter filter = new RotatingBloomFilter(100, 0.01, TimeUnit.MILLISECONDS.toNanos(20));
+        filter.put("retry-1");
+
+        Thread.sleep(30);
+        assertTrue(filter.mightContain("retry-1"), "key should survive one rotation");
+
+        Thread.sleep(30);
+        assertFalse(filter.mightContain("retry-1"));
+    }
+}
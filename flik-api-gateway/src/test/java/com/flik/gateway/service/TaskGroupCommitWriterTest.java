@@ -0,0 +1,152 @@
+package com.flik.gateway.service;
+
+import com.flik.common.model.Task;
+import com.flik.common.model.TaskType;
+import com.flik.gateway.repository.OutboxMessage;
+import com.flik.gateway.repository.OutboxRepository;
+import com.flik.gateway.repository.TaskBatchRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class TaskGroupCommitWriterTest {
+
+    private final List<List<Task>> flushed = new CopyOnWriteArrayList<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TaskJournal taskJournal = mock(TaskJournal.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private TaskGroupCommitWriter writer;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (writer != null) writer.shutdown();
+    }
+
+    @Test
+    void write_coalescesConcurrentRowsIntoOneFlush() {
+        writer = new TaskGroupCommitWriter(recordingRepository(null), outboxRepository(), taskJournal, transactionManager, meterRegistry, 64, 16, 50, 1000);
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(write(task()));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        assertEquals(10, flushed.stream().mapToInt(List::size).sum());
+        assertTrue(flushed.size() < 10, "rows should be grouped into fewer flushes than writes");
+        assertEquals(flushed.size(), meterRegistry.get("flik_task_write_batch_size").summary().count());
+    }
+
+    @Test
+    void write_respectsMaxBatch() {
+        writer = new TaskGroupCommitWriter(recordingRepository(null), outboxRepository(), taskJournal, transactionManager, meterRegistry, 64, 4, 50, 1000);
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            futures.add(write(task()));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        assertTrue(flushed.stream().allMatch(batch -> batch.size() <= 4));
+    }
+
+    @Test
+    void write_failsOnlyTheBadRow_whenBatchInsertFails() {
+        Task bad = task();
+        writer = new TaskGroupCommitWriter(recordingRepository(bad), outboxRepository(), taskJournal, transactionManager, meterRegistry, 64, 16, 50, 1000);
+
+        CompletableFuture<Void> good = write(task());
+        CompletableFuture<Void> failed = write(bad);
+
+        good.join();
+        assertThrows(CompletionException.class, failed::join);
+    }
+
+    @Test
+    void write_flushesP0Next_evenBehindAFullP2Backlog() throws Exception {
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        // The first flush stalls, standing in for a slow P2 commit already in progress
+        TaskBatchRepository repository = new TaskBatchRepository(null) {
+            @Override
+            public int insertAll(List<Task> tasks) {
+                if (flushing.getCount() > 0) {
+                    flushing.countDown();
+                    try {
+                        proceed.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                flushed.add(List.copyOf(tasks));
+                return tasks.size();
+            }
+        };
+        writer = new TaskGroupCommitWriter(repository, outboxRepository(), taskJournal, transactionManager, meterRegistry, 8, 4, 50, 100);
+
+        List<CompletableFuture<Void>> background = new ArrayList<>();
+        background.add(write(task(2)));
+        assertTrue(flushing.await(2, TimeUnit.SECONDS));
+        // Fills the P2 buffer, which would have left no room for P0 in a shared one
+        for (int i = 0; i < 8; i++) {
+            background.add(write(task(2)));
+        }
+        Task urgent = task(0);
+        CompletableFuture<Void> realtime = write(urgent);
+        proceed.countDown();
+
+        realtime.get(2, TimeUnit.SECONDS);
+        CompletableFuture.allOf(background.toArray(CompletableFuture[]::new)).get(2, TimeUnit.SECONDS);
+        assertEquals(List.of(urgent), flushed.get(1));
+        assertEquals(9, flushed.stream().filter(batch -> !batch.contains(urgent)).mapToInt(List::size).sum());
+    }
+
+    private TaskBatchRepository recordingRepository(Task failOn) {
+        return new TaskBatchRepository(null) {
+            @Override
+            public int insertAll(List<Task> tasks) {
+                if (failOn != null && tasks.contains(failOn)) {
+                    throw new IllegalStateException("constraint violation");
+                }
+                flushed.add(List.copyOf(tasks));
+                return tasks.size();
+            }
+        };
+    }
+
+    private CompletableFuture<Void> write(Task task) {
+        return writer.write(task, new OutboxMessage(task.getId(), "flik.tasks", "task.p0", 10,
+                "application/json", Map.of(), new byte[0]));
+    }
+
+    private static OutboxRepository outboxRepository() {
+        return new OutboxRepository(null, null) {
+            @Override
+            public int insertAll(List<OutboxMessage> messages) {
+                return messages.size();
+            }
+        };
+    }
+
+    private static Task task() {
+        return task(0);
+    }
+
+    private static Task task(int priority) {
+        return new Task(UUID.randomUUID(), "tenant-1", TaskType.TEXT, priority, "{}");
+    }
+}
@@ -0,0 +1,169 @@
+package com.flik.gateway.service;
+
+import com.flik.common.dto.RawJson;
+import com.flik.common.model.Task;
+import com.flik.common.model.TaskStatus;
+import com.flik.common.model.TaskType;
+import com.flik.gateway.repository.TaskEvent;
+import com.flik.gateway.repository.TaskEventRepository;
+import com.flik.gateway.repository.TaskRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class TaskJournalTest {
+
+    private final TaskEventRepository taskEventRepository = mock(TaskEventRepository.class);
+    private final TaskRepository taskRepository = mock(TaskRepository.class);
+    private final EntityManager entityManager = mock(EntityManager.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Instant rowUpdatedAt = Instant.now().minusSeconds(60);
+    private final Task task = task();
+
+    @Test
+    void findCurrent_overlaysEventsInOrder_keepingColumnsNoEventSet() {
+        Instant completedAt = rowUpdatedAt.plusSeconds(4);
+        events(event(1, TaskStatus.PROCESSING, null, null, null, null, 1),
+                event(2, TaskStatus.FAILED, null, "timeout", 1, null, 2),
+                event(3, TaskStatus.PROCESSING, null, null, null, null, 3),
+                new TaskEvent(4, task.getId(), TaskStatus.COMPLETED, RawJson.of("{\"ok\":true}"), null, null, "v2",
+                        completedAt, completedAt));
+
+        Task current = journal(true).findCurrent(task.getId()).orElseThrow();
+
+        assertEquals(TaskStatus.COMPLETED, current.getStatus());
+        assertEquals("{\"ok\":true}", current.getResult());
+        // Set by an earlier event and left alone by the later ones
+        assertEquals("timeout", current.getErrorMessage());
+        assertEquals(1, current.getRetryCount());
+        assertEquals("v2", current.getWorkerVersion());
+        assertEquals(completedAt, current.getCompletedAt());
+        assertEquals(completedAt, current.getUpdatedAt());
+        assertEquals("{}", current.getPayload());
+    }
+
+    @Test
+    void findCurrent_keepsTheRowsUpdatedAt_whenItIsNewerThanTheEvent() {
+        events(event(1, TaskStatus.PROCESSING, null, null, null, null, -10));
+
+        Task current = journal(true).findCurrent(task.getId()).orElseThrow();
+
+        assertEquals(TaskStatus.PROCESSING, current.getStatus());
+        assertEquals(rowUpdatedAt, current.getUpdatedAt());
+    }
+
+    @Test
+    void findCurrent_detachesAManagedRowBeforeOverlayingIt() {
+        when(entityManager.contains(task)).thenReturn(true);
+        events(event(1, TaskStatus.PROCESSING, null, null, null, null, 1));
+
+        journal(true).findCurrent(task.getId());
+
+        verify(entityManager).detach(task);
+    }
+
+    @Test
+    void findCurrent_leavesTheRowAttached_whenNoEventIsUncompacted() {
+        when(entityManager.contains(task)).thenReturn(true);
+        events();
+
+        Task current = journal(true).findCurrent(task.getId()).orElseThrow();
+
+        assertEquals(TaskStatus.QUEUED, current.getStatus());
+        verify(entityManager, never()).detach(any());
+    }
+
+    @Test
+    void findCurrent_readsTheRowAlone_whenTheJournalIsDisabled() {
+        when(taskRepository.findById(task.getId())).thenReturn(Optional.of(task));
+
+        assertSame(task, journal(false).findCurrent(task.getId()).orElseThrow());
+
+        verifyNoInteractions(taskEventRepository);
+    }
+
+    @Test
+    void findAllCurrent_readsTheWatermarkBeforeTheRows() {
+        List<String> calls = new ArrayList<>();
+        when(taskEventRepository.watermark()).thenAnswer(invocation -> {
+            calls.add("watermark");
+            return 42L;
+        });
+        when(taskEventRepository.findUncompacted(List.of(task.getId()), 42L)).thenReturn(List.of());
+
+        journal(true).findAllCurrent(() -> {
+            calls.add("rows");
+            return List.of(task);
+        });
+
+        // Read the other way round, a compaction in between could move the watermark past events the rows lack
+        assertEquals(List.of("watermark", "rows"), calls);
+    }
+
+    @Test
+    void compact_repeatsWhileEachPassIsFull_andCountsTheEvents() {
+        when(taskEventRepository.compact(100)).thenReturn(100, 120, 7);
+
+        journal(true).compact();
+
+        verify(taskEventRepository, times(3)).compact(100);
+        assertEquals(227.0, meterRegistry.get("flik_journal_compacted_events_total").counter().count());
+    }
+
+    @Test
+    void compact_stopsWhenAnotherGatewayHoldsTheWatermark_butStillPrunes() {
+        when(taskEventRepository.compact(100)).thenReturn(-1);
+
+        journal(true).compact();
+
+        verify(taskEventRepository, times(1)).compact(100);
+        verify(taskEventRepository).pruneCompacted(any(Instant.class), eq(100));
+        assertEquals(0.0, meterRegistry.get("flik_journal_compacted_events_total").counter().count());
+    }
+
+    @Test
+    void compact_reportsTheAgeOfTheOldestUncompactedEvent() {
+        when(taskEventRepository.oldestUncompacted()).thenReturn(Instant.now().minusSeconds(30));
+
+        journal(true).compact();
+
+        double lag = meterRegistry.get("flik_journal_compaction_lag_seconds").gauge().value();
+        assertTrue(lag >= 30 && lag < 60, "lag was " + lag);
+    }
+
+    private TaskJournal journal(boolean enabled) {
+        return new TaskJournal(taskEventRepository, taskRepository, entityManager,
+                mock(PlatformTransactionManager.class), meterRegistry, enabled, 100, 24);
+    }
+
+    private void events(TaskEvent... events) {
+        when(taskEventRepository.watermark()).thenReturn(42L);
+        when(taskRepository.findById(task.getId())).thenReturn(Optional.of(task));
+        when(taskEventRepository.findUncompacted(List.of(task.getId()), 42L)).thenReturn(List.of(events));
+    }
+
+    private TaskEvent event(long seq, TaskStatus status, String result, String error, Integer retryCount,
+                            String workerVersion, long secondsAfterRow) {
+        return new TaskEvent(seq, task.getId(), status, RawJson.of(result), error, retryCount, workerVersion, null,
+                rowUpdatedAt.plusSeconds(secondsAfterRow));
+    }
+
+    private Task task() {
+        Task task = new Task(UUID.randomUUID(), "tenant-1", TaskType.TEXT, 1, "{}");
+        task.setStatus(TaskStatus.QUEUED);
+        task.setWorkerVersion("v1");
+        task.setUpdatedAt(rowUpdatedAt);
+        return task;
+    }
+}
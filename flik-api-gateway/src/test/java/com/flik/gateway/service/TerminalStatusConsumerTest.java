@@ -0,0 +1,117 @@
+package com.flik.gateway.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flik.common.constants.StatusChannels;
+import com.flik.common.dto.StatusUpdate;
+import com.flik.gateway.websocket.TaskSubscriptionRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo.XInfoConsumer;
+import org.springframework.data.redis.connection.stream.StreamInfo.XInfoConsumers;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings("unchecked")
+class TerminalStatusConsumerTest {
+
+    private static final String STREAM = StatusChannels.TERMINAL_STREAM;
+    private static final String GROUP = StatusChannels.TERMINAL_GROUP;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final StreamOperations<String, String, String> stream = mock(StreamOperations.class);
+    private final DagCompletionListener dagCompletionListener = mock(DagCompletionListener.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private TerminalStatusConsumer consumer;
+
+    @BeforeEach
+    void setUp() {
+        when(redisTemplate.<String, String>opsForStream()).thenReturn(stream);
+        consumers();
+        TaskSubscriptionRegistry subscriptions = mock(TaskSubscriptionRegistry.class);
+        when(subscriptions.gatewayId()).thenReturn("gw-1");
+        consumer = new TerminalStatusConsumer(redisTemplate, objectMapper, dagCompletionListener, subscriptions,
+                meterRegistry, 100, 60000);
+    }
+
+    @Test
+    void handle_passesEachEventOn_andAcknowledgesTheBatch_includingAnEventThatFails() throws Exception {
+        UUID taskId = UUID.randomUUID();
+        MapRecord<String, String, String> completed = record("1-0", objectMapper.writeValueAsString(
+                new StatusUpdate(taskId, "COMPLETED")));
+        MapRecord<String, String, String> unreadable = record("2-0", "not json");
+
+        consumer.handle(List.of(completed, unreadable));
+
+        verify(dagCompletionListener).onStatusUpdate(argThat(update -> update.getTaskId().equals(taskId)));
+        verify(stream).acknowledge(STREAM, GROUP, RecordId.of("1-0"), RecordId.of("2-0"));
+        assertEquals(2.0, meterRegistry.get("flik_status_events_received_total").tag("channel", "terminal")
+                .counter().count());
+    }
+
+    @Test
+    void claimAbandoned_takesOverOnlyEventsIdleForTheClaimTimeout() throws Exception {
+        UUID taskId = UUID.randomUUID();
+        when(stream.pending(eq(STREAM), eq(GROUP), any(Range.class), eq(100L))).thenReturn(new PendingMessages(GROUP,
+                List.of(new PendingMessage(RecordId.of("1-0"), Consumer.from(GROUP, "gw-gone"), Duration.ofMinutes(5), 1),
+                        new PendingMessage(RecordId.of("2-0"), Consumer.from(GROUP, "gw-2"), Duration.ofSeconds(1), 1))));
+        when(stream.claim(STREAM, GROUP, "gw-1", Duration.ofMinutes(1), RecordId.of("1-0"))).thenReturn(List.of(
+                record("1-0", objectMapper.writeValueAsString(new StatusUpdate(taskId, "DEAD_LETTERED")))));
+
+        consumer.claimAbandoned();
+
+        verify(dagCompletionListener).onStatusUpdate(argThat(update -> update.getTaskId().equals(taskId)));
+        verify(stream).acknowledge(STREAM, GROUP, RecordId.of("1-0"));
+        assertEquals(1.0, meterRegistry.get("flik_status_terminal_claimed_total").counter().count());
+    }
+
+    @Test
+    void claimAbandoned_removesOtherConsumersThatHoldNothingAndStoppedReading() {
+        when(stream.pending(eq(STREAM), eq(GROUP), any(Range.class), eq(100L)))
+                .thenReturn(new PendingMessages(GROUP, List.of()));
+        consumers(consumerInfo("gw-gone", 0, 120_000), consumerInfo("gw-busy", 3, 120_000),
+                consumerInfo("gw-2", 0, 500), consumerInfo("gw-1", 0, 120_000));
+
+        consumer.claimAbandoned();
+
+        verify(stream).deleteConsumer(STREAM, Consumer.from(GROUP, "gw-gone"));
+        verify(stream, times(1)).deleteConsumer(eq(STREAM), any(Consumer.class));
+        verifyNoInteractions(dagCompletionListener);
+    }
+
+    private void consumers(XInfoConsumer... infos) {
+        XInfoConsumers consumers = mock(XInfoConsumers.class);
+        when(consumers.stream()).thenAnswer(invocation -> Stream.of(infos));
+        when(stream.consumers(STREAM, GROUP)).thenReturn(consumers);
+    }
+
+    private static XInfoConsumer consumerInfo(String name, long pending, long idleMs) {
+        XInfoConsumer info = mock(XInfoConsumer.class);
+        when(info.consumerName()).thenReturn(name);
+        when(info.pendingCount()).thenReturn(pending);
+        when(info.idleTimeMs()).thenReturn(idleMs);
+        return info;
+    }
+
+    private static MapRecord<String, String, String> record(String id, String event) {
+        return MapRecord.create(STREAM, Map.of(StatusChannels.EVENT_FIELD, event)).withId(RecordId.of(id));
+    }
+}
@@ -0,0 +1,118 @@
+package com.flik.gateway.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisKeyCommands;
+import org.springframework.data.redis.connection.RedisSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings("unchecked")
+class TaskSubscriptionRegistryTest {
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final UUID taskId = UUID.randomUUID();
+    private TaskSubscriptionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(List.of());
+        registry = new TaskSubscriptionRegistry(redisTemplate, new SimpleMeterRegistry(), "gw-1", 300);
+    }
+
+    @Test
+    void channel_isNamedAfterTheGateway() {
+        assertEquals("task-status:gateway:gw-1", registry.channel());
+    }
+
+    @Test
+    void registersOnFirstSubscriberAndDeregistersAfterLast() {
+        registry.subscribed("s1", "sub-1", "/topic/tasks/" + taskId);
+        registry.subscribed("s2", "sub-1", "/topic/tasks/" + taskId);
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+        assertTrue(registry.isSubscribed(taskId));
+
+        registry.unsubscribed("s1", "sub-1");
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+        assertTrue(registry.isSubscribed(taskId));
+
+        registry.disconnected("s2");
+        verify(redisTemplate, times(2)).executePipelined(any(RedisCallback.class));
+        assertFalse(registry.isSubscribed(taskId));
+        assertEquals(0, registry.subscribedTasks());
+    }
+
+    @Test
+    void anUnsubscribeDuringASlowRegister_leavesTheEntryRemoved() throws Exception {
+        List<String> writes = new CopyOnWriteArrayList<>();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        RedisConnection connection = connection(writes);
+        // The first pipeline stalls until the test lets it through
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            if (writing.getCount() > 0) {
+                writing.countDown();
+                proceed.await();
+            }
+            invocation.<RedisCallback<?>>getArgument(0).doInRedis(connection);
+            return List.of();
+        });
+
+        Thread subscriber = Thread.ofPlatform().start(() -> registry.subscribed("s1", "sub-1", "/topic/tasks/" + taskId));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        Thread unsubscriber = Thread.ofPlatform().start(() -> registry.unsubscribed("s1", "sub-1"));
+        unsubscriber.join(200);
+        proceed.countDown();
+        subscriber.join(5000);
+        unsubscriber.join(5000);
+
+        assertFalse(registry.isSubscribed(taskId));
+        assertEquals(List.of("SADD", "SREM"), writes);
+    }
+
+    @Test
+    void ignoresDestinationsThatAreNotTaskTopics() {
+        registry.subscribed("s1", "sub-1", "/topic/costs");
+        registry.subscribed("s1", "sub-2", "/topic/tasks/not-a-uuid");
+
+        verifyNoInteractions(redisTemplate);
+        assertEquals(0, registry.subscribedTasks());
+    }
+
+    @Test
+    void failsOpen_whenRedisIsDown() {
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenThrow(new RuntimeException("down"));
+
+        assertDoesNotThrow(() -> registry.subscribed("s1", "sub-1", "/topic/tasks/" + taskId));
+        assertTrue(registry.isSubscribed(taskId));
+        assertDoesNotThrow(registry::refresh);
+    }
+
+    private static RedisConnection connection(List<String> writes) {
+        RedisConnection connection = mock(RedisConnection.class);
+        RedisSetCommands setCommands = mock(RedisSetCommands.class);
+        when(connection.setCommands()).thenReturn(setCommands);
+        when(connection.keyCommands()).thenReturn(mock(RedisKeyCommands.class));
+        when(setCommands.sAdd(any(byte[].class), any(byte[][].class))).thenAnswer(invocation -> {
+            writes.add("SADD");
+            return 1L;
+        });
+        when(setCommands.sRem(any(byte[].class), any(byte[][].class))).thenAnswer(invocation -> {
+            writes.add("SREM");
+            return 1L;
+        });
+        return connection;
+    }
+}
@@ -0,0 +1,178 @@
+package com.flik.common.compression;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflates text above a size threshold into a self-describing envelope:
+ * <pre>
+ * magic:0xFF format:u8 originalLength:i32 deflate bytes
+ * </pre>
+ * 0xFF never appears in UTF-8, so anything without the magic byte is read back as plain text and values
+ * written before compression was enabled still decode. Deflaters and inflaters are pooled because each
+ * holds native memory.
+ */
+public class PayloadCompressor {
+
+    private static final byte MAGIC = (byte) 0xFF;
+    private static final byte FORMAT_DEFLATE = 1;
+    private static final int HEADER_BYTES = 2 + Integer.BYTES;
+    private static final int POOL_SIZE = 16;
+
+    private final int thresholdBytes;
+    private final int level;
+    private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private final DistributionSummary ratio;
+    private final Timer compressTime;
+    private final Timer decompressTime;
+    private final Counter skipped;
+
+    public PayloadCompressor(MeterRegistry meterRegistry, int thresholdBytes, int level) {
+        this.thresholdBytes = thresholdBytes;
+        this.level = level;
+
+        this.ratio = DistributionSummary.builder("flik_compression_ratio")
+                .description("Original size divided by compressed size")
+                .register(meterRegistry);
+        this.compressTime = Timer.builder("flik_compression_seconds")
+                .description("Time spent compressing or decompressing payloads")
+                .tag("op", "compress")
+                .register(meterRegistry);
+        this.decompressTime = Timer.builder("flik_compression_seconds")
+                .description("Time spent compressing or decompressing payloads")
+                .tag("op", "decompress")
+                .register(meterRegistry);
+        this.skipped = Counter.builder("flik_compression_skipped_total")
+                .description("Payloads over the threshold that did not shrink and were stored plain")
+                .register(meterRegistry);
+    }
+
+    // Never compresses, but still reads envelopes written by a compressing peer
+    public static PayloadCompressor disabled() {
+        return new PayloadCompressor(new SimpleMeterRegistry(), Integer.MAX_VALUE, Deflater.BEST_SPEED);
+    }
+
+    // UTF-8 is at least one byte per char, so the char count is a safe lower bound for the encoded size
+    public boolean shouldCompress(String value) {
+        return value != null && value.length() >= thresholdBytes;
+    }
+
+    public byte[] encode(String value) {
+        byte[] plain = value.getBytes(StandardCharsets.UTF_8);
+        if (plain.length < thresholdBytes) {
+            return plain;
+        }
+
+        long start = System.nanoTime();
+        byte[] compressed = deflate(plain);
+        compressTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        if (compressed.length + HEADER_BYTES >= plain.length) {
+            skipped.increment();
+            return plain;
+        }
+        ratio.record((double) plain.length / (compressed.length + HEADER_BYTES));
+
+        ByteBuffer envelope = ByteBuffer.allocate(HEADER_BYTES + compressed.length);
+        envelope.put(MAGIC).put(FORMAT_DEFLATE).putInt(plain.length).put(compressed);
+        return envelope.array();
+    }
+
+    public String decode(byte[] value) {
+        return decode(value, 0, value.length);
+    }
+
+    public String decode(byte[] value, int offset, int length) {
+        if (!isCompressed(value, offset, length)) {
+            return new String(value, offset, length, StandardCharsets.UTF_8);
+        }
+        ByteBuffer header = ByteBuffer.wrap(value, offset, HEADER_BYTES);
+        header.get();
+        byte format = header.get();
+        if (format != FORMAT_DEFLATE) {
+            throw new IllegalArgumentException("Unsupported compression format: " + format);
+        }
+        int originalLength = header.getInt();
+
+        long start = System.nanoTime();
+        byte[] plain = inflate(value, offset + HEADER_BYTES, length - HEADER_BYTES, originalLength);
+        decompressTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return new String(plain, StandardCharsets.UTF_8);
+    }
+
+    public static boolean isCompressed(byte[] value, int offset, int length) {
+        return length >= HEADER_BYTES && value[offset] == MAGIC;
+    }
+
+    private byte[] deflate(byte[] plain) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level);
+        }
+        try {
+            deflater.setInput(plain);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(plain.length / 2);
+            byte[] chunk = new byte[Math.min(plain.length, 8192)];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.reset();
+            if (!deflaters.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    private byte[] inflate(byte[] value, int offset, int length, int originalLength) {
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        try {
+            inflater.setInput(value, offset, length);
+            byte[] plain = new byte[originalLength];
+            int read = 0;
+            while (read < originalLength && !inflater.finished()) {
+                int n = inflater.inflate(plain, read, originalLength - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += n;
+            }
+            // A full output buffer can stop inflate() short of the trailer, so drain it before checking the end
+            if (!inflater.finished() && inflater.inflate(new byte[1]) != 0) {
+                throw new IllegalArgumentException("Compressed payload longer than " + originalLength + " bytes");
+            }
+            if (read != originalLength || !inflater.finished()) {
+                throw new IllegalArgumentException("Truncated compressed payload: expected " + originalLength
+                        + " bytes, got " + read);
+            }
+            return plain;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt compressed payload", e);
+        } finally {
+            inflater.reset();
+            if (!inflaters.offer(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+}
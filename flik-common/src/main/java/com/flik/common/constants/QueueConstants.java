@@ -36,6 +36,16 @@ public final class QueueConstants {
         };
     }
 
+    // RabbitMQ message priority a task starts at; PriorityAging raises it toward MAX_PRIORITY as it waits
+    public static int messagePriorityFor(int priority) {
+        return switch (priority) {
+            case 0 -> 10;
+            case 1 -> 5;
+            case 2 -> 1;
+            default -> 1;
+        };
+    }
+
     public static String queueForPriority(int priority) {
         return switch (priority) {
             case 0 -> QUEUE_P0;
@@ -0,0 +1,48 @@
+package com.flik.common.constants;
+
+import java.util.UUID;
+
+/**
+ * Redis routing for task status events. Every status goes over pub/sub only to the gateways listed in the
+ * task's subscriber set, that is, those with a WebSocket client watching the task. Terminal statuses are
+ * also appended to the terminal stream, which the gateways read as one consumer group, so each is handed to
+ * DAG progression, costs and result-cache followers by exactly one gateway.
+ */
+public final class StatusChannels {
+
+    private StatusChannels() {}
+
+    public static final String TERMINAL_STREAM = "task-status:terminal";
+    public static final String TERMINAL_GROUP = "gateways";
+    // Trimmed approximately; only entries the group has fallen this far behind on are lost
+    public static final long TERMINAL_STREAM_MAX_LENGTH = 100_000;
+    public static final String GATEWAY_PREFIX = "task-status:gateway:";
+    public static final String SUBSCRIBERS_PREFIX = "task-status:subscribers:";
+
+    // KEYS = the task's subscriber set, the terminal stream;
+    // ARGV = event, terminal flag, gateway channel prefix, stream max length
+    public static final String ROUTE_SCRIPT = """
+            local gateways = redis.call('SMEMBERS', KEYS[1])
+            for _, gateway in ipairs(gateways) do
+                redis.call('PUBLISH', ARGV[3] .. gateway, ARGV[1])
+            end
+            if ARGV[2] == '1' then
+                redis.call('XADD', KEYS[2], 'MAXLEN', '~', ARGV[4], '*', 'event', ARGV[1])
+            end
+            return #gateways
+            """;
+    public static final String EVENT_FIELD = "event";
+
+    public static String gateway(String gatewayId) {
+        return GATEWAY_PREFIX + gatewayId;
+    }
+
+    public static String subscribers(UUID taskId) {
+        return SUBSCRIBERS_PREFIX + taskId;
+    }
+
+    // The statuses DagCompletionListener acts on
+    public static boolean isTerminal(String status) {
+        return "COMPLETED".equals(status) || "DEAD_LETTERED".equals(status) || "EXPIRED".equals(status);
+    }
+}
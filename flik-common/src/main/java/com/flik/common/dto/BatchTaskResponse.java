@@ -0,0 +1,29 @@
+package com.flik.common.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchTaskResponse {
+
+    private int accepted;
+    private int rejected;
+    private List<TaskResponse> tasks;
+
+    public BatchTaskResponse() {}
+
+    public BatchTaskResponse(List<TaskResponse> tasks) {
+        this.tasks = tasks;
+        for (TaskResponse task : tasks) {
+            if (task.getTaskId() != null && task.getErrorMessage() == null) accepted++;
+            else rejected++;
+        }
+    }
+
+    public int getAccepted() { return accepted; }
+    public void setAccepted(int accepted) { this.accepted = accepted; }
+    public int getRejected() { return rejected; }
+    public void setRejected(int rejected) { this.rejected = rejected; }
+    public List<TaskResponse> getTasks() { return tasks; }
+    public void setTasks(List<TaskResponse> tasks) { this.tasks = tasks; }
+}
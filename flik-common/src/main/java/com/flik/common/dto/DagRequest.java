@@ -33,13 +33,13 @@ public class DagRequest {
         private String taskType;
 
         @JsonProperty("payload")
-        private Object payload;
+        private RawJson payload;
 
         public DagStep() {}
 
         public String getTaskType() { return taskType; }
         public void setTaskType(String taskType) { this.taskType = taskType; }
-        public Object getPayload() { return payload; }
-        public void setPayload(Object payload) { this.payload = payload; }
+        public RawJson getPayload() { return payload; }
+        public void setPayload(RawJson payload) { this.payload = payload; }
     }
 }
@@ -0,0 +1,72 @@
+package com.flik.common.dto;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * A JSON value carried as its serialized text. Payloads and results are stored and published as JSON
+ * strings, so wrapping the text lets them pass through request and response bodies without being parsed
+ * into an object tree and serialized again. Deserializing copies the value's tokens straight into text.
+ */
+@JsonSerialize(using = RawJson.Serializer.class)
+@JsonDeserialize(using = RawJson.Deserializer.class)
+public final class RawJson {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final String json;
+
+    private RawJson(String json) {
+        this.json = json;
+    }
+
+    // Caller vouches that the text is valid JSON; it is written to responses unchecked
+    public static RawJson of(String json) {
+        return json != null ? new RawJson(json) : null;
+    }
+
+    public String getJson() { return json; }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RawJson other && json.equals(other.json);
+    }
+
+    @Override
+    public int hashCode() {
+        return json.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return json;
+    }
+
+    public static class Serializer extends JsonSerializer<RawJson> {
+        @Override
+        public void serialize(RawJson value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeRawValue(value.json);
+        }
+    }
+
+    public static class Deserializer extends JsonDeserializer<RawJson> {
+        @Override
+        public RawJson deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            StringWriter writer = new StringWriter();
+            try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+                generator.copyCurrentStructure(p);
+            }
+            return new RawJson(writer.toString());
+        }
+    }
+}
@@ -1,15 +1,20 @@
 package com.flik.common.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.time.Instant;
 import java.util.UUID;
 
+// Published for every status change, so fields a status does not set are left out
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class StatusUpdate {
 
     private UUID taskId;
     private String status;
-    private Object result;
+    private RawJson result;
     private String errorMessage;
     private Instant timestamp;
+    private UUID sourceTaskId;
 
     public StatusUpdate() {}
 
@@ -23,10 +28,13 @@ public class StatusUpdate {
     public void setTaskId(UUID taskId) { this.taskId = taskId; }
     public String getStatus() { return status; }
     public void setStatus(String status) { this.status = status; }
-    public Object getResult() { return result; }
-    public void setResult(Object result) { this.result = result; }
+    public RawJson getResult() { return result; }
+    public void setResult(RawJson result) { this.result = result; }
     public String getErrorMessage() { return errorMessage; }
     public void setErrorMessage(String errorMessage) { this.errorMessage = errorMessage; }
     public Instant getTimestamp() { return timestamp; }
     public void setTimestamp(Instant timestamp) { this.timestamp = timestamp; }
+    // Set when the result was copied from another task rather than generated
+    public UUID getSourceTaskId() { return sourceTaskId; }
+    public void setSourceTaskId(UUID sourceTaskId) { this.sourceTaskId = sourceTaskId; }
 }
@@ -1,8 +1,11 @@
 package com.flik.common.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.io.Serializable;
 import java.time.Instant;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 public class TaskMessage implements Serializable {
 
@@ -16,6 +19,8 @@ public class TaskMessage implements Serializable {
     private UUID dagId;
     private UUID parentTaskId;
     private Instant createdAt;
+    private Instant deadline;
+    private transient Supplier<String> deferredPayload;
 
     public TaskMessage() {}
 
@@ -37,12 +42,26 @@ public class TaskMessage implements Serializable {
     public void setTaskType(String taskType) { this.taskType = taskType; }
     public int getPriority() { return priority; }
     public void setPriority(int priority) { this.priority = priority; }
-    public String getPayload() { return payload; }
-    public void setPayload(String payload) { this.payload = payload; }
+    public String getPayload() {
+        if (deferredPayload != null) {
+            payload = deferredPayload.get();
+            deferredPayload = null;
+        }
+        return payload;
+    }
+    public void setPayload(String payload) {
+        this.payload = payload;
+        this.deferredPayload = null;
+    }
+    // Resolved on the first getPayload(), so consumers that never read the payload never decompress it
+    @JsonIgnore
+    public void setDeferredPayload(Supplier<String> deferredPayload) { this.deferredPayload = deferredPayload; }
     public int getRetryCount() { return retryCount; }
     public void setRetryCount(int retryCount) { this.retryCount = retryCount; }
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+    public Instant getDeadline() { return deadline; }
+    public void setDeadline(Instant deadline) { this.deadline = deadline; }
     public String getRegion() { return region; }
     public void setRegion(String region) { this.region = region; }
     public UUID getDagId() { return dagId; }
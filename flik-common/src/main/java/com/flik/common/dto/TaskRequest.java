@@ -2,6 +2,8 @@ package com.flik.common.dto;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.time.Instant;
+
 public class TaskRequest {
 
     @JsonProperty("tenantId")
@@ -14,7 +16,7 @@ public class TaskRequest {
     private int priority;
 
     @JsonProperty("payload")
-    private Object payload;
+    private RawJson payload;
 
     @JsonProperty("region")
     private String region;
@@ -25,6 +27,13 @@ public class TaskRequest {
     @JsonProperty("parentTaskId")
     private String parentTaskId;
 
+    // Optional; a task still queued at its deadline, or after maxQueueAgeMs, expires without being processed
+    @JsonProperty("deadline")
+    private Instant deadline;
+
+    @JsonProperty("maxQueueAgeMs")
+    private Long maxQueueAgeMs;
+
     public TaskRequest() {}
 
     public String getTenantId() { return tenantId; }
@@ -33,12 +42,16 @@ public class TaskRequest {
     public void setTaskType(String taskType) { this.taskType = taskType; }
     public int getPriority() { return priority; }
     public void setPriority(int priority) { this.priority = priority; }
-    public Object getPayload() { return payload; }
-    public void setPayload(Object payload) { this.payload = payload; }
+    public RawJson getPayload() { return payload; }
+    public void setPayload(RawJson payload) { this.payload = payload; }
     public String getRegion() { return region; }
     public void setRegion(String region) { this.region = region; }
     public String getDagId() { return dagId; }
     public void setDagId(String dagId) { this.dagId = dagId; }
     public String getParentTaskId() { return parentTaskId; }
     public void setParentTaskId(String parentTaskId) { this.parentTaskId = parentTaskId; }
+    public Instant getDeadline() { return deadline; }
+    public void setDeadline(Instant deadline) { this.deadline = deadline; }
+    public Long getMaxQueueAgeMs() { return maxQueueAgeMs; }
+    public void setMaxQueueAgeMs(Long maxQueueAgeMs) { this.maxQueueAgeMs = maxQueueAgeMs; }
 }
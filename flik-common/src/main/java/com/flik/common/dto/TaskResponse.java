@@ -12,8 +12,8 @@ public class TaskResponse {
     private String taskType;
     private int priority;
     private String status;
-    private Object payload;
-    private Object result;
+    private RawJson payload;
+    private RawJson result;
     private int retryCount;
     private String errorMessage;
     private String region;
@@ -25,6 +25,7 @@ public class TaskResponse {
     private Instant createdAt;
     private Instant updatedAt;
     private Instant completedAt;
+    private Instant deadline;
 
     public TaskResponse() {}
 
@@ -38,10 +39,10 @@ public class TaskResponse {
     public void setPriority(int priority) { this.priority = priority; }
     public String getStatus() { return status; }
     public void setStatus(String status) { this.status = status; }
-    public Object getPayload() { return payload; }
-    public void setPayload(Object payload) { this.payload = payload; }
-    public Object getResult() { return result; }
-    public void setResult(Object result) { this.result = result; }
+    public RawJson getPayload() { return payload; }
+    public void setPayload(RawJson payload) { this.payload = payload; }
+    public RawJson getResult() { return result; }
+    public void setResult(RawJson result) { this.result = result; }
     public int getRetryCount() { return retryCount; }
     public void setRetryCount(int retryCount) { this.retryCount = retryCount; }
     public String getErrorMessage() { return errorMessage; }
@@ -52,6 +53,8 @@ public class TaskResponse {
     public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
     public Instant getCompletedAt() { return completedAt; }
     public void setCompletedAt(Instant completedAt) { this.completedAt = completedAt; }
+    public Instant getDeadline() { return deadline; }
+    public void setDeadline(Instant deadline) { this.deadline = deadline; }
     public String getRegion() { return region; }
     public void setRegion(String region) { this.region = region; }
     public String getDagId() { return dagId; }
@@ -0,0 +1,177 @@
+package com.flik.common.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Publishes with correlated confirms and returns a future completed by the broker's ack.
+ * Unconfirmed messages are capped, and nacked or timed-out sends are retried before the future fails.
+ * A publish over the cap never blocks: it waits in line for a confirm and fails if none frees a slot in time.
+ */
+public class ConfirmingPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(ConfirmingPublisher.class);
+
+    private final RabbitTemplate rabbitTemplate;
+    private final Semaphore inFlight;
+    private final Queue<PendingSend> waiting = new ConcurrentLinkedQueue<>();
+    private final int maxInFlight;
+    private final Duration acquireTimeout;
+    private final Duration confirmTimeout;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+
+    private final Timer confirmLatency;
+    private final Counter nacks;
+    private final Counter failures;
+
+    public ConfirmingPublisher(RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry, int maxInFlight,
+                               Duration acquireTimeout, Duration confirmTimeout, int maxAttempts,
+                               Duration retryBackoff) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+        this.acquireTimeout = acquireTimeout;
+        this.confirmTimeout = confirmTimeout;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+
+        this.confirmLatency = Timer.builder("flik_publish_confirm_seconds")
+                .description("Time from publish to broker confirm")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.nacks = Counter.builder("flik_publish_nacks_total")
+                .description("Publishes nacked or not confirmed in time")
+                .register(meterRegistry);
+        this.failures = Counter.builder("flik_publish_failures_total")
+                .description("Publishes that failed after all attempts")
+                .register(meterRegistry);
+        Gauge.builder("flik_publish_inflight", inFlight, s -> maxInFlight - s.availablePermits())
+                .description("Messages published but not yet confirmed")
+                .register(meterRegistry);
+        Gauge.builder("flik_publish_waiting", waiting, Queue::size)
+                .description("Publishes waiting for an unconfirmed message to be confirmed")
+                .register(meterRegistry);
+    }
+
+    public CompletableFuture<Void> publish(String exchange, String routingKey, Object payload,
+                                           MessagePostProcessor postProcessor) {
+        Message message = rabbitTemplate.getMessageConverter().toMessage(payload, new MessageProperties());
+        return publish(exchange, routingKey, postProcessor.postProcessMessage(message));
+    }
+
+    public CompletableFuture<Void> publish(String exchange, String routingKey, Message message) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        send(exchange, routingKey, message, 1, result);
+        return result;
+    }
+
+    public int inFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    // Never blocks the caller: without a free permit the send waits in line for a confirm to release one
+    private void send(String exchange, String routingKey, Message message, int attempt,
+                      CompletableFuture<Void> result) {
+        PendingSend send = new PendingSend(exchange, routingKey, message, attempt, result);
+        if (inFlight.tryAcquire()) {
+            transmit(send);
+            return;
+        }
+        waiting.add(send);
+        CompletableFuture.runAsync(() -> expire(send),
+                CompletableFuture.delayedExecutor(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS));
+        // A permit released before the send was queued would otherwise go unused
+        drainWaiting();
+    }
+
+    // Caller holds a permit
+    private void transmit(PendingSend send) {
+        long start = System.nanoTime();
+        CorrelationData correlation = new CorrelationData(UUID.randomUUID().toString());
+        try {
+            rabbitTemplate.send(send.exchange(), send.routingKey(), send.message(), correlation);
+        } catch (Exception e) {
+            release();
+            retryOrFail(send.exchange(), send.routingKey(), send.message(), send.attempt(), send.result(), e.getMessage());
+            return;
+        }
+
+        correlation.getFuture()
+                .orTimeout(confirmTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((confirm, error) -> {
+                    release();
+                    confirmLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    if (error == null && confirm.isAck()) {
+                        send.result().complete(null);
+                        return;
+                    }
+                    nacks.increment();
+                    String reason = error instanceof TimeoutException ? "confirm timed out"
+                            : error != null ? error.getMessage() : confirm.getReason();
+                    retryOrFail(send.exchange(), send.routingKey(), send.message(), send.attempt(), send.result(), reason);
+                });
+    }
+
+    private void release() {
+        inFlight.release();
+        drainWaiting();
+    }
+
+    // Hands free permits to waiting sends, which go out off the confirm callback thread that belongs to the connection
+    private void drainWaiting() {
+        while (!waiting.isEmpty() && inFlight.tryAcquire()) {
+            PendingSend next = waiting.poll();
+            if (next == null) {
+                inFlight.release();
+                return;
+            }
+            CompletableFuture.runAsync(() -> transmit(next));
+        }
+    }
+
+    private void expire(PendingSend send) {
+        if (waiting.remove(send)) {
+            failures.increment();
+            send.result().completeExceptionally(new RejectedExecutionException(
+                    "Too many unconfirmed messages (" + maxInFlight + ")"));
+        }
+    }
+
+    private void retryOrFail(String exchange, String routingKey, Message message, int attempt,
+                             CompletableFuture<Void> result, String reason) {
+        if (attempt >= maxAttempts) {
+            failures.increment();
+            result.completeExceptionally(new IllegalStateException(
+                    "Publish to " + exchange + "/" + routingKey + " not confirmed after " + attempt
+                            + " attempts: " + reason));
+            return;
+        }
+        log.warn("Publish to {}/{} not confirmed ({}), retrying attempt {}", exchange, routingKey, reason, attempt + 1);
+        // Resend off the confirm callback thread, which belongs to the connection
+        CompletableFuture.runAsync(() -> send(exchange, routingKey, message, attempt + 1, result),
+                CompletableFuture.delayedExecutor(retryBackoff.toMillis() * attempt, TimeUnit.MILLISECONDS));
+    }
+
+    private record PendingSend(String exchange, String routingKey, Message message, int attempt,
+                               CompletableFuture<Void> result) {}
+}
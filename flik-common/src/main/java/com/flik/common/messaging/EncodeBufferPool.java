@@ -0,0 +1,53 @@
+package com.flik.common.messaging;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Bounded pool of scratch buffers; a queue rather than a ThreadLocal so it behaves under virtual threads
+public class EncodeBufferPool {
+
+    private final BlockingQueue<Scratch> free;
+    private final int initialCapacity;
+    private final int maxRetainedCapacity;
+
+    public EncodeBufferPool(int poolSize, int initialCapacity, int maxRetainedCapacity) {
+        this.free = new ArrayBlockingQueue<>(poolSize);
+        this.initialCapacity = initialCapacity;
+        this.maxRetainedCapacity = maxRetainedCapacity;
+    }
+
+    public Scratch acquire() {
+        Scratch scratch = free.poll();
+        return scratch != null ? scratch : new Scratch(initialCapacity);
+    }
+
+    public void release(Scratch scratch) {
+        if (scratch.buffer.capacity() <= maxRetainedCapacity) {
+            free.offer(scratch);
+        }
+    }
+
+    public int available() {
+        return free.size();
+    }
+
+    public static final class Scratch {
+
+        private ByteBuffer buffer;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+        private Scratch(int capacity) {
+            this.buffer = ByteBuffer.allocate(capacity);
+        }
+
+        public ByteBuffer buffer() { return buffer; }
+        public CharsetEncoder encoder() { return encoder; }
+
+        void grow() {
+            buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+        }
+    }
+}
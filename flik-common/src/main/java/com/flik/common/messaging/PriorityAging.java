@@ -0,0 +1,49 @@
+package com.flik.common.messaging;
+
+import com.flik.common.constants.QueueConstants;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Ages a queued task's RabbitMQ message priority by how long it has waited since it was created. A task starts
+ * at {@link QueueConstants#messagePriorityFor} and climbs linearly to {@link QueueConstants#MAX_PRIORITY}, which
+ * it reaches once it has waited the max-wait SLO for its priority; from then on it is overdue.
+ */
+public class PriorityAging {
+
+    private final long[] maxWaitMillis;
+
+    public PriorityAging(Duration p0MaxWait, Duration p1MaxWait, Duration p2MaxWait) {
+        this.maxWaitMillis = new long[]{
+                Math.max(1, p0MaxWait.toMillis()), Math.max(1, p1MaxWait.toMillis()), Math.max(1, p2MaxWait.toMillis())};
+    }
+
+    public Duration maxWait(int priority) {
+        return Duration.ofMillis(maxWaitMillis[index(priority)]);
+    }
+
+    /** When a task created at {@code createdAt} breaches its SLO, or null if its creation time is unknown. */
+    public Instant dueAt(int priority, Instant createdAt) {
+        return createdAt != null ? createdAt.plusMillis(maxWaitMillis[index(priority)]) : null;
+    }
+
+    public boolean isOverdue(int priority, Instant createdAt, Instant now) {
+        Instant due = dueAt(priority, createdAt);
+        return due != null && !now.isBefore(due);
+    }
+
+    public int messagePriority(int priority, Instant createdAt, Instant now) {
+        int base = QueueConstants.messagePriorityFor(priority);
+        if (createdAt == null) return base;
+        long waited = Duration.between(createdAt, now).toMillis();
+        if (waited <= 0) return base;
+        double aged = Math.min(1.0, (double) waited / maxWaitMillis[index(priority)]);
+        return base + (int) ((QueueConstants.MAX_PRIORITY - base) * aged);
+    }
+
+    // Priorities outside 0-2 are routed and weighted as P2
+    private static int index(int priority) {
+        return priority == 0 || priority == 1 ? priority : 2;
+    }
+}
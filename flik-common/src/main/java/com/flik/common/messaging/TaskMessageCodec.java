@@ -0,0 +1,239 @@
+package com.flik.common.messaging;
+
+import com.flik.common.compression.PayloadCompressor;
+import com.flik.common.dto.TaskMessage;
+import com.flik.common.model.TaskType;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Versioned binary layout for {@link TaskMessage}. The fixed-width fields and tenant come first so
+ * {@link #peek(byte[])} can read them without touching the payload:
+ * <pre>
+ * version:u8 flags:u8 taskId:16 retryCount:i32 taskType:u8 priority:i32 tenantId:str
+ * [region:str] [dagId:16] [parentTaskId:16] [createdAt:i64+i32] [deadline:i64+i32] payload:i32-length bytes
+ * </pre>
+ * Strings are UTF-8 with an unsigned 16-bit length; a payload length of -1 means null. Payloads over the
+ * {@link PayloadCompressor} threshold are stored as its envelope and only inflated when first read.
+ * Version 1, which held priority in one unsigned byte, is still read so messages queued before an upgrade
+ * are not rejected.
+ */
+public class TaskMessageCodec {
+
+    public static final byte VERSION = 2;
+    private static final byte VERSION_BYTE_PRIORITY = 1;
+
+    private static final int FLAG_REGION = 1;
+    private static final int FLAG_DAG = 1 << 1;
+    private static final int FLAG_PARENT = 1 << 2;
+    private static final int FLAG_CREATED_AT = 1 << 3;
+    private static final int FLAG_DEADLINE = 1 << 4;
+
+    private static final TaskType[] TASK_TYPES = TaskType.values();
+
+    private final EncodeBufferPool bufferPool;
+    private final PayloadCompressor compressor;
+
+    public TaskMessageCodec() {
+        this(PayloadCompressor.disabled());
+    }
+
+    public TaskMessageCodec(PayloadCompressor compressor) {
+        this(new EncodeBufferPool(64, 4096, 256 * 1024), compressor);
+    }
+
+    public TaskMessageCodec(EncodeBufferPool bufferPool) {
+        this(bufferPool, PayloadCompressor.disabled());
+    }
+
+    public TaskMessageCodec(EncodeBufferPool bufferPool, PayloadCompressor compressor) {
+        this.bufferPool = bufferPool;
+        this.compressor = compressor;
+    }
+
+    public byte[] encode(TaskMessage message) {
+        EncodeBufferPool.Scratch scratch = bufferPool.acquire();
+        try {
+            while (true) {
+                ByteBuffer buffer = scratch.buffer();
+                buffer.clear();
+                try {
+                    write(message, buffer, scratch.encoder());
+                    break;
+                } catch (BufferOverflowException e) {
+                    scratch.grow();
+                }
+            }
+            ByteBuffer buffer = scratch.buffer().flip();
+            byte[] body = new byte[buffer.remaining()];
+            buffer.get(body);
+            return body;
+        } finally {
+            bufferPool.release(scratch);
+        }
+    }
+
+    public TaskMessage decode(byte[] body) {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        byte version = readVersion(buffer);
+        int flags = buffer.get();
+
+        TaskMessage message = new TaskMessage();
+        message.setTaskId(readUuid(buffer));
+        message.setRetryCount(buffer.getInt());
+        message.setTaskType(readTaskType(buffer).name());
+        message.setPriority(readPriority(buffer, version));
+        message.setTenantId(readString(buffer));
+        if ((flags & FLAG_REGION) != 0) message.setRegion(readString(buffer));
+        if ((flags & FLAG_DAG) != 0) message.setDagId(readUuid(buffer));
+        if ((flags & FLAG_PARENT) != 0) message.setParentTaskId(readUuid(buffer));
+        if ((flags & FLAG_CREATED_AT) != 0) message.setCreatedAt(readInstant(buffer));
+        if ((flags & FLAG_DEADLINE) != 0) message.setDeadline(readInstant(buffer));
+
+        int payloadLength = buffer.getInt();
+        int payloadStart = buffer.position();
+        if (PayloadCompressor.isCompressed(body, payloadStart, payloadLength)) {
+            byte[] compressed = Arrays.copyOfRange(body, payloadStart, payloadStart + payloadLength);
+            message.setDeferredPayload(() -> compressor.decode(compressed));
+        } else if (payloadLength >= 0) {
+            message.setPayload(new String(body, payloadStart, payloadLength, StandardCharsets.UTF_8));
+        }
+        return message;
+    }
+
+    public TaskMessageHeader peek(byte[] body) {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        byte version = readVersion(buffer);
+        int flags = buffer.get();
+        UUID taskId = readUuid(buffer);
+        int retryCount = buffer.getInt();
+        TaskType taskType = readTaskType(buffer);
+        int priority = readPriority(buffer, version);
+        String tenantId = readString(buffer);
+        // Skip the optional fields ahead of createdAt rather than decoding them
+        if ((flags & FLAG_REGION) != 0) {
+            int length = Short.toUnsignedInt(buffer.getShort());
+            buffer.position(buffer.position() + length);
+        }
+        if ((flags & FLAG_DAG) != 0) buffer.position(buffer.position() + 16);
+        if ((flags & FLAG_PARENT) != 0) buffer.position(buffer.position() + 16);
+        Instant createdAt = (flags & FLAG_CREATED_AT) != 0 ? readInstant(buffer) : null;
+        Instant deadline = (flags & FLAG_DEADLINE) != 0 ? readInstant(buffer) : null;
+        return new TaskMessageHeader(taskId, tenantId, taskType.name(), priority, retryCount, createdAt, deadline);
+    }
+
+    private void write(TaskMessage message, ByteBuffer buffer, CharsetEncoder encoder) {
+        int flags = (message.getRegion() != null ? FLAG_REGION : 0)
+                | (message.getDagId() != null ? FLAG_DAG : 0)
+                | (message.getParentTaskId() != null ? FLAG_PARENT : 0)
+                | (message.getCreatedAt() != null ? FLAG_CREATED_AT : 0)
+                | (message.getDeadline() != null ? FLAG_DEADLINE : 0);
+
+        buffer.put(VERSION);
+        buffer.put((byte) flags);
+        writeUuid(buffer, message.getTaskId());
+        buffer.putInt(message.getRetryCount());
+        buffer.put((byte) TaskType.valueOf(message.getTaskType()).ordinal());
+        buffer.putInt(message.getPriority());
+        writeString(buffer, message.getTenantId());
+        if (message.getRegion() != null) writeString(buffer, message.getRegion());
+        if (message.getDagId() != null) writeUuid(buffer, message.getDagId());
+        if (message.getParentTaskId() != null) writeUuid(buffer, message.getParentTaskId());
+        if (message.getCreatedAt() != null) writeInstant(buffer, message.getCreatedAt());
+        if (message.getDeadline() != null) writeInstant(buffer, message.getDeadline());
+        writePayload(buffer, encoder, message.getPayload());
+    }
+
+    // Encodes straight into the pooled buffer, so the payload is never copied into an intermediate array
+    private void writePayload(ByteBuffer buffer, CharsetEncoder encoder, String payload) {
+        if (payload == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        if (compressor.shouldCompress(payload)) {
+            byte[] encoded = compressor.encode(payload);
+            buffer.putInt(encoded.length);
+            buffer.put(encoded);
+            return;
+        }
+        int lengthPosition = buffer.position();
+        buffer.putInt(0);
+        encoder.reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(payload), buffer, true);
+        if (result.isUnderflow()) result = encoder.flush(buffer);
+        if (result.isOverflow()) throw new BufferOverflowException();
+        if (result.isError()) throwUnchecked(result);
+        buffer.putInt(lengthPosition, buffer.position() - lengthPosition - Integer.BYTES);
+    }
+
+    private static byte readVersion(ByteBuffer buffer) {
+        byte version = buffer.get();
+        if (version != VERSION && version != VERSION_BYTE_PRIORITY) {
+            throw new IllegalArgumentException("Unsupported TaskMessage codec version: " + version);
+        }
+        return version;
+    }
+
+    private static int readPriority(ByteBuffer buffer, byte version) {
+        return version == VERSION_BYTE_PRIORITY ? Byte.toUnsignedInt(buffer.get()) : buffer.getInt();
+    }
+
+    private static TaskType readTaskType(ByteBuffer buffer) {
+        int ordinal = buffer.get();
+        if (ordinal < 0 || ordinal >= TASK_TYPES.length) {
+            throw new IllegalArgumentException("Unknown task type ordinal: " + ordinal);
+        }
+        return TASK_TYPES[ordinal];
+    }
+
+    private static void writeUuid(ByteBuffer buffer, UUID uuid) {
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private static void writeInstant(ByteBuffer buffer, Instant instant) {
+        buffer.putLong(instant.getEpochSecond());
+        buffer.putInt(instant.getNano());
+    }
+
+    private static Instant readInstant(ByteBuffer buffer) {
+        return Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String field longer than 65535 bytes");
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static void throwUnchecked(CoderResult result) {
+        try {
+            result.throwException();
+        } catch (CharacterCodingException e) {
+            throw new IllegalArgumentException("Payload is not valid UTF-16", e);
+        }
+    }
+}
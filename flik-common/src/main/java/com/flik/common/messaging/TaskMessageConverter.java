@@ -0,0 +1,80 @@
+package com.flik.common.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flik.common.dto.TaskMessage;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.io.IOException;
+
+/**
+ * Writes {@link TaskMessage}s with {@link TaskMessageCodec} (or JSON when binary output is off) and reads
+ * either format by content type, so JSON messages already queued before a rollout still decode.
+ * Anything that is not a TaskMessage goes through the JSON converter unchanged.
+ */
+public class TaskMessageConverter implements MessageConverter {
+
+    public static final String CONTENT_TYPE = "application/x-flik-task";
+
+    private final TaskMessageCodec codec;
+    private final ObjectMapper objectMapper;
+    private final Jackson2JsonMessageConverter jsonConverter;
+    private final boolean binaryOutput;
+
+    public TaskMessageConverter(TaskMessageCodec codec, ObjectMapper objectMapper, boolean binaryOutput) {
+        this.codec = codec;
+        this.objectMapper = objectMapper;
+        this.jsonConverter = new Jackson2JsonMessageConverter(objectMapper);
+        this.binaryOutput = binaryOutput;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) {
+        if (binaryOutput && object instanceof TaskMessage taskMessage) {
+            byte[] body = codec.encode(taskMessage);
+            messageProperties.setContentType(CONTENT_TYPE);
+            messageProperties.setContentLength(body.length);
+            return new Message(body, messageProperties);
+        }
+        return jsonConverter.toMessage(object, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) {
+        return isBinary(message) ? codec.decode(message.getBody()) : jsonConverter.fromMessage(message);
+    }
+
+    public TaskMessage toTaskMessage(Message message) {
+        if (isBinary(message)) {
+            return codec.decode(message.getBody());
+        }
+        try {
+            return objectMapper.readValue(message.getBody(), TaskMessage.class);
+        } catch (IOException e) {
+            throw new MessageConversionException("Failed to read JSON TaskMessage", e);
+        }
+    }
+
+    // Reuses the message a JSON peek already decoded; binary bodies are decoded here, once
+    public TaskMessage toTaskMessage(Message message, TaskMessageHeader header) {
+        return header.decoded() != null ? header.decoded() : toTaskMessage(message);
+    }
+
+    // Binary bodies are peeked in place; JSON has no fixed layout and is decoded in full
+    public TaskMessageHeader peek(Message message) {
+        if (isBinary(message)) {
+            return codec.peek(message.getBody());
+        }
+        TaskMessage taskMessage = toTaskMessage(message);
+        return new TaskMessageHeader(taskMessage.getTaskId(), taskMessage.getTenantId(), taskMessage.getTaskType(),
+                taskMessage.getPriority(), taskMessage.getRetryCount(), taskMessage.getCreatedAt(),
+                taskMessage.getDeadline(), taskMessage);
+    }
+
+    private static boolean isBinary(Message message) {
+        return CONTENT_TYPE.equals(message.getMessageProperties().getContentType());
+    }
+}
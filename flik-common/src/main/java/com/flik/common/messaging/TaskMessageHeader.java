@@ -0,0 +1,17 @@
+package com.flik.common.messaging;
+
+import com.flik.common.dto.TaskMessage;
+
+import java.time.Instant;
+import java.util.UUID;
+
+// Routing fields of a TaskMessage, readable without decoding the payload. A JSON message has to be decoded in
+// full to be peeked, so its header keeps the decoded message for the consumer to reuse
+public record TaskMessageHeader(UUID taskId, String tenantId, String taskType, int priority, int retryCount,
+                                Instant createdAt, Instant deadline, TaskMessage decoded) {
+
+    public TaskMessageHeader(UUID taskId, String tenantId, String taskType, int priority, int retryCount,
+                             Instant createdAt, Instant deadline) {
+        this(taskId, tenantId, taskType, priority, retryCount, createdAt, deadline, null);
+    }
+}
@@ -0,0 +1,37 @@
+package com.flik.common.metrics;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+// Meters indexed by a packed tag combination, each registered on first use and then read with a plain array load
+final class MeterArray<M> {
+
+    private final AtomicReferenceArray<M> meters;
+    private final IntFunction<M> factory;
+
+    MeterArray(int size, IntFunction<M> factory) {
+        this.meters = new AtomicReferenceArray<>(size);
+        this.factory = factory;
+    }
+
+    M get(int index) {
+        M meter = meters.getAcquire(index);
+        if (meter == null) {
+            // Racing registrations return the same meter from the registry, so last write wins harmlessly
+            meter = factory.apply(index);
+            meters.setRelease(index, meter);
+        }
+        return meter;
+    }
+
+    // Forgets the meters in [from, to) so their next use registers them again, under whatever tags apply then
+    void release(int from, int to, Consumer<M> onRelease) {
+        for (int i = from; i < to; i++) {
+            M meter = meters.getAndSet(i, null);
+            if (meter != null) {
+                onRelease.accept(meter);
+            }
+        }
+    }
+}
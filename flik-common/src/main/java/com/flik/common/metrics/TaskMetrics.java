@@ -0,0 +1,295 @@
+package com.flik.common.metrics;
+
+import com.flik.common.constants.QueueConstants;
+import com.flik.common.model.TaskStatus;
+import com.flik.common.model.TaskType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Task lifecycle metrics for the per-request and per-task hot paths. Each meter is looked up by an int index
+ * packed from its tags (tenant slot, task type, priority, status) and is registered with the registry only the
+ * first time that combination is used. Tenant labels are limited by {@link TenantTags}; when a slot passes to
+ * another tenant, the meters tagged with the old tenant are removed from the registry. About one call in 1024
+ * is timed and recorded as flik_metrics_overhead_seconds, so the facade's own cost shows up on dashboards.
+ */
+public class TaskMetrics {
+
+    private static final TaskType[] TYPES = TaskType.values();
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+    private static final int PRIORITIES = QueueConstants.MAX_PRIORITY + 1;
+    // Task priorities P0-P2, one queue each
+    private static final int TASK_PRIORITIES = 3;
+    // Attempts past the last retry share the top bucket
+    private static final int ATTEMPTS = QueueConstants.MAX_RETRY_COUNT + 2;
+    private static final String[] STORAGE_TIERS = {"HOT", "WARM", "COLD", "MISS"};
+    private static final String[] CACHE_RESULTS = {"hit", "coalesced", "miss"};
+    private static final String[] EXPIRY_STAGES = {"dequeue", "retry"};
+    private static final int SAMPLE_MASK = 1023;
+
+    private final MeterRegistry registry;
+    private final TenantTags tenants;
+
+    private final MeterArray<Counter> submitted;
+    private final MeterArray<Counter> rateLimited;
+    private final MeterArray<Counter> cost;
+    private final MeterArray<Counter> costSaved;
+    private final MeterArray<Counter> cacheLookups;
+    private final MeterArray<Counter> storageHits;
+    private final MeterArray<Counter> completed;
+    private final MeterArray<Timer> processing;
+    private final MeterArray<Counter> retries;
+    private final MeterArray<Timer> queueWait;
+    private final MeterArray<Counter> waitSloBreached;
+    private final MeterArray<Counter> expired;
+    private final MeterArray<Timer> deadlineSlack;
+    private final MeterArray<DistributionSummary> batchSize;
+    private final MeterArray<Timer> batchWait;
+
+    private final Counter tenantOverflow;
+    private final Timer overhead;
+
+    public TaskMetrics(MeterRegistry registry, int maxTenantTags) {
+        this(registry, maxTenantTags, Duration.ofMinutes(5));
+    }
+
+    public TaskMetrics(MeterRegistry registry, int maxTenantTags, Duration tenantRerankInterval) {
+        this.registry = registry;
+        this.tenants = new TenantTags(maxTenantTags, tenantRerankInterval, this::releaseTenantSlot);
+        int tenantSlots = tenants.capacity();
+
+        this.submitted = new MeterArray<>(tenantSlots * TYPES.length * PRIORITIES, i ->
+                Counter.builder("flik_tasks_submitted_total")
+                        .tag("type", TYPES[i / PRIORITIES % TYPES.length].name())
+                        .tag("priority", String.valueOf(i % PRIORITIES))
+                        .tag("tenant", tenants.label(i / PRIORITIES / TYPES.length))
+                        .register(registry));
+        this.rateLimited = new MeterArray<>(tenantSlots, i ->
+                Counter.builder("flik_rate_limit_rejected_total")
+                        .tag("tenant", tenants.label(i))
+                        .register(registry));
+        this.cost = new MeterArray<>(tenantSlots * TYPES.length, i ->
+                Counter.builder("flik_task_cost_total")
+                        .tag("type", TYPES[i % TYPES.length].name())
+                        .tag("tenant", tenants.label(i / TYPES.length))
+                        .register(registry));
+        this.costSaved = new MeterArray<>(tenantSlots * TYPES.length, i ->
+                Counter.builder("flik_task_cost_saved_total")
+                        .tag("type", TYPES[i % TYPES.length].name())
+                        .tag("tenant", tenants.label(i / TYPES.length))
+                        .register(registry));
+        this.cacheLookups = new MeterArray<>(TYPES.length * CACHE_RESULTS.length, i ->
+                Counter.builder("flik_result_cache_requests_total")
+                        .tag("type", TYPES[i / CACHE_RESULTS.length].name())
+                        .tag("result", CACHE_RESULTS[i % CACHE_RESULTS.length])
+                        .register(registry));
+        this.storageHits = new MeterArray<>(STORAGE_TIERS.length, i ->
+                Counter.builder("flik_storage_hits_total")
+                        .tag("tier", STORAGE_TIERS[i])
+                        .register(registry));
+        this.completed = new MeterArray<>(TYPES.length * STATUSES.length, i ->
+                Counter.builder("flik_tasks_completed_total")
+                        .tag("type", TYPES[i / STATUSES.length].name())
+                        .tag("status", STATUSES[i % STATUSES.length].name())
+                        .register(registry));
+        this.processing = new MeterArray<>(TYPES.length, i ->
+                Timer.builder("flik.task.processing.seconds")
+                        .tag("type", TYPES[i].name())
+                        .register(registry));
+        this.retries = new MeterArray<>(TYPES.length * ATTEMPTS, i ->
+                Counter.builder("flik_retry_total")
+                        .tag("type", TYPES[i / ATTEMPTS].name())
+                        .tag("attempt", String.valueOf(i % ATTEMPTS))
+                        .register(registry));
+        this.queueWait = new MeterArray<>(TASK_PRIORITIES, i ->
+                Timer.builder("flik_task_queue_wait_seconds")
+                        .description("Time from task creation until a worker starts processing it")
+                        .tag("priority", String.valueOf(i))
+                        .publishPercentileHistogram()
+                        .register(registry));
+        this.waitSloBreached = new MeterArray<>(TASK_PRIORITIES, i ->
+                Counter.builder("flik_task_wait_slo_breached_total")
+                        .description("Tasks that started processing after their priority's max-wait SLO")
+                        .tag("priority", String.valueOf(i))
+                        .register(registry));
+        this.expired = new MeterArray<>(TYPES.length * EXPIRY_STAGES.length, i ->
+                Counter.builder("flik_tasks_expired_total")
+                        .description("Tasks discarded unprocessed because their deadline had passed")
+                        .tag("type", TYPES[i / EXPIRY_STAGES.length].name())
+                        .tag("stage", EXPIRY_STAGES[i % EXPIRY_STAGES.length])
+                        .register(registry));
+        this.deadlineSlack = new MeterArray<>(TYPES.length, i ->
+                Timer.builder("flik_task_deadline_slack_seconds")
+                        .description("Time left before a task's deadline when a worker started it")
+                        .tag("type", TYPES[i].name())
+                        .publishPercentileHistogram()
+                        .register(registry));
+        this.batchSize = new MeterArray<>(TYPES.length, i ->
+                DistributionSummary.builder("flik_worker_batch_size")
+                        .description("Deliveries a worker processed together in one batch")
+                        .tag("type", TYPES[i].name())
+                        .publishPercentileHistogram()
+                        .register(registry));
+        this.batchWait = new MeterArray<>(TYPES.length, i ->
+                Timer.builder("flik_worker_batch_wait_seconds")
+                        .description("Time from a batch's first delivery until the batch was handed over for processing")
+                        .tag("type", TYPES[i].name())
+                        .publishPercentileHistogram()
+                        .register(registry));
+
+        this.tenantOverflow = Counter.builder("flik_metrics_tenant_overflow_total")
+                .description("Tenant-tagged observations recorded under the shared \"other\" label")
+                .register(registry);
+        this.overhead = Timer.builder("flik_metrics_overhead_seconds")
+                .description("Sampled time spent recording a task metric")
+                .register(registry);
+        Gauge.builder("flik_metrics_tenant_labels", tenants, TenantTags::size)
+                .description("Tenants with a metric label of their own")
+                .register(registry);
+    }
+
+    public void taskSubmitted(TaskType type, int priority, String tenantId) {
+        long start = sampleStart();
+        int index = (tenantSlot(tenantId) * TYPES.length + type.ordinal()) * PRIORITIES + clamp(priority, PRIORITIES);
+        submitted.get(index).increment();
+        sampleEnd(start);
+    }
+
+    public void rateLimited(String tenantId) {
+        long start = sampleStart();
+        rateLimited.get(tenantSlot(tenantId)).increment();
+        sampleEnd(start);
+    }
+
+    public void taskCost(TaskType type, String tenantId, double amount) {
+        long start = sampleStart();
+        cost.get(tenantSlot(tenantId) * TYPES.length + type.ordinal()).increment(amount);
+        sampleEnd(start);
+    }
+
+    public void costSaved(TaskType type, String tenantId, double amount) {
+        long start = sampleStart();
+        costSaved.get(tenantSlot(tenantId) * TYPES.length + type.ordinal()).increment(amount);
+        sampleEnd(start);
+    }
+
+    // result is "hit", "coalesced" or "miss"
+    public void cacheLookup(TaskType type, String result) {
+        long start = sampleStart();
+        int resultIndex = switch (result) {
+            case "hit" -> 0;
+            case "coalesced" -> 1;
+            case "miss" -> 2;
+            default -> throw new IllegalArgumentException("Unknown cache result: " + result);
+        };
+        cacheLookups.get(type.ordinal() * CACHE_RESULTS.length + resultIndex).increment();
+        sampleEnd(start);
+    }
+
+    // Unknown or missing tiers count as WARM, matching rows written before tiering existed
+    public void storageHit(String tier) {
+        long start = sampleStart();
+        int tierIndex = tier == null ? 1 : switch (tier) {
+            case "HOT" -> 0;
+            case "COLD" -> 2;
+            case "MISS" -> 3;
+            default -> 1;
+        };
+        storageHits.get(tierIndex).increment();
+        sampleEnd(start);
+    }
+
+    public void taskCompleted(TaskType type, TaskStatus status) {
+        long start = sampleStart();
+        completed.get(type.ordinal() * STATUSES.length + status.ordinal()).increment();
+        sampleEnd(start);
+    }
+
+    public void processingTime(TaskType type, Duration duration) {
+        long start = sampleStart();
+        processing.get(type.ordinal()).record(duration);
+        sampleEnd(start);
+    }
+
+    public void retry(TaskType type, int attempt) {
+        long start = sampleStart();
+        retries.get(type.ordinal() * ATTEMPTS + clamp(attempt, ATTEMPTS)).increment();
+        sampleEnd(start);
+    }
+
+    public void queueWait(int priority, Duration wait, boolean overdue) {
+        long start = sampleStart();
+        int index = clamp(priority, TASK_PRIORITIES);
+        queueWait.get(index).record(wait);
+        if (overdue) {
+            waitSloBreached.get(index).increment();
+        }
+        sampleEnd(start);
+    }
+
+    // stage is "dequeue" (expired while queued) or "retry" (expired before a retry could run)
+    public void taskExpired(TaskType type, String stage) {
+        long start = sampleStart();
+        int stageIndex = switch (stage) {
+            case "dequeue" -> 0;
+            case "retry" -> 1;
+            default -> throw new IllegalArgumentException("Unknown expiry stage: " + stage);
+        };
+        expired.get(type.ordinal() * EXPIRY_STAGES.length + stageIndex).increment();
+        sampleEnd(start);
+    }
+
+    public void deadlineSlack(TaskType type, Duration slack) {
+        long start = sampleStart();
+        deadlineSlack.get(type.ordinal()).record(slack);
+        sampleEnd(start);
+    }
+
+    public void batch(TaskType type, int size, Duration wait) {
+        long start = sampleStart();
+        batchSize.get(type.ordinal()).record(size);
+        batchWait.get(type.ordinal()).record(wait);
+        sampleEnd(start);
+    }
+
+    public TenantTags tenants() {
+        return tenants;
+    }
+
+    // The slot now belongs to another tenant; its meters are registered again under the new label on next use
+    private void releaseTenantSlot(int slot) {
+        submitted.release(slot * TYPES.length * PRIORITIES, (slot + 1) * TYPES.length * PRIORITIES, registry::remove);
+        rateLimited.release(slot, slot + 1, registry::remove);
+        cost.release(slot * TYPES.length, (slot + 1) * TYPES.length, registry::remove);
+        costSaved.release(slot * TYPES.length, (slot + 1) * TYPES.length, registry::remove);
+    }
+
+    private int tenantSlot(String tenantId) {
+        int slot = tenants.slot(tenantId);
+        if (slot == TenantTags.OTHER_SLOT) {
+            tenantOverflow.increment();
+        }
+        return slot;
+    }
+
+    private static int clamp(int value, int bound) {
+        return Math.max(0, Math.min(value, bound - 1));
+    }
+
+    private static long sampleStart() {
+        return (ThreadLocalRandom.current().nextInt() & SAMPLE_MASK) == 0 ? System.nanoTime() : 0L;
+    }
+
+    private void sampleEnd(long start) {
+        if (start != 0L) {
+            overhead.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.flik.common.metrics;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Assigns tenant ids to a bounded set of metric label slots, kept for the {@code maxTenants} busiest tenants.
+ * Slots are handed out first come while any are free. Every {@code rerankInterval} the tenants are ranked by
+ * observations in the last window, and a labelled tenant that has fallen out of the top {@code maxTenants}
+ * gives its slot to a busier one that had none. The displaced tenant's series stop and it is counted as
+ * "other" from then on; {@code onReassign} is told the slot so its meters can be dropped before they are
+ * re-registered under the new label. An observation racing a reassignment may land on either label.
+ */
+public final class TenantTags {
+
+    public static final String OTHER = "other";
+    public static final int OTHER_SLOT = 0;
+
+    private final int maxTenants;
+    private final long rerankIntervalNanos;
+    private final IntConsumer onReassign;
+    private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String> labels;
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    // Observations per tenant in the current window, bounded so a long tail of tenants cannot grow it
+    private final Map<String, LongAdder> volume = new ConcurrentHashMap<>();
+    private final int maxTracked;
+    private final ReentrantLock rerankLock = new ReentrantLock();
+    private volatile long nextRerank;
+
+    public TenantTags(int maxTenants) {
+        this(maxTenants, Duration.ofMinutes(5), slot -> {});
+    }
+
+    public TenantTags(int maxTenants, Duration rerankInterval, IntConsumer onReassign) {
+        this.maxTenants = Math.max(0, maxTenants);
+        this.rerankIntervalNanos = rerankInterval.toNanos();
+        this.onReassign = onReassign;
+        this.labels = new AtomicReferenceArray<>(this.maxTenants + 1);
+        this.labels.set(OTHER_SLOT, OTHER);
+        for (int slot = 1; slot <= this.maxTenants; slot++) {
+            freeSlots.add(slot);
+        }
+        this.maxTracked = Math.max(64, this.maxTenants * 8);
+        this.nextRerank = System.nanoTime() + rerankIntervalNanos;
+    }
+
+    public int slot(String tenantId) {
+        if (tenantId == null) {
+            return OTHER_SLOT;
+        }
+        countVolume(tenantId);
+        if (rerankIntervalNanos > 0 && System.nanoTime() - nextRerank >= 0) {
+            rerank();
+        }
+        Integer slot = slots.get(tenantId);
+        if (slot != null) {
+            return slot;
+        }
+        synchronized (this) {
+            slot = slots.get(tenantId);
+            if (slot != null) {
+                return slot;
+            }
+            Integer free = freeSlots.poll();
+            if (free == null) {
+                return OTHER_SLOT;
+            }
+            labels.set(free, tenantId);
+            slots.put(tenantId, free);
+            return free;
+        }
+    }
+
+    private void countVolume(String tenantId) {
+        LongAdder count = volume.get(tenantId);
+        if (count == null) {
+            if (volume.size() >= maxTracked) {
+                return;
+            }
+            count = volume.computeIfAbsent(tenantId, t -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Gives the slots of labelled tenants outside the window's top {@code maxTenants} to unlabelled tenants
+     * inside it, busiest first, then halves the window's counts so the ranking follows recent volume.
+     */
+    void rerank() {
+        if (!rerankLock.tryLock()) {
+            return;
+        }
+        try {
+            nextRerank = System.nanoTime() + rerankIntervalNanos;
+            Map<String, Long> counts = new HashMap<>(volume.size());
+            volume.forEach((tenant, count) -> counts.put(tenant, count.sum()));
+            List<String> ranked = new ArrayList<>(counts.keySet());
+            ranked.sort(Comparator.comparingLong((String tenant) -> counts.get(tenant)).reversed());
+
+            List<String> top = ranked.subList(0, Math.min(maxTenants, ranked.size()));
+            List<String> promote = top.stream().filter(tenant -> !slots.containsKey(tenant)).toList();
+            // Quietest labelled tenants give way first; one with no observations this window counts as zero
+            List<String> demote = slots.keySet().stream()
+                    .filter(tenant -> !top.contains(tenant))
+                    .sorted(Comparator.comparingLong(tenant -> counts.getOrDefault(tenant, 0L)))
+                    .limit(promote.size())
+                    .toList();
+
+            synchronized (this) {
+                for (int i = 0; i < demote.size(); i++) {
+                    Integer slot = slots.remove(demote.get(i));
+                    if (slot == null) continue;
+                    // Relabel before dropping the old meters, so a racing re-registration never sees an empty label
+                    labels.set(slot, promote.get(i));
+                    onReassign.accept(slot);
+                    slots.put(promote.get(i), slot);
+                }
+            }
+
+            for (int i = 0; i < ranked.size(); i++) {
+                String tenant = ranked.get(i);
+                long count = counts.get(tenant);
+                if (count / 2 == 0 || i >= maxTracked / 2) {
+                    volume.remove(tenant);
+                } else {
+                    volume.get(tenant).add(-(count - count / 2));
+                }
+            }
+        } finally {
+            rerankLock.unlock();
+        }
+    }
+
+    public String label(int slot) {
+        return labels.get(slot);
+    }
+
+    // Number of slots including "other"
+    public int capacity() {
+        return labels.length();
+    }
+
+    public int size() {
+        return slots.size();
+    }
+}
@@ -6,5 +6,7 @@ public enum TaskStatus {
     PROCESSING,
     COMPLETED,
     FAILED,
-    DEAD_LETTERED
+    DEAD_LETTERED,
+    // Deadline passed before a worker started it; discarded without processing
+    EXPIRED
 }
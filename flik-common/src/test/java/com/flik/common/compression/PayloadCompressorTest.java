@@ -0,0 +1,66 @@
+package com.flik.common.compression;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PayloadCompressorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PayloadCompressor compressor = new PayloadCompressor(meterRegistry, 64, Deflater.BEST_SPEED);
+
+    @Test
+    void encode_compressesLargeValues() {
+        String value = "{\"url\":\"https://storage.flik.io/x\",\"frames\":[" + "\"frame\",".repeat(500) + "\"end\"]}";
+
+        byte[] encoded = compressor.encode(value);
+
+        assertTrue(PayloadCompressor.isCompressed(encoded, 0, encoded.length));
+        assertTrue(encoded.length < value.length() / 4);
+        assertEquals(value, compressor.decode(encoded));
+        assertEquals(1, meterRegistry.get("flik_compression_ratio").summary().count());
+    }
+
+    @Test
+    void encode_leavesSmallValuesPlain() {
+        byte[] encoded = compressor.encode("{\"a\":1}");
+
+        assertArrayEquals("{\"a\":1}".getBytes(StandardCharsets.UTF_8), encoded);
+        assertEquals("{\"a\":1}", compressor.decode(encoded));
+    }
+
+    @Test
+    void encode_storesIncompressibleValuesPlain() {
+        StringBuilder distinct = new StringBuilder();
+        for (char c = '!'; c < '!' + 64; c++) {
+            distinct.append(c);
+        }
+        String value = distinct.toString();
+
+        byte[] encoded = compressor.encode(value);
+
+        assertFalse(PayloadCompressor.isCompressed(encoded, 0, encoded.length));
+        assertEquals(value, compressor.decode(encoded));
+    }
+
+    @Test
+    void disabled_stillDecodesCompressedValues() {
+        String value = "héllo wörld ".repeat(100);
+
+        assertEquals(value, PayloadCompressor.disabled().decode(compressor.encode(value)));
+        assertFalse(PayloadCompressor.disabled().shouldCompress(value));
+    }
+
+    @Test
+    void decode_rejectsTruncatedEnvelope() {
+        byte[] encoded = compressor.encode("x".repeat(1000));
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 2);
+
+        assertThrows(IllegalArgumentException.class, () -> compressor.decode(truncated));
+    }
+}
@@ -30,6 +30,14 @@ class QueueConstantsTest {
         assertEquals("flik.tasks.p2", QueueConstants.queueForPriority(99));
     }
 
+    @Test
+    void messagePriorityFor_ranksUrgentTasksHigher() {
+        assertEquals(10, QueueConstants.messagePriorityFor(0));
+        assertEquals(5, QueueConstants.messagePriorityFor(1));
+        assertEquals(1, QueueConstants.messagePriorityFor(2));
+        assertEquals(1, QueueConstants.messagePriorityFor(99));
+    }
+
     @Test
     void maxRetryCount_isThree() {
         assertEquals(3, QueueConstants.MAX_RETRY_COUNT);
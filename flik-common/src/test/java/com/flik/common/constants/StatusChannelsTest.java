@@ -0,0 +1,32 @@
+package com.flik.common.constants;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatusChannelsTest {
+
+    @Test
+    void isTerminal_onlyForStatusesThatEndATask() {
+        assertTrue(StatusChannels.isTerminal("COMPLETED"));
+        assertTrue(StatusChannels.isTerminal("DEAD_LETTERED"));
+        assertTrue(StatusChannels.isTerminal("EXPIRED"));
+        assertFalse(StatusChannels.isTerminal("PROCESSING"));
+        assertFalse(StatusChannels.isTerminal("FAILED"));
+        assertFalse(StatusChannels.isTerminal(null));
+    }
+
+    @Test
+    void channelNames_areKeyedByGatewayAndTask() {
+        UUID taskId = UUID.fromString("00000000-0000-0000-0000-000000000001");
+        assertEquals("task-status:gateway:gw-1", StatusChannels.gateway("gw-1"));
+        assertEquals("task-status:subscribers:00000000-0000-0000-0000-000000000001", StatusChannels.subscribers(taskId));
+    }
+
+    @Test
+    void routeScript_appendsToTheStreamUnderTheFieldGatewaysRead() {
+        assertTrue(StatusChannels.ROUTE_SCRIPT.contains("'*', '" + StatusChannels.EVENT_FIELD + "', ARGV[1]"));
+    }
+}
@@ -0,0 +1,121 @@
+package com.flik.common.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of the submit and read paths with payloads and results as object trees (before) and as
+ * {@link RawJson} (after). Run from flik-common after {@code mvn test-compile}:
+ * <pre>
+ * java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+ *     com.flik.common.dto.RawJsonBenchmark
+ * </pre>
+ * The GC profiler reports {@code gc.alloc.rate.norm}, the bytes allocated per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RawJsonBenchmark {
+
+    private ObjectMapper objectMapper;
+    private String requestBody;
+    private String storedPayload;
+    private String storedResult;
+    private UUID taskId;
+    private Instant createdAt;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        storedPayload = "{\"prompt\":\"a lighthouse at dusk, oil painting\",\"size\":[1024,1024],"
+                + "\"style\":{\"preset\":\"photo\",\"strength\":0.75},\"seed\":42}";
+        storedResult = "{\"taskId\":\"7f1c2d0e-3a4b-4c5d-8e9f-0a1b2c3d4e5f\",\"type\":\"IMAGE\","
+                + "\"url\":\"https://storage.flik.io/7f1c2d0e/image-output\",\"workerVersion\":\"v1.0.0\","
+                + "\"region\":\"us-east\",\"metadata\":{\"model\":\"flik-image-v1\",\"quality\":\"high\"}}";
+        requestBody = "{\"tenantId\":\"tenant-1\",\"taskType\":\"IMAGE\",\"priority\":1,\"payload\":" + storedPayload + "}";
+        taskId = UUID.randomUUID();
+        createdAt = Instant.now();
+    }
+
+    // Before: the payload is parsed into a tree, then written back to text for the task row
+    @Benchmark
+    public String submit_objectTree() throws Exception {
+        TreeTaskRequest request = objectMapper.readValue(requestBody, TreeTaskRequest.class);
+        return objectMapper.writeValueAsString(request.payload);
+    }
+
+    @Benchmark
+    public String submit_rawJson() throws Exception {
+        TaskRequest request = objectMapper.readValue(requestBody, TaskRequest.class);
+        return request.getPayload().getJson();
+    }
+
+    // Before: the stored payload and result are parsed into trees, only to be serialized again
+    @Benchmark
+    public String read_objectTree() throws Exception {
+        TreeTaskResponse response = new TreeTaskResponse();
+        response.taskId = taskId;
+        response.status = "COMPLETED";
+        response.createdAt = createdAt;
+        response.payload = objectMapper.readValue(storedPayload, Object.class);
+        response.result = objectMapper.readValue(storedResult, Object.class);
+        return objectMapper.writeValueAsString(response);
+    }
+
+    @Benchmark
+    public String read_rawJson() throws Exception {
+        TaskResponse response = new TaskResponse();
+        response.setTaskId(taskId);
+        response.setStatus("COMPLETED");
+        response.setCreatedAt(createdAt);
+        response.setPayload(RawJson.of(storedPayload));
+        response.setResult(RawJson.of(storedResult));
+        return objectMapper.writeValueAsString(response);
+    }
+
+    // The DTO shapes before RawJson, cut down to the fields these paths touch
+    public static class TreeTaskRequest {
+        public String tenantId;
+        public String taskType;
+        public int priority;
+        public Object payload;
+    }
+
+    public static class TreeTaskResponse {
+        public UUID taskId;
+        public String status;
+        public Object payload;
+        public Object result;
+        public Instant createdAt;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RawJsonBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,56 @@
+package com.flik.common.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RawJsonTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    void serialize_writesStoredTextUnchanged() throws Exception {
+        TaskResponse response = new TaskResponse();
+        response.setTaskId(UUID.randomUUID());
+        response.setResult(RawJson.of("{\"url\":\"https://storage.flik.io/x\",\"frames\":[1,2,3]}"));
+
+        String json = objectMapper.writeValueAsString(response);
+
+        assertTrue(json.contains("\"result\":{\"url\":\"https://storage.flik.io/x\",\"frames\":[1,2,3]}"));
+        assertFalse(json.contains("payload"));
+    }
+
+    @Test
+    void deserialize_capturesNestedValueAsText() throws Exception {
+        TaskRequest request = objectMapper.readValue(
+                "{\"tenantId\":\"t1\",\"payload\":{\"prompt\":\"cat\",\"size\":[512,512]},\"region\":\"us-east\"}",
+                TaskRequest.class);
+
+        assertEquals("{\"prompt\":\"cat\",\"size\":[512,512]}", request.getPayload().getJson());
+        assertEquals("us-east", request.getRegion());
+    }
+
+    @Test
+    void roundTrip_preservesScalarsAndNull() throws Exception {
+        StatusUpdate update = new StatusUpdate(UUID.randomUUID(), "COMPLETED");
+        update.setResult(RawJson.of("\"done\""));
+
+        StatusUpdate copy = objectMapper.readValue(objectMapper.writeValueAsString(update), StatusUpdate.class);
+
+        assertEquals(RawJson.of("\"done\""), copy.getResult());
+        assertNull(objectMapper.readValue("{\"payload\":null}", TaskRequest.class).getPayload());
+    }
+
+    @Test
+    void statusUpdate_omitsFieldsTheStatusDoesNotSet() throws Exception {
+        String json = objectMapper.writeValueAsString(new StatusUpdate(UUID.randomUUID(), "PROCESSING"));
+
+        assertFalse(json.contains("result"));
+        assertFalse(json.contains("errorMessage"));
+        assertNull(objectMapper.readValue(json, StatusUpdate.class).getResult());
+    }
+}
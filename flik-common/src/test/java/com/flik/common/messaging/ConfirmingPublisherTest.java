@@ -0,0 +1,128 @@
+package com.flik.common.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfirmingPublisherTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void publish_completesWhenBrokerAcks() {
+        ConfirmingPublisher publisher = publisher(confirmingTemplate(0), 8, 3);
+
+        publisher.publish("ex", "rk", message()).join();
+
+        assertEquals(0, publisher.inFlight());
+        assertEquals(1, meterRegistry.get("flik_publish_confirm_seconds").timer().count());
+    }
+
+    @Test
+    void publish_retriesNackedMessage() {
+        ConfirmingPublisher publisher = publisher(confirmingTemplate(2), 8, 3);
+
+        publisher.publish("ex", "rk", message()).join();
+
+        assertEquals(2.0, meterRegistry.get("flik_publish_nacks_total").counter().count());
+    }
+
+    @Test
+    void publish_failsAfterMaxAttempts() {
+        ConfirmingPublisher publisher = publisher(confirmingTemplate(5), 8, 2);
+
+        CompletableFuture<Void> result = publisher.publish("ex", "rk", message());
+
+        assertThrows(CompletionException.class, result::join);
+        assertEquals(1.0, meterRegistry.get("flik_publish_failures_total").counter().count());
+    }
+
+    @Test
+    void publish_rejectsWhenTooManyUnconfirmed() {
+        List<CorrelationData> pending = new ArrayList<>();
+        RabbitTemplate silent = new RabbitTemplate() {
+            @Override
+            public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+                pending.add(correlationData);
+            }
+        };
+        ConfirmingPublisher publisher = publisher(silent, 2, 1);
+
+        publisher.publish("ex", "rk", message());
+        publisher.publish("ex", "rk", message());
+        CompletableFuture<Void> third = publisher.publish("ex", "rk", message());
+
+        assertEquals(2, publisher.inFlight());
+        CompletionException error = assertThrows(CompletionException.class, third::join);
+        assertInstanceOf(RejectedExecutionException.class, error.getCause());
+    }
+
+    @Test
+    void publish_queuesWithoutBlocking_andSendsOnceAConfirmFreesASlot() throws Exception {
+        List<CorrelationData> pending = new CopyOnWriteArrayList<>();
+        RabbitTemplate silent = new RabbitTemplate() {
+            @Override
+            public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+                pending.add(correlationData);
+            }
+        };
+        ConfirmingPublisher publisher = new ConfirmingPublisher(silent, meterRegistry, 1, Duration.ofSeconds(5),
+                Duration.ofSeconds(5), 1, Duration.ofMillis(1));
+
+        CompletableFuture<Void> first = publisher.publish("ex", "rk", message());
+        long started = System.nanoTime();
+        CompletableFuture<Void> second = publisher.publish("ex", "rk", message());
+
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(1), "publish should not wait for a slot");
+        assertEquals(1, pending.size());
+        assertEquals(1.0, meterRegistry.get("flik_publish_waiting").gauge().value());
+
+        pending.get(0).getFuture().complete(new CorrelationData.Confirm(true, null));
+        first.join();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (pending.size() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(2, pending.size());
+        assertEquals(0.0, meterRegistry.get("flik_publish_waiting").gauge().value());
+
+        pending.get(1).getFuture().complete(new CorrelationData.Confirm(true, null));
+        second.get(2, TimeUnit.SECONDS);
+        assertEquals(0, publisher.inFlight());
+    }
+
+    private ConfirmingPublisher publisher(RabbitTemplate template, int maxInFlight, int maxAttempts) {
+        return new ConfirmingPublisher(template, meterRegistry, maxInFlight, Duration.ofMillis(50),
+                Duration.ofSeconds(2), maxAttempts, Duration.ofMillis(1));
+    }
+
+    private static RabbitTemplate confirmingTemplate(int nacksBeforeAck) {
+        AtomicInteger sends = new AtomicInteger();
+        return new RabbitTemplate() {
+            @Override
+            public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+                boolean ack = sends.incrementAndGet() > nacksBeforeAck;
+                correlationData.getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "nack"));
+            }
+        };
+    }
+
+    private static Message message() {
+        return new Message(new byte[0], new MessageProperties());
+    }
+}
@@ -0,0 +1,40 @@
+package com.flik.common.messaging;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriorityAgingTest {
+
+    private final PriorityAging aging = new PriorityAging(Duration.ofSeconds(30), Duration.ofMinutes(2), Duration.ofMinutes(10));
+    private final Instant created = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Test
+    void messagePriority_climbsLinearlyToMaxAtSlo() {
+        assertEquals(1, aging.messagePriority(2, created, created));
+        assertEquals(5, aging.messagePriority(2, created, created.plus(Duration.ofMinutes(5))));
+        assertEquals(10, aging.messagePriority(2, created, created.plus(Duration.ofMinutes(10))));
+        assertEquals(10, aging.messagePriority(2, created, created.plus(Duration.ofHours(1))));
+        assertEquals(10, aging.messagePriority(0, created, created));
+    }
+
+    @Test
+    void messagePriority_keepsBase_whenCreationUnknownOrInFuture() {
+        assertEquals(5, aging.messagePriority(1, null, created));
+        assertEquals(5, aging.messagePriority(1, created, created.minusSeconds(5)));
+    }
+
+    @Test
+    void isOverdue_usesPriorityMaxWait() {
+        Instant now = created.plus(Duration.ofMinutes(3));
+
+        assertTrue(aging.isOverdue(1, created, now));
+        assertFalse(aging.isOverdue(2, created, now));
+        assertFalse(aging.isOverdue(5, created, now));
+        assertFalse(aging.isOverdue(0, null, now));
+        assertEquals(created.plus(Duration.ofMinutes(10)), aging.dueAt(9, created));
+    }
+}
@@ -0,0 +1,180 @@
+package com.flik.common.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.flik.common.compression.PayloadCompressor;
+import com.flik.common.dto.TaskMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.UUID;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskMessageCodecTest {
+
+    private final TaskMessageCodec codec = new TaskMessageCodec(new EncodeBufferPool(2, 16, 1024));
+    private final ObjectMapper objectMapper = JsonMapper.builder().addModule(new JavaTimeModule()).build();
+
+    @Test
+    void encode_decode_roundTripsAllFields() {
+        TaskMessage original = message("{\"prompt\":\"héllo wörld\"}");
+        original.setRetryCount(2);
+        original.setRegion("us-west");
+        original.setDagId(UUID.randomUUID());
+        original.setParentTaskId(UUID.randomUUID());
+        original.setDeadline(original.getCreatedAt().plusSeconds(30));
+
+        TaskMessage decoded = codec.decode(codec.encode(original));
+
+        assertEquals(original.getTaskId(), decoded.getTaskId());
+        assertEquals(original.getTenantId(), decoded.getTenantId());
+        assertEquals(original.getTaskType(), decoded.getTaskType());
+        assertEquals(original.getPriority(), decoded.getPriority());
+        assertEquals(original.getPayload(), decoded.getPayload());
+        assertEquals(2, decoded.getRetryCount());
+        assertEquals("us-west", decoded.getRegion());
+        assertEquals(original.getDagId(), decoded.getDagId());
+        assertEquals(original.getParentTaskId(), decoded.getParentTaskId());
+        assertEquals(original.getCreatedAt(), decoded.getCreatedAt());
+        assertEquals(original.getDeadline(), decoded.getDeadline());
+    }
+
+    @Test
+    void encode_growsPastInitialBufferCapacity() {
+        String payload = "{\"prompt\":\"" + "x".repeat(10_000) + "\"}";
+
+        TaskMessage decoded = codec.decode(codec.encode(message(payload)));
+
+        assertEquals(payload, decoded.getPayload());
+    }
+
+    @Test
+    void encode_compressesLargePayloadAndInflatesOnFirstRead() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        TaskMessageCodec compressing = new TaskMessageCodec(new EncodeBufferPool(2, 16, 1024),
+                new PayloadCompressor(meterRegistry, 256, Deflater.BEST_SPEED));
+        String payload = "{\"prompt\":\"" + "a cat on a skateboard ".repeat(200) + "\"}";
+
+        byte[] body = compressing.encode(message(payload));
+        TaskMessage decoded = compressing.decode(body);
+
+        assertTrue(body.length < payload.length() / 4);
+        assertEquals(0, meterRegistry.get("flik_compression_seconds").tag("op", "decompress").timer().count());
+        assertEquals(payload, decoded.getPayload());
+        assertEquals(1, meterRegistry.get("flik_compression_seconds").tag("op", "decompress").timer().count());
+    }
+
+    @Test
+    void peek_readsHeaderWithoutPayload() {
+        TaskMessage original = message("{}");
+        original.setRetryCount(3);
+        original.setRegion("eu-central");
+        original.setDagId(UUID.randomUUID());
+        original.setDeadline(original.getCreatedAt().plusSeconds(5));
+        byte[] body = codec.encode(original);
+
+        TaskMessageHeader header = codec.peek(body);
+
+        assertEquals(original.getTaskId(), header.taskId());
+        assertEquals("tenant-1", header.tenantId());
+        assertEquals("IMAGE", header.taskType());
+        assertEquals(1, header.priority());
+        assertEquals(3, header.retryCount());
+        assertEquals(original.getCreatedAt(), header.createdAt());
+        assertEquals(original.getDeadline(), header.deadline());
+    }
+
+    @Test
+    void encode_decode_roundTripsPrioritiesPastOneByte() {
+        for (int priority : new int[]{127, 128, 256}) {
+            TaskMessage original = message("{}");
+            original.setPriority(priority);
+            byte[] body = codec.encode(original);
+
+            assertEquals(priority, codec.decode(body).getPriority());
+            assertEquals(priority, codec.peek(body).priority());
+        }
+    }
+
+    @Test
+    void decode_readsVersionOneBodies_withAnUnsignedBytePriority() {
+        TaskMessage original = message("{\"a\":1}");
+        original.setPriority(200);
+        byte[] body = codec.encode(original);
+        // Rewrite as version 1: priority was one byte, at the same offset
+        int priorityAt = 1 + 1 + 16 + 4 + 1;
+        byte[] v1 = new byte[body.length - 3];
+        System.arraycopy(body, 0, v1, 0, priorityAt);
+        v1[0] = 1;
+        v1[priorityAt] = (byte) 200;
+        System.arraycopy(body, priorityAt + 4, v1, priorityAt + 1, body.length - priorityAt - 4);
+
+        assertEquals(200, codec.decode(v1).getPriority());
+        assertEquals(200, codec.peek(v1).priority());
+        assertEquals("{\"a\":1}", codec.decode(v1).getPayload());
+    }
+
+    @Test
+    void decode_rejectsUnknownVersion() {
+        byte[] body = codec.encode(message("{}"));
+        body[0] = 99;
+
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(body));
+    }
+
+    @Test
+    void converter_readsInFlightJsonMessages() throws Exception {
+        TaskMessageConverter converter = new TaskMessageConverter(codec, objectMapper, true);
+        TaskMessage original = message("{\"a\":1}");
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        Message json = new Message(objectMapper.writeValueAsBytes(original), properties);
+
+        assertEquals(original.getTaskId(), converter.toTaskMessage(json).getTaskId());
+        assertEquals("tenant-1", converter.peek(json).tenantId());
+    }
+
+    @Test
+    void converter_reusesTheMessageDecodedByAJsonPeek() throws Exception {
+        TaskMessageConverter converter = new TaskMessageConverter(codec, objectMapper, true);
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        Message json = new Message(objectMapper.writeValueAsBytes(message("{\"a\":1}")), properties);
+
+        TaskMessageHeader header = converter.peek(json);
+
+        assertSame(header.decoded(), converter.toTaskMessage(json, header));
+    }
+
+    @Test
+    void converter_decodesBinaryBodiesAfterAPeek() {
+        TaskMessageConverter converter = new TaskMessageConverter(codec, objectMapper, true);
+        TaskMessage original = message("{\"a\":1}");
+        Message binary = converter.toMessage(original, new MessageProperties());
+
+        TaskMessageHeader header = converter.peek(binary);
+
+        assertNull(header.decoded());
+        assertEquals(original.getPayload(), converter.toTaskMessage(binary, header).getPayload());
+    }
+
+    @Test
+    void converter_writesBinaryForTaskMessages() {
+        TaskMessageConverter converter = new TaskMessageConverter(codec, objectMapper, true);
+        TaskMessage original = message("{}");
+
+        Message message = converter.toMessage(original, new MessageProperties());
+
+        assertEquals(TaskMessageConverter.CONTENT_TYPE, message.getMessageProperties().getContentType());
+        assertEquals(original.getTaskId(), ((TaskMessage) converter.fromMessage(message)).getTaskId());
+    }
+
+    private static TaskMessage message(String payload) {
+        return new TaskMessage(UUID.randomUUID(), "tenant-1", "IMAGE", 1, payload);
+    }
+}
@@ -0,0 +1,111 @@
+package com.flik.common.metrics;
+
+import com.flik.common.model.TaskStatus;
+import com.flik.common.model.TaskType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TaskMetrics metrics = new TaskMetrics(meterRegistry, 2);
+
+    @Test
+    void taskSubmitted_resolvesTagsFromIndex() {
+        metrics.taskSubmitted(TaskType.IMAGE, 2, "tenant-1");
+        metrics.taskSubmitted(TaskType.IMAGE, 2, "tenant-1");
+        metrics.taskSubmitted(TaskType.VIDEO, 0, "tenant-2");
+
+        assertEquals(2.0, meterRegistry.get("flik_tasks_submitted_total")
+                .tags("type", "IMAGE", "priority", "2", "tenant", "tenant-1").counter().count());
+        assertEquals(1.0, meterRegistry.get("flik_tasks_submitted_total")
+                .tags("type", "VIDEO", "priority", "0", "tenant", "tenant-2").counter().count());
+    }
+
+    @Test
+    void tenantsBeyondLimit_foldIntoOther() {
+        metrics.taskCost(TaskType.TEXT, "tenant-1", 0.01);
+        metrics.taskCost(TaskType.TEXT, "tenant-2", 0.01);
+        metrics.taskCost(TaskType.TEXT, "tenant-3", 0.01);
+        metrics.taskCost(TaskType.TEXT, "tenant-4", 0.01);
+
+        assertEquals(0.02, meterRegistry.get("flik_task_cost_total")
+                .tags("type", "TEXT", "tenant", TenantTags.OTHER).counter().count(), 1e-9);
+        assertEquals(2.0, meterRegistry.get("flik_metrics_tenant_overflow_total").counter().count());
+        assertEquals(2.0, meterRegistry.get("flik_metrics_tenant_labels").gauge().value());
+        assertEquals(3, meterRegistry.get("flik_task_cost_total").counters().size());
+    }
+
+    @Test
+    void reassignedTenantSlot_dropsTheDisplacedTenantsMeters() {
+        TaskMetrics ranked = new TaskMetrics(meterRegistry, 1, Duration.ofDays(1));
+        ranked.rateLimited("quiet");
+        for (int i = 0; i < 10; i++) {
+            ranked.rateLimited("busy");
+        }
+
+        ranked.tenants().rerank();
+        ranked.rateLimited("busy");
+        ranked.rateLimited("quiet");
+
+        assertNull(meterRegistry.find("flik_rate_limit_rejected_total").tag("tenant", "quiet").counter());
+        assertEquals(1.0, meterRegistry.get("flik_rate_limit_rejected_total").tag("tenant", "busy").counter().count());
+        // Ten observations while busy had no label, then quiet's first one without its label
+        assertEquals(11.0, meterRegistry.get("flik_rate_limit_rejected_total")
+                .tag("tenant", TenantTags.OTHER).counter().count());
+    }
+
+    @Test
+    void outOfRangeValues_shareEdgeBuckets() {
+        metrics.taskSubmitted(TaskType.TEXT, 99, "tenant-1");
+        metrics.retry(TaskType.TEXT, 12);
+
+        assertEquals(1.0, meterRegistry.get("flik_tasks_submitted_total").tag("priority", "10").counter().count());
+        assertEquals(1.0, meterRegistry.get("flik_retry_total").tag("attempt", "4").counter().count());
+    }
+
+    @Test
+    void workerMeters_keepExistingNames() {
+        metrics.taskCompleted(TaskType.VIDEO, TaskStatus.DEAD_LETTERED);
+        metrics.storageHit(null);
+
+        assertEquals(1.0, meterRegistry.get("flik_tasks_completed_total")
+                .tags("type", "VIDEO", "status", "DEAD_LETTERED").counter().count());
+        assertEquals(1.0, meterRegistry.get("flik_storage_hits_total").tag("tier", "WARM").counter().count());
+    }
+
+    @Test
+    void queueWait_countsSloBreachesPerPriority() {
+        metrics.queueWait(2, Duration.ofSeconds(30), false);
+        metrics.queueWait(2, Duration.ofMinutes(15), true);
+        metrics.queueWait(7, Duration.ofMinutes(12), true);
+
+        assertEquals(3, meterRegistry.get("flik_task_queue_wait_seconds").tag("priority", "2").timer().count());
+        assertEquals(2.0, meterRegistry.get("flik_task_wait_slo_breached_total").tag("priority", "2").counter().count());
+    }
+
+    @Test
+    void taskExpired_countsByTypeAndStage() {
+        metrics.taskExpired(TaskType.TEXT, "dequeue");
+        metrics.taskExpired(TaskType.TEXT, "retry");
+        metrics.deadlineSlack(TaskType.TEXT, Duration.ofMillis(800));
+
+        assertEquals(1.0, meterRegistry.get("flik_tasks_expired_total")
+                .tags("type", "TEXT", "stage", "dequeue").counter().count());
+        assertEquals(1, meterRegistry.get("flik_task_deadline_slack_seconds").tag("type", "TEXT").timer().count());
+        assertThrows(IllegalArgumentException.class, () -> metrics.taskExpired(TaskType.TEXT, "late"));
+    }
+
+    @Test
+    void batch_recordsSizeAndWaitPerType() {
+        metrics.batch(TaskType.IMAGE, 8, Duration.ofMillis(40));
+        metrics.batch(TaskType.IMAGE, 2, Duration.ofMillis(250));
+
+        assertEquals(10.0, meterRegistry.get("flik_worker_batch_size").tag("type", "IMAGE").summary().totalAmount());
+        assertEquals(2, meterRegistry.get("flik_worker_batch_wait_seconds").tag("type", "IMAGE").timer().count());
+    }
+}
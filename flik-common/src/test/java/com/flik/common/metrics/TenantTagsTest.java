@@ -0,0 +1,74 @@
+package com.flik.common.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TenantTagsTest {
+
+    private final List<Integer> reassigned = new ArrayList<>();
+    // Ranked only when the test says so
+    private final TenantTags tags = new TenantTags(2, Duration.ofDays(1), reassigned::add);
+
+    @Test
+    void slot_handsOutFreeSlotsFirstCome() {
+        assertEquals(1, tags.slot("early-1"));
+        assertEquals(2, tags.slot("early-2"));
+        assertEquals(TenantTags.OTHER_SLOT, tags.slot("late"));
+        assertEquals("early-1", tags.label(1));
+    }
+
+    @Test
+    void rerank_givesTheQuietestLabelledTenantsSlotToABusierOne() {
+        observe("early-1", 1);
+        observe("early-2", 50);
+        observe("busy", 100);
+        assertEquals(TenantTags.OTHER_SLOT, tags.slot("busy"));
+
+        tags.rerank();
+
+        assertEquals(1, tags.slot("busy"));
+        assertEquals("busy", tags.label(1));
+        assertEquals(TenantTags.OTHER_SLOT, tags.slot("early-1"));
+        assertEquals(2, tags.slot("early-2"));
+        assertEquals(List.of(1), reassigned);
+    }
+
+    @Test
+    void rerank_keepsLabels_whileTheLabelledTenantsAreStillTheBusiest() {
+        observe("early-1", 100);
+        observe("early-2", 100);
+        observe("other-tenant", 10);
+
+        tags.rerank();
+
+        assertEquals(1, tags.slot("early-1"));
+        assertEquals(2, tags.slot("early-2"));
+        assertTrue(reassigned.isEmpty());
+    }
+
+    @Test
+    void rerank_followsRecentVolume_asOldCountsDecay() {
+        observe("early-1", 40);
+        observe("early-2", 40);
+        tags.rerank();
+
+        // early-1 goes quiet; newcomer overtakes its decayed count within a window
+        observe("early-2", 40);
+        observe("newcomer", 30);
+        tags.rerank();
+
+        assertEquals(1, tags.slot("newcomer"));
+        assertEquals(2, tags.slot("early-2"));
+    }
+
+    private void observe(String tenant, int times) {
+        for (int i = 0; i < times; i++) {
+            tags.slot(tenant);
+        }
+    }
+}
@@ -16,12 +16,14 @@ import static io.gatling.javaapi.http.HttpDsl.*;
 
 /**
  * Fairness: One tenant sends 10x more requests than others.
- * Success criteria: Other tenants' p95 latency degrades less than 20%.
+ * Success criteria: Other tenants' p95 latency degrades less than 20%, and a sample of each normal tenant's
+ * tasks completes (submit to observed COMPLETED) within gatling.completionP95Ms at p95.
  */
 public class FairnessSimulation extends Simulation {
 
     private static final String BASE_URL = System.getProperty("gatling.baseUrl", "http://localhost:8080");
     private static final String API_KEY = System.getProperty("gatling.apiKey", "load-test-key");
+    private static final int COMPLETION_P95_MS = Integer.getInteger("gatling.completionP95Ms", 20000);
 
     private final HttpProtocolBuilder httpProtocol = http
             .baseUrl(BASE_URL)
@@ -70,10 +72,52 @@ public class FairnessSimulation extends Simulation {
                 );
     }
 
+    // Group duration (gatling.conf useGroupDurationMetrics) is submit-to-completion wall time, polls included
+    private ScenarioBuilder completionScenario(String tenantId) {
+        return scenario("Completion - " + tenantId)
+                .feed(feedFor(tenantId))
+                .group("Task Completion - " + tenantId).on(
+                        exec(
+                                http("Submit Tracked Task - " + tenantId)
+                                        .post("/api/v1/tasks")
+                                        .body(StringBody("""
+                                                {
+                                                  "tenantId": "#{tenantId}",
+                                                  "taskType": "#{taskType}",
+                                                  "priority": #{priority},
+                                                  "payload": {"prompt": "#{prompt}"}
+                                                }
+                                                """))
+                                        .check(status().is(202))
+                                        .check(jsonPath("$.taskId").saveAs("taskId"))
+                        )
+                        .exitHereIfFailed()
+                        .exec(session -> session.set("taskDone", false).set("pollCount", 0))
+                        .asLongAs(session -> !session.getBoolean("taskDone") && session.getInt("pollCount") < 120)
+                        .on(
+                                pause(Duration.ofMillis(500))
+                                .exec(
+                                        http("Poll Tracked Task - " + tenantId)
+                                                .get("/api/v1/tasks/#{taskId}")
+                                                .check(status().is(200))
+                                                .check(jsonPath("$.status").saveAs("taskStatus"))
+                                )
+                                .exec(session -> session
+                                        .set("taskDone", "COMPLETED".equals(session.getString("taskStatus"))
+                                                      || "DEAD_LETTERED".equals(session.getString("taskStatus")))
+                                        .set("pollCount", session.getInt("pollCount") + 1))
+                        )
+                );
+    }
+
     private final ScenarioBuilder heavyTenant = tenantScenario("Heavy Tenant", "tenant-heavy");
     private final ScenarioBuilder normalTenant1 = tenantScenario("Normal Tenant 1", "tenant-normal-1");
     private final ScenarioBuilder normalTenant2 = tenantScenario("Normal Tenant 2", "tenant-normal-2");
     private final ScenarioBuilder normalTenant3 = tenantScenario("Normal Tenant 3", "tenant-normal-3");
+    private final ScenarioBuilder heavyCompletion = completionScenario("tenant-heavy");
+    private final ScenarioBuilder normalCompletion1 = completionScenario("tenant-normal-1");
+    private final ScenarioBuilder normalCompletion2 = completionScenario("tenant-normal-2");
+    private final ScenarioBuilder normalCompletion3 = completionScenario("tenant-normal-3");
 
     {
         setUp(
@@ -94,13 +138,22 @@ public class FairnessSimulation extends Simulation {
                 normalTenant3.injectOpen(
                         rampUsersPerSec(5).to(50).during(Duration.ofSeconds(20)),
                         constantUsersPerSec(50).during(Duration.ofMinutes(3))
-                )
+                ),
+                // Tracked tasks: a small sample per tenant followed through to completion
+                heavyCompletion.injectOpen(nothingFor(Duration.ofSeconds(20)), constantUsersPerSec(2).during(Duration.ofMinutes(3))),
+                normalCompletion1.injectOpen(nothingFor(Duration.ofSeconds(20)), constantUsersPerSec(2).during(Duration.ofMinutes(3))),
+                normalCompletion2.injectOpen(nothingFor(Duration.ofSeconds(20)), constantUsersPerSec(2).during(Duration.ofMinutes(3))),
+                normalCompletion3.injectOpen(nothingFor(Duration.ofSeconds(20)), constantUsersPerSec(2).during(Duration.ofMinutes(3)))
         ).protocols(httpProtocol)
          .assertions(
                  details("Submit Task - tenant-normal-1").failedRequests().percent().lt(1.0),
                  details("Submit Task - tenant-normal-2").failedRequests().percent().lt(1.0),
                  details("Submit Task - tenant-normal-3").failedRequests().percent().lt(1.0),
-                 details("Submit Task - tenant-heavy").failedRequests().percent().gt(20.0)
+                 details("Submit Task - tenant-heavy").failedRequests().percent().gt(20.0),
+                 // p95 (percentile3) of submit-to-completion time for the normal tenants' tracked tasks
+                 details("Task Completion - tenant-normal-1").responseTime().percentile3().lt(COMPLETION_P95_MS),
+                 details("Task Completion - tenant-normal-2").responseTime().percentile3().lt(COMPLETION_P95_MS),
+                 details("Task Completion - tenant-normal-3").responseTime().percentile3().lt(COMPLETION_P95_MS)
          );
     }
 }
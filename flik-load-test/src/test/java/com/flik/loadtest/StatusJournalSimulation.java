@@ -0,0 +1,98 @@
+package com.flik.loadtest;
+
+import io.gatling.javaapi.core.*;
+import io.gatling.javaapi.http.*;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static io.gatling.javaapi.core.CoreDsl.*;
+import static io.gatling.javaapi.http.HttpDsl.*;
+
+/**
+ * Status journal: sustained TEXT submissions at 300 req/s for 5 minutes, each polled until it finishes.
+ * Run once with FLIK_JOURNAL_ENABLED=false and once with it true, then compare worker status write
+ * latency, compaction lag and dead tuples on tasks. Reads must still see each terminal status.
+ */
+public class StatusJournalSimulation extends Simulation {
+
+    private static final String BASE_URL = System.getProperty("gatling.baseUrl", "http://localhost:8080");
+    private static final String API_KEY = System.getProperty("gatling.apiKey", "load-test-key");
+
+    private final HttpProtocolBuilder httpProtocol = http
+            .baseUrl(BASE_URL)
+            .header("Authorization", "Bearer " + API_KEY)
+            .header("Content-Type", "application/json")
+            .acceptHeader("application/json")
+            .shareConnections();
+
+    private static final String[] TENANT_IDS = {"tenant-1", "tenant-2", "tenant-3", "tenant-4", "tenant-5"};
+    private static final Random RANDOM = new Random();
+
+    private final Iterator<Map<String, Object>> feeder = Stream.generate(
+            (Supplier<Map<String, Object>>) () -> Map.of(
+                    "tenantId", TENANT_IDS[RANDOM.nextInt(TENANT_IDS.length)],
+                    "prompt", "Journal " + UUID.randomUUID()
+            )
+    ).iterator();
+
+    private final ScenarioBuilder submitAndPoll = scenario("Status Journal Load Test")
+            .feed(feeder)
+            .exec(
+                    http("Submit Task")
+                            .post("/api/v1/tasks")
+                            .body(StringBody("""
+                                    {
+                                      "tenantId": "#{tenantId}",
+                                      "taskType": "TEXT",
+                                      "priority": 0,
+                                      "payload": {"prompt": "#{prompt}"}
+                                    }
+                                    """))
+                            .check(status().is(202))
+                            .check(jsonPath("$.taskId").saveAs("taskId"))
+            )
+            .exec(session -> session.set("done", false).set("pollCount", 0))
+            .asLongAs(session -> !session.getBoolean("done") && session.getInt("pollCount") < 30)
+            .on(
+                    pause(Duration.ofSeconds(1))
+                    .exec(
+                            http("Poll Status")
+                                    .get("/api/v1/tasks/#{taskId}")
+                                    .check(status().is(200))
+                                    .check(jsonPath("$.status").saveAs("taskStatus"))
+                    )
+                    .exec(session -> {
+                        String taskStatus = session.getString("taskStatus");
+                        return session
+                                .set("done", "COMPLETED".equals(taskStatus) || "DEAD_LETTERED".equals(taskStatus)
+                                        || "EXPIRED".equals(taskStatus))
+                                .set("pollCount", session.getInt("pollCount") + 1);
+                    })
+            )
+            .doIf(session -> "COMPLETED".equals(session.getString("taskStatus"))).then(
+                    exec(
+                            http("Get Timeline")
+                                    .get("/api/v1/tasks/#{taskId}/events")
+                                    .check(status().is(200))
+                    )
+            );
+
+    {
+        setUp(
+                submitAndPoll.injectOpen(
+                        rampUsersPerSec(10).to(300).during(Duration.ofSeconds(30)),
+                        constantUsersPerSec(300).during(Duration.ofMinutes(5))
+                )
+        ).protocols(httpProtocol)
+         .assertions(
+                 global().responseTime().percentile4().lt(200),
+                 global().failedRequests().percent().lt(1.0)
+         );
+    }
+}
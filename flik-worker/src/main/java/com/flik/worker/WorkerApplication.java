@@ -3,9 +3,11 @@ package com.flik.worker;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EntityScan(basePackages = "com.flik.common.model")
+@EnableScheduling
 public class WorkerApplication {
 
     public static void main(String[] args) {
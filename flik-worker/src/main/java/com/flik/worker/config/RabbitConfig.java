@@ -1,35 +1,151 @@
 package com.flik.worker.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flik.common.compression.PayloadCompressor;
 import com.flik.common.constants.QueueConstants;
+import com.flik.common.messaging.ConfirmingPublisher;
+import com.flik.common.messaging.PriorityAging;
+import com.flik.common.messaging.TaskMessageCodec;
+import com.flik.common.messaging.TaskMessageConverter;
+import com.flik.worker.processor.FairDispatcher;
+import com.flik.worker.processor.TaskProcessor;
+import com.flik.worker.processor.VirtualThreadDispatcher;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
-import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+import java.util.Map;
+
 @Configuration
 public class RabbitConfig {
 
+    // Each profile's listener consumes one queue: text p0, image p1, video p2
+    private static final Map<String, String> QUEUE_TASK_TYPES = Map.of(
+            QueueConstants.QUEUE_P0, "TEXT",
+            QueueConstants.QUEUE_P1, "IMAGE",
+            QueueConstants.QUEUE_P2, "VIDEO"
+    );
+
     @Value("${worker.concurrency:5}")
     private int concurrency;
 
+    @Value("${worker.dispatch.mode:fair}")
+    private String dispatchMode;
+
+    @Value("${worker.dispatch.buffer:100}")
+    private int dispatchBuffer;
+
+    @Value("${worker.batch.size:8}")
+    private int batchSize;
+
+    @Value("${worker.batch.wait-ms:50}")
+    private long batchWaitMs;
+
+    @Bean
+    public PayloadCompressor payloadCompressor(MeterRegistry meterRegistry,
+                                               @Value("${flik.compression.threshold-bytes:1024}") int thresholdBytes,
+                                               @Value("${flik.compression.level:1}") int level) {
+        return new PayloadCompressor(meterRegistry, thresholdBytes, level);
+    }
+
+    @Bean
+    public TaskMessageConverter taskMessageConverter(ObjectMapper objectMapper, PayloadCompressor payloadCompressor,
+                                                     @Value("${flik.messaging.format:binary}") String format) {
+        return new TaskMessageConverter(new TaskMessageCodec(payloadCompressor), objectMapper,
+                "binary".equalsIgnoreCase(format));
+    }
+
+    @Bean
+    public ConfirmingPublisher confirmingPublisher(RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry,
+                                                   @Value("${flik.publish.max-in-flight:1024}") int maxInFlight,
+                                                   @Value("${flik.publish.confirm-timeout-ms:5000}") long confirmTimeoutMs,
+                                                   @Value("${flik.publish.max-attempts:3}") int maxAttempts) {
+        return new ConfirmingPublisher(rabbitTemplate, meterRegistry, maxInFlight,
+                Duration.ofMillis(confirmTimeoutMs), Duration.ofMillis(confirmTimeoutMs), maxAttempts,
+                Duration.ofMillis(100));
+    }
+
     @Bean
-    public MessageConverter jsonMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+    public PriorityAging priorityAging(@Value("${flik.aging.p0-max-wait-seconds:30}") long p0MaxWaitSeconds,
+                                       @Value("${flik.aging.p1-max-wait-seconds:120}") long p1MaxWaitSeconds,
+                                       @Value("${flik.aging.p2-max-wait-seconds:600}") long p2MaxWaitSeconds) {
+        return new PriorityAging(Duration.ofSeconds(p0MaxWaitSeconds), Duration.ofSeconds(p1MaxWaitSeconds),
+                Duration.ofSeconds(p2MaxWaitSeconds));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "worker.dispatch.mode", havingValue = "fair", matchIfMissing = true)
+    public FairDispatcher fairDispatcher(MeterRegistry meterRegistry,
+                                         @Value("${worker.dispatch.tier-weights:premium=4,standard=1,free=0.5}") String tierWeights,
+                                         @Value("${worker.dispatch.tenant-tiers:}") String tenantTiers) {
+        return new FairDispatcher(meterRegistry, concurrency, dispatchBuffer, tierWeights, tenantTiers);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "worker.dispatch.mode", havingValue = "virtual")
+    public VirtualThreadDispatcher virtualThreadDispatcher(MeterRegistry meterRegistry,
+                                                           @Value("${worker.virtual.permits:TEXT=400,IMAGE=200,VIDEO=100}") String permits,
+                                                           @Value("${worker.virtual.default-permits:200}") int defaultPermits) {
+        return new VirtualThreadDispatcher(meterRegistry, permits, defaultPermits);
     }
 
     @Bean
     public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
-            ConnectionFactory connectionFactory, MessageConverter jsonMessageConverter) {
+            ConnectionFactory connectionFactory, MessageConverter messageConverter,
+            ObjectProvider<VirtualThreadDispatcher> virtualThreadDispatcher) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(messageConverter);
+        if ("fair".equalsIgnoreCase(dispatchMode)) {
+            // One consumer fills the dispatch buffer; the broker never hands this worker more than it can hold
+            factory.setConcurrentConsumers(1);
+            factory.setMaxConcurrentConsumers(1);
+            factory.setPrefetchCount(dispatchBuffer);
+        } else if ("virtual".equalsIgnoreCase(dispatchMode)) {
+            // One consumer hands each delivery to a virtual thread; prefetch matches the queue's task type permits
+            VirtualThreadDispatcher dispatcher = virtualThreadDispatcher.getObject();
+            factory.setConcurrentConsumers(1);
+            factory.setMaxConcurrentConsumers(1);
+            factory.setContainerCustomizer(container -> container.setPrefetchCount(
+                    dispatcher.permits(QUEUE_TASK_TYPES.get(container.getQueueNames()[0]))));
+        } else {
+            factory.setConcurrentConsumers(concurrency);
+            factory.setMaxConcurrentConsumers(concurrency);
+            factory.setPrefetchCount(1);
+        }
+        factory.setDefaultRequeueRejected(false);
+        factory.setAcknowledgeMode(org.springframework.amqp.core.AcknowledgeMode.MANUAL);
+        return factory;
+    }
+
+    // Backs the batch listeners, which only start when worker.dispatch.mode=batch
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchListenerContainerFactory(ConnectionFactory connectionFactory) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
         factory.setConnectionFactory(connectionFactory);
-        factory.setMessageConverter(jsonMessageConverter);
         factory.setConcurrentConsumers(concurrency);
         factory.setMaxConcurrentConsumers(concurrency);
-        factory.setPrefetchCount(1);
+        // A batch is released when full or when no delivery arrives within the wait; prefetch of one batch
+        // leaves each consumer's channel holding only the batch it is processing, so one multiple ack settles it
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(batchWaitMs);
+        factory.setPrefetchCount(batchSize);
+        // Marks when each delivery arrived, so batch wait is measured from the batch's first delivery
+        factory.setAfterReceivePostProcessors(message -> {
+            message.getMessageProperties().setHeader(TaskProcessor.RECEIVED_AT_HEADER, System.nanoTime());
+            return message;
+        });
         factory.setDefaultRequeueRejected(false);
         factory.setAcknowledgeMode(org.springframework.amqp.core.AcknowledgeMode.MANUAL);
         return factory;
@@ -0,0 +1,297 @@
+package com.flik.worker.processor;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.search.Search;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Adjusts how many deliveries this worker processes at once, and in direct mode how many each consumer
+ * prefetches, from what it observed since the previous tick. The concurrency limit adapts by AIMD: it shrinks
+ * by 20% while CPU, ack latency or status write latency is over target or processing has slowed to twice its
+ * baseline, and grows by one while every slot is busy and nothing is under pressure. Prefetch is sized so each
+ * consumer holds about {@code worker.adaptive.prefetch-work-ms} of work at the current mean processing time.
+ *
+ * <p>In fair mode the limit is the number of dispatch threads; in direct and batch mode it is the consumer count
+ * of the running listener containers. A new prefetch applies to consumers started after the change, which
+ * happens whenever the consumer count moves.
+ */
+@Component
+// Virtual mode is bounded by its per-type permits instead
+@ConditionalOnExpression("${worker.adaptive.enabled:true} && !'${worker.dispatch.mode:fair}'.equalsIgnoreCase('virtual')")
+public class ConcurrencyController {
+
+    private static final Logger log = LoggerFactory.getLogger(ConcurrencyController.class);
+
+    private static final double DECREASE_RATIO = 0.8;
+    private static final double SATURATION = 0.9;
+    private static final double PROCESSING_SLOWDOWN = 2.0;
+    // The processing baseline relaxes 5% per tick, so it follows a workload that has become slower for good
+    private static final double BASELINE_RELAX = 1.05;
+
+    private final MeterRegistry meterRegistry;
+    private final RabbitListenerEndpointRegistry listeners;
+    private final FairDispatcher dispatcher;
+    private final String mode;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final int minPrefetch;
+    private final int maxPrefetch;
+    private final double cpuTarget;
+    private final double ackTargetMs;
+    private final double writeTargetMs;
+    private final double prefetchWorkMs;
+    // Tasks one slot works on at once: a whole batch in batch mode
+    private final int tasksPerSlot;
+
+    private final TimerWindow processing;
+    private final TimerWindow acks;
+    private final TimerWindow dbWrites;
+    private final TimerWindow redisWrites;
+
+    private volatile int concurrency;
+    // Consumer count the listener containers were last given; they start at worker.concurrency
+    private int appliedConsumers;
+    private volatile int prefetch;
+    private volatile double baselineProcessingMs = Double.NaN;
+    private volatile Signals lastSignals;
+    private volatile String lastReason = "initial";
+    private volatile Instant adjustedAt;
+
+    @Autowired
+    public ConcurrencyController(MeterRegistry meterRegistry, RabbitListenerEndpointRegistry listeners,
+                                 ObjectProvider<FairDispatcher> dispatcher,
+                                 @Value("${worker.dispatch.mode:fair}") String mode,
+                                 @Value("${worker.concurrency:5}") int initialConcurrency,
+                                 @Value("${worker.dispatch.buffer:100}") int dispatchBuffer,
+                                 @Value("${worker.batch.size:8}") int batchSize,
+                                 @Value("${worker.adaptive.min-concurrency:1}") int minConcurrency,
+                                 @Value("${worker.adaptive.max-concurrency:20}") int maxConcurrency,
+                                 @Value("${worker.adaptive.min-prefetch:1}") int minPrefetch,
+                                 @Value("${worker.adaptive.max-prefetch:20}") int maxPrefetch,
+                                 @Value("${worker.adaptive.cpu-target:0.85}") double cpuTarget,
+                                 @Value("${worker.adaptive.ack-target-ms:50}") double ackTargetMs,
+                                 @Value("${worker.adaptive.write-target-ms:200}") double writeTargetMs,
+                                 @Value("${worker.adaptive.prefetch-work-ms:5000}") double prefetchWorkMs) {
+        this.meterRegistry = meterRegistry;
+        this.listeners = listeners;
+        this.dispatcher = dispatcher.getIfAvailable();
+        this.mode = mode.toLowerCase();
+        this.minConcurrency = minConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.minPrefetch = minPrefetch;
+        this.maxPrefetch = maxPrefetch;
+        this.cpuTarget = cpuTarget;
+        this.ackTargetMs = ackTargetMs;
+        this.writeTargetMs = writeTargetMs;
+        this.prefetchWorkMs = prefetchWorkMs;
+        this.tasksPerSlot = "batch".equals(this.mode) ? batchSize : 1;
+        this.concurrency = clamp(initialConcurrency, minConcurrency, maxConcurrency);
+        this.appliedConsumers = initialConcurrency;
+        // Fair mode's single consumer prefetches the dispatch buffer and batch mode one batch; neither adapts
+        this.prefetch = switch (this.mode) {
+            case "fair" -> dispatchBuffer;
+            case "batch" -> batchSize;
+            default -> clamp(1, minPrefetch, maxPrefetch);
+        };
+
+        this.processing = new TimerWindow(() -> meterRegistry.find("flik.task.processing.seconds"));
+        this.acks = new TimerWindow(() -> meterRegistry.find("flik_worker_ack_seconds"));
+        this.dbWrites = new TimerWindow(() -> meterRegistry.find("flik_worker_write_seconds").tag("store", "db"));
+        this.redisWrites = new TimerWindow(() -> meterRegistry.find("flik_worker_write_seconds").tag("store", "redis"));
+
+        Gauge.builder("flik_worker_concurrency_limit", this, ConcurrencyController::getConcurrency)
+                .description("Adaptive limit on deliveries this worker processes at once")
+                .register(meterRegistry);
+        Gauge.builder("flik_worker_prefetch", this, ConcurrencyController::getPrefetch)
+                .description("Prefetch count of this worker's listener consumers")
+                .register(meterRegistry);
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    @Scheduled(fixedDelayString = "${worker.adaptive.interval-ms:5000}",
+            initialDelayString = "${worker.adaptive.interval-ms:5000}")
+    public void adjust() {
+        Signals signals = sample();
+        lastSignals = signals;
+
+        // Judged against the baseline before this tick, which would otherwise already have relaxed towards it
+        Decision decision = decide(signals, concurrency, prefetch, baselineProcessingMs);
+        baselineProcessingMs = nextBaseline(baselineProcessingMs, signals.processingMs());
+        int next = decision.concurrency();
+        int nextPrefetch = decision.prefetch();
+        lastReason = decision.reason();
+
+        if (next != concurrency || nextPrefetch != prefetch) {
+            log.info("Adjusting worker concurrency {} -> {}, prefetch {} -> {}: {}",
+                    concurrency, next, prefetch, nextPrefetch, lastReason);
+            adjustedAt = Instant.now();
+        }
+        concurrency = next;
+        prefetch = nextPrefetch;
+        // Applied every tick, so containers started late and dispatch threads that raced a resize converge
+        apply();
+    }
+
+    /**
+     * Current settings, bounds and the signals of the last tick; read by the {@code concurrency} actuator endpoint.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("mode", mode);
+        snapshot.put("concurrency", concurrency);
+        snapshot.put("prefetch", prefetch);
+        snapshot.put("minConcurrency", minConcurrency);
+        snapshot.put("maxConcurrency", maxConcurrency);
+        snapshot.put("minPrefetch", minPrefetch);
+        snapshot.put("maxPrefetch", maxPrefetch);
+        snapshot.put("reason", lastReason);
+        snapshot.put("adjustedAt", adjustedAt);
+        snapshot.put("baselineProcessingMs", finiteOrNull(baselineProcessingMs));
+        Signals signals = lastSignals;
+        if (signals != null) {
+            Map<String, Object> observed = new LinkedHashMap<>();
+            observed.put("processingMs", finiteOrNull(signals.processingMs()));
+            observed.put("ackMs", finiteOrNull(signals.ackMs()));
+            observed.put("dbWriteMs", finiteOrNull(signals.dbWriteMs()));
+            observed.put("redisWriteMs", finiteOrNull(signals.redisWriteMs()));
+            observed.put("cpu", finiteOrNull(signals.cpu()));
+            observed.put("active", signals.active());
+            observed.put("buffered", signals.buffered());
+            snapshot.put("signals", observed);
+        }
+        return snapshot;
+    }
+
+    /**
+     * The next limit and prefetch given this tick's signals, the current settings and the processing baseline;
+     * depends on nothing else, so every decision can be replayed from its inputs.
+     */
+    Decision decide(Signals signals, int concurrency, int prefetch, double baselineProcessingMs) {
+        int next;
+        String reason = pressure(signals, baselineProcessingMs);
+        if (reason != null) {
+            next = Math.max(minConcurrency, (int) (concurrency * DECREASE_RATIO));
+        } else if (signals.active() >= concurrency * tasksPerSlot * SATURATION || signals.buffered() > 0) {
+            next = Math.min(maxConcurrency, concurrency + 1);
+            reason = "saturated";
+        } else {
+            next = concurrency;
+            reason = "steady";
+        }
+
+        int nextPrefetch = prefetch;
+        if ("direct".equals(mode) && !Double.isNaN(signals.processingMs())) {
+            nextPrefetch = clamp((int) Math.ceil(prefetchWorkMs / Math.max(1, signals.processingMs())),
+                    minPrefetch, maxPrefetch);
+        }
+        return new Decision(next, nextPrefetch, reason);
+    }
+
+    // The fastest recent mean, relaxed a little each tick; unchanged by a tick without samples
+    static double nextBaseline(double baselineMs, double processingMs) {
+        if (Double.isNaN(processingMs)) return baselineMs;
+        return Double.isNaN(baselineMs) ? processingMs : Math.min(baselineMs * BASELINE_RELAX, processingMs);
+    }
+
+    private String pressure(Signals signals, double baselineProcessingMs) {
+        if (signals.cpu() > cpuTarget) return "cpu";
+        if (signals.dbWriteMs() > writeTargetMs) return "db write latency";
+        if (signals.redisWriteMs() > writeTargetMs) return "redis write latency";
+        if (signals.ackMs() > ackTargetMs) return "ack latency";
+        if (signals.processingMs() >= baselineProcessingMs * PROCESSING_SLOWDOWN) return "processing slowdown";
+        return null;
+    }
+
+    private Signals sample() {
+        Gauge cpu = meterRegistry.find("system.cpu.usage").gauge();
+        double active = meterRegistry.find("flik_worker_active").gauges().stream().mapToDouble(Gauge::value).sum();
+        return new Signals(processing.meanMillis(), acks.meanMillis(), dbWrites.meanMillis(),
+                redisWrites.meanMillis(), cpu != null ? cpu.value() : Double.NaN, (int) active,
+                dispatcher != null ? dispatcher.getBuffered() : 0);
+    }
+
+    void apply() {
+        if (dispatcher != null) {
+            dispatcher.setConcurrency(concurrency);
+            return;
+        }
+        for (MessageListenerContainer container : listeners.getListenerContainers()) {
+            if (!(container instanceof SimpleMessageListenerContainer simple) || !simple.isRunning()) continue;
+            if ("direct".equals(mode)) {
+                simple.setPrefetchCount(prefetch);
+            }
+            // The consumer count may never exceed the maximum, so raise the maximum first and lower it last
+            if (concurrency >= appliedConsumers) {
+                simple.setMaxConcurrentConsumers(concurrency);
+                simple.setConcurrentConsumers(concurrency);
+            } else {
+                simple.setConcurrentConsumers(concurrency);
+                simple.setMaxConcurrentConsumers(concurrency);
+            }
+        }
+        appliedConsumers = concurrency;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static Double finiteOrNull(double value) {
+        return Double.isFinite(value) ? value : null;
+    }
+
+    record Signals(double processingMs, double ackMs, double dbWriteMs, double redisWriteMs, double cpu,
+                   int active, int buffered) {}
+
+    record Decision(int concurrency, int prefetch, String reason) {}
+
+    // Mean of the samples a timer recorded since the previous call; NaN when there were none
+    static final class TimerWindow {
+        private final Supplier<Search> search;
+        private long count;
+        private double totalMs;
+
+        TimerWindow(Supplier<Search> search) {
+            this.search = search;
+        }
+
+        double meanMillis() {
+            long newCount = 0;
+            double newTotalMs = 0;
+            for (Timer timer : search.get().timers()) {
+                newCount += timer.count();
+                newTotalMs += timer.totalTime(TimeUnit.MILLISECONDS);
+            }
+            long samples = newCount - count;
+            double mean = samples > 0 ? (newTotalMs - totalMs) / samples : Double.NaN;
+            count = newCount;
+            totalMs = newTotalMs;
+            return mean;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.flik.worker.processor;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// GET /actuator/concurrency: the adaptive concurrency and prefetch settings and the signals behind them
+@Component
+@Endpoint(id = "concurrency")
+@ConditionalOnExpression("${worker.adaptive.enabled:true} && !'${worker.dispatch.mode:fair}'.equalsIgnoreCase('virtual')")
+public class ConcurrencyEndpoint {
+
+    private final ConcurrencyController controller;
+
+    public ConcurrencyEndpoint(ConcurrencyController controller) {
+        this.controller = controller;
+    }
+
+    @ReadOperation
+    public Map<String, Object> settings() {
+        return controller.snapshot();
+    }
+}
@@ -0,0 +1,287 @@
+package com.flik.worker.processor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Buffers deliveries in per-tenant sub-queues and hands them to processing threads by weighted deficit round
+ * robin, so a tenant that fills the priority queue while staying under its rate limit gets its weighted share
+ * of this worker rather than all of it. Each visit credits a tenant its tier weight and it is served one task
+ * per whole credit, so a weight of 4 gets four tasks per round and 0.5 one task every other round.
+ *
+ * <p>Within a tenant, buffered tasks run earliest deadline first, by the client deadline or the priority's
+ * max-wait SLO, whichever comes sooner; tasks with neither run in arrival order after them. A task past that
+ * time jumps the rotation: the tenant whose head task is most overdue is served next and charged one credit,
+ * so aged background work cannot starve behind busier tenants and expired tasks are discarded promptly. Only
+ * a tenant out of debt may jump, so a tenant whose every task is overdue gets one jump and then waits for its
+ * weight to repay the credit; overdue work is served sooner but never gets more than its tenant's share.
+ *
+ * <p>Deliveries stay unacked while buffered; the task acks or rejects on its own channel once processed, and
+ * anything still buffered at shutdown is redelivered by the broker when the channel closes.
+ *
+ * <p>The number of processing threads can be changed at runtime; threads above a lowered limit exit once their
+ * current task is done.
+ */
+public class FairDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(FairDispatcher.class);
+
+    private static final String DEFAULT_TIER = "standard";
+    private static final double MIN_WEIGHT = 0.1;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Map<String, TenantQueue> tenants = new HashMap<>();
+    // Tenants with buffered work, in round-robin order; the head is the tenant being served
+    private final ArrayDeque<TenantQueue> active = new ArrayDeque<>();
+    private final Map<String, Double> tierWeights;
+    private final Map<String, String> tenantTiers;
+    private final int capacity;
+    private final Timer waitTimer;
+    private final Counter overdueServed;
+    private final List<Thread> threads = new ArrayList<>();
+    private int buffered;
+    private long sequence;
+    private volatile int concurrency;
+    private volatile boolean running = true;
+
+    public FairDispatcher(MeterRegistry meterRegistry, int threadCount, int capacity,
+                          String tierWeights, String tenantTiers) {
+        this.capacity = capacity;
+        this.tierWeights = new HashMap<>();
+        parsePairs(tierWeights).forEach((tier, weight) ->
+                this.tierWeights.put(tier, Math.max(MIN_WEIGHT, Double.parseDouble(weight))));
+        this.tenantTiers = parsePairs(tenantTiers);
+
+        Gauge.builder("flik_dispatch_buffered", this, FairDispatcher::getBuffered)
+                .description("Deliveries buffered in this worker awaiting a processing thread")
+                .register(meterRegistry);
+        Gauge.builder("flik_dispatch_tenants", this, FairDispatcher::getActiveTenants)
+                .description("Tenants with deliveries buffered in this worker")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("flik_dispatch_wait_seconds")
+                .description("Time a delivery waited in the fair dispatch buffer")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.overdueServed = Counter.builder("flik_dispatch_overdue_total")
+                .description("Deliveries served ahead of the round robin because they were past their max-wait SLO or deadline")
+                .register(meterRegistry);
+
+        setConcurrency(threadCount);
+        log.info("Fair dispatch initialized: threads={}, capacity={}, tierWeights={}",
+                threadCount, capacity, this.tierWeights);
+    }
+
+    /**
+     * Buffers {@code task} for {@code tenantId}, blocking while the buffer is full. {@code dueAt} is when the task
+     * breaches its max-wait SLO and {@code deadline} when the client stops wanting it; either may be null.
+     */
+    public void submit(String tenantId, Instant dueAt, Instant deadline, Runnable task) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (buffered >= capacity) {
+                notFull.await();
+            }
+            TenantQueue queue = tenants.computeIfAbsent(tenantId, id -> new TenantQueue(id, weightFor(id)));
+            if (queue.tasks.isEmpty()) {
+                active.addLast(queue);
+            }
+            queue.tasks.add(new Buffered(task, System.nanoTime(), dueAt, deadline, sequence++));
+            buffered++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets how many threads process buffered deliveries. Safe to call repeatedly with the same value: a thread
+     * that exited just as the limit was raised again is restarted on the next call.
+     */
+    public synchronized void setConcurrency(int threadCount) {
+        concurrency = threadCount;
+        for (int i = 0; i < threadCount; i++) {
+            if (i == threads.size()) {
+                threads.add(startThread(i));
+            } else if (!threads.get(i).isAlive()) {
+                threads.set(i, startThread(i));
+            }
+        }
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getBuffered() {
+        lock.lock();
+        try {
+            return buffered;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getActiveTenants() {
+        lock.lock();
+        try {
+            return active.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    double weightFor(String tenantId) {
+        String tier = tenantTiers.getOrDefault(tenantId, DEFAULT_TIER);
+        return tierWeights.getOrDefault(tier, 1.0);
+    }
+
+    // Tasks already running finish; buffered ones are redelivered once the listener channel closes
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        List<Thread> started;
+        synchronized (this) {
+            started = List.copyOf(threads);
+        }
+        for (Thread thread : started) {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    /**
+     * Next delivery: the most overdue head task if any, otherwise by weighted deficit round robin. Null if nothing
+     * arrived within the poll interval.
+     */
+    Buffered next() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            if (active.isEmpty()) {
+                notEmpty.await(100, TimeUnit.MILLISECONDS);
+                if (active.isEmpty()) return null;
+            }
+            TenantQueue overdue = mostOverdue(Instant.now());
+            if (overdue != null) {
+                overdue.deficit -= 1;
+                overdueServed.increment();
+                return take(overdue);
+            }
+            while (true) {
+                TenantQueue head = active.peekFirst();
+                if (!head.credited) {
+                    head.deficit += head.weight;
+                    head.credited = true;
+                }
+                if (head.deficit >= 1) {
+                    head.deficit -= 1;
+                    return take(head);
+                }
+                head.credited = false;
+                active.addLast(active.pollFirst());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private TenantQueue mostOverdue(Instant now) {
+        TenantQueue most = null;
+        Instant earliest = now;
+        for (TenantQueue queue : active) {
+            if (queue.deficit < 0) continue;
+            Instant dueAt = queue.tasks.peek().orderBy();
+            if (dueAt != null && !dueAt.isAfter(earliest)) {
+                most = queue;
+                earliest = dueAt;
+            }
+        }
+        return most;
+    }
+
+    private Buffered take(TenantQueue queue) {
+        Buffered next = queue.tasks.poll();
+        if (queue.tasks.isEmpty()) {
+            // An idle tenant keeps no credit and no entry
+            active.remove(queue);
+            tenants.remove(queue.tenantId);
+        }
+        buffered--;
+        notFull.signal();
+        return next;
+    }
+
+    private Thread startThread(int index) {
+        return Thread.ofVirtual().name("fair-dispatch-" + index).start(() -> runLoop(index));
+    }
+
+    private void runLoop(int index) {
+        while (running && index < concurrency) {
+            try {
+                Buffered next = next();
+                if (next == null) continue;
+                waitTimer.record(System.nanoTime() - next.bufferedAt(), TimeUnit.NANOSECONDS);
+                next.task().run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Dispatched task failed", e);
+            }
+        }
+    }
+
+    private static Map<String, String> parsePairs(String spec) {
+        Map<String, String> pairs = new HashMap<>();
+        if (spec == null || spec.isBlank()) return pairs;
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.trim().split("=", 2);
+            if (parts.length == 2) {
+                pairs.put(parts[0].trim(), parts[1].trim());
+            }
+        }
+        return pairs;
+    }
+
+    record Buffered(Runnable task, long bufferedAt, Instant dueAt, Instant deadline, long sequence) {
+
+        private static final Comparator<Buffered> EARLIEST_DEADLINE_FIRST = Comparator
+                .comparing(Buffered::orderBy, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparingLong(Buffered::sequence);
+
+        Instant orderBy() {
+            if (deadline == null) return dueAt;
+            return dueAt == null || deadline.isBefore(dueAt) ? deadline : dueAt;
+        }
+    }
+
+    private static final class TenantQueue {
+        private final String tenantId;
+        private final double weight;
+        private final PriorityQueue<Buffered> tasks = new PriorityQueue<>(Buffered.EARLIEST_DEADLINE_FIRST);
+        private double deficit;
+        private boolean credited;
+
+        private TenantQueue(String tenantId, double weight) {
+            this.tenantId = tenantId;
+            this.weight = weight;
+        }
+    }
+}
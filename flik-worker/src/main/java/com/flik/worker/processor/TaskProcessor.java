@@ -3,46 +3,92 @@ package com.flik.worker.processor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.flik.common.constants.QueueConstants;
 import com.flik.common.dto.TaskMessage;
+import com.flik.common.messaging.ConfirmingPublisher;
+import com.flik.common.messaging.PriorityAging;
+import com.flik.common.messaging.TaskMessageConverter;
+import com.flik.common.messaging.TaskMessageHeader;
+import com.flik.common.metrics.TaskMetrics;
+import com.flik.common.model.TaskType;
 import com.flik.worker.service.ResultService;
 import com.rabbitmq.client.Channel;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 import org.springframework.amqp.core.Message;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class TaskProcessor {
 
     private static final Logger log = LoggerFactory.getLogger(TaskProcessor.class);
 
+    // Each processor declares a per-delivery and a batch listener; worker.dispatch.mode decides which one starts
+    protected static final String PER_DELIVERY = "#{!'${worker.dispatch.mode:fair}'.equalsIgnoreCase('batch')}";
+    protected static final String BATCHED = "#{'${worker.dispatch.mode:fair}'.equalsIgnoreCase('batch')}";
+    protected static final String BATCH_FACTORY = "batchListenerContainerFactory";
+    // Stamped on each delivery by the batch container as it is received, in System.nanoTime()
+    public static final String RECEIVED_AT_HEADER = "x-flik-received-nanos";
+
+    // Simulated batch duration grows as size^0.6, so a batch of 8 takes about 3.5x as long as one task
+    private static final double BATCH_SCALING_EXPONENT = 0.6;
+
     protected final ResultService resultService;
-    protected final RabbitTemplate rabbitTemplate;
+    protected final ConfirmingPublisher publisher;
     protected final ObjectMapper objectMapper;
+    protected final TaskMessageConverter messageConverter;
     protected final MeterRegistry meterRegistry;
+    protected final PriorityAging priorityAging;
+    protected final TaskMetrics taskMetrics;
     protected final Random random = new Random();
     protected String workerVersion = "v1.0.0";
     private final AtomicInteger activeWorkers = new AtomicInteger(0);
+    private final Timer ackTimer;
+    private FairDispatcher dispatcher;
+    private VirtualThreadDispatcher virtualThreadDispatcher;
+    // Acks for re-routed deliveries run here rather than on the connection thread that completes the confirm
+    private final Executor settleExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("route-settle-", 0).factory());
 
-    protected TaskProcessor(ResultService resultService, RabbitTemplate rabbitTemplate,
-                            ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+    protected TaskProcessor(ResultService resultService, ConfirmingPublisher publisher,
+                            ObjectMapper objectMapper, TaskMessageConverter messageConverter,
+                            MeterRegistry meterRegistry, PriorityAging priorityAging, TaskMetrics taskMetrics) {
         this.resultService = resultService;
-        this.rabbitTemplate = rabbitTemplate;
+        this.publisher = publisher;
         this.objectMapper = objectMapper;
+        this.messageConverter = messageConverter;
         this.meterRegistry = meterRegistry;
+        this.priorityAging = priorityAging;
+        this.taskMetrics = taskMetrics;
 
         Gauge.builder("flik_worker_active", activeWorkers, AtomicInteger::get)
                 .tag("type", getTaskType())
                 .register(meterRegistry);
+        // basicAck only writes a frame; it blocks when the channel is flow controlled or the socket backs up
+        this.ackTimer = Timer.builder("flik_worker_ack_seconds")
+                .description("Time spent writing acks to the broker")
+                .tag("type", getTaskType())
+                .register(meterRegistry);
     }
 
     @Value("${worker.version:v1.0.0}")
@@ -50,6 +96,18 @@ public abstract class TaskProcessor {
         this.workerVersion = version;
     }
 
+    // Present only in fair dispatch mode; in direct mode each listener thread processes its own delivery
+    @Autowired(required = false)
+    public void setDispatcher(FairDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    // Present only in virtual dispatch mode
+    @Autowired(required = false)
+    public void setVirtualThreadDispatcher(VirtualThreadDispatcher virtualThreadDispatcher) {
+        this.virtualThreadDispatcher = virtualThreadDispatcher;
+    }
+
     protected abstract String getTaskType();
     protected abstract long getMinDurationMs();
     protected abstract long getMaxDurationMs();
@@ -57,23 +115,77 @@ public abstract class TaskProcessor {
 
     public void processMessage(Message message, Channel channel) throws Exception {
         long deliveryTag = message.getMessageProperties().getDeliveryTag();
-        TaskMessage taskMessage;
+        TaskMessageHeader header;
 
         try {
-            taskMessage = objectMapper.readValue(message.getBody(), TaskMessage.class);
+            header = messageConverter.peek(message);
         } catch (Exception e) {
-            log.error("Failed to deserialize message, rejecting", e);
+            log.error("Failed to read message header, rejecting", e);
             channel.basicReject(deliveryTag, false);
             return;
         }
 
-        UUID taskId = taskMessage.getTaskId();
+        if (virtualThreadDispatcher != null) {
+            virtualThreadDispatcher.submit(getTaskType(), () -> settle(message, channel, header));
+            return;
+        }
+        if (dispatcher == null) {
+            settle(message, channel, header);
+            return;
+        }
+        // The delivery stays unacked until a dispatch thread has processed it
+        dispatcher.submit(header.tenantId(), priorityAging.dueAt(header.priority(), header.createdAt()),
+                header.deadline(), () -> settle(message, channel, header));
+    }
+
+    // A delivery left neither acked nor nacked would hold one of the channel's prefetch slots for good
+    private void settle(Message message, Channel channel, TaskMessageHeader header) {
+        try {
+            process(message, channel, header);
+        } catch (Exception e) {
+            log.error("Failed to settle delivery, requeueing: taskId={}", header.taskId(), e);
+            requeue(channel, message.getMessageProperties().getDeliveryTag());
+        }
+    }
+
+    private static void requeue(Channel channel, long deliveryTag) {
+        try {
+            channel.basicNack(deliveryTag, false, true);
+        } catch (Exception e) {
+            log.error("Failed to requeue delivery {}", deliveryTag, e);
+        }
+    }
+
+    private void process(Message message, Channel channel, TaskMessageHeader header) throws Exception {
+        long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        UUID taskId = header.taskId();
         MDC.put("taskId", taskId.toString());
-        MDC.put("tenantId", taskMessage.getTenantId());
+        MDC.put("tenantId", header.tenantId());
         MDC.put("workerType", getTaskType());
 
+        // Checked before the payload is decoded, so an expired task costs no compute
+        Instant dequeuedAt = Instant.now();
+        if (header.deadline() != null) {
+            if (!dequeuedAt.isBefore(header.deadline())) {
+                expire(channel, deliveryTag, taskId, "dequeue");
+                return;
+            }
+            taskMetrics.deadlineSlack(TaskType.valueOf(getTaskType()), Duration.between(dequeuedAt, header.deadline()));
+        }
+
+        TaskMessage taskMessage;
+        try {
+            taskMessage = messageConverter.toTaskMessage(message, header);
+        } catch (Exception e) {
+            log.error("Failed to deserialize message, rejecting", e);
+            channel.basicReject(deliveryTag, false);
+            MDC.clear();
+            return;
+        }
+
         int retryCount = getRetryCount(message);
         Instant startTime = Instant.now();
+        recordQueueWait(header, startTime);
         activeWorkers.incrementAndGet();
 
         try {
@@ -88,26 +200,197 @@ public abstract class TaskProcessor {
 
             String resultJson = generateResult(taskMessage);
             resultService.markCompleted(taskId, getTaskType(), resultJson, startTime, workerVersion);
-            channel.basicAck(deliveryTag, false);
+            ack(channel, deliveryTag, false);
 
         } catch (Exception e) {
             log.warn("Task failed: taskId={}, retry={}, error={}", taskId, retryCount, e.getMessage());
 
-            if (retryCount < QueueConstants.MAX_RETRY_COUNT) {
-                resultService.markFailed(taskId, getTaskType(), e.getMessage(), retryCount + 1);
-                routeToRetry(taskMessage, retryCount + 1);
-                channel.basicAck(deliveryTag, false);
-            } else {
-                resultService.markDeadLettered(taskId, getTaskType(), e.getMessage());
-                routeToDlq(taskMessage);
-                channel.basicAck(deliveryTag, false);
+            if (header.deadline() != null && !Instant.now().isBefore(header.deadline())) {
+                expire(channel, deliveryTag, taskId, "retry");
+                return;
             }
+
+            ackWhenRouted(channel, deliveryTag, routeFailure(taskMessage, retryCount, e.getMessage()), taskId);
         } finally {
             activeWorkers.decrementAndGet();
             MDC.clear();
         }
     }
 
+    /**
+     * Batch mode: the consumer hands over up to worker.batch.size deliveries, and they are the only unacked
+     * deliveries on its channel. Rejected and requeued deliveries are settled one by one; everything else,
+     * completed, expired or re-routed, is settled by a single multiple ack. A delivery whose outcome could not
+     * be recorded is requeued on its own, so a database error never leaves a delivery unsettled.
+     */
+    public void processMessages(List<Message> messages, Channel channel) throws Exception {
+        Instant gatheredAt = Instant.now();
+        taskMetrics.batch(TaskType.valueOf(getTaskType()), messages.size(), gatheringTime(messages));
+        MDC.put("workerType", getTaskType());
+
+        Set<Long> settled = new HashSet<>();
+        List<BatchItem> batch = new ArrayList<>(messages.size());
+        try {
+            for (Message message : messages) {
+                long deliveryTag = message.getMessageProperties().getDeliveryTag();
+                TaskMessageHeader header;
+                try {
+                    header = messageConverter.peek(message);
+                } catch (Exception e) {
+                    log.error("Failed to read message header, rejecting", e);
+                    channel.basicReject(deliveryTag, false);
+                    settled.add(deliveryTag);
+                    continue;
+                }
+                if (header.deadline() != null && !gatheredAt.isBefore(header.deadline())) {
+                    try {
+                        resultService.markExpired(header.taskId(), getTaskType(), "dequeue");
+                    } catch (Exception e) {
+                        log.error("Failed to expire task, requeueing: taskId={}", header.taskId(), e);
+                        requeue(channel, deliveryTag);
+                        settled.add(deliveryTag);
+                    }
+                    continue;
+                }
+                TaskMessage taskMessage;
+                try {
+                    taskMessage = messageConverter.toTaskMessage(message, header);
+                } catch (Exception e) {
+                    log.error("Failed to deserialize message, rejecting", e);
+                    channel.basicReject(deliveryTag, false);
+                    settled.add(deliveryTag);
+                    continue;
+                }
+                if (header.deadline() != null) {
+                    taskMetrics.deadlineSlack(TaskType.valueOf(getTaskType()), Duration.between(gatheredAt, header.deadline()));
+                }
+                recordQueueWait(header, gatheredAt);
+                batch.add(new BatchItem(deliveryTag, header, taskMessage, getRetryCount(message)));
+            }
+
+            if (!batch.isEmpty()) {
+                List<BatchItem> unsettled;
+                try {
+                    unsettled = processBatch(batch);
+                } catch (Exception e) {
+                    log.error("Failed to settle batch of {}, requeueing it", batch.size(), e);
+                    unsettled = batch;
+                }
+                for (BatchItem item : unsettled) {
+                    requeue(channel, item.deliveryTag());
+                    settled.add(item.deliveryTag());
+                }
+            }
+
+            long ackUpTo = messages.stream().mapToLong(m -> m.getMessageProperties().getDeliveryTag())
+                    .filter(tag -> !settled.contains(tag)).max().orElse(0);
+            if (ackUpTo > 0) {
+                ack(channel, ackUpTo, true);
+            }
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    // From the batch's first delivery until it was handed over; zero if the container did not stamp it
+    static Duration gatheringTime(List<Message> messages) {
+        Object receivedAt = messages.isEmpty() ? null
+                : messages.get(0).getMessageProperties().getHeader(RECEIVED_AT_HEADER);
+        return receivedAt instanceof Long nanos ? Duration.ofNanos(System.nanoTime() - nanos) : Duration.ZERO;
+    }
+
+    /**
+     * Runs {@code batch} as one inference call, persists its results in one transaction and routes failed items
+     * to retry or DLQ individually. Returns the items whose failure could not be recorded or whose re-routing
+     * was not confirmed, to be requeued.
+     */
+    protected List<BatchItem> processBatch(List<BatchItem> batch) {
+        Instant startTime = Instant.now();
+        activeWorkers.addAndGet(batch.size());
+        Map<BatchItem, String> failures = new LinkedHashMap<>();
+        try {
+            resultService.markAllProcessing(batch.stream().map(item -> item.header().taskId()).toList());
+
+            long single = getMinDurationMs() + random.nextLong(getMaxDurationMs() - getMinDurationMs());
+            Thread.sleep((long) (single * Math.pow(batch.size(), BATCH_SCALING_EXPONENT)));
+
+            List<ResultService.Completion> completions = new ArrayList<>(batch.size());
+            for (BatchItem item : batch) {
+                if (random.nextDouble() < getFailureRate()) {
+                    failures.put(item, "Simulated AI processing failure");
+                } else {
+                    completions.add(new ResultService.Completion(item.header().taskId(), generateResult(item.message())));
+                }
+            }
+            resultService.markAllCompleted(completions, getTaskType(), startTime, workerVersion);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            log.warn("Batch failed: size={}, error={}", batch.size(), e.getMessage());
+            batch.forEach(item -> failures.put(item, e.getMessage()));
+        } finally {
+            activeWorkers.addAndGet(-batch.size());
+        }
+
+        Map<BatchItem, CompletableFuture<Void>> routed = new LinkedHashMap<>();
+        List<BatchItem> unrouted = new ArrayList<>();
+        failures.forEach((item, error) -> {
+            log.warn("Task failed: taskId={}, retry={}, error={}", item.header().taskId(), item.retryCount(), error);
+            try {
+                if (item.header().deadline() != null && !Instant.now().isBefore(item.header().deadline())) {
+                    resultService.markExpired(item.header().taskId(), getTaskType(), "retry");
+                } else {
+                    routed.put(item, routeFailure(item.message(), item.retryCount(), error));
+                }
+            } catch (Exception e) {
+                log.error("Failed to record task failure, requeueing: {}", item.header().taskId(), e);
+                unrouted.add(item);
+            }
+        });
+
+        routed.forEach((item, future) -> {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                log.error("Failed to route task, requeueing: {}", item.header().taskId(), e.getCause());
+                unrouted.add(item);
+            }
+        });
+        return unrouted;
+    }
+
+    private CompletableFuture<Void> routeFailure(TaskMessage taskMessage, int retryCount, String error) {
+        if (retryCount < QueueConstants.MAX_RETRY_COUNT) {
+            resultService.markFailed(taskMessage.getTaskId(), getTaskType(), error, retryCount + 1);
+            return routeToRetry(taskMessage, retryCount + 1);
+        }
+        resultService.markDeadLettered(taskMessage.getTaskId(), getTaskType(), error);
+        return routeToDlq(taskMessage);
+    }
+
+    private void expire(Channel channel, long deliveryTag, UUID taskId, String stage) throws Exception {
+        try {
+            resultService.markExpired(taskId, getTaskType(), stage);
+            ack(channel, deliveryTag, false);
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    private void ack(Channel channel, long deliveryTag, boolean multiple) throws Exception {
+        long started = System.nanoTime();
+        try {
+            channel.basicAck(deliveryTag, multiple);
+        } finally {
+            ackTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void recordQueueWait(TaskMessageHeader header, Instant now) {
+        if (header.createdAt() == null) return;
+        taskMetrics.queueWait(header.priority(), Duration.between(header.createdAt(), now),
+                priorityAging.isOverdue(header.priority(), header.createdAt(), now));
+    }
+
     private int getRetryCount(Message message) {
         Object header = message.getMessageProperties().getHeader("x-retry-count");
         if (header instanceof Number) {
@@ -116,21 +399,43 @@ public abstract class TaskProcessor {
         return 0;
     }
 
-    private void routeToRetry(TaskMessage taskMessage, int retryCount) {
+    // Only ack once the broker has confirmed the re-routed copy; otherwise requeue the original. Settled from the
+    // confirm callback, so the processing thread moves on to its next delivery instead of waiting for the broker
+    private void ackWhenRouted(Channel channel, long deliveryTag, CompletableFuture<Void> routed, UUID taskId) {
+        routed.whenCompleteAsync((ignored, error) -> {
+            if (error != null) {
+                log.error("Failed to route task, requeueing: {}", taskId,
+                        error instanceof CompletionException ? error.getCause() : error);
+                requeue(channel, deliveryTag);
+                return;
+            }
+            try {
+                ack(channel, deliveryTag, false);
+            } catch (Exception e) {
+                log.error("Failed to ack re-routed delivery {}", deliveryTag, e);
+            }
+        }, settleExecutor);
+    }
+
+    private CompletableFuture<Void> routeToRetry(TaskMessage taskMessage, int retryCount) {
         try {
             taskMessage.setRetryCount(retryCount);
             String originalRoutingKey = QueueConstants.routingKeyForPriority(taskMessage.getPriority());
             String retryExchange = retryExchangeForAttempt(retryCount);
+            // Aged from creation, so a retried task returns to its queue ahead of fresher work of its priority
+            int messagePriority = priorityAging.messagePriority(taskMessage.getPriority(), taskMessage.getCreatedAt(),
+                    Instant.now());
 
-            rabbitTemplate.convertAndSend(retryExchange,
+            return publisher.publish(retryExchange,
                     originalRoutingKey,
                     taskMessage,
                     msg -> {
                         msg.getMessageProperties().setHeader("x-retry-count", retryCount);
+                        msg.getMessageProperties().setPriority(messagePriority);
                         return msg;
                     });
         } catch (Exception e) {
-            log.error("Failed to route task to retry queue: {}", taskMessage.getTaskId(), e);
+            return CompletableFuture.failedFuture(e);
         }
     }
 
@@ -142,14 +447,16 @@ public abstract class TaskProcessor {
         };
     }
 
-    private void routeToDlq(TaskMessage taskMessage) {
+    private CompletableFuture<Void> routeToDlq(TaskMessage taskMessage) {
         try {
-            rabbitTemplate.convertAndSend(QueueConstants.DLQ_EXCHANGE, "", taskMessage);
+            return publisher.publish(QueueConstants.DLQ_EXCHANGE, "", taskMessage, msg -> msg);
         } catch (Exception e) {
-            log.error("Failed to route task to DLQ: {}", taskMessage.getTaskId(), e);
+            return CompletableFuture.failedFuture(e);
         }
     }
 
+    protected record BatchItem(long deliveryTag, TaskMessageHeader header, TaskMessage message, int retryCount) {}
+
     protected String generateResult(TaskMessage taskMessage) throws Exception {
         Map<String, Object> result = Map.of(
                 "taskId", taskMessage.getTaskId().toString(),
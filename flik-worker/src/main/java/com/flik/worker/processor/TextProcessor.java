@@ -2,22 +2,28 @@ package com.flik.worker.processor;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.flik.common.constants.QueueConstants;
+import com.flik.common.messaging.ConfirmingPublisher;
+import com.flik.common.messaging.PriorityAging;
+import com.flik.common.messaging.TaskMessageConverter;
+import com.flik.common.metrics.TaskMetrics;
 import com.flik.worker.service.ResultService;
 import com.rabbitmq.client.Channel;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 @Component
 @Profile("text")
 public class TextProcessor extends TaskProcessor {
 
-    public TextProcessor(ResultService resultService, RabbitTemplate rabbitTemplate,
-                         ObjectMapper objectMapper, MeterRegistry meterRegistry) {
-        super(resultService, rabbitTemplate, objectMapper, meterRegistry);
+    public TextProcessor(ResultService resultService, ConfirmingPublisher publisher,
+                         ObjectMapper objectMapper, TaskMessageConverter messageConverter,
+                         MeterRegistry meterRegistry, PriorityAging priorityAging, TaskMetrics taskMetrics) {
+        super(resultService, publisher, objectMapper, messageConverter, meterRegistry, priorityAging, taskMetrics);
     }
 
     @Override
@@ -32,8 +38,13 @@ public class TextProcessor extends TaskProcessor {
     @Override
     protected double getFailureRate() { return 0.05; }
 
-    @RabbitListener(queues = QueueConstants.QUEUE_P0)
+    @RabbitListener(queues = QueueConstants.QUEUE_P0, autoStartup = PER_DELIVERY)
     public void handleMessage(Message message, Channel channel) throws Exception {
         processMessage(message, channel);
     }
+
+    @RabbitListener(queues = QueueConstants.QUEUE_P0, containerFactory = BATCH_FACTORY, autoStartup = BATCHED)
+    public void handleBatch(List<Message> messages, Channel channel) throws Exception {
+        processMessages(messages, channel);
+    }
 }
@@ -0,0 +1,122 @@
+package com.flik.worker.processor;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs every delivery on its own virtual thread, so a task blocked in {@code Thread.sleep} or JDBC holds no
+ * platform thread. Concurrency is bounded per task type by a semaphore instead of by thread count; the listener's
+ * prefetch is sized to the same permits, so the broker never hands this worker more than it may run and the
+ * semaphore only blocks the consumer briefly while a finishing task releases its permit.
+ *
+ * <p>The default permits (hundreds per type) are far above the worker's JDBC pool, and are only safe because a
+ * task never holds a connection: its status writes are queued to the {@code StatusPersister} write-behind, whose
+ * single flusher thread is the pool's only user on this path. A task that ran JDBC itself would have to be bounded
+ * by the pool size instead, or hundreds of threads would queue for connections until they timed out.
+ *
+ * <p>As with fair dispatch, the delivery is acked or rejected by the task once processed, and deliveries not yet
+ * processed at shutdown are redelivered when the channel closes.
+ */
+public class VirtualThreadDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadDispatcher.class);
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Integer> permits;
+    private final int defaultPermits;
+    private final int carrierParallelism;
+    private final Map<String, Semaphore> semaphores = new ConcurrentHashMap<>();
+    // Threads running a task, sampled for carrier utilization and joined at shutdown
+    private final Set<Thread> running = ConcurrentHashMap.newKeySet();
+    private final AtomicLong started = new AtomicLong();
+
+    public VirtualThreadDispatcher(MeterRegistry meterRegistry, String permitsSpec, int defaultPermits) {
+        this.meterRegistry = meterRegistry;
+        this.permits = new ConcurrentHashMap<>();
+        if (permitsSpec != null && !permitsSpec.isBlank()) {
+            for (String entry : permitsSpec.split(",")) {
+                String[] parts = entry.trim().split("=", 2);
+                if (parts.length == 2) {
+                    permits.put(parts[0].trim().toUpperCase(), Integer.parseInt(parts[1].trim()));
+                }
+            }
+        }
+        this.defaultPermits = defaultPermits;
+        // The default scheduler runs virtual threads on one carrier per core unless overridden
+        this.carrierParallelism = Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+                Runtime.getRuntime().availableProcessors());
+
+        Gauge.builder("flik_worker_carrier_utilization", this, VirtualThreadDispatcher::carrierUtilization)
+                .description("Share of virtual thread carriers occupied by runnable task threads")
+                .register(meterRegistry);
+        log.info("Virtual thread dispatch initialized: permits={}, defaultPermits={}, carriers={}",
+                permits, defaultPermits, carrierParallelism);
+    }
+
+    public int permits(String taskType) {
+        return taskType == null ? defaultPermits : permits.getOrDefault(taskType, defaultPermits);
+    }
+
+    /**
+     * Starts {@code task} on a new virtual thread once a permit for {@code taskType} is free, blocking the
+     * calling consumer until then.
+     */
+    public void submit(String taskType, Runnable task) throws InterruptedException {
+        Semaphore semaphore = semaphores.computeIfAbsent(taskType, this::register);
+        semaphore.acquire();
+        try {
+            Thread.ofVirtual().name("vt-task-" + started.incrementAndGet()).start(() -> {
+                running.add(Thread.currentThread());
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("Virtual thread task failed", e);
+                } finally {
+                    running.remove(Thread.currentThread());
+                    semaphore.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            semaphore.release();
+            throw e;
+        }
+    }
+
+    // Runnable threads are mounted or waiting for a carrier; parked ones, in sleep or socket I/O, hold none
+    double carrierUtilization() {
+        long runnable = running.stream().filter(thread -> thread.getState() == Thread.State.RUNNABLE).count();
+        return Math.min(1.0, (double) runnable / carrierParallelism);
+    }
+
+    // Tasks already running get a moment to finish and ack; the rest are redelivered
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        for (Thread thread : List.copyOf(running)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) break;
+            thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+        }
+    }
+
+    private Semaphore register(String taskType) {
+        int limit = permits(taskType);
+        Semaphore semaphore = new Semaphore(limit);
+        Gauge.builder("flik_worker_inflight", semaphore, s -> limit - s.availablePermits())
+                .description("Tasks running on virtual threads")
+                .tag("type", taskType)
+                .register(meterRegistry);
+        return semaphore;
+    }
+}
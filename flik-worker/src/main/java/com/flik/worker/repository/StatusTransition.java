@@ -0,0 +1,32 @@
+package com.flik.worker.repository;
+
+import com.flik.common.model.TaskStatus;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A status change to one task row. Null fields leave their column as it is, so only the columns a transition
+ * touches are written.
+ */
+public record StatusTransition(UUID taskId, TaskStatus status, String result, String errorMessage,
+                               Integer retryCount, Instant completedAt, String workerVersion, Instant at) {
+
+    public static StatusTransition of(UUID taskId, TaskStatus status) {
+        return new StatusTransition(taskId, status, null, null, null, null, null, Instant.now());
+    }
+
+    /**
+     * The combined effect of this transition followed by {@code later}: the later status, and for each column
+     * the later value if it sets one. PROCESSING then COMPLETED collapses to a single COMPLETED write.
+     */
+    public StatusTransition then(StatusTransition later) {
+        return new StatusTransition(taskId, later.status,
+                later.result != null ? later.result : result,
+                later.errorMessage != null ? later.errorMessage : errorMessage,
+                later.retryCount != null ? later.retryCount : retryCount,
+                later.completedAt != null ? later.completedAt : completedAt,
+                later.workerVersion != null ? later.workerVersion : workerVersion,
+                later.at);
+    }
+}
@@ -0,0 +1,60 @@
+package com.flik.worker.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Types;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collection;
+
+@Repository
+public class TaskStatusRepository {
+
+    // Column-level update: the payload is neither read nor rewritten, and unset fields keep their value
+    private static final String UPDATE_STATUS = "UPDATE tasks SET status = ?, result = COALESCE(?::jsonb, result), "
+            + "error_message = COALESCE(?, error_message), retry_count = COALESCE(?, retry_count), "
+            + "completed_at = COALESCE(?, completed_at), worker_version = COALESCE(?, worker_version), "
+            + "updated_at = ? WHERE id = ?";
+
+    private static final String APPEND_EVENT = "INSERT INTO task_events (task_id, status, result, error_message, "
+            + "retry_count, worker_version, completed_at, recorded_at) VALUES (?, ?, ?::jsonb, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TaskStatusRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // One JDBC batch; the caller owns the transaction
+    public void updateAll(Collection<StatusTransition> transitions) {
+        jdbcTemplate.batchUpdate(UPDATE_STATUS, transitions, transitions.size(), (ps, transition) -> {
+            ps.setString(1, transition.status().name());
+            ps.setString(2, transition.result());
+            ps.setString(3, transition.errorMessage());
+            ps.setObject(4, transition.retryCount(), Types.INTEGER);
+            ps.setObject(5, utc(transition.completedAt()), Types.TIMESTAMP_WITH_TIMEZONE);
+            ps.setString(6, transition.workerVersion());
+            ps.setObject(7, utc(transition.at()), Types.TIMESTAMP_WITH_TIMEZONE);
+            ps.setObject(8, transition.taskId());
+        });
+    }
+
+    // Journal mode: every transition is appended in order and the gateway compacts them into tasks
+    public void appendAll(Collection<StatusTransition> transitions) {
+        jdbcTemplate.batchUpdate(APPEND_EVENT, transitions, transitions.size(), (ps, transition) -> {
+            ps.setObject(1, transition.taskId());
+            ps.setString(2, transition.status().name());
+            ps.setString(3, transition.result());
+            ps.setString(4, transition.errorMessage());
+            ps.setObject(5, transition.retryCount(), Types.INTEGER);
+            ps.setString(6, transition.workerVersion());
+            ps.setObject(7, utc(transition.completedAt()), Types.TIMESTAMP_WITH_TIMEZONE);
+            ps.setObject(8, utc(transition.at()), Types.TIMESTAMP_WITH_TIMEZONE);
+        });
+    }
+
+    private static Object utc(Instant instant) {
+        return instant != null ? instant.atOffset(ZoneOffset.UTC) : null;
+    }
+}
@@ -1,143 +1,126 @@
 package com.flik.worker.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.flik.common.dto.StatusUpdate;
-import com.flik.common.model.Task;
+import com.flik.common.metrics.TaskMetrics;
 import com.flik.common.model.TaskStatus;
-import io.micrometer.core.instrument.Counter;
-import io.micrometer.core.instrument.MeterRegistry;
-import io.micrometer.core.instrument.Timer;
+import com.flik.common.model.TaskType;
+import com.flik.worker.repository.StatusTransition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MDC;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.support.TransactionSynchronization;
-import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import jakarta.persistence.EntityManager;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
 import java.util.UUID;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Records task status through the {@link StatusPersister} write-behind and hands each status to the
+ * {@link StatusPublisher} once it has committed. PROCESSING is not waited for; every other status is, since the delivery is acked or re-routed
+ * right after and the row must reflect the outcome first.
+ */
 @Service
 public class ResultService {
 
     private static final Logger log = LoggerFactory.getLogger(ResultService.class);
 
-    private final EntityManager entityManager;
-    private final StringRedisTemplate redisTemplate;
-    private final ObjectMapper objectMapper;
-    private final MeterRegistry meterRegistry;
-
-    public ResultService(EntityManager entityManager, StringRedisTemplate redisTemplate,
-                         ObjectMapper objectMapper, MeterRegistry meterRegistry) {
-        this.entityManager = entityManager;
-        this.redisTemplate = redisTemplate;
-        this.objectMapper = objectMapper;
-        this.meterRegistry = meterRegistry;
+    private final StatusPersister statusPersister;
+    private final StatusPublisher statusPublisher;
+    private final TaskMetrics taskMetrics;
+
+    public ResultService(StatusPersister statusPersister, StatusPublisher statusPublisher, TaskMetrics taskMetrics) {
+        this.statusPersister = statusPersister;
+        this.statusPublisher = statusPublisher;
+        this.taskMetrics = taskMetrics;
     }
 
-    @Transactional
     public void markProcessing(UUID taskId) {
-        Task task = entityManager.find(Task.class, taskId);
-        if (task != null) {
-            task.setStatus(TaskStatus.PROCESSING);
-            entityManager.merge(task);
-        }
-        publishAfterCommit(taskId, "PROCESSING", null, null);
+        persist(StatusTransition.of(taskId, TaskStatus.PROCESSING), null, null)
+                .exceptionally(e -> {
+                    log.warn("Failed to record PROCESSING for task {}: {}", taskId, e.getMessage());
+                    return null;
+                });
+    }
+
+    public void markAllProcessing(List<UUID> taskIds) {
+        taskIds.forEach(this::markProcessing);
     }
 
-    @Transactional
     public void markCompleted(UUID taskId, String taskType, String resultJson, Instant startTime, String workerVersion) {
-        Task task = entityManager.find(Task.class, taskId);
-        if (task != null) {
-            task.setStatus(TaskStatus.COMPLETED);
-            task.setResult(resultJson);
-            task.setCompletedAt(Instant.now());
-            task.setWorkerVersion(workerVersion);
-            entityManager.merge(task);
-        }
+        await(complete(taskId, taskType, resultJson, startTime, workerVersion));
+    }
 
-        publishAfterCommit(taskId, "COMPLETED", resultJson, null);
+    // Submitted together, so the whole batch lands in one flush
+    public void markAllCompleted(List<Completion> completions, String taskType, Instant startTime, String workerVersion) {
+        List<CompletableFuture<Void>> persisted = completions.stream()
+                .map(completion -> complete(completion.taskId(), taskType, completion.resultJson(), startTime, workerVersion))
+                .toList();
+        await(CompletableFuture.allOf(persisted.toArray(CompletableFuture[]::new)));
+    }
 
-        Counter.builder("flik_tasks_completed_total")
-                .tag("type", taskType)
-                .tag("status", "COMPLETED")
-                .register(meterRegistry).increment();
+    private CompletableFuture<Void> complete(UUID taskId, String taskType, String resultJson, Instant startTime,
+                                             String workerVersion) {
+        Instant now = Instant.now();
+        CompletableFuture<Void> persisted = persist(new StatusTransition(taskId, TaskStatus.COMPLETED, resultJson,
+                null, null, now, workerVersion, now), resultJson, null);
 
-        Timer.builder("flik.task.processing.seconds")
-                .tag("type", taskType)
-                .register(meterRegistry)
-                .record(Duration.between(startTime, Instant.now()));
+        Duration duration = Duration.between(startTime, now);
+        taskMetrics.taskCompleted(TaskType.valueOf(taskType), TaskStatus.COMPLETED);
+        taskMetrics.processingTime(TaskType.valueOf(taskType), duration);
 
-        log.info("Task completed: taskId={}, type={}, duration={}ms",
-                taskId, taskType, Duration.between(startTime, Instant.now()).toMillis());
+        log.info("Task completed: taskId={}, type={}, duration={}ms", taskId, taskType, duration.toMillis());
+        return persisted;
     }
 
-    @Transactional
     public void markFailed(UUID taskId, String taskType, String error, int retryCount) {
-        Task task = entityManager.find(Task.class, taskId);
-        if (task != null) {
-            task.setStatus(TaskStatus.FAILED);
-            task.setErrorMessage(error);
-            task.setRetryCount(retryCount);
-            entityManager.merge(task);
-        }
+        CompletableFuture<Void> persisted = persist(new StatusTransition(taskId, TaskStatus.FAILED, null, error,
+                retryCount, null, null, Instant.now()), null, error);
 
-        publishAfterCommit(taskId, "FAILED", null, error);
-
-        Counter.builder("flik_tasks_completed_total")
-                .tag("type", taskType)
-                .tag("status", "FAILED")
-                .register(meterRegistry).increment();
-
-        Counter.builder("flik_retry_total")
-                .tag("type", taskType)
-                .tag("attempt", String.valueOf(retryCount))
-                .register(meterRegistry).increment();
+        taskMetrics.taskCompleted(TaskType.valueOf(taskType), TaskStatus.FAILED);
+        taskMetrics.retry(TaskType.valueOf(taskType), retryCount);
+        await(persisted);
     }
 
-    @Transactional
     public void markDeadLettered(UUID taskId, String taskType, String error) {
-        Task task = entityManager.find(Task.class, taskId);
-        if (task != null) {
-            task.setStatus(TaskStatus.DEAD_LETTERED);
-            task.setErrorMessage(error);
-            entityManager.merge(task);
-        }
+        CompletableFuture<Void> persisted = persist(new StatusTransition(taskId, TaskStatus.DEAD_LETTERED, null, error,
+                null, null, null, Instant.now()), null, error);
 
-        publishAfterCommit(taskId, "DEAD_LETTERED", null, error);
-
-        Counter.builder("flik_tasks_completed_total")
-                .tag("type", taskType)
-                .tag("status", "DEAD_LETTERED")
-                .register(meterRegistry).increment();
+        taskMetrics.taskCompleted(TaskType.valueOf(taskType), TaskStatus.DEAD_LETTERED);
 
         log.error("Task dead-lettered: taskId={}, type={}, error={}", taskId, taskType, error);
+        await(persisted);
     }
 
-    private void publishAfterCommit(UUID taskId, String status, String result, String error) {
-        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
-            @Override
-            public void afterCommit() {
-                publishStatus(taskId, status, result, error);
-            }
-        });
+    // stage is "dequeue" or "retry", see TaskMetrics#taskExpired
+    public void markExpired(UUID taskId, String taskType, String stage) {
+        String error = "Deadline passed before processing started";
+        Instant now = Instant.now();
+        CompletableFuture<Void> persisted = persist(new StatusTransition(taskId, TaskStatus.EXPIRED, null, error,
+                null, now, null, now), null, error);
+
+        taskMetrics.taskCompleted(TaskType.valueOf(taskType), TaskStatus.EXPIRED);
+        taskMetrics.taskExpired(TaskType.valueOf(taskType), stage);
+
+        log.info("Task expired: taskId={}, type={}, stage={}", taskId, taskType, stage);
+        await(persisted);
+    }
+
+    public record Completion(UUID taskId, String resultJson) {}
+
+    // Published only after the flush holding the transition has committed. This runs on the flusher thread, and
+    // publish only queues the event for the publisher's own thread, so Redis never delays the next flush
+    private CompletableFuture<Void> persist(StatusTransition transition, String result, String error) {
+        return statusPersister.submit(transition).thenRun(() -> statusPublisher.publish(
+                transition.taskId(), transition.status(), result, error, transition.at()));
     }
 
-    private void publishStatus(UUID taskId, String status, String result, String error) {
+    private static void await(CompletableFuture<Void> persisted) {
         try {
-            StatusUpdate update = new StatusUpdate(taskId, status);
-            if (result != null) {
-                update.setResult(objectMapper.readValue(result, Object.class));
-            }
-            update.setErrorMessage(error);
-            String json = objectMapper.writeValueAsString(update);
-            redisTemplate.convertAndSend("task:" + taskId, json);
-        } catch (Exception e) {
-            log.warn("Failed to publish status update for task {}: {}", taskId, e.getMessage());
+            persisted.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
         }
     }
 }
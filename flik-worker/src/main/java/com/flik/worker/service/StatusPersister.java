@@ -0,0 +1,214 @@
+package com.flik.worker.service;
+
+import com.flik.worker.repository.StatusTransition;
+import com.flik.worker.repository.TaskStatusRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind for task status. Transitions are buffered and flushed as one JDBC batch per interval, with a
+ * task's transitions in the same flush coalesced into one update. A transition's future completes once its
+ * flush has committed, in the order transitions were submitted.
+ *
+ * <p>With {@code flik.journal.enabled} every transition is appended to the task_events journal instead, uncoalesced
+ * so the journal keeps the full timeline, and the gateway compacts the journal into the tasks rows.
+ */
+@Service
+// Stopped before the publisher, so statuses flushed during shutdown are still published
+@DependsOn("statusPublisher")
+public class StatusPersister {
+
+    private static final Logger log = LoggerFactory.getLogger(StatusPersister.class);
+
+    private final TaskStatusRepository taskStatusRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<PendingTransition> buffer;
+    private final int maxBatch;
+    private final long flushIntervalNanos;
+    private final long enqueueTimeoutMs;
+    private final boolean journal;
+    private final DistributionSummary batchSizes;
+    private final Counter coalesced;
+    private final Timer flushLatency;
+    private final Timer dbWrites;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    public StatusPersister(TaskStatusRepository taskStatusRepository, PlatformTransactionManager transactionManager,
+                           MeterRegistry meterRegistry,
+                           @Value("${worker.status.capacity:4096}") int capacity,
+                           @Value("${worker.status.max-batch:256}") int maxBatch,
+                           @Value("${worker.status.flush-interval-ms:10}") long flushIntervalMs,
+                           @Value("${worker.status.enqueue-timeout-ms:1000}") long enqueueTimeoutMs,
+                           @Value("${flik.journal.enabled:false}") boolean journal) {
+        this.taskStatusRepository = taskStatusRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.enqueueTimeoutMs = enqueueTimeoutMs;
+        this.journal = journal;
+
+        this.batchSizes = DistributionSummary.builder("flik_worker_status_batch_size")
+                .description("Status transitions per flush, before coalescing")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("flik_worker_status_coalesced_total")
+                .description("Status transitions folded into a later transition of the same task")
+                .register(meterRegistry);
+        this.flushLatency = Timer.builder("flik_worker_status_flush_seconds")
+                .description("Time from the oldest transition in a flush being submitted until its commit")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.dbWrites = Timer.builder("flik_worker_write_seconds")
+                .description("Latency of task status writes, per flush for db and per pipeline for redis")
+                .tag("store", "db")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("flik_worker_status_buffer_depth", buffer, BlockingQueue::size)
+                .register(meterRegistry);
+
+        this.flusher = Thread.ofPlatform().name("status-write-behind").daemon().start(this::runFlusher);
+        log.info("Status write-behind initialized: capacity={}, maxBatch={}, flushIntervalMs={}, journal={}",
+                capacity, maxBatch, flushIntervalMs, journal);
+    }
+
+    public CompletableFuture<Void> submit(StatusTransition transition) {
+        PendingTransition pending = new PendingTransition(transition, System.nanoTime(), new CompletableFuture<>());
+        try {
+            if (!running || !buffer.offer(pending, enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                pending.future().completeExceptionally(new RejectedExecutionException("Status write buffer is full"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.future().completeExceptionally(e);
+        }
+        return pending.future();
+    }
+
+    // Transitions already buffered are still flushed
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private void runFlusher() {
+        List<PendingTransition> batch = new ArrayList<>(maxBatch);
+        while (running || !buffer.isEmpty()) {
+            try {
+                PendingTransition first = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                // Wait for more transitions until the oldest one has waited the flush interval or the batch is full
+                long deadline = first.submittedAt() + flushIntervalNanos;
+                while (batch.size() < maxBatch) {
+                    buffer.drainTo(batch, maxBatch - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatch || remaining <= 0) break;
+                    PendingTransition next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (Exception e) {
+                log.error("Status write-behind flusher error", e);
+            } finally {
+                batch.clear();
+            }
+        }
+        PendingTransition leftover;
+        while ((leftover = buffer.poll()) != null) {
+            leftover.future().completeExceptionally(new RejectedExecutionException("Status writer is shutting down"));
+        }
+    }
+
+    private void flush(List<PendingTransition> batch) {
+        batchSizes.record(batch.size());
+        Map<UUID, List<StatusTransition>> byTask = new LinkedHashMap<>();
+        for (PendingTransition pending : batch) {
+            byTask.computeIfAbsent(pending.transition().taskId(), id -> new ArrayList<>()).add(pending.transition());
+        }
+        if (!journal) {
+            coalesced.increment(batch.size() - byTask.size());
+        }
+
+        try {
+            write(byTask.values().stream().flatMap(transitions -> rows(transitions).stream()).toList());
+            batch.forEach(pending -> pending.future().complete(null));
+        } catch (Exception e) {
+            if (byTask.size() == 1) {
+                batch.forEach(pending -> pending.future().completeExceptionally(e));
+            } else {
+                // One bad row fails the whole batch; retry task by task so the rest still commit
+                log.warn("Status flush of {} tasks failed, retrying task by task: {}", byTask.size(), e.getMessage());
+                Map<UUID, Exception> failed = new LinkedHashMap<>();
+                byTask.forEach((taskId, transitions) -> {
+                    try {
+                        write(rows(transitions));
+                    } catch (Exception taskError) {
+                        failed.put(taskId, taskError);
+                    }
+                });
+                for (PendingTransition pending : batch) {
+                    Exception taskError = failed.get(pending.transition().taskId());
+                    if (taskError == null) {
+                        pending.future().complete(null);
+                    } else {
+                        pending.future().completeExceptionally(taskError);
+                    }
+                }
+            }
+        } finally {
+            flushLatency.record(System.nanoTime() - batch.get(0).submittedAt(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // One task's transitions in this flush: all of them for the journal, otherwise folded into one update
+    private List<StatusTransition> rows(List<StatusTransition> transitions) {
+        if (journal || transitions.size() == 1) return transitions;
+        return List.of(transitions.stream().reduce(StatusTransition::then).orElseThrow());
+    }
+
+    private void write(Collection<StatusTransition> rows) {
+        long start = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> {
+            if (journal) {
+                taskStatusRepository.appendAll(rows);
+            } else {
+                taskStatusRepository.updateAll(rows);
+            }
+        });
+        dbWrites.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private record PendingTransition(StatusTransition transition, long submittedAt, CompletableFuture<Void> future) {}
+}
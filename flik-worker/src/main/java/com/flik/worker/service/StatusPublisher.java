@@ -0,0 +1,326 @@
+package com.flik.worker.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flik.common.constants.StatusChannels;
+import com.flik.common.dto.RawJson;
+import com.flik.common.dto.StatusUpdate;
+import com.flik.common.model.TaskStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes task status events to Redis off the status write path. Events are queued, then one thread
+ * serializes each once, with the result written through as raw JSON, and sends a batch as one pipeline on
+ * a connection it holds for itself.
+ *
+ * <p>Each event is routed by a script on the Redis side, see {@link StatusChannels}: it goes to the gateways
+ * subscribed to the task, if any, and a terminal status is also appended to the terminal stream.
+ *
+ * <p>The queue is bounded. When it is full a PROCESSING event is dropped, the incoming one or the oldest
+ * queued, since a later status for the same task supersedes it. Any other status is never dropped: DAG
+ * progression, cost recording and result-cache followers run only off these events. When no PROCESSING
+ * event is left to make room, the caller waits for the publisher to drain. A failed pipeline is sent once
+ * more on a new connection; if that fails too its PROCESSING events are lost and the rest go back to the
+ * head of the queue, retried after a pause, so a Redis outage backs up into the status write path instead
+ * of losing outcomes. A pipeline that is sent again may deliver some events twice.
+ */
+@Service
+public class StatusPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(StatusPublisher.class);
+
+    private static final byte[] ROUTE_SCRIPT = StatusChannels.ROUTE_SCRIPT.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TERMINAL = "1".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NOT_TERMINAL = "0".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TERMINAL_STREAM = StatusChannels.TERMINAL_STREAM.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] GATEWAY_PREFIX = StatusChannels.GATEWAY_PREFIX.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] STREAM_MAX_LENGTH =
+            String.valueOf(StatusChannels.TERMINAL_STREAM_MAX_LENGTH).getBytes(StandardCharsets.UTF_8);
+    private static final long RETRY_BACKOFF_MS = 1000;
+
+    private final RedisConnectionFactory connectionFactory;
+    private final ObjectMapper objectMapper;
+    private final int capacity;
+    private final int maxBatch;
+    private final ArrayDeque<PendingEvent> queue;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final DistributionSummary batchSizes;
+    private final Timer publishLag;
+    private final Timer redisWrites;
+    private final Counter failed;
+    private final EnumMap<TaskStatus, Counter> droppedByStatus = new EnumMap<>(TaskStatus.class);
+    private final Thread publisher;
+    private RedisConnection connection;
+    private String routeSha;
+    private volatile boolean running = true;
+
+    public StatusPublisher(RedisConnectionFactory connectionFactory, ObjectMapper objectMapper,
+                           MeterRegistry meterRegistry,
+                           @Value("${worker.status.publish-capacity:8192}") int capacity,
+                           @Value("${worker.status.publish-max-batch:128}") int maxBatch) {
+        this.connectionFactory = connectionFactory;
+        this.objectMapper = objectMapper;
+        this.capacity = capacity;
+        this.maxBatch = maxBatch;
+        this.queue = new ArrayDeque<>(capacity);
+
+        this.batchSizes = DistributionSummary.builder("flik_worker_status_publish_batch_size")
+                .description("Status events sent per Redis pipeline")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.publishLag = Timer.builder("flik_worker_status_publish_lag_seconds")
+                .description("Time from a status event being queued until its pipeline was sent")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.redisWrites = Timer.builder("flik_worker_write_seconds")
+                .description("Latency of task status writes, per flush for db and per pipeline for redis")
+                .tag("store", "redis")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.failed = Counter.builder("flik_worker_status_publish_failed_total")
+                .description("PROCESSING events lost to a Redis pipeline that failed on a new connection too")
+                .register(meterRegistry);
+        for (TaskStatus status : TaskStatus.values()) {
+            droppedByStatus.put(status, Counter.builder("flik_worker_status_publish_dropped_total")
+                    .description("Status events dropped because the publish queue was full")
+                    .tag("status", status.name())
+                    .register(meterRegistry));
+        }
+        Gauge.builder("flik_worker_status_publish_queue_depth", this, StatusPublisher::depth)
+                .register(meterRegistry);
+
+        this.publisher = Thread.ofPlatform().name("status-publisher").daemon().start(this::run);
+        log.info("Status publisher initialized: capacity={}, maxBatch={}", capacity, maxBatch);
+    }
+
+    /**
+     * Called once the status has committed. Returns at once unless the queue is full of statuses that may not
+     * be dropped, in which case it waits for the publisher to make room.
+     */
+    public void publish(UUID taskId, TaskStatus status, String resultJson, String error, Instant at) {
+        PendingEvent event = new PendingEvent(taskId, status, resultJson, error, at, System.nanoTime());
+        lock.lock();
+        try {
+            while (running && queue.size() >= capacity) {
+                if (status == TaskStatus.PROCESSING) {
+                    dropped(status);
+                    return;
+                }
+                if (evictProcessing()) break;
+                notFull.awaitUninterruptibly();
+            }
+            if (!running) {
+                log.warn("Status publisher stopped, dropping {} for task {}", status, taskId);
+                dropped(status);
+                return;
+            }
+            queue.addLast(event);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Events already queued are still published
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        lock.lock();
+        try {
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        publisher.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private void run() {
+        List<PendingEvent> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            try {
+                if (!take(batch)) break;
+                if (!batch.isEmpty() && !send(batch)) {
+                    Thread.sleep(RETRY_BACKOFF_MS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (Exception e) {
+                log.error("Status publisher error", e);
+            } finally {
+                batch.clear();
+            }
+        }
+        closeConnection();
+    }
+
+    // False once stopped and drained
+    private boolean take(List<PendingEvent> batch) throws InterruptedException {
+        lock.lock();
+        try {
+            if (queue.isEmpty()) {
+                if (!running) return false;
+                notEmpty.await(100, TimeUnit.MILLISECONDS);
+            }
+            while (batch.size() < maxBatch && !queue.isEmpty()) {
+                batch.add(queue.pollFirst());
+            }
+            if (!batch.isEmpty()) {
+                notFull.signalAll();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // False if the batch failed on a new connection too and its statuses other than PROCESSING were queued again
+    private boolean send(List<PendingEvent> batch) {
+        batchSizes.record(batch.size());
+        try {
+            pipeline(batch);
+        } catch (Exception e) {
+            log.warn("Failed to publish {} status updates, retrying on a new connection: {}", batch.size(), e.getMessage());
+            closeConnection();
+            try {
+                pipeline(batch);
+            } catch (Exception retryError) {
+                log.warn("Retry of {} status updates failed, queueing them again: {}", batch.size(), retryError.getMessage());
+                closeConnection();
+                requeue(batch);
+                return false;
+            }
+        }
+        long now = System.nanoTime();
+        for (PendingEvent event : batch) {
+            publishLag.record(now - event.queuedAt(), TimeUnit.NANOSECONDS);
+        }
+        return true;
+    }
+
+    private void pipeline(List<PendingEvent> batch) {
+        long start = System.nanoTime();
+        RedisConnection conn = connection();
+        conn.openPipeline();
+        try {
+            for (PendingEvent event : batch) {
+                byte[] body = serialize(event);
+                if (body != null) {
+                    byte[] subscribers = StatusChannels.subscribers(event.taskId()).getBytes(StandardCharsets.UTF_8);
+                    byte[] terminal = StatusChannels.isTerminal(event.status().name()) ? TERMINAL : NOT_TERMINAL;
+                    conn.scriptingCommands().evalSha(routeSha, ReturnType.INTEGER, 2,
+                            subscribers, TERMINAL_STREAM, body, terminal, GATEWAY_PREFIX, STREAM_MAX_LENGTH);
+                }
+            }
+        } finally {
+            conn.closePipeline();
+        }
+        redisWrites.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    // Ahead of anything queued since, in their original order; may take the queue past its capacity
+    private void requeue(List<PendingEvent> batch) {
+        lock.lock();
+        try {
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                PendingEvent event = batch.get(i);
+                if (event.status() == TaskStatus.PROCESSING) {
+                    failed.increment();
+                } else {
+                    queue.addFirst(event);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private byte[] serialize(PendingEvent event) {
+        try {
+            StatusUpdate update = new StatusUpdate(event.taskId(), event.status().name());
+            update.setResult(RawJson.of(event.resultJson()));
+            update.setErrorMessage(event.error());
+            update.setTimestamp(event.at());
+            return objectMapper.writeValueAsBytes(update);
+        } catch (Exception e) {
+            log.warn("Failed to serialize status update for task {}: {}", event.taskId(), e.getMessage());
+            return null;
+        }
+    }
+
+    // Held for the publisher's lifetime, so pipelines never wait on a connection or share one with other commands.
+    // The script is loaded again with each new connection, which also covers a Redis restart emptying its cache.
+    private RedisConnection connection() {
+        if (connection == null || connection.isClosed()) {
+            connection = connectionFactory.getConnection();
+            routeSha = connection.scriptingCommands().scriptLoad(ROUTE_SCRIPT);
+        }
+        return connection;
+    }
+
+    private void closeConnection() {
+        if (connection == null) return;
+        try {
+            connection.close();
+        } catch (Exception e) {
+            log.debug("Failed to close status publisher connection: {}", e.getMessage());
+        }
+        connection = null;
+    }
+
+    // Caller holds the lock
+    private boolean evictProcessing() {
+        Iterator<PendingEvent> it = queue.iterator();
+        while (it.hasNext()) {
+            PendingEvent queued = it.next();
+            if (queued.status() == TaskStatus.PROCESSING) {
+                it.remove();
+                dropped(TaskStatus.PROCESSING);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void dropped(TaskStatus status) {
+        droppedByStatus.get(status).increment();
+    }
+
+    private int depth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record PendingEvent(UUID taskId, TaskStatus status, String resultJson, String error, Instant at,
+                                long queuedAt) {}
+}
@@ -0,0 +1,186 @@
+package com.flik.worker.processor;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings("unchecked")
+class ConcurrencyControllerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RabbitListenerEndpointRegistry listeners = mock(RabbitListenerEndpointRegistry.class);
+
+    @Test
+    void decide_backsOffByAFifthUnderPressure_butNotBelowTheMinimum() {
+        ConcurrencyController controller = controller("direct", 10, 2, 20);
+
+        ConcurrencyController.Decision cpu = controller.decide(signals(0.95, 10), 10, 1, Double.NaN);
+        assertEquals(8, cpu.concurrency());
+        assertEquals("cpu", cpu.reason());
+
+        assertEquals(2, controller.decide(signals(0.95, 2), 2, 1, Double.NaN).concurrency());
+    }
+
+    @Test
+    void decide_backsOffOnEachLatencySignal() {
+        ConcurrencyController controller = controller("direct", 10, 1, 20);
+
+        assertEquals("db write latency", controller.decide(
+                new ConcurrencyController.Signals(Double.NaN, 1, 250, 1, 0.1, 0, 0), 10, 1, Double.NaN).reason());
+        assertEquals("redis write latency", controller.decide(
+                new ConcurrencyController.Signals(Double.NaN, 1, 1, 250, 0.1, 0, 0), 10, 1, Double.NaN).reason());
+        assertEquals("ack latency", controller.decide(
+                new ConcurrencyController.Signals(Double.NaN, 60, 1, 1, 0.1, 0, 0), 10, 1, Double.NaN).reason());
+        ConcurrencyController.Decision slowdown = controller.decide(
+                new ConcurrencyController.Signals(50, 1, 1, 1, 0.1, 0, 0), 10, 1, 20);
+        assertEquals("processing slowdown", slowdown.reason());
+        assertEquals(8, slowdown.concurrency());
+    }
+
+    @Test
+    void decide_backsOffOnProcessingSlowdown_fromExactlyTwiceTheBaseline() {
+        ConcurrencyController controller = controller("direct", 10, 1, 20);
+
+        assertEquals("processing slowdown", controller.decide(
+                new ConcurrencyController.Signals(40, 1, 1, 1, 0.1, 0, 0), 10, 1, 20).reason());
+        assertEquals("steady", controller.decide(
+                new ConcurrencyController.Signals(39.9, 1, 1, 1, 0.1, 0, 0), 10, 1, 20).reason());
+    }
+
+    @Test
+    void decide_growsByOneWhileSaturated_upToTheMaximum() {
+        ConcurrencyController controller = controller("direct", 10, 1, 12);
+
+        ConcurrencyController.Decision saturated = controller.decide(signals(0.1, 9), 10, 1, Double.NaN);
+        assertEquals(11, saturated.concurrency());
+        assertEquals("saturated", saturated.reason());
+        assertEquals(12, controller.decide(signals(0.1, 12), 12, 1, Double.NaN).concurrency());
+
+        ConcurrencyController.Decision steady = controller.decide(signals(0.1, 5), 10, 1, Double.NaN);
+        assertEquals(10, steady.concurrency());
+        assertEquals("steady", steady.reason());
+    }
+
+    @Test
+    void decide_growsWhileTheDispatcherHasDeliveriesBuffered() {
+        ConcurrencyController controller = controller("fair", 4, 1, 20);
+
+        ConcurrencyController.Decision decision = controller.decide(
+                new ConcurrencyController.Signals(Double.NaN, 1, 1, 1, 0.1, 0, 3), 4, 100, Double.NaN);
+
+        assertEquals(5, decision.concurrency());
+        assertEquals(100, decision.prefetch());
+    }
+
+    @Test
+    void decide_countsAWholeBatchPerSlotInBatchMode() {
+        ConcurrencyController controller = controller("batch", 4, 1, 20);
+
+        // 4 consumers of 8-task batches are saturated near 32 active tasks, not 4
+        assertEquals("steady", controller.decide(signals(0.1, 20), 4, 8, Double.NaN).reason());
+        assertEquals("saturated", controller.decide(signals(0.1, 30), 4, 8, Double.NaN).reason());
+    }
+
+    @Test
+    void decide_sizesDirectPrefetchToTheWorkWindow_withinItsBounds() {
+        ConcurrencyController controller = controller("direct", 5, 1, 20);
+
+        assertEquals(5, controller.decide(processing(1000), 5, 1, 1000).prefetch());
+        assertEquals(20, controller.decide(processing(10), 5, 1, 10).prefetch());
+        assertEquals(1, controller.decide(processing(60_000), 5, 3, 60_000).prefetch());
+        // No samples this tick: keep the current prefetch
+        assertEquals(7, controller.decide(processing(Double.NaN), 5, 7, Double.NaN).prefetch());
+    }
+
+    @Test
+    void nextBaseline_followsTheFastestMean_andRelaxesTowardsASlowerOne() {
+        assertEquals(40, ConcurrencyController.nextBaseline(Double.NaN, 40));
+        assertEquals(30, ConcurrencyController.nextBaseline(40, 30));
+        assertEquals(42, ConcurrencyController.nextBaseline(40, 200), 1e-9);
+        assertEquals(40, ConcurrencyController.nextBaseline(40, Double.NaN));
+    }
+
+    @Test
+    void timerWindow_reportsTheMeanOfSamplesSinceThePreviousCall_acrossTaggedTimers() {
+        Timer db = Timer.builder("flik_worker_write_seconds").tag("store", "db").register(meterRegistry);
+        Timer redis = Timer.builder("flik_worker_write_seconds").tag("store", "redis").register(meterRegistry);
+        ConcurrencyController.TimerWindow window =
+                new ConcurrencyController.TimerWindow(() -> meterRegistry.find("flik_worker_write_seconds"));
+
+        db.record(Duration.ofMillis(10));
+        redis.record(Duration.ofMillis(30));
+        assertEquals(20, window.meanMillis(), 1e-6);
+
+        db.record(Duration.ofMillis(50));
+        assertEquals(50, window.meanMillis(), 1e-6);
+
+        assertTrue(Double.isNaN(window.meanMillis()));
+    }
+
+    @Test
+    void apply_raisesTheConsumerMaximumBeforeTheCount_andLowersItAfter() {
+        SimpleMessageListenerContainer container = mock(SimpleMessageListenerContainer.class);
+        when(container.isRunning()).thenReturn(true);
+        when(listeners.getListenerContainers()).thenReturn(List.<MessageListenerContainer>of(container));
+        AtomicReference<Double> cpu = new AtomicReference<>(0.1);
+        AtomicReference<Double> active = new AtomicReference<>(10.0);
+        Gauge.builder("system.cpu.usage", cpu, AtomicReference::get).register(meterRegistry);
+        Gauge.builder("flik_worker_active", active, AtomicReference::get).register(meterRegistry);
+        ConcurrencyController controller = controller("direct", 5, 1, 20);
+
+        controller.adjust();
+        assertEquals(6, controller.getConcurrency());
+        InOrder raise = inOrder(container);
+        raise.verify(container).setMaxConcurrentConsumers(6);
+        raise.verify(container).setConcurrentConsumers(6);
+
+        cpu.set(0.95);
+        controller.adjust();
+        assertEquals(4, controller.getConcurrency());
+        InOrder lower = inOrder(container);
+        lower.verify(container).setConcurrentConsumers(4);
+        lower.verify(container).setMaxConcurrentConsumers(4);
+    }
+
+    @Test
+    void adjust_judgesATickAgainstTheBaselineBeforeIt() {
+        when(listeners.getListenerContainers()).thenReturn(List.of());
+        Timer processing = Timer.builder("flik.task.processing.seconds").register(meterRegistry);
+        ConcurrencyController controller = controller("direct", 10, 1, 20);
+
+        processing.record(Duration.ofMillis(20));
+        controller.adjust();
+        assertEquals(10, controller.getConcurrency());
+
+        processing.record(Duration.ofMillis(40));
+        controller.adjust();
+        assertEquals(8, controller.getConcurrency());
+    }
+
+    private ConcurrencyController controller(String mode, int concurrency, int min, int max) {
+        ObjectProvider<FairDispatcher> dispatcher = mock(ObjectProvider.class);
+        return new ConcurrencyController(meterRegistry, listeners, dispatcher, mode, concurrency, 100, 8,
+                min, max, 1, 20, 0.85, 50, 200, 5000);
+    }
+
+    private static ConcurrencyController.Signals signals(double cpu, int active) {
+        return new ConcurrencyController.Signals(Double.NaN, 1, 1, 1, cpu, active, 0);
+    }
+
+    private static ConcurrencyController.Signals processing(double processingMs) {
+        return new ConcurrencyController.Signals(processingMs, 1, 1, 1, 0.1, 0, 0);
+    }
+}
@@ -0,0 +1,172 @@
+package com.flik.worker.processor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FairDispatcherTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> served = new CopyOnWriteArrayList<>();
+    private FairDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (dispatcher != null) dispatcher.shutdown();
+    }
+
+    @Test
+    void next_servesTenantsInProportionToTheirTierWeights() throws Exception {
+        // No processing threads, so the test pulls deliveries itself
+        dispatcher = new FairDispatcher(meterRegistry, 0, 100, "premium=4,standard=1", "big=premium");
+        for (int i = 0; i < 20; i++) {
+            submit("big");
+            submit("small");
+        }
+
+        serve(10);
+
+        assertEquals(8, served.stream().filter("big"::equals).count());
+        assertEquals(2, served.stream().filter("small"::equals).count());
+    }
+
+    @Test
+    void next_givesFractionalWeightOneTaskEveryOtherRound() throws Exception {
+        dispatcher = new FairDispatcher(meterRegistry, 0, 100, "standard=1,free=0.5", "cheap=free");
+        for (int i = 0; i < 10; i++) {
+            submit("cheap");
+            submit("paying");
+        }
+
+        serve(6);
+
+        assertEquals(2, served.stream().filter("cheap"::equals).count());
+        assertEquals(4, served.stream().filter("paying"::equals).count());
+    }
+
+    @Test
+    void submit_blocksAtCapacityUntilADeliveryIsTaken() throws Exception {
+        dispatcher = new FairDispatcher(meterRegistry, 0, 2, "", "");
+        submit("a");
+        submit("a");
+
+        Thread blocked = Thread.ofPlatform().start(() -> {
+            try {
+                submit("a");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        blocked.join(200);
+        assertTrue(blocked.isAlive(), "a third submit should wait for room in the buffer");
+        assertEquals(2, dispatcher.getBuffered());
+
+        serve(1);
+        blocked.join(TimeUnit.SECONDS.toMillis(2));
+        assertFalse(blocked.isAlive());
+        assertEquals(2, dispatcher.getBuffered());
+    }
+
+    @Test
+    void next_idleTenantLosesItsUnspentCredit() throws Exception {
+        dispatcher = new FairDispatcher(meterRegistry, 0, 100, "premium=4,standard=1", "big=premium");
+        submit("big");
+        for (int i = 0; i < 10; i++) {
+            submit("small");
+        }
+
+        // big is credited 4, spends 1 and drains, which drops its remaining 3
+        serve(1);
+        assertEquals(List.of("big"), served);
+        assertEquals(1, dispatcher.getActiveTenants());
+
+        for (int i = 0; i < 10; i++) {
+            submit("big");
+        }
+        serve(6);
+
+        // Back in the rotation, big gets one fresh round of 4, not 4 plus the 3 it left behind
+        assertEquals(List.of("big", "small", "big", "big", "big", "big", "small"), served);
+    }
+
+    @Test
+    void next_servesATenantsTasksInDeadlineOrder() throws Exception {
+        dispatcher = new FairDispatcher(meterRegistry, 0, 100, "", "");
+        Instant now = Instant.now();
+        dispatcher.submit("tenant-1", null, null, () -> served.add("none"));
+        dispatcher.submit("tenant-1", now.plusSeconds(60), null, () -> served.add("slo-60s"));
+        dispatcher.submit("tenant-1", now.plusSeconds(600), now.plusSeconds(10), () -> served.add("deadline-10s"));
+        dispatcher.submit("tenant-1", null, now.plusSeconds(30), () -> served.add("deadline-30s"));
+
+        serve(4);
+
+        // The sooner of deadline and SLO first; a task with neither runs last
+        assertEquals(List.of("deadline-10s", "deadline-30s", "slo-60s", "none"), served);
+    }
+
+    @Test
+    void next_servesOverdueTaskAheadOfTheRotation() throws Exception {
+        dispatcher = new FairDispatcher(meterRegistry, 0, 100, "", "");
+        for (int i = 0; i < 3; i++) {
+            submit("busy");
+        }
+        submit("late", Instant.now().minusSeconds(5), null);
+
+        serve(1);
+
+        assertEquals(List.of("late"), served);
+        assertEquals(1.0, meterRegistry.get("flik_dispatch_overdue_total").counter().count());
+    }
+
+    @Test
+    void next_letsAnAllOverdueTenantJumpOnlyOnceItRepaysTheCredit() throws Exception {
+        dispatcher = new FairDispatcher(meterRegistry, 0, 100, "", "");
+        for (int i = 0; i < 5; i++) {
+            submit("aged", Instant.now().minusSeconds(60), null);
+            submit("fresh");
+        }
+
+        serve(6);
+
+        // Each jump puts aged in debt until its next turn in the rotation, so it keeps to its equal share
+        assertEquals(List.of("aged", "fresh", "aged", "fresh", "aged", "fresh"), served);
+    }
+
+    @Test
+    void processingThreadsRunBufferedDeliveries() throws Exception {
+        dispatcher = new FairDispatcher(meterRegistry, 2, 10, "", "");
+        for (int i = 0; i < 5; i++) {
+            submit("tenant-" + i);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (served.size() < 5 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(5, served.size());
+        assertEquals(5, meterRegistry.get("flik_dispatch_wait_seconds").timer().count());
+    }
+
+    private void submit(String tenant) throws InterruptedException {
+        submit(tenant, null, null);
+    }
+
+    private void submit(String tenant, Instant dueAt, Instant deadline) throws InterruptedException {
+        dispatcher.submit(tenant, dueAt, deadline, () -> served.add(tenant));
+    }
+
+    private void serve(int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            FairDispatcher.Buffered next = dispatcher.next();
+            assertNotNull(next, "expected a buffered delivery");
+            next.task().run();
+        }
+    }
+}
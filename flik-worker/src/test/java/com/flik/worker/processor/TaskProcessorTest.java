@@ -0,0 +1,277 @@
+package com.flik.worker.processor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.flik.common.dto.TaskMessage;
+import com.flik.common.messaging.ConfirmingPublisher;
+import com.flik.common.messaging.PriorityAging;
+import com.flik.common.messaging.TaskMessageCodec;
+import com.flik.common.messaging.TaskMessageConverter;
+import com.flik.common.metrics.TaskMetrics;
+import com.flik.worker.service.ResultService;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TaskProcessorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final TaskMessageConverter converter = new TaskMessageConverter(new TaskMessageCodec(), objectMapper, true);
+    private final ResultService resultService = mock(ResultService.class);
+    private final ConfirmingPublisher publisher = mock(ConfirmingPublisher.class);
+    private final Channel channel = mock(Channel.class);
+
+    @Test
+    void processMessage_acksExpiredDeliveryAsExpired_withoutDecodingOrRunningIt() throws Exception {
+        TaskMessageConverter spiedConverter = spy(converter);
+        TestProcessor processor = new TestProcessor(resultService, publisher, objectMapper, spiedConverter, meterRegistry,
+                new PriorityAging(Duration.ofSeconds(30), Duration.ofSeconds(120), Duration.ofSeconds(600)),
+                new TaskMetrics(meterRegistry, 10), 0.0);
+        Message message = message(6, Instant.now().minusSeconds(1));
+        UUID taskId = converter.peek(message).taskId();
+
+        processor.processMessage(message, channel);
+
+        verify(resultService).markExpired(taskId, "TEXT", "dequeue");
+        verify(channel).basicAck(6, false);
+        // The binary header is read in place; the payload is never decoded
+        verify(spiedConverter, never()).toTaskMessage(any(Message.class));
+        verify(spiedConverter, never()).toTaskMessage(any(Message.class), any());
+        verify(resultService, never()).markProcessing(any());
+        verify(resultService, never()).markCompleted(any(), anyString(), anyString(), any(), anyString());
+    }
+
+    @Test
+    void processMessage_requeuesDelivery_whenExpiringItFails() throws Exception {
+        TestProcessor processor = processor(0.0);
+        doThrow(new IllegalStateException("database down"))
+                .when(resultService).markExpired(any(), anyString(), eq("dequeue"));
+
+        processor.processMessage(message(1, Instant.now().minusSeconds(1)), channel);
+
+        verify(channel).basicNack(1, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    void processMessage_requeuesDelivery_whenRecordingTheFailureFails() throws Exception {
+        TestProcessor processor = processor(1.0);
+        doThrow(new IllegalStateException("database down"))
+                .when(resultService).markFailed(any(), anyString(), anyString(), anyInt());
+
+        processor.processMessage(message(2, null), channel);
+
+        verify(channel).basicNack(2, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    void processMessage_requeuesDispatchedDelivery_whenProcessingThrows() throws Exception {
+        TestProcessor processor = processor(0.0);
+        FairDispatcher dispatcher = new FairDispatcher(meterRegistry, 0, 10, "", "");
+        processor.setDispatcher(dispatcher);
+        doThrow(new IllegalStateException("database down"))
+                .when(resultService).markCompleted(any(), anyString(), anyString(), any(), anyString());
+        doThrow(new IllegalStateException("database down"))
+                .when(resultService).markFailed(any(), anyString(), anyString(), anyInt());
+
+        processor.processMessage(message(3, null), channel);
+        dispatcher.next().task().run();
+
+        verify(channel).basicNack(3, false, true);
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void processMessage_acksRoutedDelivery_onlyOnceTheRetryIsConfirmed() throws Exception {
+        TestProcessor processor = processor(1.0);
+        CompletableFuture<Void> confirmed = new CompletableFuture<>();
+        when(publisher.publish(anyString(), anyString(), any(TaskMessage.class), any())).thenReturn(confirmed);
+
+        // Returns without waiting for the broker
+        processor.processMessage(message(4, null), channel);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+
+        confirmed.complete(null);
+        verify(channel, timeout(2000)).basicAck(4, false);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void processMessage_requeuesRoutedDelivery_whenTheRetryIsNacked() throws Exception {
+        TestProcessor processor = processor(1.0);
+        CompletableFuture<Void> confirmed = new CompletableFuture<>();
+        when(publisher.publish(anyString(), anyString(), any(TaskMessage.class), any())).thenReturn(confirmed);
+
+        processor.processMessage(message(5, null), channel);
+        confirmed.completeExceptionally(new IllegalStateException("nacked"));
+
+        verify(channel, timeout(2000)).basicNack(5, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    void processMessages_rejectsUnreadableDelivery_andAcksTheRestUpToTheHighestTag() throws Exception {
+        TestProcessor processor = processor(0.0);
+
+        processor.processMessages(List.of(message(1, null), unreadable(2), message(3, null)), channel);
+
+        verify(channel).basicReject(2, false);
+        verify(channel).basicAck(3, true);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void processMessages_acksOnlyUpToTheHighestUnsettledTag() throws Exception {
+        TestProcessor processor = processor(0.0);
+
+        processor.processMessages(List.of(message(1, null), message(2, null), unreadable(3)), channel);
+
+        // A multiple ack of 3 would have acked the rejected delivery's tag as well
+        verify(channel).basicReject(3, false);
+        verify(channel).basicAck(2, true);
+        verify(channel, never()).basicAck(eq(3L), anyBoolean());
+    }
+
+    @Test
+    void processMessages_requeuesOnlyTheItemsWhoseRetryWasNotConfirmed() throws Exception {
+        TestProcessor processor = processor(1.0);
+        Message unconfirmed = message(2, null);
+        UUID unconfirmedId = converter.peek(unconfirmed).taskId();
+        when(publisher.publish(anyString(), anyString(), any(TaskMessage.class), any())).thenAnswer(inv ->
+                unconfirmedId.equals(inv.getArgument(2, TaskMessage.class).getTaskId())
+                        ? CompletableFuture.failedFuture(new IllegalStateException("nacked"))
+                        : CompletableFuture.completedFuture(null));
+
+        processor.processMessages(List.of(message(1, null), unconfirmed, message(3, null)), channel);
+
+        verify(channel).basicNack(2, false, true);
+        verify(channel).basicAck(3, true);
+    }
+
+    @Test
+    void processMessages_requeuesItem_whenRecordingItsFailureFails() throws Exception {
+        TestProcessor processor = processor(1.0);
+        Message unrecorded = message(1, null);
+        doThrow(new IllegalStateException("database down")).when(resultService)
+                .markFailed(eq(converter.peek(unrecorded).taskId()), anyString(), anyString(), anyInt());
+        when(publisher.publish(anyString(), anyString(), any(TaskMessage.class), any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        processor.processMessages(List.of(unrecorded, message(2, null)), channel);
+
+        verify(channel).basicNack(1, false, true);
+        verify(channel).basicAck(2, true);
+    }
+
+    @Test
+    void processMessages_requeuesExpiredDelivery_whenExpiringItFails() throws Exception {
+        TestProcessor processor = processor(0.0);
+        doThrow(new IllegalStateException("database down"))
+                .when(resultService).markExpired(any(), anyString(), eq("dequeue"));
+
+        processor.processMessages(List.of(message(1, Instant.now().minusSeconds(1)), message(2, null)), channel);
+
+        verify(channel).basicNack(1, false, true);
+        verify(channel).basicAck(2, true);
+    }
+
+    @Test
+    void processMessages_requeuesWholeBatch_whenSettlingItThrows() throws Exception {
+        TestProcessor processor = new TestProcessor(resultService, publisher, objectMapper, converter, meterRegistry,
+                new PriorityAging(Duration.ofSeconds(30), Duration.ofSeconds(120), Duration.ofSeconds(600)),
+                new TaskMetrics(meterRegistry, 10), 0.0) {
+            @Override
+            protected List<BatchItem> processBatch(List<BatchItem> batch) {
+                throw new IllegalStateException("database down");
+            }
+        };
+
+        processor.processMessages(List.of(message(1, null), message(2, null)), channel);
+
+        verify(channel).basicNack(1, false, true);
+        verify(channel).basicNack(2, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    void gatheringTime_runsFromTheBatchsFirstDelivery() {
+        Message first = message(1, null);
+        first.getMessageProperties().setHeader(TaskProcessor.RECEIVED_AT_HEADER,
+                System.nanoTime() - Duration.ofMillis(40).toNanos());
+
+        assertTrue(TaskProcessor.gatheringTime(List.of(first, message(2, null))).toMillis() >= 40);
+        assertEquals(Duration.ZERO, TaskProcessor.gatheringTime(List.of(message(3, null))));
+    }
+
+    private TestProcessor processor(double failureRate) {
+        return new TestProcessor(resultService, publisher, objectMapper, converter, meterRegistry,
+                new PriorityAging(Duration.ofSeconds(30), Duration.ofSeconds(120), Duration.ofSeconds(600)),
+                new TaskMetrics(meterRegistry, 10), failureRate);
+    }
+
+    private Message message(long deliveryTag, Instant deadline) {
+        TaskMessage task = new TaskMessage(UUID.randomUUID(), "tenant-1", "TEXT", 0, "{\"prompt\":\"hi\"}");
+        task.setCreatedAt(Instant.now());
+        task.setDeadline(deadline);
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(deliveryTag);
+        return converter.toMessage(task, properties);
+    }
+
+    private static Message unreadable(long deliveryTag) {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(deliveryTag);
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        return new Message("not json".getBytes(), properties);
+    }
+
+    static class TestProcessor extends TaskProcessor {
+
+        private final double failureRate;
+
+        TestProcessor(ResultService resultService, ConfirmingPublisher publisher, ObjectMapper objectMapper,
+                      TaskMessageConverter messageConverter, SimpleMeterRegistry meterRegistry,
+                      PriorityAging priorityAging, TaskMetrics taskMetrics, double failureRate) {
+            super(resultService, publisher, objectMapper, messageConverter, meterRegistry, priorityAging, taskMetrics);
+            this.failureRate = failureRate;
+        }
+
+        @Override
+        protected String getTaskType() { return "TEXT"; }
+
+        @Override
+        protected long getMinDurationMs() { return 0; }
+
+        @Override
+        protected long getMaxDurationMs() { return 1; }
+
+        @Override
+        protected double getFailureRate() { return failureRate; }
+    }
+}
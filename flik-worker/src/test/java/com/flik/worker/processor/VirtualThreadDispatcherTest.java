@@ -0,0 +1,91 @@
+package com.flik.worker.processor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualThreadDispatcherTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final VirtualThreadDispatcher dispatcher = new VirtualThreadDispatcher(meterRegistry, "TEXT=2,VIDEO=1", 3);
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void permits_readsPerTypeLimits_andFallsBackToTheDefault() {
+        assertEquals(2, dispatcher.permits("TEXT"));
+        assertEquals(1, dispatcher.permits("VIDEO"));
+        assertEquals(3, dispatcher.permits("IMAGE"));
+        assertEquals(3, dispatcher.permits(null));
+    }
+
+    @Test
+    void submit_blocksOnceATypesPermitsAreInUse_untilATaskFinishes() throws Exception {
+        CountDownLatch finish = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        Runnable task = () -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+        };
+        dispatcher.submit("TEXT", task);
+        dispatcher.submit("TEXT", task);
+
+        Thread consumer = Thread.ofPlatform().start(() -> {
+            try {
+                dispatcher.submit("TEXT", task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.join(200);
+
+        assertTrue(consumer.isAlive(), "a third TEXT task must wait for a permit");
+        assertEquals(2.0, inflight("TEXT"));
+        finish.countDown();
+        consumer.join(5000);
+        assertFalse(consumer.isAlive());
+        assertEquals(2, peak.get());
+    }
+
+    @Test
+    void submit_releasesThePermit_whenTheTaskThrows() throws Exception {
+        CountDownLatch failed = new CountDownLatch(1);
+        dispatcher.submit("VIDEO", () -> {
+            failed.countDown();
+            throw new IllegalStateException("boom");
+        });
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch ran = new CountDownLatch(1);
+        Thread consumer = Thread.ofPlatform().start(() -> {
+            try {
+                dispatcher.submit("VIDEO", ran::countDown);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertTrue(ran.await(5, TimeUnit.SECONDS), "the failed task's permit must be returned");
+        consumer.join(5000);
+    }
+
+    private double inflight(String type) {
+        return meterRegistry.get("flik_worker_inflight").tag("type", type).gauge().value();
+    }
+}
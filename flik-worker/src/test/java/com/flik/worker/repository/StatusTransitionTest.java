@@ -0,0 +1,53 @@
+package com.flik.worker.repository;
+
+import com.flik.common.model.TaskStatus;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatusTransitionTest {
+
+    private final UUID taskId = UUID.randomUUID();
+
+    @Test
+    void then_collapsesProcessingAndCompletedIntoTheCompletedWrite() {
+        Instant completedAt = Instant.now();
+        StatusTransition processing = StatusTransition.of(taskId, TaskStatus.PROCESSING);
+        StatusTransition completed = new StatusTransition(taskId, TaskStatus.COMPLETED, "{\"ok\":true}", null, null,
+                completedAt, "v1.0.0", completedAt);
+
+        assertEquals(completed, processing.then(completed));
+    }
+
+    @Test
+    void then_keepsColumnsTheLaterTransitionLeavesUnset() {
+        Instant failedAt = Instant.now().minusSeconds(1);
+        StatusTransition failed = new StatusTransition(taskId, TaskStatus.FAILED, null, "timeout", 1, null, null,
+                failedAt);
+        StatusTransition retried = StatusTransition.of(taskId, TaskStatus.PROCESSING);
+
+        StatusTransition combined = failed.then(retried);
+
+        assertEquals(TaskStatus.PROCESSING, combined.status());
+        assertEquals("timeout", combined.errorMessage());
+        assertEquals(1, combined.retryCount());
+        assertEquals(retried.at(), combined.at());
+    }
+
+    @Test
+    void then_letsTheLaterValueWinForEveryColumnItSets() {
+        StatusTransition first = new StatusTransition(taskId, TaskStatus.FAILED, null, "timeout", 1, null, null,
+                Instant.now().minusSeconds(1));
+        StatusTransition second = new StatusTransition(taskId, TaskStatus.DEAD_LETTERED, null, "gave up", 3, null,
+                null, Instant.now());
+
+        StatusTransition combined = first.then(second);
+
+        assertEquals(TaskStatus.DEAD_LETTERED, combined.status());
+        assertEquals("gave up", combined.errorMessage());
+        assertEquals(3, combined.retryCount());
+    }
+}
@@ -0,0 +1,129 @@
+package com.flik.worker.service;
+
+import com.flik.common.model.TaskStatus;
+import com.flik.worker.repository.StatusTransition;
+import com.flik.worker.repository.TaskStatusRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class StatusPersisterTest {
+
+    private final List<List<StatusTransition>> flushed = new CopyOnWriteArrayList<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private StatusPersister persister;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (persister != null) persister.shutdown();
+    }
+
+    @Test
+    void submit_coalescesATasksTransitionsInOneFlushIntoOneUpdate() {
+        // A full batch flushes at once, so all three land in the same flush
+        persister = persister(null, 3, false);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        CompletableFuture<Void> processing = persister.submit(StatusTransition.of(first, TaskStatus.PROCESSING));
+        CompletableFuture<Void> other = persister.submit(StatusTransition.of(second, TaskStatus.PROCESSING));
+        CompletableFuture<Void> completed = persister.submit(completed(first));
+        CompletableFuture.allOf(processing, other, completed).join();
+
+        assertEquals(1, flushed.size());
+        List<StatusTransition> rows = flushed.get(0);
+        assertEquals(2, rows.size());
+        assertEquals(TaskStatus.COMPLETED, rows.get(0).status());
+        assertEquals("{\"ok\":true}", rows.get(0).result());
+        assertEquals(second, rows.get(1).taskId());
+        assertEquals(1.0, meterRegistry.get("flik_worker_status_coalesced_total").counter().count());
+    }
+
+    @Test
+    void submit_appendsEveryTransitionUncoalesced_inJournalMode() {
+        persister = persister(null, 2, true);
+        UUID taskId = UUID.randomUUID();
+
+        CompletableFuture.allOf(persister.submit(StatusTransition.of(taskId, TaskStatus.PROCESSING)),
+                persister.submit(completed(taskId))).join();
+
+        assertEquals(1, flushed.size());
+        assertEquals(List.of(TaskStatus.PROCESSING, TaskStatus.COMPLETED),
+                flushed.get(0).stream().map(StatusTransition::status).toList());
+    }
+
+    @Test
+    void flush_retriesTaskByTask_soOneBadRowFailsOnlyItsOwnTask() {
+        UUID bad = UUID.randomUUID();
+        UUID good = UUID.randomUUID();
+        persister = persister(bad, 3, false);
+
+        CompletableFuture<Void> badProcessing = persister.submit(StatusTransition.of(bad, TaskStatus.PROCESSING));
+        CompletableFuture<Void> goodCompleted = persister.submit(completed(good));
+        CompletableFuture<Void> badCompleted = persister.submit(completed(bad));
+
+        goodCompleted.join();
+        assertThrows(CompletionException.class, badProcessing::join);
+        assertThrows(CompletionException.class, badCompleted::join);
+        assertEquals(1, flushed.size());
+        assertEquals(good, flushed.get(0).get(0).taskId());
+    }
+
+    @Test
+    void flush_failsEveryTransitionOfASingleTaskBatch() {
+        UUID bad = UUID.randomUUID();
+        persister = persister(bad, 2, false);
+
+        CompletableFuture<Void> processing = persister.submit(StatusTransition.of(bad, TaskStatus.PROCESSING));
+        CompletableFuture<Void> completed = persister.submit(completed(bad));
+
+        assertThrows(CompletionException.class, processing::join);
+        assertThrows(CompletionException.class, completed::join);
+        assertTrue(flushed.isEmpty());
+    }
+
+    // The flush interval is long, so batches are cut by maxBatch alone
+    private StatusPersister persister(UUID failOn, int maxBatch, boolean journal) {
+        return new StatusPersister(recordingRepository(failOn), transactionManager, meterRegistry, 64, maxBatch,
+                5000, 1000, journal);
+    }
+
+    private TaskStatusRepository recordingRepository(UUID failOn) {
+        return new TaskStatusRepository(null) {
+            @Override
+            public void updateAll(Collection<StatusTransition> transitions) {
+                record(transitions);
+            }
+
+            @Override
+            public void appendAll(Collection<StatusTransition> transitions) {
+                record(transitions);
+            }
+
+            private void record(Collection<StatusTransition> transitions) {
+                if (failOn != null && transitions.stream().anyMatch(t -> t.taskId().equals(failOn))) {
+                    throw new IllegalStateException("constraint violation");
+                }
+                flushed.add(List.copyOf(transitions));
+            }
+        };
+    }
+
+    private static StatusTransition completed(UUID taskId) {
+        Instant now = Instant.now();
+        return new StatusTransition(taskId, TaskStatus.COMPLETED, "{\"ok\":true}", null, null, now, "v1.0.0", now);
+    }
+}
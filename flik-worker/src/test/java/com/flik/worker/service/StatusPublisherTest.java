@@ -0,0 +1,179 @@
+package com.flik.worker.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flik.common.model.TaskStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+import org.springframework.data.redis.connection.ReturnType;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class StatusPublisherTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RedisConnectionFactory connectionFactory = mock(RedisConnectionFactory.class);
+    private final RedisConnection connection = mock(RedisConnection.class);
+    private final RedisScriptingCommands scripting = mock(RedisScriptingCommands.class);
+    // Task id and status of every event sent, in order
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final CountDownLatch connecting = new CountDownLatch(1);
+    private final CountDownLatch connect = new CountDownLatch(1);
+    private StatusPublisher publisher;
+
+    @BeforeEach
+    void setUp() {
+        // The first connection stalls until the test lets it through, so the queue can be filled behind it
+        when(connectionFactory.getConnection()).thenAnswer(invocation -> {
+            connecting.countDown();
+            connect.await();
+            return connection;
+        });
+        when(connection.scriptingCommands()).thenReturn(scripting);
+        when(scripting.scriptLoad(any(byte[].class))).thenReturn("sha");
+        when(scripting.evalSha(anyString(), any(ReturnType.class), anyInt(), any(byte[][].class))).thenAnswer(invocation -> {
+            JsonNode event = objectMapper.readTree((byte[]) invocation.getArgument(5));
+            sent.add(event.get("taskId").asText() + ":" + event.get("status").asText());
+            return null;
+        });
+        publisher = new StatusPublisher(connectionFactory, objectMapper, meterRegistry, 2, 128);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        connect.countDown();
+        publisher.shutdown();
+    }
+
+    @Test
+    void publish_evictsTheOldestQueuedProcessingEvent_toMakeRoomForATerminalOne() throws Exception {
+        String first = stall();
+        UUID evicted = publish(TaskStatus.PROCESSING);
+        UUID kept = publish(TaskStatus.PROCESSING);
+        UUID completed = publish(TaskStatus.COMPLETED);
+
+        connect.countDown();
+
+        awaitSent(3);
+        assertEquals(List.of(first, kept + ":PROCESSING", completed + ":COMPLETED"), sent);
+        assertFalse(sent.contains(evicted + ":PROCESSING"));
+        assertEquals(1.0, dropped(TaskStatus.PROCESSING));
+    }
+
+    @Test
+    void publish_dropsAnIncomingProcessingEvent_whenTheQueueIsFull() throws Exception {
+        stall();
+        publish(TaskStatus.COMPLETED);
+        publish(TaskStatus.PROCESSING);
+        UUID dropped = publish(TaskStatus.PROCESSING);
+
+        connect.countDown();
+
+        awaitSent(3);
+        assertFalse(sent.contains(dropped + ":PROCESSING"));
+        assertEquals(1.0, dropped(TaskStatus.PROCESSING));
+    }
+
+    @Test
+    void publish_waitsForRoom_ratherThanDropAStatusThatDrivesDagProgression() throws Exception {
+        stall();
+        publish(TaskStatus.COMPLETED);
+        publish(TaskStatus.DEAD_LETTERED);
+        UUID waiting = UUID.randomUUID();
+        Thread flusher = Thread.ofPlatform().start(() ->
+                publisher.publish(waiting, TaskStatus.EXPIRED, null, "late", Instant.now()));
+
+        flusher.join(200);
+        assertTrue(flusher.isAlive(), "a terminal status must wait while the queue holds only terminal statuses");
+
+        connect.countDown();
+        flusher.join(5000);
+        assertFalse(flusher.isAlive());
+        awaitSent(4);
+        assertTrue(sent.contains(waiting + ":EXPIRED"));
+        assertEquals(0, meterRegistry.find("flik_worker_status_publish_dropped_total").counters().stream()
+                .mapToDouble(Counter::count).sum());
+    }
+
+    @Test
+    void send_retriesAFailedPipelineOnceOnANewConnection() throws Exception {
+        connect.countDown();
+        when(connection.closePipeline())
+                .thenThrow(new RedisConnectionFailureException("connection reset"))
+                .thenReturn(List.of());
+
+        UUID completed = publish(TaskStatus.COMPLETED);
+
+        awaitSent(2);
+        // Sent on the broken connection, then again on the new one
+        assertEquals(List.of(completed + ":COMPLETED", completed + ":COMPLETED"), sent);
+        verify(connectionFactory, times(2)).getConnection();
+        verify(scripting, times(2)).scriptLoad(any(byte[].class));
+        assertEquals(0.0, meterRegistry.get("flik_worker_status_publish_failed_total").counter().count());
+    }
+
+    @Test
+    void send_queuesTerminalStatusesAgain_whenTheRetryFailsToo_andLosesOnlyProcessing() throws Exception {
+        when(connection.closePipeline())
+                .thenReturn(List.of())
+                .thenThrow(new RedisConnectionFailureException("connection reset"))
+                .thenThrow(new RedisConnectionFailureException("connection refused"))
+                .thenReturn(List.of());
+        // Both queued behind the stalled first event, so they go out in one pipeline
+        String first = stall();
+        UUID processing = publish(TaskStatus.PROCESSING);
+        UUID completed = publish(TaskStatus.COMPLETED);
+
+        connect.countDown();
+
+        awaitSent(6);
+        String p = processing + ":PROCESSING";
+        String c = completed + ":COMPLETED";
+        assertEquals(List.of(first, p, c, p, c, c), sent);
+        assertEquals(1.0, meterRegistry.get("flik_worker_status_publish_failed_total").counter().count());
+        assertEquals(0.0, dropped(TaskStatus.COMPLETED));
+    }
+
+    // Publishes one event the publisher takes and then stalls on, leaving the queue empty behind it
+    private String stall() throws InterruptedException {
+        UUID first = publish(TaskStatus.COMPLETED);
+        assertTrue(connecting.await(5, TimeUnit.SECONDS));
+        return first + ":COMPLETED";
+    }
+
+    private UUID publish(TaskStatus status) {
+        UUID taskId = UUID.randomUUID();
+        publisher.publish(taskId, status, null, null, Instant.now());
+        return taskId;
+    }
+
+    private double dropped(TaskStatus status) {
+        Counter counter = meterRegistry.find("flik_worker_status_publish_dropped_total").tag("status", status.name()).counter();
+        return counter != null ? counter.count() : 0;
+    }
+
+    private void awaitSent(int events) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sent.size() < events && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(events, sent.size(), "events sent: " + sent);
+    }
+}
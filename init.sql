@@ -14,6 +14,7 @@ CREATE TABLE IF NOT EXISTS tasks (
     cost            DOUBLE PRECISION DEFAULT 0.0,
     storage_tier    VARCHAR(16) DEFAULT 'HOT',
     worker_version  VARCHAR(32),
+    deadline        TIMESTAMPTZ,
     created_at      TIMESTAMP NOT NULL DEFAULT NOW(),
     updated_at      TIMESTAMP NOT NULL DEFAULT NOW(),
     completed_at    TIMESTAMP
@@ -25,3 +26,41 @@ CREATE INDEX IF NOT EXISTS idx_tasks_created_at ON tasks(created_at);
 CREATE INDEX IF NOT EXISTS idx_tasks_dag_id ON tasks(dag_id);
 CREATE INDEX IF NOT EXISTS idx_tasks_parent_id ON tasks(parent_task_id);
 CREATE INDEX IF NOT EXISTS idx_tasks_storage_tier ON tasks(storage_tier);
+
+CREATE TABLE IF NOT EXISTS task_outbox (
+    id                BIGSERIAL PRIMARY KEY,
+    task_id           UUID NOT NULL,
+    exchange          VARCHAR(64) NOT NULL,
+    routing_key       VARCHAR(64) NOT NULL,
+    message_priority  INT NOT NULL DEFAULT 0,
+    content_type      VARCHAR(128) NOT NULL,
+    headers           JSONB NOT NULL DEFAULT '{}',
+    body              BYTEA NOT NULL,
+    created_at        TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    claimed_until     TIMESTAMPTZ
+);
+
+-- Append-only status journal; the compactor folds it into tasks in bulk, up to the watermark
+CREATE TABLE IF NOT EXISTS task_events (
+    seq             BIGSERIAL PRIMARY KEY,
+    task_id         UUID NOT NULL,
+    status          VARCHAR(32) NOT NULL,
+    result          JSONB,
+    error_message   TEXT,
+    retry_count     INT,
+    worker_version  VARCHAR(32),
+    completed_at    TIMESTAMP,
+    recorded_at     TIMESTAMP NOT NULL,
+    -- Writing transaction, so compaction can wait for it to finish
+    xid             BIGINT NOT NULL DEFAULT pg_current_xact_id()::text::bigint
+);
+
+CREATE INDEX IF NOT EXISTS idx_task_events_task_seq ON task_events(task_id, seq);
+CREATE INDEX IF NOT EXISTS idx_task_events_xid ON task_events(xid);
+
+CREATE TABLE IF NOT EXISTS task_event_watermark (
+    id        INT PRIMARY KEY,
+    next_xid  BIGINT NOT NULL
+);
+
+INSERT INTO task_event_watermark (id, next_xid) VALUES (1, 0) ON CONFLICT (id) DO NOTHING;